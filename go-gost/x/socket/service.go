@@ -204,10 +204,12 @@ func deleteServices(req deleteServicesRequest) error {
 	return nil
 }
 
-func pauseServices(req pauseServicesRequest) error {
+// pauseServices 暂停服务；SkipMissing 时节点上不存在的服务视为已停止，跳过并在返回值中列出，
+// 不影响同批其他服务的暂停
+func pauseServices(req pauseServicesRequest) ([]string, error) {
 
 	if len(req.Services) == 0 {
-		return errors.New("services list cannot be empty")
+		return nil, errors.New("services list cannot be empty")
 	}
 
 	// 第一阶段：验证所有服务是否存在，并筛选需要暂停的服务
@@ -215,18 +217,22 @@ func pauseServices(req pauseServicesRequest) error {
 		name    string
 		service service.Service
 	}
-	//var skippedServices []string
+	var missingServices []string
 
 	cfg := config.Global()
 	for _, serviceName := range req.Services {
 		name := strings.TrimSpace(serviceName)
 		if name == "" {
-			return errors.New("service name is required")
+			return nil, errors.New("service name is required")
 		}
 
 		svc := registry.ServiceRegistry().Get(name)
 		if svc == nil {
-			return errors.New(fmt.Sprintf("service %s not found", name))
+			if req.SkipMissing {
+				missingServices = append(missingServices, name)
+				continue
+			}
+			return nil, errors.New(fmt.Sprintf("service %s not found", name))
 		}
 
 		//// 检查服务是否已经暂停
@@ -271,7 +277,7 @@ func pauseServices(req pauseServicesRequest) error {
 		if serviceConfig == nil {
 			// 找不到配置，回滚已暂停的服务
 			rollbackPausedServices(pausedServices)
-			return errors.New(fmt.Sprintf("service %s configuration not found", stp.name))
+			return nil, errors.New(fmt.Sprintf("service %s configuration not found", stp.name))
 		}
 
 		// 暂停服务
@@ -309,10 +315,10 @@ func pauseServices(req pauseServicesRequest) error {
 	if err != nil {
 		// 配置更新失败，需要回滚所有暂停的服务
 		rollbackPausedServices(pausedServices)
-		return errors.New(fmt.Sprintf("Failed to update config, rolling back paused services: %v", err))
+		return nil, errors.New(fmt.Sprintf("Failed to update config, rolling back paused services: %v", err))
 	}
 
-	return nil
+	return missingServices, nil
 }
 
 func resumeServices(req resumeServicesRequest) error {
@@ -509,7 +515,8 @@ type resumeServicesRequest struct {
 }
 
 type pauseServicesRequest struct {
-	Services []string `json:"services"`
+	Services    []string `json:"services"`
+	SkipMissing bool     `json:"skipMissing"`
 }
 
 type deleteServicesRequest struct {
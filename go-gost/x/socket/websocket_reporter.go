@@ -6,6 +6,7 @@ import (
 	"context"
 	"encoding/json"
 	"fmt"
+	"math/rand"
 	"net"
 	"net/url"
 	"strconv"
@@ -85,6 +86,21 @@ type TcpPingResponse struct {
 	RequestId    string  `json:"requestId,omitempty"`
 }
 
+// TcpPingBatchRequest 批量TCP ping请求，同一节点的多个目标一次下发
+type TcpPingBatchRequest struct {
+	Targets []TcpPingRequest `json:"targets"`
+	Count   int              `json:"count"`
+	Timeout int              `json:"timeout"` // 超时时间(毫秒)
+}
+
+// TcpPingBatchResponse 批量TCP ping响应，结果顺序与请求目标一致
+type TcpPingBatchResponse struct {
+	Results []TcpPingResponse `json:"results"`
+}
+
+// 批量TCP ping的最大并发数
+const tcpPingBatchParallelism = 16
+
 type WebSocketReporter struct {
 	url            string
 	addr           string // 保存服务器地址
@@ -156,9 +172,10 @@ func (w *WebSocketReporter) run() {
 
 			if needConnect {
 				if err := w.connect(); err != nil {
-					fmt.Printf("❌ WebSocket连接失败: %v，%v后重试\n", err, w.reconnectTime)
+					delay := w.reconnectDelay(err)
+					fmt.Printf("❌ WebSocket连接失败: %v，%v后重试\n", err, delay)
 					select {
-					case <-time.After(w.reconnectTime):
+					case <-time.After(delay):
 						continue
 					case <-w.ctx.Done():
 						return
@@ -182,6 +199,24 @@ func (w *WebSocketReporter) run() {
 	}
 }
 
+// retryAfterError 面板拒绝握手并要求稍后重试
+type retryAfterError struct {
+	delay time.Duration
+}
+
+func (e *retryAfterError) Error() string {
+	return fmt.Sprintf("面板繁忙，要求%v后重试", e.delay)
+}
+
+// reconnectDelay 计算重连等待时间，加入随机抖动，避免面板重启后所有节点同时重连
+func (w *WebSocketReporter) reconnectDelay(err error) time.Duration {
+	base := w.reconnectTime
+	if ra, ok := err.(*retryAfterError); ok && ra.delay > base {
+		base = ra.delay
+	}
+	return base + time.Duration(rand.Int63n(int64(base)/2+1))
+}
+
 // connect 建立WebSocket连接
 func (w *WebSocketReporter) connect() error {
 	w.connMutex.Lock()
@@ -224,8 +259,14 @@ func (w *WebSocketReporter) connect() error {
 	dialer := websocket.DefaultDialer
 	dialer.HandshakeTimeout = 10 * time.Second
 
-	conn, _, err := dialer.Dial(u.String(), nil)
+	conn, resp, err := dialer.Dial(u.String(), nil)
 	if err != nil {
+		// 面板限流时返回503和Retry-After，按面板给出的时间退避
+		if resp != nil && resp.StatusCode == 503 {
+			if seconds, convErr := strconv.Atoi(resp.Header.Get("Retry-After")); convErr == nil && seconds > 0 {
+				return &retryAfterError{delay: time.Duration(seconds) * time.Second}
+			}
+		}
 		return fmt.Errorf("连接WebSocket失败: %v", err)
 	}
 
@@ -468,7 +509,7 @@ func (w *WebSocketReporter) handleReceivedMessage(messageType int, message []byt
 			if cmdMsg.Type != "call" {
 				// TcpPing 诊断命令异步执行，避免阻塞其他命令
 				// 其他状态变更命令保持同步，确保顺序执行
-				if cmdMsg.Type == "TcpPing" {
+				if cmdMsg.Type == "TcpPing" || cmdMsg.Type == "TcpPingBatch" {
 					go w.routeCommand(cmdMsg)
 				} else {
 					w.routeCommand(cmdMsg)
@@ -485,7 +526,7 @@ func (w *WebSocketReporter) handleReceivedMessage(messageType int, message []byt
 			if cmdMsg.Type != "call" {
 				// TcpPing 诊断命令异步执行，避免阻塞其他命令
 				// 其他状态变更命令保持同步，确保顺序执行
-				if cmdMsg.Type == "TcpPing" {
+				if cmdMsg.Type == "TcpPing" || cmdMsg.Type == "TcpPingBatch" {
 					go w.routeCommand(cmdMsg)
 				} else {
 					w.routeCommand(cmdMsg)
@@ -529,8 +570,12 @@ func (w *WebSocketReporter) routeCommand(cmd CommandMessage) {
 		response.Type = "DeleteServiceResponse"
 		needSaveConfig = true
 	case "PauseService":
-		err = w.handlePauseService(cmd.Data)
+		var missing []string
+		missing, err = w.handlePauseService(cmd.Data)
 		response.Type = "PauseServiceResponse"
+		if len(missing) > 0 {
+			response.Data = map[string]interface{}{"missing": missing}
+		}
 		needSaveConfig = true
 	case "ResumeService":
 		err = w.handleResumeService(cmd.Data)
@@ -572,6 +617,11 @@ func (w *WebSocketReporter) routeCommand(cmd CommandMessage) {
 		response.Type = "TcpPingResponse"
 		response.Data = tcpPingResult
 		// needSaveConfig = false (默认值)
+	case "TcpPingBatch":
+		var batchResult TcpPingBatchResponse
+		batchResult, err = w.handleTcpPingBatch(cmd.Data)
+		response.Type = "TcpPingBatchResponse"
+		response.Data = batchResult
 
 	// Protocol blocking switches
 	case "SetProtocol":
@@ -659,15 +709,15 @@ func (w *WebSocketReporter) handleDeleteService(data interface{}) error {
 	return deleteServices(req)
 }
 
-func (w *WebSocketReporter) handlePauseService(data interface{}) error {
+func (w *WebSocketReporter) handlePauseService(data interface{}) ([]string, error) {
 	jsonData, err := json.Marshal(data)
 	if err != nil {
-		return fmt.Errorf("序列化数据失败: %v", err)
+		return nil, fmt.Errorf("序列化数据失败: %v", err)
 	}
 
 	var req pauseServicesRequest
 	if err := json.Unmarshal(jsonData, &req); err != nil {
-		return fmt.Errorf("解析暂停请求失败: %v", err)
+		return nil, fmt.Errorf("解析暂停请求失败: %v", err)
 	}
 
 	return pauseServices(req)
@@ -1097,6 +1147,46 @@ func (w *WebSocketReporter) handleTcpPing(data interface{}) (TcpPingResponse, er
 		return TcpPingResponse{}, fmt.Errorf("解析TCP ping请求失败: %v", err)
 	}
 
+	return runTcpPing(req), nil
+}
+
+// handleTcpPingBatch 处理批量TCP ping诊断命令，各目标并发探测
+func (w *WebSocketReporter) handleTcpPingBatch(data interface{}) (TcpPingBatchResponse, error) {
+	jsonData, err := json.Marshal(data)
+	if err != nil {
+		return TcpPingBatchResponse{}, fmt.Errorf("序列化TCP ping数据失败: %v", err)
+	}
+
+	var req TcpPingBatchRequest
+	if err := json.Unmarshal(jsonData, &req); err != nil {
+		return TcpPingBatchResponse{}, fmt.Errorf("解析TCP ping请求失败: %v", err)
+	}
+
+	results := make([]TcpPingResponse, len(req.Targets))
+	sem := make(chan struct{}, tcpPingBatchParallelism)
+	var wg sync.WaitGroup
+	for i, target := range req.Targets {
+		if target.Count <= 0 {
+			target.Count = req.Count
+		}
+		if target.Timeout <= 0 {
+			target.Timeout = req.Timeout
+		}
+		wg.Add(1)
+		sem <- struct{}{}
+		go func(i int, target TcpPingRequest) {
+			defer wg.Done()
+			defer func() { <-sem }()
+			results[i] = runTcpPing(target)
+		}(i, target)
+	}
+	wg.Wait()
+
+	return TcpPingBatchResponse{Results: results}, nil
+}
+
+// runTcpPing 校验参数并执行单个目标的TCP ping
+func runTcpPing(req TcpPingRequest) TcpPingResponse {
 	// 验证IP地址格式
 	if net.ParseIP(req.IP) == nil && !isValidHostname(req.IP) {
 		return TcpPingResponse{
@@ -1105,7 +1195,7 @@ func (w *WebSocketReporter) handleTcpPing(data interface{}) (TcpPingResponse, er
 			Success:      false,
 			ErrorMessage: "无效的IP地址或主机名",
 			RequestId:    req.RequestId,
-		}, nil
+		}
 	}
 
 	// 验证端口范围
@@ -1116,7 +1206,7 @@ func (w *WebSocketReporter) handleTcpPing(data interface{}) (TcpPingResponse, er
 			Success:      false,
 			ErrorMessage: "无效的端口号，范围应为1-65535",
 			RequestId:    req.RequestId,
-		}, nil
+		}
 	}
 
 	// 设置默认值
@@ -1145,7 +1235,7 @@ func (w *WebSocketReporter) handleTcpPing(data interface{}) (TcpPingResponse, er
 		response.PacketLoss = packetLoss
 	}
 
-	return response, nil
+	return response
 }
 
 // tcpPingHost 执行TCP连接测试，返回平均连接时间和失败率
@@ -0,0 +1,21 @@
+package com.admin.common.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 条件请求注解
+ * 响应只取决于 tables 中的数据时使用：按表版本生成 ETag，If-None-Match 匹配时直接返回304，
+ * 否则返回版本未变时缓存的序列化结果
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ConditionalGet {
+
+    /**
+     * 响应依赖的表
+     */
+    String[] tables();
+}
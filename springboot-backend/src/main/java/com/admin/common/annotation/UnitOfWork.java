@@ -0,0 +1,15 @@
+package com.admin.common.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 操作级实体缓存注解
+ * 标记的方法执行期间，Node/Tunnel 的 getById 结果在当前线程内复用，方法结束即丢弃
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface UnitOfWork {
+}
@@ -0,0 +1,136 @@
+package com.admin.common.aop;
+
+import com.admin.common.annotation.ConditionalGet;
+import com.admin.common.lang.R;
+import com.admin.common.task.TableVersions;
+import com.admin.common.utils.Md5Util;
+import com.alibaba.fastjson.JSON;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.annotation.Resource;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 条件请求切面
+ * 处理 @ConditionalGet 注解：ETag 由方法、请求参数与依赖表的版本计算，全程不查库；
+ * If-None-Match 匹配返回304，版本未变时直接输出缓存的响应字节。
+ * 排在权限切面之后，未通过权限检查的请求不会命中缓存
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class ConditionalGetAspect {
+
+    private static final int MAX_ENTRIES = 256;
+
+    @Resource
+    TableVersions tableVersions;
+
+    @Resource
+    ObjectMapper objectMapper;
+
+    private final Map<String, Cached> cache = new ConcurrentHashMap<>();
+
+    @Around("@annotation(conditionalGet)")
+    public Object around(ProceedingJoinPoint joinPoint, ConditionalGet conditionalGet) throws Throwable {
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        if (attributes == null || attributes.getResponse() == null) {
+            return joinPoint.proceed();
+        }
+        HttpServletRequest request = attributes.getRequest();
+        HttpServletResponse response = attributes.getResponse();
+
+        String key = cacheKey(joinPoint);
+        String etag = etag(key, conditionalGet.tables());
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return null;
+        }
+
+        Cached cached = cache.get(key);
+        if (cached != null && cached.etag.equals(etag)) {
+            write(response, cached);
+            return null;
+        }
+
+        Object result = joinPoint.proceed();
+        // 只缓存成功结果，且计算期间依赖的表没有变化
+        if (!(result instanceof R) || ((R) result).getCode() != 0
+                || !etag.equals(etag(key, conditionalGet.tables()))) {
+            return result;
+        }
+        Cached fresh = new Cached(etag, objectMapper.writeValueAsBytes(result));
+        if (cache.size() >= MAX_ENTRIES) {
+            cache.clear();
+        }
+        cache.put(key, fresh);
+        write(response, fresh);
+        return null;
+    }
+
+    private String cacheKey(ProceedingJoinPoint joinPoint) {
+        List<Object> args = new ArrayList<>();
+        for (Object arg : joinPoint.getArgs()) {
+            if (!(arg instanceof ServletRequest) && !(arg instanceof ServletResponse)) {
+                args.add(arg);
+            }
+        }
+        return joinPoint.getSignature().toLongString() + JSON.toJSONString(args);
+    }
+
+    private String etag(String key, String[] tables) {
+        return "\"" + Md5Util.md5(key + "|" + tableVersions.fingerprint(tables)) + "\"";
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void write(HttpServletResponse response, Cached cached) throws IOException {
+        response.setHeader(HttpHeaders.ETAG, cached.etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.setContentLength(cached.body.length);
+        response.getOutputStream().write(cached.body);
+        response.flushBuffer();
+    }
+
+    private static class Cached {
+        final String etag;
+        final byte[] body;
+
+        Cached(String etag, byte[] body) {
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+}
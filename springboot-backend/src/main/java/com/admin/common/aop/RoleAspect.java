@@ -6,6 +6,8 @@ import com.admin.common.utils.JwtUtil;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
@@ -16,9 +18,11 @@ import javax.servlet.http.HttpServletRequest;
  * 权限控制切面
  * 处理 @RequireRole 注解，检查管理员权限（role_id = 0）
  * 注意：JWT拦截器已经验证了token的有效性，这里只需要检查权限
+ * 最先执行，保证未通过检查的请求不会进入缓存等其他切面
  */
 @Aspect
 @Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
 public class RoleAspect {
 
     @Around("@annotation(requireRole)")
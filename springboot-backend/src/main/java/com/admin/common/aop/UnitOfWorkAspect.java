@@ -0,0 +1,26 @@
+package com.admin.common.aop;
+
+import com.admin.common.utils.EntityIdentityMap;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * 操作级实体缓存切面
+ * 处理 @UnitOfWork 注解，在方法执行前后开启和关闭当前线程的实体缓存，支持嵌套
+ */
+@Aspect
+@Component
+public class UnitOfWorkAspect {
+
+    @Around("@annotation(com.admin.common.annotation.UnitOfWork)")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        EntityIdentityMap.open();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            EntityIdentityMap.close();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.admin.common.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import java.util.List;
+
+/**
+ * 列表查询参数
+ * 不传 limit 时返回完整列表（兼容旧前端）；传 limit 时按游标分页，
+ * 下一页把上一页返回的 nextCursor 原样带回
+ */
+@Data
+public class ListQueryDto {
+
+    /**
+     * 上一页返回的游标，首页为空
+     */
+    private String cursor;
+
+    /**
+     * 每页条数
+     */
+    @Min(1)
+    @Max(500)
+    private Integer limit;
+
+    /**
+     * 按用户过滤（仅管理员有效）
+     */
+    private Integer userId;
+
+    /**
+     * 按隧道过滤
+     */
+    private Integer tunnelId;
+
+    private Integer status;
+
+    /**
+     * 只查询这些ID（增量同步按ID回查变更行）
+     */
+    private List<Long> ids;
+
+    /**
+     * 名称前缀
+     */
+    private String name;
+
+    /**
+     * 排序字段，各列表支持的字段不同，不支持时使用默认排序
+     */
+    private String sort;
+
+    /**
+     * asc / desc
+     */
+    private String order;
+
+    /**
+     * 只返回这些字段（id 总是返回），为空时返回全部字段
+     */
+    private List<String> fields;
+
+    /**
+     * 名称前缀对应的 LIKE 模式，转义 \、%、_，配合 ESCAPE '\' 使用
+     */
+    public String getNamePattern() {
+        if (name == null) {
+            return null;
+        }
+        return name.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+}
@@ -3,6 +3,7 @@ package com.admin.common.dto;
 import lombok.Data;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 
 @Data
@@ -15,6 +16,19 @@ public class SpeedLimitDto {
     @Min(value = 1, message = "速度限制必须大于0")
     private Integer speed;
 
+    /**
+     * 自动分档阈值（GB），0 表示不参与自动分档
+     */
+    @Min(value = 0, message = "分档阈值不能小于0")
+    private Integer tierFlow;
+
+    /**
+     * 自动分档统计窗口（小时）
+     */
+    @Min(value = 1, message = "分档窗口至少1小时")
+    @Max(value = 168, message = "分档窗口最长168小时")
+    private Integer tierHours;
+
     @NotNull(message = "隧道ID不能为空")
     private Long tunnelId;
 
@@ -0,0 +1,53 @@
+package com.admin.common.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+/**
+ * 流量分析查询参数
+ */
+@Data
+public class TrafficQueryDto {
+
+    /**
+     * 统计维度：forward / user / tunnel / node
+     */
+    @NotBlank(message = "统计维度不能为空")
+    private String dimension;
+
+    /**
+     * 时间窗口（分钟），1小时以内按5分钟取整，超过按小时取整；增速查询最长12小时
+     */
+    @NotNull(message = "时间窗口不能为空")
+    @Min(1)
+    @Max(1440)
+    private Integer windowMinutes = 60;
+
+    /**
+     * 排名条数
+     */
+    @NotNull(message = "排名条数不能为空")
+    @Min(1)
+    @Max(1000)
+    private Integer limit = 50;
+
+    /**
+     * 排名指标：bytes 流量 / rate 平均速率 / growth 速率增量
+     */
+    private String metric = "bytes";
+
+    /**
+     * 查询单个实体速率时的实体ID
+     */
+    private Long id;
+
+    /**
+     * 分位数（0-100），为空时返回 50/90/99
+     */
+    private List<Double> percentiles;
+}
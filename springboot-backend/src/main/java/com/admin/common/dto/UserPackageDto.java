@@ -30,6 +30,11 @@ public class UserPackageDto {
      * 用户转发列表
      */
     private List<StatisticsFlow> statisticsFlows;
+
+    /**
+     * 快照版本号，内容有任何变化都会变大
+     */
+    private Long version;
     
     /**
      * 用户基本信息
@@ -1,13 +1,18 @@
 package com.admin.common.dto;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 import javax.validation.constraints.NotNull;
 
 @Data
-public class UserTunnelQueryDto {
+@EqualsAndHashCode(callSuper = true)
+public class UserTunnelQueryDto extends ListQueryDto {
 
     @NotNull
-    private Integer userId;
+    @Override
+    public Integer getUserId() {
+        return super.getUserId();
+    }
 
-} 
\ No newline at end of file
+}
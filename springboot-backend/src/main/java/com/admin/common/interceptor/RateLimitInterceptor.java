@@ -0,0 +1,249 @@
+package com.admin.common.interceptor;
+
+import com.admin.common.lang.R;
+import com.admin.common.task.NodeAdmissionController;
+import com.admin.common.task.SubscriptionCache;
+import com.admin.common.utils.RateGate;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 免登录接口限流拦截器
+ * 节点上报按密钥、订阅接口按用户名限速，只有内存缓存中已知的密钥/用户名才单独计数，
+ * 未知的按来源地址共用一个桶；另外所有请求再按来源地址限速，挡住随机密钥/用户名的刷量。
+ * 来源地址取连接的对端地址，只有对端是配置的可信代理时才采用 X-Forwarded-For。
+ * 在参数绑定之前执行，只读取查询串，被拒绝的请求不会读取请求体、解密或查库；
+ * 超限返回 429 + Retry-After
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final int MAX_KEYS = 20000;
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rate-limit.flow-upload.rate:5}")
+    private double uploadRate;
+
+    @Value("${rate-limit.flow-upload.burst:50}")
+    private double uploadBurst;
+
+    @Value("${rate-limit.flow-config.rate:0.2}")
+    private double configRate;
+
+    @Value("${rate-limit.flow-config.burst:5}")
+    private double configBurst;
+
+    @Value("${rate-limit.open-api.rate:1}")
+    private double openApiRate;
+
+    @Value("${rate-limit.open-api.burst:10}")
+    private double openApiBurst;
+
+    @Value("${rate-limit.ip.rate:50}")
+    private double ipRate;
+
+    @Value("${rate-limit.ip.burst:200}")
+    private double ipBurst;
+
+    // 可信反向代理地址，逗号分隔；为空时不信任任何转发头
+    @Value("${rate-limit.trusted-proxies:}")
+    private String trustedProxyList;
+
+    @Resource
+    @Lazy
+    NodeAdmissionController nodeAdmissionController;
+
+    @Resource
+    @Lazy
+    SubscriptionCache subscriptionCache;
+
+    private final Map<String, Policy> policies = new LinkedHashMap<>();
+    private Set<String> trustedProxies;
+
+    @PostConstruct
+    public void init() {
+        trustedProxies = Arrays.stream(trustedProxyList.split(","))
+                .map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.toSet());
+        policies.put("flow-upload", new Policy(uploadRate, uploadBurst));
+        policies.put("flow-config", new Policy(configRate, configBurst));
+        policies.put("open-api", new Policy(openApiRate, openApiBurst));
+        policies.put("ip", new Policy(ipRate, ipBurst));
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (!enabled) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String ip = clientAddress(request);
+
+        long waitNanos = policies.get("ip").acquire(ip);
+        if (waitNanos == 0) {
+            if (path.startsWith("/flow/upload")) {
+                waitNanos = policies.get("flow-upload").acquire(secretKey(queryParam(request, "secret"), ip));
+            } else if (path.startsWith("/flow/config")) {
+                waitNanos = policies.get("flow-config").acquire(secretKey(queryParam(request, "secret"), ip));
+            } else if (path.startsWith("/api/v1/open_api/")) {
+                String user = queryParam(request, "user");
+                waitNanos = policies.get("open-api").acquire(subscriptionCache.isKnownUser(user) ? "user:" + user : "ip:" + ip);
+            }
+        }
+        if (waitNanos == 0) {
+            return true;
+        }
+
+        long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+        response.setStatus(429);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(JSON.toJSONString(R.err(429, "请求过于频繁，请稍后再试")));
+        return false;
+    }
+
+    /**
+     * 定期清理已补满令牌的桶
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void sweepIdleGates() {
+        policies.values().forEach(Policy::sweep);
+    }
+
+    /**
+     * 各策略的放行/限流计数与当前跟踪的键数量
+     */
+    public JSONObject stats() {
+        JSONObject stats = new JSONObject();
+        policies.forEach((name, policy) -> {
+            JSONObject item = new JSONObject();
+            item.put("rate", policy.rate);
+            item.put("burst", policy.burst);
+            item.put("allowed", policy.allowed.get());
+            item.put("throttled", policy.throttled.get());
+            item.put("keys", policy.size());
+            stats.put(name, item);
+        });
+        stats.put("enabled", enabled);
+        return stats;
+    }
+
+    private String secretKey(String secret, String ip) {
+        return nodeAdmissionController.isKnownSecret(secret) ? "secret:" + secret : "ip:" + ip;
+    }
+
+    /**
+     * 连接对端地址；对端是可信代理时，从 X-Forwarded-For 由右向左取第一个非可信代理的地址
+     */
+    private String clientAddress(HttpServletRequest request) {
+        String remote = request.getRemoteAddr();
+        if (!trustedProxies.contains(remote)) {
+            return remote;
+        }
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (forwarded == null || forwarded.isEmpty()) {
+            return remote;
+        }
+        String[] hops = forwarded.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (!hop.isEmpty() && !trustedProxies.contains(hop)) {
+                return hop;
+            }
+        }
+        return remote;
+    }
+
+    /**
+     * 只从查询串取参数；request.getParameter 遇到表单请求会提前读取请求体
+     */
+    private static String queryParam(HttpServletRequest request, String name) {
+        String query = request.getQueryString();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && name.equals(pair.substring(0, eq))) {
+                try {
+                    return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    return pair.substring(eq + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static class Policy {
+        final double rate;
+        final double burst;
+        // 键数量由定期清理控制；达到上限时先就地清理一次，仍然满时新键共用溢出桶，已跟踪的键保留各自的计数
+        final Map<String, RateGate> gates = new ConcurrentHashMap<>();
+        final RateGate overflow;
+        final AtomicBoolean sweeping = new AtomicBoolean();
+        final AtomicLong allowed = new AtomicLong();
+        final AtomicLong throttled = new AtomicLong();
+
+        Policy(double rate, double burst) {
+            this.rate = rate;
+            this.burst = burst;
+            this.overflow = new RateGate(rate, burst);
+        }
+
+        int size() {
+            return gates.size();
+        }
+
+        long acquire(String key) {
+            RateGate gate = gates.get(key);
+            if (gate == null) {
+                if (gates.size() >= MAX_KEYS) {
+                    sweep();
+                }
+                gate = gates.size() < MAX_KEYS ? gates.computeIfAbsent(key, k -> new RateGate(rate, burst)) : overflow;
+            }
+            long wait = gate.tryAcquire();
+            (wait == 0 ? allowed : throttled).incrementAndGet();
+            return wait;
+        }
+
+        void sweep() {
+            if (!sweeping.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                long now = System.nanoTime();
+                gates.values().removeIf(gate -> gate.isIdle(now));
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+}
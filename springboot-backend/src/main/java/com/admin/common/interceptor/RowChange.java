@@ -0,0 +1,88 @@
+package com.admin.common.interceptor;
+
+import cn.hutool.core.bean.BeanUtil;
+
+/**
+ * 单行数据变更
+ * id 为空表示无法确定具体行（如按非主键条件批量更新），应视为整张表变化
+ */
+public class RowChange {
+
+    private final String table;
+    private final boolean deleted;
+    private Object id;
+    // 插入时主键在语句执行后（批量插入在刷新后）才回填，提交后再从实体读取
+    private final Object entity;
+    private final String property;
+    // 只改动了计数列（如流量累加）
+    private boolean counter;
+    // 由子表写入推导出的父表行变化，父表本身的列没有改动
+    private boolean linked;
+
+    private RowChange(String table, Object id, boolean deleted, Object entity, String property) {
+        this.table = table;
+        this.id = id;
+        this.deleted = deleted;
+        this.entity = entity;
+        this.property = property;
+    }
+
+    public static RowChange of(String table, Object id, boolean deleted) {
+        return new RowChange(table, id, deleted, null, null);
+    }
+
+    public static RowChange unknown(String table) {
+        return new RowChange(table, null, false, null, null);
+    }
+
+    static RowChange fromEntity(String table, Object entity, String property) {
+        return new RowChange(table, null, false, entity, property);
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * 是否为计数列的累加写入，关心结构变化的监听者可以忽略
+     */
+    public boolean isCounter() {
+        return counter;
+    }
+
+    void markCounter() {
+        this.counter = true;
+    }
+
+    /**
+     * 是否为子表（如 chain_tunnel、forward_port）写入推导出的父表行变化
+     */
+    public boolean isLinked() {
+        return linked;
+    }
+
+    void markLinked() {
+        this.linked = true;
+    }
+
+    /**
+     * 变更行的ID，无法确定时为null
+     */
+    public Long getId() {
+        if (id == null && entity != null) {
+            id = BeanUtil.getFieldValue(entity, property);
+        }
+        if (id == null) {
+            return null;
+        }
+        try {
+            return id instanceof Number ? ((Number) id).longValue() : Long.valueOf(id.toString().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.admin.common.interceptor;
+
+import java.util.List;
+
+/**
+ * 行级数据变更监听，由 {@link TableChangeInterceptor} 在写入生效后回调
+ */
+public interface RowChangeListener {
+
+    /**
+     * 事务提交后（非事务写入则在写入后立即）回调，按写入顺序排列
+     */
+    void onRowsChanged(List<RowChange> changes);
+}
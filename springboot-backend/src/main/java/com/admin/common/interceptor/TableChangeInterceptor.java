@@ -0,0 +1,268 @@
+package com.admin.common.interceptor;
+
+import com.admin.common.utils.EntityIdentityMap;
+import com.baomidou.mybatisplus.core.conditions.AbstractWrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 数据表写入拦截器
+ * 拦截 insert/update/delete，按 Mapper 命名空间解析出表名；
+ * 事务内的写入在提交后统一通知监听者，回滚则丢弃，非事务写入立即通知。
+ * 同时尽量解析出受影响的行：按主键写入、按主键 eq/in 条件的 Wrapper 写入可以精确到行，
+ * 其他条件的批量写入只记录为整表变化。
+ * 当前线程开启了操作级实体缓存时，同步移除被写入的实体（无法确定行时移除该类型全部缓存）
+ */
+@Slf4j
+@Component
+@Intercepts(@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}))
+public class TableChangeInterceptor implements Interceptor {
+
+    private static final Object PENDING_KEY = new Object();
+
+    private static final ThreadLocal<Boolean> COUNTER_WRITES = new ThreadLocal<>();
+
+    private static final Pattern PARAM = Pattern.compile("#\\{ew\\.paramNameValuePairs\\.(\\w+)}");
+
+    // 子表 -> {父表, 外键列, 外键属性}，子表行变化同时视为父表对应行变化
+    private static final Map<String, String[]> PARENT_LINKS = Map.of(
+            "chain_tunnel", new String[]{"tunnel", "tunnel_id", "tunnelId"},
+            "forward_port", new String[]{"forward", "forward_id", "forwardId"}
+    );
+
+    @Resource
+    @Lazy
+    List<TableChangeListener> listeners;
+
+    @Resource
+    @Lazy
+    List<RowChangeListener> rowListeners;
+
+    // Mapper命名空间 -> 表信息
+    private final Map<String, TableInfo> tableByNamespace = new ConcurrentHashMap<>();
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        TableInfo info = resolveTable(ms.getId());
+        if (info != null) {
+            List<RowChange> rows = rowsOf(info, ms.getSqlCommandType(), invocation.getArgs()[1]);
+            if (Boolean.TRUE.equals(COUNTER_WRITES.get())) {
+                rows.forEach(RowChange::markCounter);
+            }
+            if (EntityIdentityMap.isActive()) {
+                evictCached(info, rows);
+            }
+            written(info.getTableName(), rows);
+        }
+        return result;
+    }
+
+    private static void evictCached(TableInfo info, List<RowChange> rows) {
+        for (RowChange row : rows) {
+            if (!info.getTableName().equals(row.getTable())) {
+                continue;
+            }
+            if (row.getId() == null) {
+                EntityIdentityMap.evictAll(info.getEntityType());
+                return;
+            }
+            EntityIdentityMap.evict(info.getEntityType(), row.getId());
+        }
+    }
+
+    /**
+     * 在 action 中执行的写入标记为计数累加（见 {@link RowChange#isCounter()}）
+     */
+    public static void counterWrites(Runnable action) {
+        Boolean previous = COUNTER_WRITES.get();
+        COUNTER_WRITES.set(Boolean.TRUE);
+        try {
+            action.run();
+        } finally {
+            if (previous == null) {
+                COUNTER_WRITES.remove();
+            } else {
+                COUNTER_WRITES.set(previous);
+            }
+        }
+    }
+
+    private void written(String table, List<RowChange> rows) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(Collections.singleton(table), rows);
+            return;
+        }
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(PENDING_KEY);
+        if (pending == null) {
+            Pending created = new Pending();
+            TransactionSynchronizationManager.bindResource(PENDING_KEY, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PENDING_KEY);
+                    if (status == STATUS_COMMITTED) {
+                        publish(created.tables, created.rows);
+                    }
+                }
+            });
+            pending = created;
+        }
+        pending.tables.add(table);
+        pending.rows.addAll(rows);
+    }
+
+    private void publish(Set<String> tables, List<RowChange> rows) {
+        for (TableChangeListener listener : listeners) {
+            try {
+                listener.onTablesChanged(tables);
+            } catch (Exception e) {
+                log.warn("表变更通知失败: {}", e.getMessage(), e);
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        for (RowChangeListener listener : rowListeners) {
+            try {
+                listener.onRowsChanged(rows);
+            } catch (Exception e) {
+                log.warn("行变更通知失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private List<RowChange> rowsOf(TableInfo info, SqlCommandType type, Object parameter) {
+        List<RowChange> rows = new ArrayList<>();
+        String table = info.getTableName();
+        collect(rows, table, info.getKeyColumn(), info.getKeyProperty(), true, type, parameter);
+        String[] parent = PARENT_LINKS.get(table);
+        if (parent != null) {
+            // 子表的增删改对父表而言都是更新
+            int from = rows.size();
+            collect(rows, parent[0], parent[1], parent[2], false, type, parameter);
+            rows.subList(from, rows.size()).forEach(RowChange::markLinked);
+        }
+        return rows;
+    }
+
+    /**
+     * 按语句参数解析出 column 对应的值
+     *
+     * @param byKey column 是否为本表主键，主键写入可以判断删除
+     */
+    private void collect(List<RowChange> rows, String table, String column, String property, boolean byKey,
+                         SqlCommandType type, Object parameter) {
+        boolean deleted = byKey && type == SqlCommandType.DELETE;
+        Map<?, ?> params = parameter instanceof Map ? (Map<?, ?>) parameter : null;
+        if (params != null && params.containsKey("ew") && params.get("ew") instanceof AbstractWrapper) {
+            List<Object> values = valuesOf((AbstractWrapper<?, ?, ?>) params.get("ew"), column);
+            if (values == null) {
+                rows.add(RowChange.unknown(table));
+            } else {
+                values.forEach(value -> rows.add(RowChange.of(table, value, deleted)));
+            }
+        } else if (params != null && params.containsKey("et") && params.get("et") != null) {
+            add(rows, table, params.get("et"), property);
+        } else if (params != null && params.containsKey("coll") && params.get("coll") instanceof Collection) {
+            if (byKey) {
+                ((Collection<?>) params.get("coll")).forEach(id -> rows.add(RowChange.of(table, id, deleted)));
+            } else {
+                rows.add(RowChange.unknown(table));
+            }
+        } else if (params == null && parameter != null && (parameter instanceof Number || parameter instanceof CharSequence)) {
+            rows.add(byKey ? RowChange.of(table, parameter, deleted) : RowChange.unknown(table));
+        } else if (params == null && parameter != null && type != SqlCommandType.DELETE) {
+            add(rows, table, parameter, property);
+        } else {
+            rows.add(RowChange.unknown(table));
+        }
+    }
+
+    private static void add(List<RowChange> rows, String table, Object entity, String property) {
+        if (property == null) {
+            rows.add(RowChange.unknown(table));
+        } else {
+            rows.add(RowChange.fromEntity(table, entity, property));
+        }
+    }
+
+    /**
+     * 解析 Wrapper 中 column = ? 或 column IN (...) 的取值，其他条件返回null
+     */
+    private static List<Object> valuesOf(AbstractWrapper<?, ?, ?> wrapper, String column) {
+        String segment = wrapper.getSqlSegment();
+        if (segment == null) {
+            return null;
+        }
+        String normalized = segment.trim();
+        while (normalized.startsWith("(") && normalized.endsWith(")")) {
+            normalized = normalized.substring(1, normalized.length() - 1).trim();
+        }
+        String lower = normalized.toLowerCase(Locale.ROOT);
+        String rest;
+        if (lower.startsWith(column + " = ")) {
+            rest = normalized.substring(column.length() + 3).trim();
+            if (!PARAM.matcher(rest).matches()) {
+                return null;
+            }
+        } else if (lower.startsWith(column + " in ")) {
+            rest = normalized.substring(column.length() + 4).trim();
+            if (!rest.matches("\\(\\s*#\\{[^()]*}\\s*\\)")) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        Map<String, Object> values = wrapper.getParamNameValuePairs();
+        List<Object> result = new ArrayList<>();
+        Matcher matcher = PARAM.matcher(rest);
+        while (matcher.find()) {
+            result.add(values.get(matcher.group(1)));
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    private TableInfo resolveTable(String statementId) {
+        int dot = statementId.lastIndexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        String namespace = statementId.substring(0, dot);
+        TableInfo table = tableByNamespace.get(namespace);
+        if (table == null) {
+            for (TableInfo info : TableInfoHelper.getTableInfos()) {
+                if (namespace.equals(info.getCurrentNamespace())) {
+                    table = info;
+                    tableByNamespace.put(namespace, table);
+                    break;
+                }
+            }
+        }
+        return table;
+    }
+
+    private static class Pending {
+        final Set<String> tables = new LinkedHashSet<>();
+        final List<RowChange> rows = new ArrayList<>();
+    }
+}
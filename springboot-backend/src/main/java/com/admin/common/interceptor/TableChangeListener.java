@@ -0,0 +1,16 @@
+package com.admin.common.interceptor;
+
+import java.util.Set;
+
+/**
+ * 数据表变更监听，由 {@link TableChangeInterceptor} 在写入生效后回调
+ */
+public interface TableChangeListener {
+
+    /**
+     * 事务提交后（非事务写入则在写入后立即）回调
+     *
+     * @param tables 本次变更涉及的表名
+     */
+    void onTablesChanged(Set<String> tables);
+}
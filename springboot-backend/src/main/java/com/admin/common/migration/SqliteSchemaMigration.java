@@ -32,6 +32,9 @@ public class SqliteSchemaMigration implements ApplicationRunner {
     public void run(ApplicationArguments args) {
         ensureColumn("node", "inx", "INTEGER NOT NULL DEFAULT 0");
         ensureColumn("tunnel", "inx", "INTEGER NOT NULL DEFAULT 0");
+        ensureColumn("speed_limit", "tier_flow", "INTEGER NOT NULL DEFAULT 0");
+        ensureColumn("speed_limit", "tier_hours", "INTEGER NOT NULL DEFAULT 24");
+        ensureColumn("user_tunnel", "tier_speed_id", "INTEGER");
         ensureTable("CREATE TABLE IF NOT EXISTS tunnel_group (id INTEGER PRIMARY KEY AUTOINCREMENT, name VARCHAR(100) NOT NULL, created_time INTEGER NOT NULL, updated_time INTEGER NOT NULL, status INTEGER NOT NULL)");
         ensureTable("CREATE TABLE IF NOT EXISTS user_group (id INTEGER PRIMARY KEY AUTOINCREMENT, name VARCHAR(100) NOT NULL, created_time INTEGER NOT NULL, updated_time INTEGER NOT NULL, status INTEGER NOT NULL)");
         ensureTable("CREATE TABLE IF NOT EXISTS tunnel_group_tunnel (id INTEGER PRIMARY KEY AUTOINCREMENT, tunnel_group_id INTEGER NOT NULL, tunnel_id INTEGER NOT NULL, created_time INTEGER NOT NULL)");
@@ -45,6 +48,17 @@ public class SqliteSchemaMigration implements ApplicationRunner {
         ensureTable("CREATE UNIQUE INDEX IF NOT EXISTS idx_user_group_user_unique ON user_group_user(user_group_id, user_id)");
         ensureTable("CREATE UNIQUE INDEX IF NOT EXISTS idx_group_permission_unique ON group_permission(user_group_id, tunnel_group_id)");
         ensureTable("CREATE UNIQUE INDEX IF NOT EXISTS idx_group_permission_grant_unique ON group_permission_grant(user_group_id, tunnel_group_id, user_tunnel_id)");
+        // 列表分页与关联查询使用的索引
+        ensureTable("CREATE INDEX IF NOT EXISTS idx_forward_created_time ON forward(created_time)");
+        ensureTable("CREATE INDEX IF NOT EXISTS idx_forward_user_created_time ON forward(user_id, created_time)");
+        ensureTable("CREATE INDEX IF NOT EXISTS idx_forward_tunnel ON forward(tunnel_id)");
+        ensureTable("CREATE INDEX IF NOT EXISTS idx_forward_inx ON forward(inx)");
+        ensureTable("CREATE INDEX IF NOT EXISTS idx_forward_port_forward ON forward_port(forward_id)");
+        ensureTable("CREATE INDEX IF NOT EXISTS idx_forward_port_node ON forward_port(node_id)");
+        ensureTable("CREATE INDEX IF NOT EXISTS idx_tunnel_inx ON tunnel(inx)");
+        ensureTable("CREATE INDEX IF NOT EXISTS idx_chain_tunnel_tunnel ON chain_tunnel(tunnel_id)");
+        ensureTable("CREATE INDEX IF NOT EXISTS idx_user_tunnel_user ON user_tunnel(user_id)");
+        ensureTable("CREATE INDEX IF NOT EXISTS idx_user_user ON user(user)");
     }
 
     private void ensureColumn(String table, String column, String columnDefinition) {
@@ -0,0 +1,328 @@
+package com.admin.common.task;
+
+import com.admin.common.dto.GostDto;
+import com.admin.common.utils.GostUtil;
+import com.admin.entity.*;
+import com.admin.service.*;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 带宽自动分档
+ * 节点上报的流量按用户隧道记入内存中的小时桶（最长168小时），定期按限速规则上的分档阈值
+ * （tier_flow GB / tier_hours 小时）计算每个用户隧道应处的档位：达到多个阈值时取阈值最高的一档，
+ * 都未达到时恢复手动分配的 speed_id。只有档位变化时才更新 user_tunnel.tier_speed_id，
+ * 并把受影响转发的服务按节点合并成一条 UpdateService 批量下发；下发失败的节点对应的用户隧道
+ * 不落库，下一轮重试。面板重启后滚动窗口从零开始累计，窗口覆盖某档的 tier_hours 之前
+ * 无法判断未达到该档阈值，已处于该档的用户隧道保持不变，不会因重启被释放
+ */
+@Slf4j
+@Component
+public class BandwidthTierEngine {
+
+    private static final long BYTES_TO_GB = 1024L * 1024L * 1024L;
+    private static final long HOUR_MS = 3_600_000L;
+    private static final int MAX_HOURS = 168;
+    private static final int BATCH_SIZE = 500;
+    // 单条 UpdateService 消息最多携带的服务数
+    private static final int SERVICES_PER_MESSAGE = 200;
+
+    @Value("${bandwidth-tier.enabled:true}")
+    private boolean enabled;
+
+    @Resource
+    @Lazy
+    SpeedLimitService speedLimitService;
+
+    @Resource
+    @Lazy
+    UserTunnelService userTunnelService;
+
+    @Resource
+    @Lazy
+    ForwardService forwardService;
+
+    @Resource
+    @Lazy
+    ForwardPortService forwardPortService;
+
+    @Resource
+    @Lazy
+    ChainTunnelService chainTunnelService;
+
+    @Resource
+    @Lazy
+    NodeService nodeService;
+
+    @Resource
+    @Lazy
+    TunnelService tunnelService;
+
+    // 用户隧道ID -> 小时桶
+    private final Map<Integer, Window> windows = new ConcurrentHashMap<>();
+    // 开始记录流量的小时，此前的流量不在窗口中
+    private final long startHour = System.currentTimeMillis() / HOUR_MS;
+
+    private volatile JSONObject lastRun = new JSONObject();
+
+    /**
+     * 记录一次上报的流量（已按隧道倍率换算）
+     */
+    public void record(String userTunnelId, long bytes) {
+        if (!enabled || bytes <= 0) {
+            return;
+        }
+        Integer id;
+        try {
+            id = Integer.valueOf(userTunnelId);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (id == 0) {
+            return;
+        }
+        windows.computeIfAbsent(id, k -> new Window()).add(System.currentTimeMillis() / HOUR_MS, bytes);
+    }
+
+    @Scheduled(fixedDelayString = "${bandwidth-tier.interval-ms:60000}", initialDelay = 60000)
+    public void evaluate() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long nowHour = start / HOUR_MS;
+        windows.values().removeIf(window -> window.isStale(nowHour));
+
+        // 隧道ID -> 分档规则（阈值从高到低）
+        Map<Long, List<SpeedLimit>> tiersByTunnel = speedLimitService.list(new QueryWrapper<SpeedLimit>().gt("tier_flow", 0)).stream()
+                .sorted(Comparator.comparing(SpeedLimit::getTierFlow).reversed())
+                .collect(Collectors.groupingBy(SpeedLimit::getTunnelId, LinkedHashMap::new, Collectors.toList()));
+
+        // 需要评估的用户隧道：已在分档中的，以及有流量且所在隧道配置了分档的
+        Map<Integer, UserTunnel> candidates = new LinkedHashMap<>();
+        for (UserTunnel userTunnel : userTunnelService.list(columns().isNotNull("tier_speed_id"))) {
+            candidates.put(userTunnel.getId(), userTunnel);
+        }
+        if (!tiersByTunnel.isEmpty()) {
+            for (List<Integer> ids : partition(new ArrayList<>(windows.keySet()))) {
+                for (UserTunnel userTunnel : userTunnelService.list(columns().in("id", ids).in("tunnel_id", tiersByTunnel.keySet()))) {
+                    candidates.put(userTunnel.getId(), userTunnel);
+                }
+            }
+        }
+
+        Map<UserTunnel, Integer> changes = new LinkedHashMap<>();
+        for (UserTunnel userTunnel : candidates.values()) {
+            Integer target = target(userTunnel, tiersByTunnel.getOrDefault(userTunnel.getTunnelId().longValue(), Collections.emptyList()), nowHour);
+            if (!Objects.equals(target, userTunnel.getTierSpeedId())) {
+                changes.put(userTunnel, target);
+            }
+        }
+
+        int failed = changes.isEmpty() ? 0 : apply(changes);
+
+        long tiered = 0;
+        for (UserTunnel userTunnel : candidates.values()) {
+            Integer current = changes.containsKey(userTunnel) ? changes.get(userTunnel) : userTunnel.getTierSpeedId();
+            if (current != null) tiered++;
+        }
+        JSONObject stats = new JSONObject();
+        stats.put("time", start);
+        stats.put("tracked", windows.size());
+        stats.put("tiered", tiered);
+        stats.put("changed", changes.size() - failed);
+        stats.put("failed", failed);
+        stats.put("costMs", System.currentTimeMillis() - start);
+        lastRun = stats;
+        if (!changes.isEmpty()) {
+            log.info("带宽分档调整: 变更{}个用户隧道, 失败{}个, 耗时{}ms", changes.size() - failed, failed, stats.get("costMs"));
+        }
+    }
+
+    /**
+     * 最近一次评估的统计
+     */
+    public JSONObject report() {
+        return lastRun;
+    }
+
+    /**
+     * 用户隧道当前生效的限速ID：自动分档生效时用 tier_speed_id，否则用手动分配的 speed_id
+     */
+    public static Integer effectiveSpeedId(UserTunnel userTunnel) {
+        if (userTunnel == null) {
+            return null;
+        }
+        return userTunnel.getTierSpeedId() != null ? userTunnel.getTierSpeedId() : userTunnel.getSpeedId();
+    }
+
+    /**
+     * 用户隧道在最近 hours 小时内的用量（字节）
+     */
+    public long usage(Integer userTunnelId, int hours) {
+        Window window = windows.get(userTunnelId);
+        return window == null ? 0 : window.sum(System.currentTimeMillis() / HOUR_MS, hours);
+    }
+
+    private Integer target(UserTunnel userTunnel, List<SpeedLimit> tiers, long nowHour) {
+        Window window = windows.get(userTunnel.getId());
+        for (SpeedLimit tier : tiers) {
+            int hours = tier.getTierHours() == null || tier.getTierHours() <= 0 ? 24 : tier.getTierHours();
+            long used = window == null ? 0 : window.sum(nowHour, hours);
+            if (used >= tier.getTierFlow() * BYTES_TO_GB) {
+                return tier.getId().intValue();
+            }
+            // 窗口还没覆盖完整的 tier_hours（启动后最早的小时桶只记录了一部分），不能据此降档
+            boolean covered = nowHour - startHour >= hours;
+            if (!covered && Objects.equals(userTunnel.getTierSpeedId(), tier.getId().intValue())) {
+                return userTunnel.getTierSpeedId();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 重新下发受影响转发的服务并落库
+     *
+     * @return 下发失败的用户隧道数
+     */
+    private int apply(Map<UserTunnel, Integer> changes) {
+        Map<String, UserTunnel> byUserAndTunnel = new HashMap<>();
+        changes.keySet().forEach(userTunnel -> byUserAndTunnel.put(userTunnel.getUserId() + "_" + userTunnel.getTunnelId(), userTunnel));
+        Set<Integer> userIds = changes.keySet().stream().map(UserTunnel::getUserId).collect(Collectors.toSet());
+        Set<Integer> tunnelIds = changes.keySet().stream().map(UserTunnel::getTunnelId).collect(Collectors.toSet());
+
+        // 只处理运行中的转发；暂停的转发恢复时不重建服务，不在此处理
+        List<Forward> forwards = new ArrayList<>();
+        for (List<Integer> ids : partition(new ArrayList<>(userIds))) {
+            forwardService.list(new QueryWrapper<Forward>().in("user_id", ids).in("tunnel_id", tunnelIds).eq("status", 1)).stream()
+                    .filter(forward -> byUserAndTunnel.containsKey(forward.getUserId() + "_" + forward.getTunnelId()))
+                    .forEach(forwards::add);
+        }
+
+        Map<Integer, Tunnel> tunnels = new HashMap<>();
+        Map<Integer, List<Long>> inNodesByTunnel = new HashMap<>();
+        for (Integer tunnelId : tunnelIds) {
+            Tunnel tunnel = tunnelService.getById(tunnelId);
+            if (tunnel != null) {
+                tunnels.put(tunnelId, tunnel);
+            }
+            inNodesByTunnel.put(tunnelId, chainTunnelService.list(new QueryWrapper<ChainTunnel>().select("node_id").eq("tunnel_id", tunnelId).eq("chain_type", 1))
+                    .stream().map(ChainTunnel::getNodeId).distinct().collect(Collectors.toList()));
+        }
+        Map<Long, Node> nodes = new HashMap<>();
+        Set<Long> nodeIds = inNodesByTunnel.values().stream().flatMap(List::stream).collect(Collectors.toSet());
+        if (!nodeIds.isEmpty()) {
+            nodeService.listByIds(nodeIds).forEach(node -> nodes.put(node.getId(), node));
+        }
+        // 转发ID_节点ID -> 端口
+        Map<String, ForwardPort> ports = new HashMap<>();
+        List<Long> forwardIds = forwards.stream().map(Forward::getId).collect(Collectors.toList());
+        for (List<Long> ids : partition(forwardIds)) {
+            forwardPortService.list(new QueryWrapper<ForwardPort>().in("forward_id", ids))
+                    .forEach(port -> ports.put(port.getForwardId() + "_" + port.getNodeId(), port));
+        }
+
+        // 节点ID -> 服务配置，以及每个节点涉及的用户隧道
+        Map<Long, JSONArray> servicesByNode = new LinkedHashMap<>();
+        Map<Long, Set<UserTunnel>> userTunnelsByNode = new HashMap<>();
+        for (Forward forward : forwards) {
+            UserTunnel userTunnel = byUserAndTunnel.get(forward.getUserId() + "_" + forward.getTunnelId());
+            Tunnel tunnel = tunnels.get(forward.getTunnelId());
+            if (tunnel == null) {
+                continue;
+            }
+            Integer target = changes.get(userTunnel);
+            Integer limiter = target != null ? target : userTunnel.getSpeedId();
+            String serviceName = forward.getId() + "_" + forward.getUserId() + "_" + userTunnel.getId();
+            for (Long nodeId : inNodesByTunnel.getOrDefault(forward.getTunnelId(), Collections.emptyList())) {
+                Node node = nodes.get(nodeId);
+                ForwardPort port = ports.get(forward.getId() + "_" + nodeId);
+                if (node == null || port == null) {
+                    continue;
+                }
+                servicesByNode.computeIfAbsent(nodeId, k -> new JSONArray())
+                        .addAll(GostUtil.buildServices(serviceName, limiter, node, forward, port, tunnel));
+                userTunnelsByNode.computeIfAbsent(nodeId, k -> new HashSet<>()).add(userTunnel);
+            }
+        }
+
+        Set<UserTunnel> failed = new HashSet<>();
+        servicesByNode.forEach((nodeId, services) -> {
+            for (int i = 0; i < services.size(); i += SERVICES_PER_MESSAGE) {
+                JSONArray chunk = new JSONArray(services.subList(i, Math.min(services.size(), i + SERVICES_PER_MESSAGE)));
+                GostDto gostDto = GostUtil.UpdateServices(nodeId, chunk);
+                if (!Objects.equals(gostDto.getMsg(), "OK")) {
+                    log.warn("节点{}分档限速下发失败: {}", nodeId, gostDto.getMsg());
+                    failed.addAll(userTunnelsByNode.get(nodeId));
+                    break;
+                }
+            }
+        });
+
+        changes.forEach((userTunnel, target) -> {
+            if (!failed.contains(userTunnel)) {
+                userTunnelService.update(null, new UpdateWrapper<UserTunnel>().eq("id", userTunnel.getId()).set("tier_speed_id", target));
+            }
+        });
+        return failed.size();
+    }
+
+    private static QueryWrapper<UserTunnel> columns() {
+        return new QueryWrapper<UserTunnel>().select("id", "user_id", "tunnel_id", "speed_id", "tier_speed_id");
+    }
+
+    private static <T> List<List<T>> partition(List<T> values) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < values.size(); i += BATCH_SIZE) {
+            chunks.add(values.subList(i, Math.min(values.size(), i + BATCH_SIZE)));
+        }
+        return chunks;
+    }
+
+    /**
+     * 小时桶环：下标为 小时 % 168，同时记下桶所属的小时，过期的桶视为0
+     */
+    private static class Window {
+        private final long[] bytes = new long[MAX_HOURS];
+        private final long[] hours = new long[MAX_HOURS];
+        private long lastHour;
+
+        synchronized void add(long hour, long value) {
+            int slot = (int) (hour % MAX_HOURS);
+            if (hours[slot] != hour) {
+                hours[slot] = hour;
+                bytes[slot] = 0;
+            }
+            bytes[slot] += value;
+            lastHour = hour;
+        }
+
+        synchronized long sum(long nowHour, int windowHours) {
+            int span = Math.min(windowHours, MAX_HOURS);
+            long total = 0;
+            for (int i = 0; i < MAX_HOURS; i++) {
+                if (hours[i] > nowHour - span && hours[i] <= nowHour) {
+                    total += bytes[i];
+                }
+            }
+            return total;
+        }
+
+        synchronized boolean isStale(long nowHour) {
+            return nowHour - lastHour >= MAX_HOURS;
+        }
+    }
+}
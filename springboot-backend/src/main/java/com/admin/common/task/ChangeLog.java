@@ -0,0 +1,129 @@
+package com.admin.common.task;
+
+import com.admin.common.interceptor.RowChange;
+import com.admin.common.interceptor.RowChangeListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 数据变更日志
+ * 按提交顺序记录转发、隧道、节点、用户与用户隧道权限的行变化，每条记录一个全局递增序号；
+ * 同一行（表+ID）只保留最新一次变化，流量累加等高频写入不会挤掉其他行的记录。
+ * 容量按不同行计，超出时淘汰最久未变化的行。游标为 "启动纪元-序号"，
+ * 面板重启或游标早于已淘汰的记录时无法给出增量，调用方需全量刷新
+ */
+@Component
+public class ChangeLog implements RowChangeListener {
+
+    public static final Set<String> TABLES = Set.of("forward", "tunnel", "node", "user", "user_tunnel");
+
+    private final long epoch = System.currentTimeMillis();
+
+    private final int capacity;
+    // 序号 -> 记录，每行只有最新的一条
+    private final TreeMap<Long, Entry> bySeq = new TreeMap<>();
+    // 表|ID -> 该行最新记录的序号
+    private final Map<String, Long> latest = new HashMap<>();
+    // 下一条记录的序号，序号从1开始
+    private long next = 1;
+    // 已淘汰记录的最大序号，早于它的游标无法给出增量
+    private long evicted;
+
+    public ChangeLog(@Value("${change-log.capacity:50000}") int capacity) {
+        this.capacity = Math.max(capacity, 1);
+    }
+
+    @Override
+    public synchronized void onRowsChanged(List<RowChange> changes) {
+        for (RowChange change : changes) {
+            if (!TABLES.contains(change.getTable())) {
+                continue;
+            }
+            Entry entry = new Entry(next++, change.getTable(), change.getId(), change.isDeleted());
+            Long previous = latest.put(key(entry), entry.seq);
+            if (previous != null) {
+                bySeq.remove(previous);
+            }
+            bySeq.put(entry.seq, entry);
+        }
+        while (bySeq.size() > capacity) {
+            Entry eldest = bySeq.pollFirstEntry().getValue();
+            latest.remove(key(eldest));
+            evicted = eldest.seq;
+        }
+    }
+
+    /**
+     * 当前游标，之后的变化可以用它增量读取
+     */
+    public synchronized String cursor() {
+        return epoch + "-" + (next - 1);
+    }
+
+    /**
+     * 读取游标之后的变化
+     *
+     * @return 游标无效、来自上一次启动或之后的记录已被淘汰时返回null
+     */
+    public synchronized Delta since(String cursor) {
+        long seq = parse(cursor);
+        if (seq < 0 || seq >= next || seq < evicted) {
+            return null;
+        }
+        return new Delta(cursor(), new ArrayList<>(bySeq.tailMap(seq, false).values()));
+    }
+
+    private static String key(Entry entry) {
+        return entry.table + "|" + entry.id;
+    }
+
+    private long parse(String cursor) {
+        if (cursor == null) {
+            return -1;
+        }
+        int dash = cursor.indexOf('-');
+        if (dash <= 0) {
+            return -1;
+        }
+        try {
+            if (Long.parseLong(cursor.substring(0, dash)) != epoch) {
+                return -1;
+            }
+            return Long.parseLong(cursor.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static class Entry {
+        public final long seq;
+        public final String table;
+        // 为空表示整张表变化
+        public final Long id;
+        public final boolean deleted;
+
+        Entry(long seq, String table, Long id, boolean deleted) {
+            this.seq = seq;
+            this.table = table;
+            this.id = id;
+            this.deleted = deleted;
+        }
+    }
+
+    public static class Delta {
+        public final String cursor;
+        public final List<Entry> entries;
+
+        Delta(String cursor, List<Entry> entries) {
+            this.cursor = cursor;
+            this.entries = entries;
+        }
+    }
+}
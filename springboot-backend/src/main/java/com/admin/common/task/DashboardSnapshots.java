@@ -0,0 +1,244 @@
+package com.admin.common.task;
+
+import com.admin.common.dto.UserPackageDto;
+import com.admin.common.interceptor.RowChange;
+import com.admin.common.interceptor.RowChangeListener;
+import com.admin.entity.Forward;
+import com.admin.entity.UserTunnel;
+import com.admin.service.ForwardService;
+import com.admin.service.UserTunnelService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 用户仪表盘快照
+ * 每个用户的套餐信息（账号、隧道权限、转发、近24小时流量）构建一次后常驻内存：
+ * 节点上报的流量直接累加到快照的计数上；用户、隧道权限、转发的写入只让相关用户的快照失效，
+ * 节点的写入（包括在线状态批量更新）只让在该节点上有转发端口的已缓存用户失效，
+ * 隧道、限速规则和小时流量统计的写入影响面广，让全部快照失效。
+ * 快照发布后不再修改，流量累加时复制出新的快照替换，读取方拿到的对象可以放心序列化。
+ * 每次变化分配新的版本号，客户端可据此判断内容是否更新
+ */
+@Component
+public class DashboardSnapshots implements RowChangeListener {
+
+    // 写入后让全部快照失效的表
+    private static final Set<String> GLOBAL_TABLES = Set.of("tunnel", "speed_limit", "statistics_flow");
+    // 按行定位到用户的表
+    private static final Set<String> OWNED_TABLES = Set.of("user", "user_tunnel", "forward");
+
+    @Resource
+    @Lazy
+    ForwardService forwardService;
+
+    @Resource
+    @Lazy
+    UserTunnelService userTunnelService;
+
+    @Resource
+    @Lazy
+    TopologyGraph topologyGraph;
+
+    private final int maxUsers;
+    private final long ttlNanos;
+
+    private final AtomicLong versions = new AtomicLong(System.currentTimeMillis());
+    // 失效次数，构建期间有失效时结果不缓存：全部失效计入 clears，单个用户失效计入该用户的计数
+    private final AtomicLong clears = new AtomicLong();
+    private final Map<Long, Long> invalidations = new ConcurrentHashMap<>();
+    private final Map<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+    // 隧道权限ID/转发ID -> 用户ID，只包含已缓存的用户
+    private final Map<Integer, Long> userTunnelOwners = new ConcurrentHashMap<>();
+    private final Map<Long, Long> forwardOwners = new ConcurrentHashMap<>();
+
+    public DashboardSnapshots(@Value("${dashboard.max-users:10000}") int maxUsers,
+                              @Value("${dashboard.ttl-seconds:600}") long ttlSeconds) {
+        this.maxUsers = maxUsers;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    /**
+     * 取用户的快照，不存在或过期时用 loader 重新构建
+     */
+    public UserPackageDto get(Long userId, Function<Long, UserPackageDto> loader) {
+        Snapshot snapshot = snapshots.get(userId);
+        if (snapshot != null && System.nanoTime() - snapshot.builtAt <= ttlNanos) {
+            return snapshot.dto;
+        }
+        long clearGeneration = clears.get();
+        long userGeneration = invalidations.getOrDefault(userId, 0L);
+        UserPackageDto dto = loader.apply(userId);
+        if (dto == null) {
+            return null;
+        }
+        dto.setVersion(versions.incrementAndGet());
+        store(userId, dto, clearGeneration, userGeneration);
+        return dto;
+    }
+
+    /**
+     * 构建期间没有发生失效才缓存，避免缓存构建时读到的旧数据
+     */
+    private synchronized void store(Long userId, UserPackageDto dto, long clearGeneration, long userGeneration) {
+        if (clears.get() != clearGeneration || invalidations.getOrDefault(userId, 0L) != userGeneration) {
+            return;
+        }
+        if (snapshots.size() >= maxUsers && !snapshots.containsKey(userId)) {
+            clear();
+        }
+        snapshots.put(userId, new Snapshot(dto));
+        index(userId, dto);
+    }
+
+    /**
+     * 节点上报的流量累加到已缓存的快照
+     */
+    public void addTraffic(String forwardId, String userId, String userTunnelId, long in, long out) {
+        Snapshot snapshot;
+        try {
+            snapshot = snapshots.get(Long.valueOf(userId));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (snapshot == null) {
+            return;
+        }
+        synchronized (snapshot) {
+            UserPackageDto dto = copy(snapshot.dto, UserPackageDto::new);
+            UserPackageDto.UserInfoDto userInfo = copy(dto.getUserInfo(), UserPackageDto.UserInfoDto::new);
+            userInfo.setInFlow(plus(userInfo.getInFlow(), in));
+            userInfo.setOutFlow(plus(userInfo.getOutFlow(), out));
+            dto.setUserInfo(userInfo);
+            List<UserPackageDto.UserTunnelDetailDto> tunnels = new ArrayList<>(dto.getTunnelPermissions());
+            for (int i = 0; i < tunnels.size(); i++) {
+                if (String.valueOf(tunnels.get(i).getId()).equals(userTunnelId)) {
+                    UserPackageDto.UserTunnelDetailDto tunnel = copy(tunnels.get(i), UserPackageDto.UserTunnelDetailDto::new);
+                    tunnel.setInFlow(plus(tunnel.getInFlow(), in));
+                    tunnel.setOutFlow(plus(tunnel.getOutFlow(), out));
+                    tunnels.set(i, tunnel);
+                }
+            }
+            dto.setTunnelPermissions(tunnels);
+            List<UserPackageDto.UserForwardDetailDto> forwards = new ArrayList<>(dto.getForwards());
+            for (int i = 0; i < forwards.size(); i++) {
+                if (String.valueOf(forwards.get(i).getId()).equals(forwardId)) {
+                    UserPackageDto.UserForwardDetailDto forward = copy(forwards.get(i), UserPackageDto.UserForwardDetailDto::new);
+                    forward.setInFlow(plus(forward.getInFlow(), in));
+                    forward.setOutFlow(plus(forward.getOutFlow(), out));
+                    forwards.set(i, forward);
+                }
+            }
+            dto.setForwards(forwards);
+            dto.setVersion(versions.incrementAndGet());
+            snapshot.dto = dto;
+        }
+    }
+
+    @Override
+    public void onRowsChanged(List<RowChange> changes) {
+        Set<Long> users = new HashSet<>();
+        List<Long> unknownUserTunnels = new ArrayList<>();
+        List<Long> unknownForwards = new ArrayList<>();
+        Set<Long> nodes = new HashSet<>();
+        for (RowChange change : changes) {
+            if (change.isCounter()) {
+                continue;
+            }
+            Long id = change.getId();
+            String table = change.getTable();
+            if (GLOBAL_TABLES.contains(table) || (id == null && (OWNED_TABLES.contains(table) || "node".equals(table)))) {
+                clear();
+                return;
+            }
+            if ("node".equals(table)) {
+                nodes.add(id);
+            } else if ("user".equals(table)) {
+                users.add(id);
+            } else if ("user_tunnel".equals(table) || "forward".equals(table)) {
+                Long owner = "forward".equals(table) ? forwardOwners.get(id) : userTunnelOwners.get(id.intValue());
+                if (owner != null) {
+                    users.add(owner);
+                } else if (!change.isDeleted()) {
+                    // 不在任何快照中的行：可能是新建的，查出所属用户
+                    ("forward".equals(table) ? unknownForwards : unknownUserTunnels).add(id);
+                }
+            }
+        }
+        if (!snapshots.isEmpty()) {
+            if (!nodes.isEmpty()) {
+                // 快照中只用到节点的服务器地址（转发的入口地址），按转发端口找到受影响的用户
+                TopologyGraph.Topology topology = topologyGraph.view();
+                for (Long nodeId : nodes) {
+                    for (Long forwardId : topology.forwardsOnNode(nodeId)) {
+                        Long owner = forwardOwners.get(forwardId);
+                        if (owner != null) {
+                            users.add(owner);
+                        }
+                    }
+                }
+            }
+            if (!unknownForwards.isEmpty()) {
+                forwardService.list(new QueryWrapper<Forward>().select("id", "user_id").in("id", unknownForwards))
+                        .forEach(forward -> users.add(forward.getUserId().longValue()));
+            }
+            if (!unknownUserTunnels.isEmpty()) {
+                userTunnelService.list(new QueryWrapper<UserTunnel>().select("id", "user_id").in("id", unknownUserTunnels))
+                        .forEach(userTunnel -> users.add(userTunnel.getUserId().longValue()));
+            }
+        }
+        users.forEach(this::evict);
+    }
+
+    public synchronized void evict(Long userId) {
+        invalidations.merge(userId, 1L, Long::sum);
+        Snapshot snapshot = snapshots.remove(userId);
+        if (snapshot != null) {
+            snapshot.dto.getTunnelPermissions().forEach(tunnel -> userTunnelOwners.remove(tunnel.getId()));
+            snapshot.dto.getForwards().forEach(forward -> forwardOwners.remove(forward.getId()));
+        }
+    }
+
+    public synchronized void clear() {
+        clears.incrementAndGet();
+        // 进行中的构建已被 clears 拦下，用户计数可以一并清空
+        invalidations.clear();
+        snapshots.clear();
+        userTunnelOwners.clear();
+        forwardOwners.clear();
+    }
+
+    private void index(Long userId, UserPackageDto dto) {
+        dto.getTunnelPermissions().forEach(tunnel -> userTunnelOwners.put(tunnel.getId(), userId));
+        dto.getForwards().forEach(forward -> forwardOwners.put(forward.getId(), userId));
+    }
+
+    private static <T> T copy(T source, Supplier<T> factory) {
+        T target = factory.get();
+        BeanUtils.copyProperties(source, target);
+        return target;
+    }
+
+    private static Long plus(Long value, long delta) {
+        return (value == null ? 0 : value) + delta;
+    }
+
+    private static class Snapshot {
+        volatile UserPackageDto dto;
+        final long builtAt = System.nanoTime();
+
+        Snapshot(UserPackageDto dto) {
+            this.dto = dto;
+        }
+    }
+}
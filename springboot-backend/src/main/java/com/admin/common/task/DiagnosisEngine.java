@@ -0,0 +1,417 @@
+package com.admin.common.task;
+
+import com.admin.common.dto.DiagnosisResult;
+import com.admin.common.dto.GostDto;
+import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.JwtUtil;
+import com.admin.common.utils.WebSocketServer;
+import com.admin.entity.Node;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 诊断引擎
+ * TcpPing探测在独立的有界线程池中执行，不再占用公共ForkJoinPool；
+ * 并发诊断中相同的(节点, 目标, 端口)探测合并为一次，节点实际返回的结果短时间缓存
+ * （节点不在线、超时等下发失败不缓存）；共享的探测有最长等待时间，到期按失败完成；
+ * 同一源节点的探测合并为一条TcpPingBatch命令；
+ * 每个探测完成后立即通过WebSocket推送给发起诊断的用户
+ */
+@Slf4j
+@Component
+public class DiagnosisEngine {
+
+    private static final int POOL_SIZE = 32;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final long CACHE_TTL_MS = 10_000;
+    private static final int CACHE_PURGE_THRESHOLD = 256;
+    private static final int PING_COUNT = 4;
+    private static final int PING_TIMEOUT_MS = 5000;
+    // 批量帧与节点一轮并发探测（16）对齐
+    private static final int MAX_TARGETS_PER_FRAME = 16;
+    // send_msg 等待节点应答的时间，以及节点侧两次ping之间的间隔
+    private static final long SEND_WAIT_MS = 10_000;
+    private static final long PING_INTERVAL_MS = 100;
+    // 节点本身不可达，逐个重试也不会成功
+    private static final Set<String> NODE_UNAVAILABLE = Set.of("节点不在线", "节点连接已断开");
+    // 共享探测的最长等待时间：登记方未调用dispatch或执行异常时，到期按失败完成，其他会话不会一直等待
+    private static final long PROBE_TIMEOUT_MS = 30_000;
+
+    private final ThreadPoolExecutor executor;
+
+    // 正在执行的探测，key为 节点ID|目标|端口
+    private final ConcurrentHashMap<String, Probe> inflight = new ConcurrentHashMap<>();
+
+    // 最近完成的探测结果
+    private final ConcurrentHashMap<String, CachedResult> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 批量探测的单次ping超时。单目标最坏耗时 count*timeout + (count-1)*100ms，
+     * 整帧必须在 send_msg 的10秒等待内返回，否则整帧超时、全部目标退回逐个探测；
+     * 单目标TcpPing超时只影响自己，沿用5秒。默认1.5秒时一帧最坏6.3秒
+     */
+    @Value("${diagnosis.batch-ping-timeout-ms:1500}")
+    private int batchPingTimeoutMs;
+
+    public DiagnosisEngine() {
+        AtomicInteger counter = new AtomicInteger();
+        // 队列满时由提交线程执行，对发起诊断的请求形成背压
+        executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+                r -> {
+                    Thread thread = new Thread(r, "diagnosis-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 开始一次诊断，需在请求线程中调用以获取当前用户
+     *
+     * @param type 诊断类型，如 forward / tunnel
+     * @param id   诊断对象ID
+     */
+    public Session open(String type, Object id) {
+        return new Session(type + "_" + id, JwtUtil.getUserIdFromToken());
+    }
+
+    @PostConstruct
+    public void init() {
+        long limit = (SEND_WAIT_MS - (PING_COUNT - 1) * PING_INTERVAL_MS) / PING_COUNT - 100;
+        if (batchPingTimeoutMs <= 0 || batchPingTimeoutMs > limit) {
+            log.warn("diagnosis.batch-ping-timeout-ms={} 会使批量帧超出等待时间，改用{}ms", batchPingTimeoutMs, limit);
+            batchPingTimeoutMs = (int) limit;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 查找可复用的探测：命中缓存直接返回，已有相同探测在执行则共享同一个结果
+     */
+    private CompletableFuture<DiagnosisResult> findShared(String key) {
+        CachedResult cached = cache.get(key);
+        if (cached != null && cached.expireAt > System.currentTimeMillis()) {
+            return CompletableFuture.completedFuture(cached.result);
+        }
+        Probe probe = inflight.get(key);
+        return probe == null ? null : probe.future;
+    }
+
+    private void submit(Node node, List<Probe> probes) {
+        if (probes.size() > MAX_TARGETS_PER_FRAME) {
+            for (int from = 0; from < probes.size(); from += MAX_TARGETS_PER_FRAME) {
+                submit(node, probes.subList(from, Math.min(from + MAX_TARGETS_PER_FRAME, probes.size())));
+            }
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    runBatch(node, probes);
+                } catch (Exception e) {
+                    for (Probe probe : probes) {
+                        if (!probe.future.isDone()) {
+                            complete(probe, failedResult(node, probe.targetIp, probe.port, "诊断执行异常: " + e.getMessage()), false);
+                        }
+                    }
+                }
+            });
+        } catch (Exception e) {
+            for (Probe probe : probes) {
+                complete(probe, failedResult(node, probe.targetIp, probe.port, "诊断执行异常: " + e.getMessage()), false);
+            }
+        }
+    }
+
+    /**
+     * 同一节点的目标按帧下发（每帧不超过MAX_TARGETS_PER_FRAME个）；单个目标仍使用TcpPing，兼容未升级的节点
+     */
+    private void runBatch(Node node, List<Probe> probes) {
+        if (probes.size() == 1) {
+            pingOne(node, probes.getFirst());
+            return;
+        }
+
+        JSONArray targets = new JSONArray();
+        for (Probe probe : probes) {
+            JSONObject target = new JSONObject();
+            target.put("ip", probe.targetIp);
+            target.put("port", probe.port);
+            targets.add(target);
+        }
+
+        GostDto gostResult;
+        try {
+            gostResult = GostUtil.TcpPingBatch(node.getId(), targets, PING_COUNT, batchPingTimeoutMs);
+        } catch (Exception e) {
+            gostResult = null;
+        }
+
+        JSONArray results = null;
+        if (gostResult != null && "OK".equals(gostResult.getMsg()) && gostResult.getData() instanceof JSONObject) {
+            results = ((JSONObject) gostResult.getData()).getJSONArray("results");
+        }
+        if (results != null && results.size() == probes.size()) {
+            for (int i = 0; i < probes.size(); i++) {
+                Probe probe = probes.get(i);
+                DiagnosisResult result = baseResult(node, probe.targetIp, probe.port);
+                applyResponse(result, results.getJSONObject(i));
+                complete(probe, result, true);
+            }
+            return;
+        }
+
+        String message = gostResult != null && gostResult.getMsg() != null ? gostResult.getMsg() : "节点无响应";
+        if (NODE_UNAVAILABLE.contains(message)) {
+            for (Probe probe : probes) {
+                complete(probe, failedResult(node, probe.targetIp, probe.port, message), false);
+            }
+            return;
+        }
+
+        // 旧版本节点不支持批量命令（未知命令类型）、整帧等待超时或响应不完整，退回逐个探测
+        for (Probe probe : probes) {
+            submit(node, List.of(probe));
+        }
+    }
+
+    /**
+     * @param cacheable 结果是否来自节点的实际探测；下发失败（节点不在线、超时等）不缓存，下一次诊断重新下发
+     */
+    private void complete(Probe probe, DiagnosisResult result, boolean cacheable) {
+        if (cacheable) {
+            putCache(probe.key, result);
+        }
+        inflight.remove(probe.key, probe);
+        probe.future.complete(result);
+    }
+
+    private void putCache(String key, DiagnosisResult result) {
+        long now = System.currentTimeMillis();
+        if (cache.size() >= CACHE_PURGE_THRESHOLD) {
+            cache.values().removeIf(c -> c.expireAt <= now);
+        }
+        cache.put(key, new CachedResult(result, now + CACHE_TTL_MS));
+    }
+
+    private void pingOne(Node node, Probe probe) {
+        String targetIp = probe.targetIp;
+        int port = probe.port;
+        try {
+            GostDto gostResult = GostUtil.TcpPing(node.getId(), targetIp, port, PING_COUNT, PING_TIMEOUT_MS);
+
+            DiagnosisResult result = baseResult(node, targetIp, port);
+            boolean answered = gostResult != null && "OK".equals(gostResult.getMsg());
+            if (answered) {
+                if (gostResult.getData() != null) {
+                    applyResponse(result, (JSONObject) gostResult.getData());
+                } else {
+                    // 没有详细数据，使用默认值
+                    result.setSuccess(true);
+                    result.setMessage("TCP连接成功");
+                    result.setAverageTime(0.0);
+                    result.setPacketLoss(0.0);
+                }
+            } else {
+                result.setSuccess(false);
+                result.setMessage(gostResult != null ? gostResult.getMsg() : "节点无响应");
+                result.setAverageTime(-1.0);
+                result.setPacketLoss(100.0);
+            }
+            complete(probe, result, answered);
+        } catch (Exception e) {
+            complete(probe, failedResult(node, targetIp, port, "诊断执行异常: " + e.getMessage()), false);
+        }
+    }
+
+    private static void applyResponse(DiagnosisResult result, JSONObject tcpPingResponse) {
+        try {
+            boolean success = tcpPingResponse.getBooleanValue("success");
+            result.setSuccess(success);
+            if (success) {
+                result.setMessage("TCP连接成功");
+                result.setAverageTime(tcpPingResponse.getDoubleValue("averageTime"));
+                result.setPacketLoss(tcpPingResponse.getDoubleValue("packetLoss"));
+            } else {
+                result.setMessage(tcpPingResponse.getString("errorMessage"));
+                result.setAverageTime(-1.0);
+                result.setPacketLoss(100.0);
+            }
+        } catch (Exception e) {
+            // 解析响应数据失败，但TCP ping命令本身成功了
+            result.setSuccess(true);
+            result.setMessage("TCP连接成功，但无法解析详细数据");
+            result.setAverageTime(0.0);
+            result.setPacketLoss(0.0);
+        }
+    }
+
+    private static DiagnosisResult baseResult(Node node, String targetIp, int port) {
+        DiagnosisResult result = new DiagnosisResult();
+        result.setNodeId(node.getId());
+        result.setNodeName(node.getName());
+        result.setTargetIp(targetIp);
+        result.setTargetPort(port);
+        result.setTimestamp(System.currentTimeMillis());
+        return result;
+    }
+
+    private static DiagnosisResult failedResult(Node node, String targetIp, int port, String message) {
+        DiagnosisResult result = baseResult(node, targetIp, port);
+        result.setSuccess(false);
+        result.setMessage(message);
+        result.setAverageTime(-1.0);
+        result.setPacketLoss(100.0);
+        return result;
+    }
+
+    private static DiagnosisResult copyOf(DiagnosisResult source) {
+        DiagnosisResult result = new DiagnosisResult();
+        result.setNodeId(source.getNodeId());
+        result.setNodeName(source.getNodeName());
+        result.setTargetIp(source.getTargetIp());
+        result.setTargetPort(source.getTargetPort());
+        result.setSuccess(source.isSuccess());
+        result.setMessage(source.getMessage());
+        result.setAverageTime(source.getAverageTime());
+        result.setPacketLoss(source.getPacketLoss());
+        result.setTimestamp(source.getTimestamp());
+        return result;
+    }
+
+    /**
+     * 一次诊断会话，负责把各探测结果推送给发起者
+     */
+    public class Session {
+
+        private final String diagnosisId;
+        private final Object userId;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final Map<Long, NodeProbes> pending = new LinkedHashMap<>();
+
+        private Session(String diagnosisId, Object userId) {
+            this.diagnosisId = diagnosisId;
+            this.userId = userId;
+        }
+
+        /**
+         * 登记一个TcpPing探测，调用 dispatch 后才会真正下发
+         *
+         * @param decorator 补充链路位置等与本次诊断相关的字段
+         */
+        public CompletableFuture<DiagnosisResult> probe(Node node, String targetIp, int port, String description,
+                                                        Consumer<DiagnosisResult> decorator) {
+            String key = node.getId() + "|" + targetIp + "|" + port;
+            CompletableFuture<DiagnosisResult> shared = findShared(key);
+            if (shared == null) {
+                Probe created = new Probe(key, targetIp, port);
+                Probe existing = inflight.putIfAbsent(key, created);
+                if (existing != null) {
+                    shared = existing.future;
+                } else {
+                    shared = created.future;
+                    created.future.completeOnTimeout(failedResult(node, targetIp, port, "诊断超时"), PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    created.future.whenComplete((result, e) -> inflight.remove(key, created));
+                    pending.computeIfAbsent(node.getId(), k -> new NodeProbes(node)).probes.add(created);
+                }
+            }
+            return shared.thenApply(source -> {
+                DiagnosisResult result = copyOf(source);
+                result.setDescription(description);
+                decorator.accept(result);
+                push("diagnosis", result);
+                return result;
+            });
+        }
+
+        /**
+         * 按源节点分组下发已登记的探测，每个节点一次往返
+         */
+        public void dispatch() {
+            for (NodeProbes nodeProbes : pending.values()) {
+                submit(nodeProbes.node, nodeProbes.probes);
+            }
+            pending.clear();
+        }
+
+        /**
+         * 所有探测结束后通知前端
+         */
+        public void finish(List<DiagnosisResult> results) {
+            JSONObject data = new JSONObject();
+            data.put("total", results.size());
+            data.put("success", results.stream().filter(DiagnosisResult::isSuccess).count());
+            push("diagnosis_done", data);
+        }
+
+        private void push(String type, Object data) {
+            if (userId == null) return;
+            try {
+                JSONObject message = new JSONObject();
+                message.put("id", diagnosisId);
+                message.put("type", type);
+                message.put("seq", completed.incrementAndGet());
+                message.put("data", data);
+                WebSocketServer.sendToUserId(userId, message.toJSONString());
+            } catch (Exception e) {
+                log.info("推送诊断结果失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static class Probe {
+        final String key;
+        final String targetIp;
+        final int port;
+        final CompletableFuture<DiagnosisResult> future = new CompletableFuture<>();
+
+        Probe(String key, String targetIp, int port) {
+            this.key = key;
+            this.targetIp = targetIp;
+            this.port = port;
+        }
+    }
+
+    private static class NodeProbes {
+        final Node node;
+        final List<Probe> probes = new ArrayList<>();
+
+        NodeProbes(Node node) {
+            this.node = node;
+        }
+    }
+
+    private static class CachedResult {
+        final DiagnosisResult result;
+        final long expireAt;
+
+        CachedResult(DiagnosisResult result, long expireAt) {
+            this.result = result;
+            this.expireAt = expireAt;
+        }
+    }
+}
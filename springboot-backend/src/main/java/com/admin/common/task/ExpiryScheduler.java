@@ -0,0 +1,170 @@
+package com.admin.common.task;
+
+import com.admin.common.utils.HashedTimerWheel;
+import com.admin.entity.User;
+import com.admin.entity.UserTunnel;
+import com.admin.service.UserService;
+import com.admin.service.UserTunnelService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 到期调度器
+ * 启动时从 user.exp_time / user_tunnel.exp_time 加载到时间轮，
+ * 用户与用户隧道创建、修改时同步更新，到期时立即暂停对应转发，
+ * 不再依赖每日定时任务或流量上报来发现到期账号。
+ * 暂停与每日任务共用 ResetFlowAsync.pauseExpired：节点跳过不存在的服务，
+ * 整批失败时逐个转发重试，仍失败的进入待重试队列，不会因单个转发让整批账号继续转发
+ */
+@Slf4j
+@Component
+public class ExpiryScheduler implements ApplicationRunner {
+
+    private static final String USER_PREFIX = "u:";
+    private static final String USER_TUNNEL_PREFIX = "t:";
+    private static final int BATCH_SIZE = 500;
+
+    @Resource
+    @Lazy
+    UserService userService;
+
+    @Resource
+    @Lazy
+    UserTunnelService userTunnelService;
+
+    @Resource
+    @Lazy
+    ResetFlowAsync resetFlowAsync;
+
+    // 到期处理涉及数据库与节点通信，放到单独线程，避免阻塞时间轮
+    private final ExecutorService expireExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "expiry-handler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 1秒一个tick，1024个槽位
+    private final HashedTimerWheel<String> timerWheel =
+            new HashedTimerWheel<>("expiry-wheel", 1000, 1024, keys -> expireExecutor.execute(() -> handleExpired(keys)));
+
+    @Override
+    public void run(ApplicationArguments args) {
+        rebuild();
+    }
+
+    /**
+     * 从数据库重建全部到期任务
+     */
+    public void rebuild() {
+        timerWheel.clear();
+        List<User> users = userService.list(new QueryWrapper<User>()
+                .select("id", "exp_time")
+                .ne("role_id", 0).eq("status", 1).isNotNull("exp_time"));
+        for (User user : users) {
+            scheduleUser(user.getId(), user.getExpTime());
+        }
+        List<UserTunnel> userTunnels = userTunnelService.list(new QueryWrapper<UserTunnel>()
+                .select("id", "exp_time")
+                .eq("status", 1).isNotNull("exp_time"));
+        for (UserTunnel userTunnel : userTunnels) {
+            scheduleUserTunnel(userTunnel.getId(), userTunnel.getExpTime());
+        }
+        log.info("到期调度器已加载: 用户{}个, 用户隧道{}个", users.size(), userTunnels.size());
+    }
+
+    public void scheduleUser(Long userId, Long expTime) {
+        if (userId == null) return;
+        if (expTime == null) {
+            timerWheel.cancel(USER_PREFIX + userId);
+        } else {
+            timerWheel.schedule(USER_PREFIX + userId, expTime);
+        }
+    }
+
+    public void scheduleUserTunnel(Integer userTunnelId, Long expTime) {
+        if (userTunnelId == null) return;
+        if (expTime == null) {
+            timerWheel.cancel(USER_TUNNEL_PREFIX + userTunnelId);
+        } else {
+            timerWheel.schedule(USER_TUNNEL_PREFIX + userTunnelId, expTime);
+        }
+    }
+
+    public void cancelUser(Long userId) {
+        timerWheel.cancel(USER_PREFIX + userId);
+    }
+
+    public void cancelUserTunnel(Integer userTunnelId) {
+        timerWheel.cancel(USER_TUNNEL_PREFIX + userTunnelId);
+    }
+
+    /**
+     * 当前等待到期的任务数量
+     */
+    public int size() {
+        return timerWheel.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timerWheel.stop();
+        expireExecutor.shutdownNow();
+    }
+
+    private void handleExpired(List<String> keys) {
+        // 启动时已过期的任务会在同一tick集中触发，分批避免IN参数过多
+        for (int i = 0; i < keys.size(); i += BATCH_SIZE) {
+            handleExpiredBatch(keys.subList(i, Math.min(i + BATCH_SIZE, keys.size())));
+        }
+    }
+
+    private void handleExpiredBatch(List<String> keys) {
+        try {
+            List<Long> userIds = new ArrayList<>();
+            List<Integer> userTunnelIds = new ArrayList<>();
+            for (String key : keys) {
+                if (key.startsWith(USER_PREFIX)) {
+                    userIds.add(Long.valueOf(key.substring(USER_PREFIX.length())));
+                } else {
+                    userTunnelIds.add(Integer.valueOf(key.substring(USER_TUNNEL_PREFIX.length())));
+                }
+            }
+
+            // 以数据库为准再次确认，避免期间被续期或停用
+            long now = System.currentTimeMillis();
+            List<Long> expiredUserIds = userIds.isEmpty() ? userIds : userService.list(new QueryWrapper<User>()
+                            .select("id")
+                            .in("id", userIds).ne("role_id", 0).eq("status", 1)
+                            .isNotNull("exp_time").le("exp_time", now))
+                    .stream().map(User::getId).toList();
+            List<Integer> expiredUserTunnelIds = userTunnelIds.isEmpty() ? userTunnelIds : userTunnelService.list(new QueryWrapper<UserTunnel>()
+                            .select("id")
+                            .in("id", userTunnelIds).eq("status", 1)
+                            .isNotNull("exp_time").le("exp_time", now))
+                    .stream().map(UserTunnel::getId).toList();
+
+            if (expiredUserIds.isEmpty() && expiredUserTunnelIds.isEmpty()) {
+                return;
+            }
+            log.info("到期触发: 用户{}, 用户隧道{}", expiredUserIds, expiredUserTunnelIds);
+            resetFlowAsync.pauseExpired(expiredUserIds, expiredUserTunnelIds);
+            if (!resetFlowAsync.getPendingPauses().isEmpty()) {
+                log.warn("到期用户{}、用户隧道{}的部分服务暂停失败，等待重试: {}",
+                        expiredUserIds, expiredUserTunnelIds, resetFlowAsync.getPendingPauses());
+            }
+        } catch (Exception e) {
+            log.info("处理到期任务失败: {}", e.getMessage(), e);
+        }
+    }
+}
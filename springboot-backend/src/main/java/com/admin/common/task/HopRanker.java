@@ -0,0 +1,236 @@
+package com.admin.common.task;
+
+import com.admin.common.dto.GostDto;
+import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.LatencyRing;
+import com.admin.entity.ChainTunnel;
+import com.admin.entity.Node;
+import com.admin.entity.Tunnel;
+import com.admin.service.ChainTunnelService;
+import com.admin.service.NodeService;
+import com.admin.service.TunnelService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 按实测延迟调整转发链下一跳
+ * 根据 {@link LinkProbeScheduler} 的链路统计为每一跳打分：
+ * fifo 策略按得分重新排序节点，rand 策略写入节点权重；
+ * 只有排名发生明显变化时才向节点下发 UpdateChains，round/hash 策略不做调整
+ */
+@Slf4j
+@Component
+public class HopRanker {
+
+    // 统计窗口
+    private static final long WINDOW_MS = 15 * 60 * 1000L;
+    // 样本过少时不参与排名
+    private static final int MIN_SAMPLES = 5;
+    // fifo：新的首选节点至少快20%才切换
+    private static final double SWITCH_RATIO = 0.8;
+    // rand：任一节点权重变化超过该值才下发
+    private static final int WEIGHT_TOLERANCE = 15;
+    private static final int MAX_WEIGHT = 100;
+    // 即使排名未变也定期重新下发，覆盖节点重建链后的默认顺序
+    private static final long REASSERT_MS = 60 * 60 * 1000L;
+
+    @Value("${link-probe.rebalance:true}")
+    private boolean rebalance;
+
+    @Resource
+    @Lazy
+    NodeService nodeService;
+
+    @Resource
+    @Lazy
+    TunnelService tunnelService;
+
+    @Resource
+    @Lazy
+    ChainTunnelService chainTunnelService;
+
+    @Resource
+    LinkProbeScheduler linkProbeScheduler;
+
+    // 已下发的排名，key为 隧道ID|源节点ID
+    private final Map<String, Ranking> applied = new ConcurrentHashMap<>();
+
+    @Scheduled(fixedDelay = 300000, initialDelay = 600000)
+    public void rebalance() {
+        if (!rebalance) {
+            return;
+        }
+        try {
+            Map<Long, Node> nodes = nodeService.list().stream()
+                    .collect(Collectors.toMap(Node::getId, n -> n, (a, b) -> a));
+            List<Long> tunnelIds = tunnelService.list(new QueryWrapper<Tunnel>()
+                            .select("id").eq("type", 2).eq("status", 1))
+                    .stream().map(Tunnel::getId).toList();
+            if (tunnelIds.isEmpty()) {
+                applied.clear();
+                return;
+            }
+            Map<Long, List<ChainTunnel>> chainsByTunnel = chainTunnelService.list(new QueryWrapper<ChainTunnel>()
+                            .in("tunnel_id", tunnelIds))
+                    .stream().collect(Collectors.groupingBy(ChainTunnel::getTunnelId));
+
+            Set<String> seen = new HashSet<>();
+            for (Map.Entry<Long, List<ChainTunnel>> entry : chainsByTunnel.entrySet()) {
+                List<List<ChainTunnel>> layers = LinkProbeScheduler.buildLayers(entry.getValue());
+                for (int i = 0; i + 1 < layers.size(); i++) {
+                    List<ChainTunnel> next = layers.get(i + 1);
+                    if (next.size() < 2) continue;
+                    for (ChainTunnel from : layers.get(i)) {
+                        String key = entry.getKey() + "|" + from.getNodeId();
+                        seen.add(key);
+                        rankHop(key, from.getNodeId(), next, nodes);
+                    }
+                }
+            }
+            applied.keySet().retainAll(seen);
+        } catch (Exception e) {
+            log.info("转发链排名调整失败: {}", e.getMessage(), e);
+        }
+    }
+
+    private void rankHop(String key, Long fromNodeId, List<ChainTunnel> next, Map<Long, Node> nodes) {
+        Node fromNode = nodes.get(fromNodeId);
+        if (fromNode == null || fromNode.getStatus() == null || fromNode.getStatus() != 1) {
+            return;
+        }
+        String strategy = next.getFirst().getStrategy();
+        boolean fifo = "fifo".equals(strategy) || "ha".equals(strategy);
+        boolean weighted = "rand".equals(strategy) || "random".equals(strategy);
+        if (!fifo && !weighted) {
+            return;
+        }
+
+        Map<Long, Double> scores = score(fromNode, next, nodes);
+        if (scores == null) {
+            return;
+        }
+
+        List<ChainTunnel> ordered = new ArrayList<>(next);
+        ordered.sort(Comparator.comparingDouble((ChainTunnel ct) -> scores.get(ct.getNodeId()))
+                .thenComparing(ChainTunnel::getInx, Comparator.nullsLast(Comparator.naturalOrder())));
+        Map<Long, Integer> weights = weighted ? toWeights(scores) : null;
+        Ranking ranking = new Ranking(ordered.stream().map(ChainTunnel::getNodeId).toList(), weights);
+
+        Ranking current = applied.get(key);
+        if (current != null && System.currentTimeMillis() - current.appliedAt < REASSERT_MS
+                && !changedMeaningfully(current, ranking, scores, fifo)) {
+            return;
+        }
+        if (current == null && isDefault(next, ranking, fifo)) {
+            // 与创建时的默认配置一致，无需下发
+            applied.put(key, ranking);
+            return;
+        }
+
+        GostDto result = GostUtil.UpdateChains(fromNodeId, fifo ? ordered : next, nodes, weights);
+        if (result != null && "OK".equals(result.getMsg())) {
+            applied.put(key, ranking);
+            log.info("转发链 {} 按延迟调整: 顺序={}, 权重={}", key, ranking.order, weights);
+        } else {
+            log.info("转发链 {} 调整下发失败: {}", key, result != null ? result.getMsg() : "无响应");
+        }
+    }
+
+    /**
+     * 得分越低越好：p50与p95的均值（毫秒），按丢包率放大；
+     * 样本不足的节点取已知得分的中位数，全部未知时返回null
+     */
+    private Map<Long, Double> score(Node fromNode, List<ChainTunnel> next, Map<Long, Node> nodes) {
+        Map<Long, Double> scores = new HashMap<>();
+        List<Long> unknown = new ArrayList<>();
+        for (ChainTunnel to : next) {
+            Node toNode = nodes.get(to.getNodeId());
+            LatencyRing.Window window = null;
+            if (toNode != null && to.getPort() != null) {
+                try {
+                    window = linkProbeScheduler.window(fromNode.getId(), GostUtil.selectDialHost(fromNode, toNode), to.getPort(), WINDOW_MS);
+                } catch (Exception ignored) {
+                    // 链路协议不兼容
+                }
+            }
+            if (window == null || window.getSamples() < MIN_SAMPLES) {
+                unknown.add(to.getNodeId());
+                continue;
+            }
+            if (window.getHistogram().getTotal() == 0) {
+                scores.put(to.getNodeId(), Double.MAX_VALUE);
+                continue;
+            }
+            double p50 = window.getHistogram().percentile(0.50) / 1000.0;
+            double p95 = window.getHistogram().percentile(0.95) / 1000.0;
+            scores.put(to.getNodeId(), (p50 + p95) / 2 * (1 + window.getLossRate() / 25));
+        }
+        if (scores.isEmpty()) {
+            return null;
+        }
+        List<Double> known = scores.values().stream().sorted().toList();
+        double median = known.get(known.size() / 2);
+        for (Long nodeId : unknown) {
+            scores.put(nodeId, median);
+        }
+        return scores;
+    }
+
+    private static Map<Long, Integer> toWeights(Map<Long, Double> scores) {
+        double best = Collections.min(scores.values());
+        Map<Long, Integer> weights = new HashMap<>();
+        for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+            int weight = entry.getValue() == Double.MAX_VALUE ? 1
+                    : (int) Math.round(MAX_WEIGHT * Math.max(best, 0.1) / Math.max(entry.getValue(), 0.1));
+            weights.put(entry.getKey(), Math.max(1, Math.min(MAX_WEIGHT, weight)));
+        }
+        return weights;
+    }
+
+    private static boolean changedMeaningfully(Ranking current, Ranking ranking, Map<Long, Double> scores, boolean fifo) {
+        if (fifo) {
+            Long currentFirst = current.order.getFirst();
+            Long newFirst = ranking.order.getFirst();
+            if (Objects.equals(currentFirst, newFirst) || !scores.containsKey(currentFirst)) {
+                return !current.order.containsAll(ranking.order) || current.order.size() != ranking.order.size();
+            }
+            return scores.get(newFirst) < scores.get(currentFirst) * SWITCH_RATIO;
+        }
+        if (current.weights == null || !current.weights.keySet().equals(ranking.weights.keySet())) {
+            return true;
+        }
+        for (Map.Entry<Long, Integer> entry : ranking.weights.entrySet()) {
+            if (Math.abs(entry.getValue() - current.weights.get(entry.getKey())) > WEIGHT_TOLERANCE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDefault(List<ChainTunnel> next, Ranking ranking, boolean fifo) {
+        if (fifo) {
+            return next.stream().map(ChainTunnel::getNodeId).toList().equals(ranking.order);
+        }
+        return ranking.weights.values().stream().allMatch(w -> w >= MAX_WEIGHT - WEIGHT_TOLERANCE);
+    }
+
+    private static class Ranking {
+        final List<Long> order;
+        final Map<Long, Integer> weights;
+        final long appliedAt = System.currentTimeMillis();
+
+        Ranking(List<Long> order, Map<Long, Integer> weights) {
+            this.order = order;
+            this.weights = weights;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.admin.common.task;
+
+import com.admin.common.dto.GostDto;
+import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.LatencyHistogram;
+import com.admin.common.utils.LatencyRing;
+import com.admin.entity.ChainTunnel;
+import com.admin.entity.Forward;
+import com.admin.entity.Node;
+import com.admin.entity.Tunnel;
+import com.admin.service.NodeService;
+import com.admin.service.TunnelService;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 链路质量持续探测
+ * 周期性从拓扑索引枚举所有隧道跳与转发目标，按源节点分组下发TcpPingBatch，
+ * 各节点的探测均匀分散在整个周期内，避免集中突发；
+ * 每帧不超过节点一轮并发探测的目标数，保证在响应等待时间内完成，整帧超时计为丢包；
+ * 每条链路的样本保存在固定容量的环形缓冲区中，按滑动窗口输出 p50/p95/p99 与丢包率
+ */
+@Slf4j
+@Component
+public class LinkProbeScheduler {
+
+    private static final long[] REPORT_WINDOWS_MINUTES = {5, 15, 60};
+    private static final long MAX_WINDOW_MS = 60 * 60 * 1000L;
+    private static final int PING_TIMEOUT_MS = 3000;
+    // 节点并发16个目标探测，一帧只占一轮：count=1 时最坏约 3 秒，在send_msg的10秒等待内完成
+    private static final int MAX_TARGETS_PER_FRAME = 16;
+    // 节点本身不可达，不计入链路丢包
+    private static final Set<String> NODE_UNAVAILABLE = Set.of("节点不在线", "节点连接已断开");
+
+    @Value("${link-probe.enabled:true}")
+    private boolean enabled;
+
+    @Value("${link-probe.interval-seconds:60}")
+    private int intervalSeconds;
+
+    @Resource
+    @Lazy
+    NodeService nodeService;
+
+    @Resource
+    @Lazy
+    TunnelService tunnelService;
+
+    @Resource
+    @Lazy
+    TopologyGraph topologyGraph;
+
+    // 当前需要探测的链路，key为 源节点ID|目标|端口
+    private final Map<String, Link> links = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private long intervalMs;
+    private int ringCapacity;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("链路质量探测已关闭");
+            return;
+        }
+        intervalMs = Math.max(10, intervalSeconds) * 1000L;
+        // 保证环形缓冲区至少覆盖最大统计窗口
+        ringCapacity = (int) Math.min(4096, Math.max(64, MAX_WINDOW_MS / intervalMs + 1));
+
+        AtomicInteger counter = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(4, r -> {
+            Thread thread = new Thread(r, "link-probe-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::planCycle, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 各链路在 5/15/60 分钟窗口内的延迟分位数（毫秒）与丢包率
+     */
+    public List<Map<String, Object>> report() {
+        long now = System.currentTimeMillis();
+        Map<Long, String> nodeNames = nodeService.list(new QueryWrapper<Node>().select("id", "name")).stream()
+                .collect(Collectors.toMap(Node::getId, Node::getName, (a, b) -> a));
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Link link : links.values()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("fromNodeId", link.fromNodeId);
+            item.put("fromNodeName", nodeNames.get(link.fromNodeId));
+            item.put("toNodeId", link.toNodeId);
+            item.put("toNodeName", link.toNodeId != null ? nodeNames.get(link.toNodeId) : null);
+            item.put("host", link.host);
+            item.put("port", link.port);
+            item.put("refs", link.refs);
+
+            Map<String, Object> windows = new LinkedHashMap<>();
+            for (long minutes : REPORT_WINDOWS_MINUTES) {
+                LatencyRing.Window window = link.ring.window(now, minutes * 60 * 1000);
+                LatencyHistogram histogram = window.getHistogram();
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("samples", window.getSamples());
+                stats.put("p50", toMillis(histogram.percentile(0.50)));
+                stats.put("p95", toMillis(histogram.percentile(0.95)));
+                stats.put("p99", toMillis(histogram.percentile(0.99)));
+                stats.put("loss", window.getLossRate());
+                windows.put(minutes + "m", stats);
+            }
+            item.put("windows", windows);
+            result.add(item);
+        }
+        result.sort(Comparator.comparing((Map<String, Object> m) -> (Long) m.get("fromNodeId"))
+                .thenComparing(m -> String.valueOf(m.get("host"))));
+        return result;
+    }
+
+    /**
+     * 查询某条链路在窗口内的统计，未被探测过时返回null
+     */
+    public LatencyRing.Window window(Long fromNodeId, String host, int port, long windowMs) {
+        Link link = links.get(linkKey(fromNodeId, host, port));
+        return link == null ? null : link.ring.window(System.currentTimeMillis(), windowMs);
+    }
+
+    private void planCycle() {
+        try {
+            Map<Long, List<Link>> byNode = refreshLinks();
+            if (byNode.isEmpty()) {
+                return;
+            }
+            // 各节点的探测在周期内均匀错开
+            long spacing = intervalMs / byNode.size();
+            long delay = 0;
+            for (Map.Entry<Long, List<Link>> entry : byNode.entrySet()) {
+                Long nodeId = entry.getKey();
+                List<Link> nodeLinks = entry.getValue();
+                scheduler.schedule(() -> probeNode(nodeId, nodeLinks), delay, TimeUnit.MILLISECONDS);
+                delay += spacing;
+            }
+        } catch (Exception e) {
+            log.info("链路探测计划生成失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 根据当前隧道与转发配置重建链路集合，保留已有链路的历史样本
+     *
+     * @return 在线源节点 -> 需要探测的链路
+     */
+    private Map<Long, List<Link>> refreshLinks() {
+        TopologyGraph.Topology topology = topologyGraph.view();
+        List<Tunnel> tunnels = tunnelService.list(new QueryWrapper<Tunnel>().select("id", "type").eq("status", 1));
+        // 只加载启用隧道涉及的节点
+        Set<Long> nodeIds = new HashSet<>();
+        for (Tunnel tunnel : tunnels) {
+            topology.chainsOfTunnel(tunnel.getId()).forEach(ct -> nodeIds.add(ct.getNodeId()));
+        }
+        Map<Long, Node> nodes = nodeIds.isEmpty() ? Collections.emptyMap() : nodeService.listByIds(nodeIds).stream()
+                .collect(Collectors.toMap(Node::getId, n -> n, (a, b) -> a));
+
+        Map<String, Link> current = new HashMap<>();
+        for (Tunnel tunnel : tunnels) {
+            List<ChainTunnel> chains = topology.chainsOfTunnel(tunnel.getId());
+            String tunnelRef = "tunnel:" + tunnel.getId();
+
+            List<ChainTunnel> targetNodes;
+            if (tunnel.getType() == 2) {
+                List<List<ChainTunnel>> layers = buildLayers(chains);
+                for (int i = 0; i + 1 < layers.size(); i++) {
+                    for (ChainTunnel from : layers.get(i)) {
+                        for (ChainTunnel to : layers.get(i + 1)) {
+                            Node fromNode = nodes.get(from.getNodeId());
+                            Node toNode = nodes.get(to.getNodeId());
+                            if (fromNode == null || toNode == null || to.getPort() == null) continue;
+                            try {
+                                addLink(current, fromNode.getId(), toNode.getId(),
+                                        GostUtil.selectDialHost(fromNode, toNode), to.getPort(), tunnelRef);
+                            } catch (Exception ignored) {
+                                // 链路协议不兼容，隧道本身也无法建立
+                            }
+                        }
+                    }
+                }
+                targetNodes = chains.stream().filter(ct -> ct.getChainType() == 3).toList();
+            } else {
+                targetNodes = chains.stream().filter(ct -> ct.getChainType() == 1).toList();
+            }
+
+            // 转发目标由出口（端口转发为入口）节点访问
+            for (Long forwardId : topology.forwardsOfTunnel(tunnel.getId())) {
+                Forward forward = topology.forward(forwardId);
+                if (forward == null || !Objects.equals(forward.getStatus(), 1) || forward.getRemoteAddr() == null) continue;
+                for (String address : forward.getRemoteAddr().split(",")) {
+                    String host = extractHost(address);
+                    int port = extractPort(address);
+                    if (host == null || port <= 0) continue;
+                    for (ChainTunnel node : targetNodes) {
+                        addLink(current, node.getNodeId(), null, host, port, "forward:" + forward.getId());
+                    }
+                }
+            }
+        }
+
+        // 保留仍然存在的链路的样本，移除已删除的链路
+        links.keySet().retainAll(current.keySet());
+        Map<Long, List<Link>> byNode = new LinkedHashMap<>();
+        for (Link planned : current.values()) {
+            Link link = links.computeIfAbsent(planned.key, k -> planned);
+            link.refs = planned.refs;
+            Node node = nodes.get(link.fromNodeId);
+            if (node != null && node.getStatus() != null && node.getStatus() == 1) {
+                byNode.computeIfAbsent(link.fromNodeId, k -> new ArrayList<>()).add(link);
+            }
+        }
+        return byNode;
+    }
+
+    private void addLink(Map<String, Link> current, Long fromNodeId, Long toNodeId, String host, int port, String ref) {
+        String key = linkKey(fromNodeId, host, port);
+        Link link = current.computeIfAbsent(key, k -> new Link(k, fromNodeId, toNodeId, host, port, ringCapacity));
+        link.refs.add(ref);
+    }
+
+    private void probeNode(Long nodeId, List<Link> nodeLinks) {
+        for (int i = 0; i < nodeLinks.size(); i += MAX_TARGETS_PER_FRAME) {
+            List<Link> chunk = nodeLinks.subList(i, Math.min(i + MAX_TARGETS_PER_FRAME, nodeLinks.size()));
+            try {
+                probeChunk(nodeId, chunk);
+            } catch (Exception e) {
+                log.info("节点 {} 链路探测失败: {}", nodeId, e.getMessage());
+            }
+        }
+    }
+
+    private void probeChunk(Long nodeId, List<Link> chunk) {
+        JSONArray targets = new JSONArray();
+        for (Link link : chunk) {
+            JSONObject target = new JSONObject();
+            target.put("ip", link.host);
+            target.put("port", link.port);
+            targets.add(target);
+        }
+        GostDto gostResult = GostUtil.TcpPingBatch(nodeId, targets, 1, PING_TIMEOUT_MS);
+        long now = System.currentTimeMillis();
+
+        if (gostResult != null && "OK".equals(gostResult.getMsg()) && gostResult.getData() instanceof JSONObject) {
+            JSONArray results = ((JSONObject) gostResult.getData()).getJSONArray("results");
+            if (results != null && results.size() == chunk.size()) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    record(chunk.get(i), results.getJSONObject(i), now);
+                }
+                return;
+            }
+        }
+
+        String message = gostResult != null ? gostResult.getMsg() : null;
+        if (message != null && message.contains("未知命令类型")) {
+            // 旧版本节点不支持批量命令，逐个探测
+            for (Link link : chunk) {
+                GostDto single = GostUtil.TcpPing(nodeId, link.host, link.port, 1, PING_TIMEOUT_MS);
+                if (single != null && "OK".equals(single.getMsg()) && single.getData() instanceof JSONObject) {
+                    record(link, (JSONObject) single.getData(), System.currentTimeMillis());
+                } else if (single == null || !NODE_UNAVAILABLE.contains(single.getMsg())) {
+                    record(link, null, System.currentTimeMillis());
+                }
+            }
+            return;
+        }
+        if (message != null && NODE_UNAVAILABLE.contains(message)) {
+            // 节点离线不计入链路丢包
+            return;
+        }
+        // 一帧在探测超时内应当完成，等待超时或响应不完整计为丢包
+        for (Link link : chunk) {
+            record(link, null, now);
+        }
+    }
+
+    private static void record(Link link, JSONObject response, long now) {
+        if (response != null && response.getBooleanValue("success")) {
+            link.ring.record(now, Math.round(response.getDoubleValue("averageTime") * 1000));
+        } else {
+            link.ring.recordLoss(now);
+        }
+    }
+
+    static List<List<ChainTunnel>> buildLayers(List<ChainTunnel> chains) {
+        List<List<ChainTunnel>> layers = new ArrayList<>();
+        layers.add(chains.stream().filter(ct -> ct.getChainType() == 1).toList());
+        chains.stream()
+                .filter(ct -> ct.getChainType() == 2)
+                .collect(Collectors.groupingBy(ct -> ct.getInx() != null ? ct.getInx() : 0, TreeMap::new, Collectors.toList()))
+                .values()
+                .forEach(layers::add);
+        layers.add(chains.stream().filter(ct -> ct.getChainType() == 3).toList());
+        return layers;
+    }
+
+    private static String linkKey(Long fromNodeId, String host, int port) {
+        return fromNodeId + "|" + host + "|" + port;
+    }
+
+    private static Double toMillis(long micros) {
+        return micros < 0 ? null : micros / 1000.0;
+    }
+
+    private static String extractHost(String address) {
+        address = address.trim();
+        if (address.startsWith("[")) {
+            int closeBracket = address.indexOf(']');
+            return closeBracket > 1 ? address.substring(1, closeBracket) : null;
+        }
+        int lastColon = address.lastIndexOf(':');
+        return lastColon > 0 ? address.substring(0, lastColon) : null;
+    }
+
+    private static int extractPort(String address) {
+        address = address.trim();
+        int lastColon = address.lastIndexOf(':');
+        if (lastColon < 0 || address.endsWith("]")) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(address.substring(lastColon + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static class Link {
+        final String key;
+        final Long fromNodeId;
+        final Long toNodeId;
+        final String host;
+        final int port;
+        final LatencyRing ring;
+        // 经过该链路的隧道/转发，如 tunnel:1、forward:2
+        volatile Set<String> refs = new TreeSet<>();
+
+        Link(String key, Long fromNodeId, Long toNodeId, String host, int port, int capacity) {
+            this.key = key;
+            this.fromNodeId = fromNodeId;
+            this.toNodeId = toNodeId;
+            this.host = host;
+            this.port = port;
+            this.ring = new LatencyRing(capacity);
+        }
+    }
+}
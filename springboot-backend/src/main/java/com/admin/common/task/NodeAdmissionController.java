@@ -0,0 +1,215 @@
+package com.admin.common.task;
+
+import com.admin.common.utils.TokenBucket;
+import com.admin.entity.Node;
+import com.admin.service.NodeService;
+import com.alibaba.fastjson.JSONObject;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 节点 WebSocket 握手准入控制
+ * 面板重启后全部节点会同时重连：握手按令牌桶限速，超出的返回 503 + Retry-After 让节点退避；
+ * 承载隧道或转发的节点可以用完全部令牌，空闲节点只能使用预留额度以外的部分，优先恢复业务节点。
+ * 节点密钥在内存中缓存，握手不再逐个查库；缓存中没有的密钥先取令牌再查库，查不到的做短期负缓存，
+ * 随机密钥的刷量受令牌桶限制，不会放大成数据库查询
+ */
+@Slf4j
+@Component
+public class NodeAdmissionController {
+
+    private static final long UNKNOWN_SECRET_TTL_MS = 30_000;
+
+    @Value("${node-admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${node-admission.rate:50}")
+    private double rate;
+
+    @Value("${node-admission.burst:100}")
+    private double burst;
+
+    @Resource
+    @Lazy
+    NodeService nodeService;
+
+    @Resource
+    @Lazy
+    TopologyGraph topologyGraph;
+
+    private TokenBucket bucket;
+    // 空闲节点不能动用的预留令牌
+    private double reserve;
+
+    private final Map<String, Long> nodeIdBySecret = new ConcurrentHashMap<>();
+    private final Map<String, Long> unknownSecrets = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        bucket = new TokenBucket(rate, burst);
+        reserve = burst / 5;
+    }
+
+    /**
+     * 判断节点握手是否放行
+     */
+    public Admission admit(String secret) {
+        if (secret == null || secret.isEmpty() || isKnownUnknown(secret)) {
+            rejected.incrementAndGet();
+            return new Admission(null, 0);
+        }
+        Long nodeId = cached(secret);
+        if (!enabled) {
+            nodeId = nodeId != null ? nodeId : lookup(secret);
+            (nodeId != null ? admitted : rejected).incrementAndGet();
+            return new Admission(nodeId, 0);
+        }
+        // 未缓存的密钥按空闲节点取令牌，取到后才查库；查到的节点直接用这个令牌放行
+        double keep = nodeId != null && isPriority(nodeId) ? 0 : reserve;
+        if (!bucket.tryAcquire(1, keep)) {
+            deferred.incrementAndGet();
+            long waitMs = bucket.waitMillis(1, keep);
+            // 至少1秒，按秒向上取整写入 Retry-After
+            return new Admission(nodeId, Math.max(1, (waitMs + 999) / 1000));
+        }
+        if (nodeId == null && (nodeId = lookup(secret)) == null) {
+            rejected.incrementAndGet();
+            return new Admission(null, 0);
+        }
+        admitted.incrementAndGet();
+        return new Admission(nodeId, 0);
+    }
+
+    /**
+     * 密钥是否属于已缓存的节点，只查内存，不回查数据库
+     */
+    public boolean isKnownSecret(String secret) {
+        if (secret == null || secret.isEmpty()) {
+            return false;
+        }
+        if (!loaded) {
+            loadAll();
+        }
+        return nodeIdBySecret.containsKey(secret);
+    }
+
+    /**
+     * 节点删除后移除密钥缓存
+     */
+    public void forget(String secret) {
+        if (secret != null) {
+            nodeIdBySecret.remove(secret);
+        }
+    }
+
+    public JSONObject stats() {
+        JSONObject stats = new JSONObject();
+        stats.put("admitted", admitted.get());
+        stats.put("deferred", deferred.get());
+        stats.put("rejected", rejected.get());
+        stats.put("available", Math.floor(bucket.available()));
+        return stats;
+    }
+
+    private boolean isPriority(Long nodeId) {
+        try {
+            TopologyGraph.Topology topology = topologyGraph.view();
+            return !topology.chainsOnNode(nodeId).isEmpty() || !topology.portsOnNode(nodeId).isEmpty();
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    private Long cached(String secret) {
+        if (!loaded) {
+            loadAll();
+        }
+        return nodeIdBySecret.get(secret);
+    }
+
+    private boolean isKnownUnknown(String secret) {
+        Long unknownUntil = unknownSecrets.get(secret);
+        return unknownUntil != null && unknownUntil > System.currentTimeMillis();
+    }
+
+    /**
+     * 查库确认面板启动后新建的节点，查不到的记入负缓存
+     */
+    private Long lookup(String secret) {
+        Node node = nodeService.getOne(new QueryWrapper<Node>().select("id").eq("secret", secret));
+        if (node == null) {
+            unknownSecrets.put(secret, System.currentTimeMillis() + UNKNOWN_SECRET_TTL_MS);
+            return null;
+        }
+        unknownSecrets.remove(secret);
+        nodeIdBySecret.put(secret, node.getId());
+        return node.getId();
+    }
+
+    /**
+     * 定期清理过期的负缓存
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void sweepUnknownSecrets() {
+        long now = System.currentTimeMillis();
+        unknownSecrets.values().removeIf(until -> until <= now);
+    }
+
+    private synchronized void loadAll() {
+        if (loaded) {
+            return;
+        }
+        for (Node node : nodeService.list(new QueryWrapper<Node>().select("id", "secret"))) {
+            nodeIdBySecret.put(node.getSecret(), node.getId());
+        }
+        loaded = true;
+        log.info("节点密钥缓存加载完成: {}个", nodeIdBySecret.size());
+    }
+
+    public static class Admission {
+        private final Long nodeId;
+        private final long retryAfterSeconds;
+
+        Admission(Long nodeId, long retryAfterSeconds) {
+            this.nodeId = nodeId;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        /**
+         * 密钥对应的节点ID，未知密钥或未缓存的密钥被限流时为null
+         */
+        public Long getNodeId() {
+            return nodeId;
+        }
+
+        public boolean isAdmitted() {
+            return nodeId != null && retryAfterSeconds == 0;
+        }
+
+        /**
+         * 被限流，应按 Retry-After 退避
+         */
+        public boolean isDeferred() {
+            return retryAfterSeconds > 0;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.admin.common.task;
+
+import com.admin.common.utils.WebSocketServer;
+import com.admin.entity.Node;
+import com.admin.service.NodeService;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 节点在线状态跟踪
+ * 连接建立/关闭与 memory_usage 心跳只更新内存状态，每秒统一评估一次：
+ * 断开后需持续一段时间才判定离线（重连抖动不产生状态翻转），心跳超时视为离线；
+ * 频繁断连的节点按惩罚值抑制（衰减式 flap damping），抑制期间保持离线；
+ * 状态变化在同一轮中批量写库后再逐条广播
+ */
+@Slf4j
+@Component
+public class NodeHeartbeatTracker {
+
+    // 心跳间隔2秒，超过该时间没有心跳视为离线
+    private static final long HEARTBEAT_TIMEOUT_MS = 15_000;
+    // 断开后超过该时间仍未重连才判定离线
+    private static final long OFFLINE_GRACE_MS = 10_000;
+    // 面板启动后等待节点重连的时间，期间不把库中的在线节点判为离线
+    private static final long STARTUP_GRACE_MS = 60_000;
+
+    // 每次断开累加惩罚值，按半衰期衰减，超过抑制阈值后保持离线，降到复用阈值以下才恢复
+    private static final double FLAP_PENALTY = 1000;
+    private static final double SUPPRESS_LIMIT = 3000;
+    private static final double REUSE_LIMIT = 750;
+    private static final long HALF_LIFE_MS = 120_000;
+
+    @Resource
+    @Lazy
+    NodeService nodeService;
+
+    @Resource
+    @Lazy
+    NodeImpactAnalyzer nodeImpactAnalyzer;
+
+    private final Map<Long, NodeState> states = new ConcurrentHashMap<>();
+    private final long startedAt = System.currentTimeMillis();
+    private volatile boolean bootstrapped;
+
+    /**
+     * 节点连接建立
+     *
+     * @param meta 需要随状态一起写库的节点信息（版本、协议屏蔽等），可为null
+     */
+    public void connected(Long nodeId, Node meta) {
+        NodeState state = states.computeIfAbsent(nodeId, NodeState::new);
+        synchronized (state) {
+            long now = System.currentTimeMillis();
+            if (state.connectedAt > 0) {
+                state.reconnects++;
+            }
+            state.connected = true;
+            state.connectedAt = now;
+            state.lastSeen = now;
+            if (meta != null) {
+                state.pendingMeta = meta;
+            }
+        }
+    }
+
+    /**
+     * 收到节点心跳
+     */
+    public void heartbeat(Long nodeId) {
+        NodeState state = states.get(nodeId);
+        if (state != null) {
+            synchronized (state) {
+                state.lastSeen = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * 节点当前活跃连接关闭
+     */
+    public void disconnected(Long nodeId) {
+        NodeState state = states.computeIfAbsent(nodeId, NodeState::new);
+        synchronized (state) {
+            long now = System.currentTimeMillis();
+            state.connected = false;
+            state.disconnectedAt = now;
+            state.disconnects++;
+            state.penalty = state.decayedPenalty(now) + FLAP_PENALTY;
+            state.penaltyAt = now;
+        }
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void evaluate() {
+        try {
+            if (!bootstrapped) {
+                bootstrap();
+            }
+            long now = System.currentTimeMillis();
+            List<Node> updates = new ArrayList<>();
+            List<NodeState> changed = new ArrayList<>();
+            for (NodeState state : states.values()) {
+                synchronized (state) {
+                    Integer target = state.target(now, now - startedAt < STARTUP_GRACE_MS);
+                    boolean statusChanged = target != null && !target.equals(state.published);
+                    if (!statusChanged && state.pendingMeta == null) {
+                        continue;
+                    }
+                    Node update = state.pendingMeta != null ? state.pendingMeta : new Node();
+                    update.setId(state.nodeId);
+                    if (statusChanged) {
+                        update.setStatus(target);
+                        state.previous = state.published;
+                        state.published = target;
+                        changed.add(state);
+                    }
+                    state.pendingMeta = null;
+                    updates.add(update);
+                }
+            }
+            if (updates.isEmpty()) {
+                return;
+            }
+
+            try {
+                nodeService.updateBatchById(updates);
+            } catch (Exception e) {
+                // 写库失败时回退，下一轮重试
+                log.info("节点状态批量写入失败: {}", e.getMessage(), e);
+                for (Node update : updates) {
+                    NodeState state = states.get(update.getId());
+                    synchronized (state) {
+                        if (update.getStatus() != null) {
+                            state.published = state.previous;
+                        }
+                        update.setStatus(null);
+                        if (state.pendingMeta == null && (update.getVersion() != null || update.getHttp() != null
+                                || update.getTls() != null || update.getSocks() != null)) {
+                            state.pendingMeta = update;
+                        }
+                    }
+                }
+                return;
+            }
+
+            for (NodeState state : changed) {
+                JSONObject res = new JSONObject();
+                res.put("id", String.valueOf(state.nodeId));
+                res.put("type", "status");
+                res.put("data", state.published);
+                WebSocketServer.broadcastMessage(res.toJSONString());
+                if (state.published == 0) {
+                    nodeImpactAnalyzer.publishOutage(state.nodeId);
+                }
+            }
+            log.info("节点状态批量更新: 写入{}条, 状态变化{}个", updates.size(), changed.size());
+        } catch (Exception e) {
+            log.info("节点状态评估失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 以库中的状态作为初始发布状态，未在宽限期内重连的在线节点随后会被判为离线
+     */
+    private void bootstrap() {
+        for (Node node : nodeService.list(new QueryWrapper<Node>().select("id", "status"))) {
+            NodeState state = states.computeIfAbsent(node.getId(), NodeState::new);
+            synchronized (state) {
+                if (state.published == null) {
+                    state.published = node.getStatus() != null && node.getStatus() == 1 ? 1 : 0;
+                }
+            }
+        }
+        bootstrapped = true;
+    }
+
+    /**
+     * 各节点的在线状态、最后心跳时间与重连计数
+     */
+    public JSONArray report() {
+        long now = System.currentTimeMillis();
+        Map<Long, JSONObject> inboxes = WebSocketServer.nodeInboxStats();
+        JSONArray array = new JSONArray();
+        for (NodeState state : states.values()) {
+            synchronized (state) {
+                JSONObject item = new JSONObject();
+                item.put("id", state.nodeId);
+                item.put("status", state.published);
+                item.put("connected", state.connected);
+                item.put("lastSeen", state.lastSeen > 0 ? state.lastSeen : null);
+                item.put("connectedAt", state.connectedAt > 0 ? state.connectedAt : null);
+                item.put("disconnectedAt", state.disconnectedAt > 0 ? state.disconnectedAt : null);
+                item.put("reconnects", state.reconnects);
+                item.put("disconnects", state.disconnects);
+                item.put("penalty", Math.round(state.decayedPenalty(now)));
+                item.put("suppressed", state.suppressed);
+                // 入站消息队列积压
+                item.put("inbox", inboxes.get(state.nodeId));
+                array.add(item);
+            }
+        }
+        return array;
+    }
+
+    private static class NodeState {
+        final Long nodeId;
+        boolean connected;
+        long connectedAt;
+        long disconnectedAt;
+        long lastSeen;
+        long reconnects;
+        long disconnects;
+        double penalty;
+        long penaltyAt;
+        boolean suppressed;
+        // 已写库并广播的状态，null表示未知
+        Integer published;
+        Integer previous;
+        Node pendingMeta;
+
+        NodeState(Long nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        double decayedPenalty(long now) {
+            if (penalty <= 0) {
+                return 0;
+            }
+            return penalty * Math.pow(0.5, (double) (now - penaltyAt) / HALF_LIFE_MS);
+        }
+
+        /**
+         * 本轮应发布的状态，null表示维持现状
+         */
+        Integer target(long now, boolean startingUp) {
+            double current = decayedPenalty(now);
+            if (suppressed && current < REUSE_LIMIT) {
+                suppressed = false;
+                log.info("节点 {} 解除抖动抑制", nodeId);
+            } else if (!suppressed && current > SUPPRESS_LIMIT) {
+                suppressed = true;
+                log.info("节点 {} 连接频繁断开，抑制为离线", nodeId);
+            }
+            if (suppressed) {
+                return 0;
+            }
+            if (connected) {
+                return now - lastSeen > HEARTBEAT_TIMEOUT_MS ? 0 : 1;
+            }
+            if (disconnectedAt == 0) {
+                // 启动后尚未连接过
+                return startingUp ? null : 0;
+            }
+            if (Integer.valueOf(1).equals(published) && now - disconnectedAt < OFFLINE_GRACE_MS) {
+                return null;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.admin.common.task;
+
+import com.admin.common.utils.WebSocketServer;
+import com.admin.entity.ChainTunnel;
+import com.admin.entity.Forward;
+import com.admin.entity.Node;
+import com.admin.entity.Tunnel;
+import com.admin.service.NodeService;
+import com.admin.service.TunnelService;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * 节点故障影响分析
+ * 基于 {@link TopologyGraph} 的反向索引，计算某个节点不可用时受影响的隧道、转发与用户，
+ * 以及各隧道中该节点所在层级剩余的可用入口/中转节点。
+ * 隧道仍有完整可用路径时为 degraded，否则为 down
+ */
+@Slf4j
+@Component
+public class NodeImpactAnalyzer {
+
+    private static final String DOWN = "down";
+    private static final String DEGRADED = "degraded";
+
+    @Resource
+    TopologyGraph topologyGraph;
+
+    @Resource
+    @Lazy
+    NodeService nodeService;
+
+    @Resource
+    @Lazy
+    TunnelService tunnelService;
+
+    // 节点离线回调来自 WebSocket 线程，分析与推送放到单独线程
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "node-impact");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 节点离线后异步计算影响，并推送 impact 事件给管理端
+     */
+    public void publishOutage(Long nodeId) {
+        executor.execute(() -> {
+            try {
+                JSONObject impact = analyze(nodeId);
+                if (impact == null) {
+                    return;
+                }
+                // 事件只带摘要，转发明细通过接口查询
+                impact.remove("forwards");
+                JSONObject res = new JSONObject();
+                res.put("id", nodeId);
+                res.put("type", "impact");
+                res.put("data", impact);
+                WebSocketServer.broadcastMessage(res.toJSONString());
+            } catch (Exception e) {
+                log.info("节点 {} 影响分析失败: {}", nodeId, e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * 计算节点不可用时的影响范围，节点不存在时返回null
+     */
+    public JSONObject analyze(Long nodeId) {
+        Node down = nodeService.getById(nodeId);
+        if (down == null) {
+            return null;
+        }
+        TopologyGraph.Topology topology = topologyGraph.view();
+        Set<Long> tunnelIds = topology.tunnelsThroughNode(nodeId);
+
+        Map<Long, Tunnel> tunnels = tunnelIds.isEmpty() ? Collections.emptyMap()
+                : tunnelService.listByIds(tunnelIds).stream().collect(Collectors.toMap(Tunnel::getId, t -> t));
+        Set<Long> nodeIds = new HashSet<>();
+        for (Long tunnelId : tunnelIds) {
+            topology.chainsOfTunnel(tunnelId).forEach(ct -> nodeIds.add(ct.getNodeId()));
+        }
+        Map<Long, Node> nodes = nodeIds.isEmpty() ? Collections.emptyMap()
+                : nodeService.listByIds(nodeIds).stream().collect(Collectors.toMap(Node::getId, n -> n));
+
+        JSONArray tunnelArray = new JSONArray();
+        JSONArray forwardArray = new JSONArray();
+        Map<Integer, JSONObject> users = new LinkedHashMap<>();
+        int tunnelsDown = 0;
+        int forwardsDown = 0;
+
+        for (Long tunnelId : tunnelIds) {
+            Tunnel tunnel = tunnels.get(tunnelId);
+            if (tunnel == null || tunnel.getStatus() == null || tunnel.getStatus() != 1) {
+                continue;
+            }
+
+            List<List<ChainTunnel>> layers = new ArrayList<>();
+            layers.add(topology.entriesOfTunnel(tunnelId));
+            boolean tunnelForward = tunnel.getType() != null && tunnel.getType() == 2;
+            if (tunnelForward) {
+                layers.addAll(topology.hopsOfTunnel(tunnelId));
+                layers.add(topology.exitsOfTunnel(tunnelId));
+            }
+
+            boolean pathAlive = true;
+            boolean entryOnly = true;
+            JSONArray roles = new JSONArray();
+            for (List<ChainTunnel> layer : layers) {
+                boolean layerAlive = layer.stream().anyMatch(ct -> isOnline(ct.getNodeId(), nodeId, nodes));
+                pathAlive &= layerAlive;
+                ChainTunnel self = layer.stream().filter(ct -> nodeId.equals(ct.getNodeId())).findFirst().orElse(null);
+                if (self == null) {
+                    continue;
+                }
+                if (self.getChainType() != null && self.getChainType() != 1) {
+                    entryOnly = false;
+                }
+                JSONArray alternatives = new JSONArray();
+                for (ChainTunnel ct : layer) {
+                    if (nodeId.equals(ct.getNodeId())) {
+                        continue;
+                    }
+                    Node node = nodes.get(ct.getNodeId());
+                    JSONObject alt = new JSONObject();
+                    alt.put("id", ct.getNodeId());
+                    alt.put("name", node != null ? node.getName() : null);
+                    alt.put("online", isOnline(ct.getNodeId(), nodeId, nodes));
+                    alternatives.add(alt);
+                }
+                JSONObject role = new JSONObject();
+                role.put("role", roleName(self.getChainType()));
+                role.put("inx", self.getInx());
+                role.put("alive", layerAlive);
+                role.put("alternatives", alternatives);
+                roles.add(role);
+            }
+            String state = pathAlive ? DEGRADED : DOWN;
+            if (!pathAlive) {
+                tunnelsDown++;
+            }
+
+            int affectedForwards = 0;
+            for (Long forwardId : topology.forwardsOfTunnel(tunnelId)) {
+                Forward forward = topology.forward(forwardId);
+                if (forward == null || forward.getStatus() == null || forward.getStatus() != 1) {
+                    continue;
+                }
+                // 仅作为入口且路径仍可用时，只有在该节点上监听的转发受影响
+                if (pathAlive && entryOnly && topology.portOfForward(forwardId, nodeId) == null) {
+                    continue;
+                }
+                affectedForwards++;
+                if (!pathAlive) {
+                    forwardsDown++;
+                }
+                JSONObject item = new JSONObject();
+                item.put("id", forwardId);
+                item.put("name", forward.getName());
+                item.put("userId", forward.getUserId());
+                item.put("tunnelId", tunnelId);
+                item.put("state", state);
+                forwardArray.add(item);
+
+                JSONObject user = users.computeIfAbsent(forward.getUserId(), k -> {
+                    JSONObject u = new JSONObject();
+                    u.put("id", k);
+                    u.put("name", forward.getUserName());
+                    u.put(DOWN, 0);
+                    u.put(DEGRADED, 0);
+                    return u;
+                });
+                user.put(state, user.getIntValue(state) + 1);
+            }
+
+            JSONObject item = new JSONObject();
+            item.put("id", tunnelId);
+            item.put("name", tunnel.getName());
+            item.put("type", tunnel.getType());
+            item.put("state", state);
+            item.put("roles", roles);
+            item.put("forwards", affectedForwards);
+            tunnelArray.add(item);
+        }
+
+        JSONObject summary = new JSONObject();
+        summary.put("tunnels", tunnelArray.size());
+        summary.put("tunnelsDown", tunnelsDown);
+        summary.put("forwards", forwardArray.size());
+        summary.put("forwardsDown", forwardsDown);
+        summary.put("users", users.size());
+
+        JSONObject result = new JSONObject();
+        result.put("nodeId", nodeId);
+        result.put("nodeName", down.getName());
+        result.put("summary", summary);
+        result.put("tunnels", tunnelArray);
+        result.put("forwards", forwardArray);
+        result.put("users", new ArrayList<>(users.values()));
+        return result;
+    }
+
+    private static boolean isOnline(Long nodeId, Long downNodeId, Map<Long, Node> nodes) {
+        if (nodeId.equals(downNodeId)) {
+            return false;
+        }
+        Node node = nodes.get(nodeId);
+        return node != null && node.getStatus() != null && node.getStatus() == 1;
+    }
+
+    private static String roleName(Integer chainType) {
+        if (chainType == null || chainType == 1) {
+            return "entry";
+        }
+        return chainType == 2 ? "hop" : "exit";
+    }
+}
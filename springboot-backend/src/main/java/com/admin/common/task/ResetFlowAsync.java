@@ -8,13 +8,20 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 
+import org.springframework.transaction.support.TransactionTemplate;
+
 import javax.annotation.Resource;
 import java.time.LocalDate;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Configuration
@@ -36,6 +43,30 @@ public class ResetFlowAsync {
     @Resource
     ChainTunnelService chainTunnelService;
 
+    @Resource
+    NodeService nodeService;
+
+    @Resource
+    TransactionTemplate transactionTemplate;
+
+    @Resource
+    @Lazy
+    SubscriptionCache subscriptionCache;
+
+    // IN 查询/更新的单批大小（SQLite默认变量上限999）
+    private static final int BATCH_SIZE = 500;
+
+    // 并发下发暂停命令的节点数
+    private static final int PAUSE_PARALLELISM = 16;
+
+    // 暂停失败后最长重试时间，超过后放弃并记录告警日志
+    private static final long PENDING_PAUSE_MAX_AGE_MS = 24 * 3600_000L;
+
+    private volatile Map<String, Object> lastRunStats = Collections.emptyMap();
+
+    // 暂停失败、待重试的服务：节点ID -> 服务名（不含 _tcp/_udp 后缀）-> 首次失败时间
+    private final Map<Long, Map<String, Long>> pendingPauses = new ConcurrentHashMap<>();
+
     /**
      * 每天0点执行流量重置任务
      * 查询出用户和隧道的重置流量日期是今天的数据，将上下流量重置为0
@@ -43,12 +74,16 @@ public class ResetFlowAsync {
      * 
      * 并发安全说明：
      * - 使用setSql()进行原子SQL更新，只更新流量字段(in_flow, out_flow)
-     * - 不会影响DelayQueueManager的到期任务对status等其他字段的更新
+     * - 不会影响到期任务对status等其他字段的更新
      * - 避免了并发修改导致的数据覆盖问题
+     * - 每张表一条UPDATE完成重置，两张表在同一事务内提交
      */
     @Scheduled(cron = "5 0 0 * * ?")
     public void reset_flow(){
         log.info("开始执行流量重置任务");
+        long start = System.currentTimeMillis();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("startTime", start);
         
         try {
             // 获取当前日期信息
@@ -58,186 +93,357 @@ public class ResetFlowAsync {
             
             log.info("当前日期: {}, 当月第{}天, 当月最后一天: {}", today, currentDay, lastDayOfMonth);
             
-            // 重置用户流量
-            resetUserFlow(currentDay, lastDayOfMonth);
-            
-            // 重置用户隧道流量
-            resetUserTunnelFlow(currentDay, lastDayOfMonth);
-            
-            log.info("流量重置任务执行完成");
+            // 用户与用户隧道流量在同一事务内集合重置
+            int[] resetCount = new int[2];
+            transactionTemplate.executeWithoutResult(status -> {
+                resetCount[0] = resetUserFlow(currentDay, lastDayOfMonth);
+                resetCount[1] = resetUserTunnelFlow(currentDay, lastDayOfMonth);
+            });
+            // 集合更新不知道具体行，订阅接口的用量快照全部失效
+            subscriptionCache.evictUsage();
+            long resetCost = System.currentTimeMillis() - start;
+            stats.put("resetUsers", resetCount[0]);
+            stats.put("resetUserTunnels", resetCount[1]);
+            stats.put("resetCostMs", resetCost);
+            log.info("流量重置任务执行完成: 用户{}个, 用户隧道{}个, 耗时{}ms", resetCount[0], resetCount[1], resetCost);
 
-
-            // 处理过期账号
-            user();
-
-            // 处理过期隧道
-            userTunnel();
+            // 处理过期账号与过期隧道
+            long expireStart = System.currentTimeMillis();
+            stats.put("pausedForwards", expire());
+            stats.put("pendingPauses", pendingPauseCount());
+            stats.put("expireCostMs", System.currentTimeMillis() - expireStart);
 
             log.info("到期任务执行完成");
             
         } catch (Exception e) {
+            stats.put("error", e.getMessage());
             log.info("定时任务执行失败", e);
         }
+        stats.put("totalCostMs", System.currentTimeMillis() - start);
+        lastRunStats = stats;
     }
     
     /**
-     * 重置用户流量
+     * 重置用户流量（集合更新，单条SQL）
      * @param currentDay 当前日期（几号）
      * @param lastDayOfMonth 当月最后一天
+     * @return 重置的行数
      */
-    private void resetUserFlow(int currentDay, int lastDayOfMonth) {
-        try {
-            // flowResetTime字段存储的是0-31的数字，0表示不重置，1-31表示每月第几号重置
-            // 构建查询条件：重置日期等于今天，或者重置日期大于当月最大天数且今天是月末
-            // 排除flowResetTime为0的记录（不重置）
-            QueryWrapper<User> queryWrapper = new QueryWrapper<>();
-            queryWrapper.ne("flow_reset_time", 0); // 排除不重置的用户
-            
-            if (currentDay == lastDayOfMonth) {
-                // 如果今天是月末，查询重置日期等于今天或者大于当月最大天数的记录
-                // 例如：当月30天，但用户设置31号重置，则在30号执行重置
-                queryWrapper.and(wrapper -> wrapper.eq("flow_reset_time", currentDay)
-                                                  .or().gt("flow_reset_time", lastDayOfMonth));
-            } else {
-                // 否则只查询重置日期等于今天的记录
-                queryWrapper.eq("flow_reset_time", currentDay);
-            }
-            
-            // 查询需要重置的用户
-            List<User> usersToReset = userService.list(queryWrapper);
-            
-            if (usersToReset.isEmpty()) {
-                log.info("没有需要重置流量的用户");
-                return;
-            }
-            
-            log.info("找到{}个需要重置流量的用户", usersToReset.size());
-            
-            // 批量重置用户流量 - 使用SQL原子操作避免与到期任务的并发冲突
-            for (User user : usersToReset) {
-                UpdateWrapper<User> updateWrapper = new UpdateWrapper<>();
-                updateWrapper.eq("id", user.getId())
-                           .setSql("in_flow = 0, out_flow = 0"); // 使用SQL原子操作，只更新流量字段
-                
-                boolean success = userService.update(null, updateWrapper);
-                if (success) {
-                    log.info("用户[ID: {}, 用户名: {}]流量重置成功，重置日期: 每月{}号", 
-                           user.getId(), user.getUser(), user.getFlowResetTime());
-                } else {
-                    log.info("用户[ID: {}, 用户名: {}]流量重置失败", user.getId(), user.getUser());
-                }
-            }
-            
-        } catch (Exception e) {
-            log.info("重置用户流量失败", e);
+    private int resetUserFlow(int currentDay, int lastDayOfMonth) {
+        // flowResetTime字段存储的是0-31的数字，0表示不重置，1-31表示每月第几号重置
+        // 构建条件：重置日期等于今天，或者重置日期大于当月最大天数且今天是月末
+        UpdateWrapper<User> updateWrapper = new UpdateWrapper<>();
+        updateWrapper.ne("flow_reset_time", 0); // 排除不重置的用户
+        if (currentDay == lastDayOfMonth) {
+            // 例如：当月30天，但用户设置31号重置，则在30号执行重置
+            updateWrapper.and(wrapper -> wrapper.eq("flow_reset_time", currentDay)
+                                               .or().gt("flow_reset_time", lastDayOfMonth));
+        } else {
+            updateWrapper.eq("flow_reset_time", currentDay);
         }
+        updateWrapper.setSql("in_flow = 0, out_flow = 0"); // 只更新流量字段
+        return userService.getBaseMapper().update(null, updateWrapper);
     }
-    
+
     /**
-     * 重置用户隧道流量
+     * 重置用户隧道流量（集合更新，单条SQL）
      * @param currentDay 当前日期（几号）
      * @param lastDayOfMonth 当月最后一天
+     * @return 重置的行数
      */
-    private void resetUserTunnelFlow(int currentDay, int lastDayOfMonth) {
-        try {
-            // flowResetTime字段存储的是0-31的数字，0表示不重置，1-31表示每月第几号重置
-            // 构建查询条件：重置日期等于今天，或者重置日期大于当月最大天数且今天是月末
-            // 排除flowResetTime为0的记录（不重置）
-            QueryWrapper<UserTunnel> queryWrapper = new QueryWrapper<>();
-            queryWrapper.ne("flow_reset_time", 0); // 排除不重置的用户隧道
-            
-            if (currentDay == lastDayOfMonth) {
-                // 如果今天是月末，查询重置日期等于今天或者大于当月最大天数的记录
-                // 例如：当月30天，但用户设置31号重置，则在30号执行重置
-                queryWrapper.and(wrapper -> wrapper.eq("flow_reset_time", currentDay)
-                                                  .or().gt("flow_reset_time", lastDayOfMonth));
-            } else {
-                // 否则只查询重置日期等于今天的记录
-                queryWrapper.eq("flow_reset_time", currentDay);
+    private int resetUserTunnelFlow(int currentDay, int lastDayOfMonth) {
+        UpdateWrapper<UserTunnel> updateWrapper = new UpdateWrapper<>();
+        updateWrapper.ne("flow_reset_time", 0); // 排除不重置的用户隧道
+        if (currentDay == lastDayOfMonth) {
+            updateWrapper.and(wrapper -> wrapper.eq("flow_reset_time", currentDay)
+                                               .or().gt("flow_reset_time", lastDayOfMonth));
+        } else {
+            updateWrapper.eq("flow_reset_time", currentDay);
+        }
+        updateWrapper.setSql("in_flow = 0, out_flow = 0");
+        return userTunnelService.getBaseMapper().update(null, updateWrapper);
+    }
+
+
+    /**
+     * 处理所有已到期的用户与用户隧道
+     * @return 暂停的转发数量
+     */
+    public int expire() {
+        long now = System.currentTimeMillis();
+        List<Long> userIds = userService.list(new QueryWrapper<User>()
+                        .select("id")
+                        .ne("role_id", 0).eq("status", 1)
+                        .isNotNull("exp_time").lt("exp_time", now))
+                .stream().map(User::getId).toList();
+        List<Integer> userTunnelIds = userTunnelService.list(new QueryWrapper<UserTunnel>()
+                        .select("id")
+                        .eq("status", 1)
+                        .isNotNull("exp_time").lt("exp_time", now))
+                .stream().map(UserTunnel::getId).toList();
+        return pauseExpired(userIds, userTunnelIds);
+    }
+
+    /**
+     * 暂停指定用户、用户隧道下的全部转发
+     * 数据库状态在一个事务内集合更新，节点暂停命令按节点合并后并发下发
+     *
+     * @param userIds       到期用户ID
+     * @param userTunnelIds 到期用户隧道ID
+     * @return 暂停的转发数量
+     */
+    public int pauseExpired(Collection<Long> userIds, Collection<Integer> userTunnelIds) {
+        if (userIds.isEmpty() && userTunnelIds.isEmpty()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+
+        // 1. 收集需要暂停的转发
+        Map<Long, Forward> forwards = new LinkedHashMap<>();
+        for (List<Long> chunk : partition(userIds)) {
+            forwardService.list(new QueryWrapper<Forward>().in("user_id", chunk).eq("status", 1))
+                    .forEach(forward -> forwards.put(forward.getId(), forward));
+        }
+        List<UserTunnel> expiredUserTunnels = new ArrayList<>();
+        for (List<Integer> chunk : partition(userTunnelIds)) {
+            expiredUserTunnels.addAll(userTunnelService.list(new QueryWrapper<UserTunnel>().in("id", chunk)));
+        }
+        Set<String> expiredPairs = new HashSet<>();
+        Set<Integer> pairUserIds = new HashSet<>();
+        for (UserTunnel userTunnel : expiredUserTunnels) {
+            expiredPairs.add(userTunnel.getUserId() + "_" + userTunnel.getTunnelId());
+            pairUserIds.add(userTunnel.getUserId());
+        }
+        for (List<Integer> chunk : partition(pairUserIds)) {
+            forwardService.list(new QueryWrapper<Forward>().in("user_id", chunk).eq("status", 1)).stream()
+                    .filter(forward -> expiredPairs.contains(forward.getUserId() + "_" + forward.getTunnelId()))
+                    .forEach(forward -> forwards.put(forward.getId(), forward));
+        }
+
+        // 2. 预加载用户隧道ID与入口节点，合并为 节点 -> 服务名列表
+        Map<Long, List<String>> servicesByNode = buildServicesByNode(forwards.values());
+
+        // 3. 单事务集合更新状态
+        transactionTemplate.executeWithoutResult(status -> {
+            for (List<Long> chunk : partition(forwards.keySet())) {
+                forwardService.update(null, new UpdateWrapper<Forward>().in("id", chunk).set("status", 0));
             }
-            
-            // 查询需要重置的用户隧道
-            List<UserTunnel> userTunnelsToReset = userTunnelService.list(queryWrapper);
-            
-            if (userTunnelsToReset.isEmpty()) {
-                log.info("没有需要重置流量的用户隧道");
-                return;
+            for (List<Long> chunk : partition(userIds)) {
+                userService.update(null, new UpdateWrapper<User>().in("id", chunk).set("status", 0));
             }
-            
-            log.info("找到{}个需要重置流量的用户隧道", userTunnelsToReset.size());
-            
-            // 批量重置用户隧道流量 - 使用SQL原子操作避免与到期任务的并发冲突
-            for (UserTunnel userTunnel : userTunnelsToReset) {
-                UpdateWrapper<UserTunnel> updateWrapper = new UpdateWrapper<>();
-                updateWrapper.eq("id", userTunnel.getId())
-                           .setSql("in_flow = 0, out_flow = 0"); // 使用SQL原子操作，只更新流量字段
-                
-                boolean success = userTunnelService.update(null, updateWrapper);
-                if (success) {
-                    log.info("用户隧道[ID: {}, 用户ID: {}, 隧道ID: {}]流量重置成功，重置日期: 每月{}号", 
-                           userTunnel.getId(), userTunnel.getUserId(), userTunnel.getTunnelId(), userTunnel.getFlowResetTime());
-                } else {
-                    log.info("用户隧道[ID: {}, 用户ID: {}, 隧道ID: {}]流量重置失败",
-                            userTunnel.getId(), userTunnel.getUserId(), userTunnel.getTunnelId());
-                }
+            for (List<Integer> chunk : partition(userTunnelIds)) {
+                userTunnelService.update(null, new UpdateWrapper<UserTunnel>().in("id", chunk).set("status", 0));
             }
-            
-        } catch (Exception e) {
-            log.info("重置用户隧道流量失败", e);
-        }
+        });
+        long dbCost = System.currentTimeMillis() - start;
+
+        // 4. 按节点并发下发暂停命令，失败的服务进入待重试队列
+        int failedServices = dispatchPause(servicesByNode);
+
+        log.info("到期处理完成: 用户{}个, 用户隧道{}个, 转发{}个, 节点{}个(暂停失败服务{}个), 数据库耗时{}ms, 总耗时{}ms",
+                userIds.size(), userTunnelIds.size(), forwards.size(), servicesByNode.size(), failedServices,
+                dbCost, System.currentTimeMillis() - start);
+        return forwards.size();
     }
 
+    /**
+     * 最近一次执行的统计信息
+     */
+    public Map<String, Object> getLastRunStats() {
+        return lastRunStats;
+    }
 
-    public void user(){
-        // 查询过期用户
-        List<User> user_list = userService.list(new QueryWrapper<User>().ne("role_id", 0).eq("status", 1).isNotNull("exp_time").lt("exp_time", new Date().getTime()));
-        for (User user : user_list) {
-            // 查询对应转发
-            List<Forward> forwardList = forwardService.list(new QueryWrapper<Forward>().eq("user_id", user.getId()).eq("status", 1));
-            for (Forward forward : forwardList) {
-
-                List<ChainTunnel> chainTunnels = chainTunnelService.list(new QueryWrapper<ChainTunnel>().eq("tunnel_id", forward.getTunnelId()).eq("chain_type", 1));
-                for (ChainTunnel chainTunnel : chainTunnels) {
-                    UserTunnel userTunnel = userTunnelService.getOne(new QueryWrapper<UserTunnel>().eq("user_id", forward.getUserId()).eq("tunnel_id", forward.getTunnelId()));
-                    if (userTunnel != null) {
-                        String name = buildServiceName(forward.getId(), forward.getUserId(), userTunnel.getId());
-                        GostUtil.PauseAndResumeService(chainTunnel.getNodeId(), name, "PauseService");
-                    }
-                }
+    /**
+     * 待重试的暂停：节点ID -> 服务名。数据库已标记暂停但节点上可能仍在转发
+     */
+    public Map<Long, List<String>> getPendingPauses() {
+        Map<Long, List<String>> result = new TreeMap<>();
+        pendingPauses.forEach((nodeId, names) -> {
+            if (!names.isEmpty()) {
+                result.put(nodeId, new ArrayList<>(names.keySet()));
+            }
+        });
+        return result;
+    }
 
-                forward.setStatus(0);
-                forwardService.updateById(forward);
+    /**
+     * 每分钟重试暂停失败的服务；期间已被恢复（转发状态不再是暂停）或删除的、节点已删除的不再重试，
+     * 超过最长重试时间的放弃
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void retryPendingPauses() {
+        if (pendingPauses.isEmpty()) {
+            return;
+        }
+        Set<Long> existingNodes = new HashSet<>();
+        for (List<Long> chunk : partition(pendingPauses.keySet())) {
+            nodeService.list(new QueryWrapper<Node>().select("id").in("id", chunk))
+                    .forEach(node -> existingNodes.add(node.getId()));
+        }
+        long now = System.currentTimeMillis();
+        Map<Long, List<String>> retry = new HashMap<>();
+        Map<String, Long> since = new HashMap<>();
+        int dropped = 0;
+        for (Map.Entry<Long, Map<String, Long>> entry : pendingPauses.entrySet()) {
+            Long nodeId = entry.getKey();
+            List<String> names = new ArrayList<>();
+            for (Map.Entry<String, Long> pending : entry.getValue().entrySet()) {
+                entry.getValue().remove(pending.getKey());
+                if (!existingNodes.contains(nodeId)) {
+                    continue;
+                }
+                if (now - pending.getValue() > PENDING_PAUSE_MAX_AGE_MS) {
+                    dropped++;
+                    continue;
+                }
+                names.add(pending.getKey());
+                since.put(nodeId + "|" + pending.getKey(), pending.getValue());
             }
-            user.setStatus(0);
-            userService.updateById(user);
+            if (!names.isEmpty()) {
+                retry.put(nodeId, names);
+            }
+        }
+        pendingPauses.values().removeIf(Map::isEmpty);
+        if (dropped > 0) {
+            log.warn("{}个服务暂停重试超过{}小时，放弃重试，请检查对应节点", dropped, PENDING_PAUSE_MAX_AGE_MS / 3600_000L);
+        }
+
+        Set<Long> forwardIds = new HashSet<>();
+        retry.values().forEach(names -> names.forEach(name -> forwardIds.add(Long.valueOf(name.split("_")[0]))));
+        Set<Long> paused = new HashSet<>();
+        for (List<Long> chunk : partition(forwardIds)) {
+            forwardService.list(new QueryWrapper<Forward>().select("id").in("id", chunk).eq("status", 0))
+                    .forEach(forward -> paused.add(forward.getId()));
         }
+        retry.values().forEach(names -> names.removeIf(name -> !paused.contains(Long.valueOf(name.split("_")[0]))));
+        retry.values().removeIf(List::isEmpty);
+
+        int failed = dispatchPause(retry);
+        // 仍失败的保留首次失败时间，重试时长按首次失败计算
+        pendingPauses.forEach((nodeId, names) -> names.replaceAll((name, time) -> since.getOrDefault(nodeId + "|" + name, time)));
+        log.info("重试暂停: 节点{}个, 仍失败服务{}个", retry.size(), failed);
     }
 
+    private int pendingPauseCount() {
+        return pendingPauses.values().stream().mapToInt(Map::size).sum();
+    }
 
-    public void userTunnel(){
-        // 查询过期隧道
-        List<UserTunnel> user_tunnel_list = userTunnelService.list(new QueryWrapper<UserTunnel>().eq("status", 1).isNotNull("exp_time").lt("exp_time", new Date().getTime()));
-        // 查询对应转发
-        for (UserTunnel userTunnel : user_tunnel_list) {
-            List<Forward> forwardList = forwardService.list(new QueryWrapper<Forward>().eq("tunnel_id", userTunnel.getTunnelId()).eq("user_id", userTunnel.getUserId()).eq("status", 1));
-            for (Forward forward : forwardList) {
+    private Map<Long, List<String>> buildServicesByNode(Collection<Forward> forwards) {
+        Map<Long, List<String>> servicesByNode = new HashMap<>();
+        if (forwards.isEmpty()) {
+            return servicesByNode;
+        }
+        Set<Integer> userIds = new HashSet<>();
+        Set<Integer> tunnelIds = new HashSet<>();
+        for (Forward forward : forwards) {
+            userIds.add(forward.getUserId());
+            tunnelIds.add(forward.getTunnelId());
+        }
 
-                List<ChainTunnel> chainTunnels = chainTunnelService.list(new QueryWrapper<ChainTunnel>().eq("tunnel_id", forward.getTunnelId()).eq("chain_type", 1));
-                for (ChainTunnel chainTunnel : chainTunnels) {
-                    String name = buildServiceName(forward.getId(), forward.getUserId(), userTunnel.getId());
-                    GostUtil.PauseAndResumeService(chainTunnel.getNodeId(), name, "PauseService");
-                }
-                forward.setStatus(0);
-                forwardService.updateById(forward);
+        Map<String, Integer> userTunnelIdByPair = new HashMap<>();
+        for (List<Integer> chunk : partition(userIds)) {
+            for (UserTunnel userTunnel : userTunnelService.list(new QueryWrapper<UserTunnel>().in("user_id", chunk))) {
+                userTunnelIdByPair.put(userTunnel.getUserId() + "_" + userTunnel.getTunnelId(), userTunnel.getId());
             }
+        }
+        Map<Long, List<Long>> entryNodesByTunnel = new HashMap<>();
+        for (List<Integer> chunk : partition(tunnelIds)) {
+            for (ChainTunnel chainTunnel : chainTunnelService.list(new QueryWrapper<ChainTunnel>().in("tunnel_id", chunk).eq("chain_type", 1))) {
+                entryNodesByTunnel.computeIfAbsent(chainTunnel.getTunnelId(), k -> new ArrayList<>()).add(chainTunnel.getNodeId());
+            }
+        }
 
+        for (Forward forward : forwards) {
+            Integer userTunnelId = userTunnelIdByPair.get(forward.getUserId() + "_" + forward.getTunnelId());
+            if (userTunnelId == null) continue;
+            String name = buildServiceName(forward.getId(), forward.getUserId(), userTunnelId);
+            for (Long nodeId : entryNodesByTunnel.getOrDefault(forward.getTunnelId().longValue(), Collections.emptyList())) {
+                servicesByNode.computeIfAbsent(nodeId, k -> new ArrayList<>()).add(name);
+            }
+        }
+        return servicesByNode;
+    }
 
-            userTunnel.setStatus(0);
-            userTunnelService.updateById(userTunnel);
+    /**
+     * 并发向各节点下发暂停命令，同一节点的服务合并成少量消息。
+     * 节点跳过不存在的服务；整批失败时（如旧版本节点遇到不存在的服务）逐个转发重新下发，
+     * 单个转发仍失败的记入待重试队列
+     * @return 暂停失败的服务数
+     */
+    private int dispatchPause(Map<Long, List<String>> servicesByNode) {
+        if (servicesByNode.isEmpty()) {
+            return 0;
         }
+        int total = servicesByNode.size();
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(total, PAUSE_PARALLELISM));
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Map.Entry<Long, List<String>> entry : servicesByNode.entrySet()) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    Long nodeId = entry.getKey();
+                    for (List<String> names : partition(entry.getValue())) {
+                        GostDto gostDto = GostUtil.PauseAndResumeServices(nodeId, names, "PauseService");
+                        if (Objects.equals(gostDto.getMsg(), "OK")) {
+                            continue;
+                        }
+                        log.info("节点{}批量暂停失败，逐个转发重试: {}", nodeId, gostDto.getMsg());
+                        for (String name : names) {
+                            if (!pauseOne(nodeId, name)) {
+                                failed.incrementAndGet();
+                                pendingPauses.computeIfAbsent(nodeId, k -> new ConcurrentHashMap<>())
+                                        .putIfAbsent(name, System.currentTimeMillis());
+                            }
+                        }
+                    }
+                    int finished = done.incrementAndGet();
+                    if (finished % 10 == 0 || finished == total) {
+                        log.info("暂停命令下发进度: {}/{}", finished, total);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+        if (failed.get() > 0) {
+            log.warn("{}个服务暂停失败，已加入重试队列（当前待重试{}个）", failed.get(), pendingPauseCount());
+        }
+        return failed.get();
     }
 
+    /**
+     * 单独暂停一个转发；节点上不存在该服务时不会转发流量，视为成功
+     */
+    private boolean pauseOne(Long nodeId, String name) {
+        GostDto gostDto = GostUtil.PauseAndResumeServices(nodeId, Collections.singletonList(name), "PauseService");
+        String msg = gostDto.getMsg();
+        if (Objects.equals(msg, "OK") || (msg != null && msg.contains("not found"))) {
+            return true;
+        }
+        log.info("节点{}暂停服务{}失败: {}", nodeId, name, msg);
+        return false;
+    }
 
+    /**
+     * 按批拆分，避免IN参数超过SQLite变量上限
+     */
+    private static <T> List<List<T>> partition(Collection<T> values) {
+        List<List<T>> chunks = new ArrayList<>();
+        List<T> current = new ArrayList<>(BATCH_SIZE);
+        for (T value : values) {
+            current.add(value);
+            if (current.size() == BATCH_SIZE) {
+                chunks.add(current);
+                current = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
 
 
     private String buildServiceName(Long forwardId, Integer userId, Integer userTunnelId) {
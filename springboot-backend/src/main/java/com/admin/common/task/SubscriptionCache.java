@@ -0,0 +1,252 @@
+package com.admin.common.task;
+
+import com.admin.common.utils.Md5Util;
+import com.admin.common.utils.TokenBucket;
+import com.admin.entity.User;
+import com.admin.entity.UserTunnel;
+import com.admin.service.UserService;
+import com.admin.service.UserTunnelService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订阅接口缓存
+ * 凭据（用户名 -> 用户ID、密码MD5）与用量快照（已用流量、总流量、到期时间）都缓存在内存中，
+ * 过期后才回查数据库；节点上报的流量同时累加到已缓存的快照上，两次回查之间用量也是最新的。
+ * 每个用户名按令牌桶限制回查数据库和密码错误的次数，命中缓存的请求不消耗令牌
+ */
+@Component
+public class SubscriptionCache {
+
+    private static final int MAX_ENTRIES = 10000;
+
+    @Resource
+    @Lazy
+    UserService userService;
+
+    @Resource
+    @Lazy
+    UserTunnelService userTunnelService;
+
+    private final long credentialTtlNanos;
+    private final long usageTtlNanos;
+    private final double ratePerSecond;
+    private final double burst;
+
+    private final Map<String, Credential> credentials = new ConcurrentHashMap<>();
+    private final Map<Long, Usage> users = new ConcurrentHashMap<>();
+    private final Map<Integer, Usage> userTunnels = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    public SubscriptionCache(@Value("${subscription.credential-ttl-seconds:60}") long credentialTtl,
+                             @Value("${subscription.usage-ttl-seconds:30}") long usageTtl,
+                             @Value("${subscription.rate-per-minute:20}") double ratePerMinute,
+                             @Value("${subscription.burst:5}") double burst) {
+        this.credentialTtlNanos = TimeUnit.SECONDS.toNanos(credentialTtl);
+        this.usageTtlNanos = TimeUnit.SECONDS.toNanos(usageTtl);
+        this.ratePerSecond = ratePerMinute / 60d;
+        this.burst = burst;
+    }
+
+    /**
+     * 校验用户名密码
+     *
+     * @return 用户ID；用户不存在或密码错误返回null
+     * @throws RateLimitedException 该用户名回查数据库或密码错误过于频繁
+     */
+    public Long verify(String user, String pwd) {
+        Credential credential = credentials.get(user);
+        long now = System.nanoTime();
+        if (credential == null || now - credential.loadedAt > credentialTtlNanos) {
+            acquire(user);
+            User userInfo = userService.getOne(new QueryWrapper<User>().select("id", "pwd").eq("user", user));
+            credential = userInfo == null
+                    ? new Credential(null, null, now)
+                    : new Credential(userInfo.getId(), userInfo.getPwd(), now);
+            put(credentials, user, credential);
+        }
+        if (credential.userId == null) {
+            return null;
+        }
+        if (!Objects.equals(Md5Util.md5(pwd), credential.pwdMd5)) {
+            acquire(user);
+            return null;
+        }
+        return credential.userId;
+    }
+
+    /**
+     * 用户名是否已在凭据缓存中且对应存在的用户，只查内存
+     */
+    public boolean isKnownUser(String user) {
+        Credential credential = user == null ? null : credentials.get(user);
+        return credential != null && credential.userId != null;
+    }
+
+    /**
+     * 用户的用量快照，用户不存在返回null
+     */
+    public Usage userUsage(Long userId) {
+        Usage usage = users.get(userId);
+        if (usage == null || System.nanoTime() - usage.loadedAt > usageTtlNanos) {
+            User user = userService.getById(userId);
+            if (user == null) {
+                users.remove(userId);
+                return null;
+            }
+            usage = new Usage(user.getId(), user.getInFlow(), user.getOutFlow(), user.getFlow(), user.getExpTime());
+            put(users, userId, usage);
+        }
+        return usage;
+    }
+
+    /**
+     * 用户隧道权限的用量快照，不存在返回null
+     */
+    public Usage userTunnelUsage(Integer userTunnelId) {
+        Usage usage = userTunnels.get(userTunnelId);
+        if (usage == null || System.nanoTime() - usage.loadedAt > usageTtlNanos) {
+            UserTunnel userTunnel = userTunnelService.getById(userTunnelId);
+            if (userTunnel == null) {
+                userTunnels.remove(userTunnelId);
+                return null;
+            }
+            usage = new Usage(userTunnel.getUserId().longValue(), userTunnel.getInFlow(), userTunnel.getOutFlow(),
+                    userTunnel.getFlow(), userTunnel.getExpTime());
+            put(userTunnels, userTunnelId, usage);
+        }
+        return usage;
+    }
+
+    /**
+     * 节点上报的流量写库后同步累加到已缓存的快照，未缓存的不处理
+     */
+    public void addTraffic(String userId, String userTunnelId, long in, long out) {
+        try {
+            Usage user = users.get(Long.valueOf(userId));
+            if (user != null) {
+                user.add(in, out);
+            }
+            Usage userTunnel = userTunnels.get(Integer.valueOf(userTunnelId));
+            if (userTunnel != null) {
+                userTunnel.add(in, out);
+            }
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    /**
+     * 用户名、密码变更或用户删除后立即失效，不等待TTL
+     */
+    public void evictUser(Long userId) {
+        credentials.values().removeIf(credential -> Objects.equals(credential.userId, userId));
+        users.remove(userId);
+        userTunnels.values().removeIf(usage -> Objects.equals(usage.userId, userId));
+    }
+
+    /**
+     * 用户隧道权限的配额、流量变更或删除后立即失效
+     */
+    public void evictUserTunnel(Integer userTunnelId) {
+        userTunnels.remove(userTunnelId);
+    }
+
+    /**
+     * 批量重置流量后清空全部用量快照
+     */
+    public void evictUsage() {
+        users.clear();
+        userTunnels.clear();
+    }
+
+    private void acquire(String user) {
+        TokenBucket bucket = buckets.get(user);
+        if (bucket == null) {
+            if (buckets.size() >= MAX_ENTRIES) {
+                buckets.clear();
+            }
+            bucket = buckets.computeIfAbsent(user, k -> new TokenBucket(ratePerSecond, burst));
+        }
+        if (!bucket.tryAcquire()) {
+            throw new RateLimitedException();
+        }
+    }
+
+    private static <K, V> void put(Map<K, V> map, K key, V value) {
+        if (map.size() >= MAX_ENTRIES && !map.containsKey(key)) {
+            map.clear();
+        }
+        map.put(key, value);
+    }
+
+    private static class Credential {
+        final Long userId;
+        final String pwdMd5;
+        final long loadedAt;
+
+        Credential(Long userId, String pwdMd5, long loadedAt) {
+            this.userId = userId;
+            this.pwdMd5 = pwdMd5;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * 用量快照，流量计数可被上报并发累加
+     */
+    public static class Usage {
+        private final Long userId;
+        private final long flow;
+        private final long expTime;
+        private final long loadedAt = System.nanoTime();
+        private long inFlow;
+        private long outFlow;
+
+        Usage(Long userId, Long inFlow, Long outFlow, Long flow, Long expTime) {
+            this.userId = userId;
+            this.inFlow = inFlow == null ? 0 : inFlow;
+            this.outFlow = outFlow == null ? 0 : outFlow;
+            this.flow = flow == null ? 0 : flow;
+            this.expTime = expTime == null ? 0 : expTime;
+        }
+
+        synchronized void add(long in, long out) {
+            inFlow += in;
+            outFlow += out;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public synchronized long getInFlow() {
+            return inFlow;
+        }
+
+        public synchronized long getOutFlow() {
+            return outFlow;
+        }
+
+        public long getFlow() {
+            return flow;
+        }
+
+        public long getExpTime() {
+            return expTime;
+        }
+    }
+
+    public static class RateLimitedException extends RuntimeException {
+        public RateLimitedException() {
+            super("请求过于频繁，请稍后再试");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.admin.common.task;
+
+import com.admin.common.interceptor.TableChangeListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据表变更版本
+ * 每张表一个单调递增的版本号，经 MyBatis 的写入提交后加一。
+ * 初始值取启动时间，面板重启后版本号不会与重启前重复
+ */
+@Component
+public class TableVersions implements TableChangeListener {
+
+    private final long epoch = System.currentTimeMillis();
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    @Override
+    public void onTablesChanged(Set<String> tables) {
+        for (String table : tables) {
+            bump(table);
+        }
+    }
+
+    /**
+     * 不经过 MyBatis 的写入（如 JdbcTemplate）需要手动调用
+     */
+    public void bump(String table) {
+        counter(table).incrementAndGet();
+    }
+
+    public long version(String table) {
+        return counter(table).get();
+    }
+
+    /**
+     * 多张表的版本组合，任一表变化结果都会变化
+     */
+    public String fingerprint(String... tables) {
+        StringBuilder sb = new StringBuilder();
+        for (String table : tables) {
+            sb.append(table).append(':').append(version(table)).append(';');
+        }
+        return sb.toString();
+    }
+
+    private AtomicLong counter(String table) {
+        return versions.computeIfAbsent(table, k -> new AtomicLong(epoch));
+    }
+}
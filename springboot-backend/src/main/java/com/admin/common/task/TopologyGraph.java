@@ -0,0 +1,452 @@
+package com.admin.common.task;
+
+import com.admin.common.interceptor.RowChange;
+import com.admin.common.interceptor.RowChangeListener;
+import com.admin.entity.ChainTunnel;
+import com.admin.entity.Forward;
+import com.admin.entity.ForwardPort;
+import com.admin.service.ChainTunnelService;
+import com.admin.service.ForwardPortService;
+import com.admin.service.ForwardService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+
+/**
+ * 节点、隧道、转发之间的拓扑关系（内存邻接表）
+ * 启动时从 chain_tunnel / forward / forward_port 加载，
+ * 变更提交后按行增量更新：只重新读取变化的行（或变化隧道/转发下的行），计数累加写入忽略；
+ * 无法定位到行的写入才让对应部分整体重新加载。
+ * 视图只反映已提交的数据，事务内需要读到自己写入的调用方自行合并本次写入。
+ * 返回的实体为共享只读对象，调用方不要修改
+ */
+@Slf4j
+@Component
+public class TopologyGraph implements ApplicationRunner, RowChangeListener {
+
+    private static final String TUNNEL_TABLE = "tunnel";
+    private static final String CHAIN_TABLE = "chain_tunnel";
+    private static final String FORWARD_TABLE = "forward";
+    private static final String FORWARD_PORT_TABLE = "forward_port";
+
+    private static final String[] FORWARD_COLUMNS = {"id", "user_id", "user_name", "name", "tunnel_id", "remote_addr", "status"};
+
+    @Resource
+    @Lazy
+    ChainTunnelService chainTunnelService;
+
+    @Resource
+    @Lazy
+    ForwardService forwardService;
+
+    @Resource
+    @Lazy
+    ForwardPortService forwardPortService;
+
+    // 加载与增量更新在各自的锁内进行；为null表示需要整体重新加载
+    private final Object chainLock = new Object();
+    private final Object forwardLock = new Object();
+
+    private volatile ChainIndex chainIndex;
+    private volatile ForwardIndex forwardIndex;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            Topology topology = view();
+            log.info("拓扑加载完成: 隧道{}个, 转发{}个", topology.chains.byTunnel.size(), topology.forwards.byId.size());
+        } catch (Exception e) {
+            log.warn("拓扑加载失败，将在首次使用时重试: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void onRowsChanged(List<RowChange> changes) {
+        Delta chains = new Delta();
+        Delta forwards = new Delta();
+        for (RowChange change : changes) {
+            if (change.isCounter()) {
+                continue;
+            }
+            switch (change.getTable()) {
+                case CHAIN_TABLE:
+                    chains.row(change);
+                    break;
+                case TUNNEL_TABLE:
+                    // 隧道本身的列不在索引中，只关心chain_tunnel写入推导出的隧道
+                    if (change.isLinked()) {
+                        chains.parent(change);
+                    }
+                    break;
+                case FORWARD_PORT_TABLE:
+                    forwards.row(change);
+                    break;
+                case FORWARD_TABLE:
+                    // 转发本身的列也在索引中，无法定位到行的直接写入（如按用户批量改状态）需要整体重新加载
+                    if (!change.isLinked() && change.getId() == null) {
+                        forwards.reload = true;
+                    } else {
+                        forwards.parent(change);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (!chains.isEmpty()) {
+            applyChains(chains);
+        }
+        if (!forwards.isEmpty()) {
+            applyForwards(forwards);
+        }
+    }
+
+    /**
+     * 获取当前拓扑视图；同一次操作内应复用同一个视图
+     */
+    public Topology view() {
+        return new Topology(currentChains(), currentForwards());
+    }
+
+    private ChainIndex currentChains() {
+        ChainIndex index = chainIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (chainLock) {
+            if (chainIndex == null) {
+                chainIndex = new ChainIndex(chainTunnelService.list());
+            }
+            return chainIndex;
+        }
+    }
+
+    private ForwardIndex currentForwards() {
+        ForwardIndex index = forwardIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (forwardLock) {
+            if (forwardIndex == null) {
+                List<Forward> forwards = forwardService.list(new QueryWrapper<Forward>().select(FORWARD_COLUMNS));
+                forwardIndex = new ForwardIndex(forwards, forwardPortService.list());
+            }
+            return forwardIndex;
+        }
+    }
+
+    private void applyChains(Delta delta) {
+        synchronized (chainLock) {
+            ChainIndex index = chainIndex;
+            if (index == null) {
+                return;
+            }
+            if (delta.needsReload()) {
+                chainIndex = null;
+                return;
+            }
+            Map<Long, ChainTunnel> rows = new TreeMap<>(index.rows);
+            rows.keySet().removeAll(delta.deletedIds);
+            if (!delta.parentIds.isEmpty()) {
+                rows.values().removeIf(ct -> delta.parentIds.contains(ct.getTunnelId()));
+                chainTunnelService.list(new QueryWrapper<ChainTunnel>().in("tunnel_id", delta.parentIds))
+                        .forEach(ct -> rows.put(ct.getId(), ct));
+            }
+            if (!delta.rowIds.isEmpty()) {
+                rows.keySet().removeAll(delta.rowIds);
+                chainTunnelService.listByIds(delta.rowIds).forEach(ct -> rows.put(ct.getId(), ct));
+            }
+            chainIndex = new ChainIndex(rows.values());
+        }
+    }
+
+    private void applyForwards(Delta delta) {
+        synchronized (forwardLock) {
+            ForwardIndex index = forwardIndex;
+            if (index == null) {
+                return;
+            }
+            if (delta.needsReload()) {
+                forwardIndex = null;
+                return;
+            }
+            Map<Long, Forward> forwards = new TreeMap<>(index.byId);
+            Map<Long, ForwardPort> ports = new TreeMap<>(index.ports);
+            ports.keySet().removeAll(delta.deletedIds);
+            if (!delta.parentIds.isEmpty()) {
+                forwards.keySet().removeAll(delta.parentIds);
+                forwardService.list(new QueryWrapper<Forward>().select(FORWARD_COLUMNS).in("id", delta.parentIds))
+                        .forEach(f -> forwards.put(f.getId(), f));
+                ports.values().removeIf(fp -> delta.parentIds.contains(fp.getForwardId()));
+                forwardPortService.list(new QueryWrapper<ForwardPort>().in("forward_id", delta.parentIds))
+                        .forEach(fp -> ports.put(fp.getId(), fp));
+            }
+            if (!delta.rowIds.isEmpty()) {
+                ports.keySet().removeAll(delta.rowIds);
+                forwardPortService.listByIds(delta.rowIds).forEach(fp -> ports.put(fp.getId(), fp));
+            }
+            forwardIndex = new ForwardIndex(forwards.values(), ports.values());
+        }
+    }
+
+    /**
+     * 一次提交中某部分（隧道链路或转发）的行变化
+     * rowIds/deletedIds 为子表（chain_tunnel / forward_port）的行，parentIds 为需要整体重新读取子行的父表行
+     */
+    private static class Delta {
+        final Set<Long> rowIds = new HashSet<>();
+        final Set<Long> deletedIds = new HashSet<>();
+        final Set<Long> parentIds = new HashSet<>();
+        boolean rowUnknown;
+        boolean parentUnknown;
+        boolean reload;
+
+        void row(RowChange change) {
+            Long id = change.getId();
+            if (id == null) {
+                rowUnknown = true;
+            } else if (change.isDeleted()) {
+                deletedIds.add(id);
+            } else {
+                rowIds.add(id);
+            }
+        }
+
+        void parent(RowChange change) {
+            Long id = change.getId();
+            if (id == null) {
+                parentUnknown = true;
+            } else {
+                parentIds.add(id);
+            }
+        }
+
+        /**
+         * 子表写入无法定位到行，且父表也无法定位时，只能整体重新加载
+         */
+        boolean needsReload() {
+            return reload || rowUnknown && (parentUnknown || parentIds.isEmpty());
+        }
+
+        boolean isEmpty() {
+            return !reload && !rowUnknown && !parentUnknown
+                    && rowIds.isEmpty() && deletedIds.isEmpty() && parentIds.isEmpty();
+        }
+    }
+
+    /**
+     * 某一时刻的拓扑快照
+     */
+    public static class Topology {
+        private final ChainIndex chains;
+        private final ForwardIndex forwards;
+
+        Topology(ChainIndex chains, ForwardIndex forwards) {
+            this.chains = chains;
+            this.forwards = forwards;
+        }
+
+        /**
+         * 隧道的全部节点配置
+         */
+        public List<ChainTunnel> chainsOfTunnel(Long tunnelId) {
+            TunnelChains tc = chains.byTunnel.get(tunnelId);
+            return tc == null ? Collections.emptyList() : tc.all;
+        }
+
+        /**
+         * 隧道的入口节点 (chainType = 1)
+         */
+        public List<ChainTunnel> entriesOfTunnel(Long tunnelId) {
+            TunnelChains tc = chains.byTunnel.get(tunnelId);
+            return tc == null ? Collections.emptyList() : tc.entries;
+        }
+
+        /**
+         * 隧道的入口节点ID
+         */
+        public Set<Long> entryNodeIds(Long tunnelId) {
+            Set<Long> ids = new LinkedHashSet<>();
+            for (ChainTunnel ct : entriesOfTunnel(tunnelId)) {
+                ids.add(ct.getNodeId());
+            }
+            return ids;
+        }
+
+        /**
+         * 隧道的转发链节点 (chainType = 2)，按inx分组并排序
+         */
+        public List<List<ChainTunnel>> hopsOfTunnel(Long tunnelId) {
+            TunnelChains tc = chains.byTunnel.get(tunnelId);
+            return tc == null ? Collections.emptyList() : tc.hops;
+        }
+
+        /**
+         * 隧道的出口节点 (chainType = 3)
+         */
+        public List<ChainTunnel> exitsOfTunnel(Long tunnelId) {
+            TunnelChains tc = chains.byTunnel.get(tunnelId);
+            return tc == null ? Collections.emptyList() : tc.exits;
+        }
+
+        /**
+         * 经过该节点的隧道ID（任意角色）
+         */
+        public Set<Long> tunnelsThroughNode(Long nodeId) {
+            Set<Long> ids = new LinkedHashSet<>();
+            for (ChainTunnel ct : chains.byNode.getOrDefault(nodeId, Collections.emptyList())) {
+                ids.add(ct.getTunnelId());
+            }
+            return ids;
+        }
+
+        /**
+         * 该节点上的隧道节点配置
+         */
+        public List<ChainTunnel> chainsOnNode(Long nodeId) {
+            return chains.byNode.getOrDefault(nodeId, Collections.emptyList());
+        }
+
+        /**
+         * 在该节点上监听端口的转发ID
+         */
+        public Set<Long> forwardsOnNode(Long nodeId) {
+            Set<Long> ids = new LinkedHashSet<>();
+            for (ForwardPort fp : portsOnNode(nodeId)) {
+                ids.add(fp.getForwardId());
+            }
+            return ids;
+        }
+
+        /**
+         * 该节点上的转发端口
+         */
+        public List<ForwardPort> portsOnNode(Long nodeId) {
+            return forwards.portsByNode.getOrDefault(nodeId, Collections.emptyList());
+        }
+
+        /**
+         * 使用该隧道的转发ID
+         */
+        public List<Long> forwardsOfTunnel(Long tunnelId) {
+            return forwards.byTunnel.getOrDefault(tunnelId, Collections.emptyList());
+        }
+
+        /**
+         * 转发所属隧道ID，转发不存在时为null
+         */
+        public Long tunnelOfForward(Long forwardId) {
+            Forward forward = forwards.byId.get(forwardId);
+            return forward == null ? null : forward.getTunnelId().longValue();
+        }
+
+        /**
+         * 转发摘要，只包含 id、userId、userName、name、tunnelId、remoteAddr、status；不存在时为null
+         */
+        public Forward forward(Long forwardId) {
+            return forwards.byId.get(forwardId);
+        }
+
+        /**
+         * 转发在各入口节点上的端口
+         */
+        public List<ForwardPort> portsOfForward(Long forwardId) {
+            return forwards.portsByForward.getOrDefault(forwardId, Collections.emptyList());
+        }
+
+        /**
+         * 转发在指定节点上的端口，没有时为null
+         */
+        public ForwardPort portOfForward(Long forwardId, Long nodeId) {
+            for (ForwardPort fp : portsOfForward(forwardId)) {
+                if (Objects.equals(fp.getNodeId(), nodeId)) {
+                    return fp;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 节点上已占用的端口 -> 占用者（"tunnel:隧道ID" 或 "forward:转发ID"）
+         */
+        public Map<Integer, String> portOwners(Long nodeId) {
+            Map<Integer, String> owners = new TreeMap<>();
+            for (ChainTunnel ct : chainsOnNode(nodeId)) {
+                if (ct.getPort() != null) {
+                    owners.put(ct.getPort(), "tunnel:" + ct.getTunnelId());
+                }
+            }
+            for (ForwardPort fp : portsOnNode(nodeId)) {
+                if (fp.getPort() != null) {
+                    owners.putIfAbsent(fp.getPort(), "forward:" + fp.getForwardId());
+                }
+            }
+            return owners;
+        }
+    }
+
+    private static class TunnelChains {
+        final List<ChainTunnel> all = new ArrayList<>();
+        final List<ChainTunnel> entries = new ArrayList<>();
+        final List<ChainTunnel> exits = new ArrayList<>();
+        List<List<ChainTunnel>> hops = Collections.emptyList();
+    }
+
+    private static class ChainIndex {
+        final Map<Long, ChainTunnel> rows = new TreeMap<>();
+        final Map<Long, TunnelChains> byTunnel = new HashMap<>();
+        final Map<Long, List<ChainTunnel>> byNode = new HashMap<>();
+
+        ChainIndex(Collection<ChainTunnel> rows) {
+            Map<Long, TreeMap<Integer, List<ChainTunnel>>> hopsByTunnel = new HashMap<>();
+            for (ChainTunnel ct : rows) {
+                this.rows.put(ct.getId(), ct);
+                TunnelChains tc = byTunnel.computeIfAbsent(ct.getTunnelId(), k -> new TunnelChains());
+                tc.all.add(ct);
+                byNode.computeIfAbsent(ct.getNodeId(), k -> new ArrayList<>()).add(ct);
+                if (ct.getChainType() == null) {
+                    continue;
+                }
+                if (ct.getChainType() == 1) {
+                    tc.entries.add(ct);
+                } else if (ct.getChainType() == 2) {
+                    hopsByTunnel.computeIfAbsent(ct.getTunnelId(), k -> new TreeMap<>())
+                            .computeIfAbsent(ct.getInx() != null ? ct.getInx() : 0, k -> new ArrayList<>()).add(ct);
+                } else if (ct.getChainType() == 3) {
+                    tc.exits.add(ct);
+                }
+            }
+            hopsByTunnel.forEach((tunnelId, hops) -> byTunnel.get(tunnelId).hops = new ArrayList<>(hops.values()));
+        }
+    }
+
+    private static class ForwardIndex {
+        final Map<Long, Forward> byId = new HashMap<>();
+        final Map<Long, ForwardPort> ports = new HashMap<>();
+        final Map<Long, List<Long>> byTunnel = new HashMap<>();
+        final Map<Long, List<ForwardPort>> portsByForward = new HashMap<>();
+        final Map<Long, List<ForwardPort>> portsByNode = new HashMap<>();
+
+        ForwardIndex(Collection<Forward> forwards, Collection<ForwardPort> ports) {
+            for (Forward forward : forwards) {
+                if (forward.getTunnelId() == null) {
+                    continue;
+                }
+                Long tunnelId = forward.getTunnelId().longValue();
+                byId.put(forward.getId(), forward);
+                byTunnel.computeIfAbsent(tunnelId, k -> new ArrayList<>()).add(forward.getId());
+            }
+            for (ForwardPort fp : ports) {
+                this.ports.put(fp.getId(), fp);
+                portsByForward.computeIfAbsent(fp.getForwardId(), k -> new ArrayList<>()).add(fp);
+                portsByNode.computeIfAbsent(fp.getNodeId(), k -> new ArrayList<>()).add(fp);
+            }
+        }
+    }
+}
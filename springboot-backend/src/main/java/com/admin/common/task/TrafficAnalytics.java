@@ -0,0 +1,574 @@
+package com.admin.common.task;
+
+import com.admin.entity.Forward;
+import com.admin.entity.Node;
+import com.admin.entity.Tunnel;
+import com.admin.entity.User;
+import com.admin.service.ForwardService;
+import com.admin.service.NodeService;
+import com.admin.service.TunnelService;
+import com.admin.service.UserService;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+
+/**
+ * 内存流量分析
+ * 节点上报的流量（已按隧道倍率换算）按转发、用户、隧道、节点四个维度记入时间桶：
+ * 最近1小时为12个5分钟桶，最近24小时为24个1小时桶。每个维度按列存储，
+ * 一个时间桶是一列 long 数组，实体占用其中固定的下标，查询时逐列累加后用定长小根堆选出前N名，
+ * 不排序全部实体。支持按流量、速率、增速（本窗口速率减上一个等长窗口速率）排名，以及实体间的分位数分布。
+ * 24小时无流量的实体定期回收下标；面板重启后从零开始累计
+ */
+@Slf4j
+@Component
+public class TrafficAnalytics {
+
+    public static final List<String> DIMENSIONS = List.of("forward", "user", "tunnel", "node");
+    public static final List<String> METRICS = List.of("bytes", "rate", "growth");
+
+    private static final long MINUTE_MS = 60_000L;
+    private static final long FINE_WIDTH_MS = 5 * MINUTE_MS;
+    private static final int FINE_BUCKETS = 12;
+    private static final long COARSE_WIDTH_MS = 60 * MINUTE_MS;
+    private static final int COARSE_BUCKETS = 24;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    @Resource
+    @Lazy
+    ForwardService forwardService;
+
+    @Resource
+    @Lazy
+    UserService userService;
+
+    @Resource
+    @Lazy
+    TunnelService tunnelService;
+
+    @Resource
+    @Lazy
+    NodeService nodeService;
+
+    private final boolean enabled;
+    private final Map<String, Series> dimensions = new LinkedHashMap<>();
+
+    public TrafficAnalytics(@Value("${traffic-analytics.enabled:true}") boolean enabled,
+                            @Value("${traffic-analytics.max-entities:200000}") int maxEntities) {
+        this.enabled = enabled;
+        for (String dimension : DIMENSIONS) {
+            dimensions.put(dimension, new Series(maxEntities));
+        }
+    }
+
+    public boolean supports(String dimension) {
+        return dimensions.containsKey(dimension);
+    }
+
+    /**
+     * 记录一条上报的流量，解析失败或为空的维度跳过
+     */
+    public void record(Long nodeId, String forwardId, String userId, Integer tunnelId, long bytes) {
+        if (!enabled || bytes <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        add("forward", parse(forwardId), now, bytes);
+        add("user", parse(userId), now, bytes);
+        add("tunnel", tunnelId == null ? null : tunnelId.longValue(), now, bytes);
+        add("node", nodeId, now, bytes);
+    }
+
+    /**
+     * 窗口内排名前 limit 的实体
+     *
+     * @param metric bytes 流量 / rate 平均速率 / growth 速率增量，只返回大于0的实体
+     */
+    public JSONObject top(String dimension, int windowMinutes, int limit, String metric) {
+        boolean growth = "growth".equals(metric);
+        long now = System.currentTimeMillis();
+        Window window = Window.of(windowMinutes, growth, now);
+        Series series = dimensions.get(dimension);
+
+        long[] ids;
+        long[] sums;
+        long[] previous = null;
+        synchronized (series) {
+            int n = series.size;
+            ids = Arrays.copyOf(series.ids, n);
+            sums = new long[n];
+            window.ring(series).sum(window.from, window.to, sums);
+            if (growth) {
+                previous = new long[n];
+                window.ring(series).sum(window.from - window.buckets, window.from, previous);
+            }
+        }
+
+        long[] scores = new long[ids.length];
+        for (int i = 0; i < scores.length; i++) {
+            if (ids[i] < 0) continue;
+            switch (metric) {
+                case "rate":
+                    scores[i] = perSecond(sums[i], window.spanMs);
+                    break;
+                case "growth":
+                    scores[i] = perSecond(sums[i], window.spanMs) - perSecond(previous[i], window.buckets * window.widthMs);
+                    break;
+                default:
+                    scores[i] = sums[i];
+            }
+        }
+
+        int[] top = select(scores, limit);
+        Map<Long, String> names = names(dimension, top, ids);
+        JSONArray items = new JSONArray();
+        for (int index : top) {
+            JSONObject item = new JSONObject();
+            item.put("id", ids[index]);
+            item.put("name", names.get(ids[index]));
+            item.put("bytes", sums[index]);
+            item.put("bytesPerSecond", perSecond(sums[index], window.spanMs));
+            if (growth) {
+                item.put("previousBytesPerSecond", perSecond(previous[index], window.buckets * window.widthMs));
+                item.put("growth", scores[index]);
+            }
+            items.add(item);
+        }
+        JSONObject result = window.describe(dimension);
+        result.put("metric", metric);
+        result.put("items", items);
+        result.put("costMs", System.currentTimeMillis() - now);
+        return result;
+    }
+
+    /**
+     * 单个实体在窗口内的流量、平均速率和逐桶明细
+     */
+    public JSONObject rate(String dimension, Long id, int windowMinutes) {
+        long now = System.currentTimeMillis();
+        Window window = Window.of(windowMinutes, false, now);
+        Series series = dimensions.get(dimension);
+        long[] buckets = new long[window.buckets];
+        synchronized (series) {
+            Integer slot = series.slots.get(id);
+            if (slot != null) {
+                window.ring(series).read(slot, window.from, buckets);
+            }
+        }
+
+        long total = 0;
+        JSONArray points = new JSONArray();
+        for (int i = 0; i < buckets.length; i++) {
+            long start = (window.from + i) * window.widthMs;
+            long span = Math.min(window.widthMs, now - start + 1);
+            JSONObject point = new JSONObject();
+            point.put("time", start);
+            point.put("bytes", buckets[i]);
+            point.put("bytesPerSecond", perSecond(buckets[i], span));
+            points.add(point);
+            total += buckets[i];
+        }
+        JSONObject result = window.describe(dimension);
+        result.put("id", id);
+        result.put("bytes", total);
+        result.put("bytesPerSecond", perSecond(total, window.spanMs));
+        result.put("points", points);
+        return result;
+    }
+
+    /**
+     * 窗口内有流量的实体之间的分布：最近秩法取各分位数的流量
+     */
+    public JSONObject percentiles(String dimension, int windowMinutes, List<Double> percentiles) {
+        long now = System.currentTimeMillis();
+        Window window = Window.of(windowMinutes, false, now);
+        Series series = dimensions.get(dimension);
+        long[] sums;
+        synchronized (series) {
+            sums = new long[series.size];
+            window.ring(series).sum(window.from, window.to, sums);
+        }
+
+        int count = 0;
+        long total = 0;
+        for (long sum : sums) {
+            if (sum > 0) {
+                sums[count++] = sum;
+                total += sum;
+            }
+        }
+        long[] values = Arrays.copyOf(sums, count);
+        Arrays.sort(values);
+
+        JSONArray items = new JSONArray();
+        for (Double p : percentiles == null || percentiles.isEmpty() ? List.of(50d, 90d, 99d) : percentiles) {
+            JSONObject item = new JSONObject();
+            item.put("percentile", p);
+            if (count > 0) {
+                int rank = (int) Math.ceil(p / 100 * count);
+                long value = values[Math.min(count, Math.max(1, rank)) - 1];
+                item.put("bytes", value);
+                item.put("bytesPerSecond", perSecond(value, window.spanMs));
+            }
+            items.add(item);
+        }
+        JSONObject result = window.describe(dimension);
+        result.put("count", count);
+        result.put("bytes", total);
+        result.put("min", count > 0 ? values[0] : 0);
+        result.put("max", count > 0 ? values[count - 1] : 0);
+        result.put("mean", count > 0 ? total / count : 0);
+        result.put("items", items);
+        result.put("costMs", System.currentTimeMillis() - now);
+        return result;
+    }
+
+    /**
+     * 各维度跟踪的实体数、容量与因超出上限被丢弃的记录数
+     */
+    public JSONObject stats() {
+        JSONObject stats = new JSONObject();
+        dimensions.forEach((name, series) -> {
+            JSONObject item = new JSONObject();
+            synchronized (series) {
+                item.put("entities", series.slots.size());
+                item.put("capacity", series.ids.length);
+                item.put("dropped", series.dropped);
+                item.put("memoryBytes", (long) series.ids.length * Long.BYTES * (1 + FINE_BUCKETS + COARSE_BUCKETS));
+            }
+            stats.put(name, item);
+        });
+        stats.put("enabled", enabled);
+        return stats;
+    }
+
+    /**
+     * 回收24小时内没有流量的实体的下标
+     */
+    @Scheduled(fixedDelay = 600000, initialDelay = 600000)
+    public void compact() {
+        long now = System.currentTimeMillis();
+        dimensions.forEach((name, series) -> {
+            int released;
+            synchronized (series) {
+                released = series.compact(now);
+            }
+            if (released > 0) {
+                log.debug("流量分析 {} 维度回收 {} 个空闲实体", name, released);
+            }
+        });
+    }
+
+    private void add(String dimension, Long id, long now, long bytes) {
+        if (id == null || id <= 0) {
+            return;
+        }
+        Series series = dimensions.get(dimension);
+        synchronized (series) {
+            series.add(id, now, bytes);
+        }
+    }
+
+    /**
+     * 定长小根堆选出得分最高的 limit 个下标（得分需大于0），按得分从高到低返回
+     */
+    static int[] select(long[] scores, int limit) {
+        int[] heap = new int[Math.max(0, limit)];
+        int size = 0;
+        for (int i = 0; i < scores.length && heap.length > 0; i++) {
+            if (scores[i] <= 0) continue;
+            if (size < heap.length) {
+                heap[size] = i;
+                siftUp(heap, size++, scores);
+            } else if (scores[i] > scores[heap[0]]) {
+                heap[0] = i;
+                siftDown(heap, size, scores);
+            }
+        }
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size, scores);
+        }
+        return result;
+    }
+
+    private static void siftUp(int[] heap, int index, long[] scores) {
+        int value = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[heap[parent]] <= scores[value]) break;
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    private static void siftDown(int[] heap, int size, long[] scores) {
+        if (size == 0) return;
+        int index = 0;
+        int value = heap[0];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) break;
+            if (child + 1 < size && scores[heap[child + 1]] < scores[heap[child]]) child++;
+            if (scores[value] <= scores[heap[child]]) break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+
+    /**
+     * 只为排名结果查名称，不回查全部实体
+     */
+    private Map<Long, String> names(String dimension, int[] top, long[] ids) {
+        Map<Long, String> names = new HashMap<>();
+        if (top.length == 0) {
+            return names;
+        }
+        List<Long> idList = new ArrayList<>(top.length);
+        for (int index : top) {
+            idList.add(ids[index]);
+        }
+        switch (dimension) {
+            case "forward":
+                forwardService.list(new QueryWrapper<Forward>().select("id", "name").in("id", idList))
+                        .forEach(forward -> names.put(forward.getId(), forward.getName()));
+                break;
+            case "user":
+                userService.list(new QueryWrapper<User>().select("id", "user").in("id", idList))
+                        .forEach(user -> names.put(user.getId(), user.getUser()));
+                break;
+            case "tunnel":
+                tunnelService.list(new QueryWrapper<Tunnel>().select("id", "name").in("id", idList))
+                        .forEach(tunnel -> names.put(tunnel.getId(), tunnel.getName()));
+                break;
+            case "node":
+                nodeService.list(new QueryWrapper<Node>().select("id", "name").in("id", idList))
+                        .forEach(node -> names.put(node.getId(), node.getName()));
+                break;
+            default:
+        }
+        return names;
+    }
+
+    private static long perSecond(long bytes, long spanMs) {
+        return spanMs <= 0 ? 0 : bytes * 1000 / spanMs;
+    }
+
+    private static Long parse(String id) {
+        try {
+            return Long.valueOf(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 查询窗口：窗口（增速查询时连同上一个窗口）能放进1小时细粒度桶时用细粒度，否则用小时桶
+     */
+    private static class Window {
+        final boolean fine;
+        final long widthMs;
+        final int buckets;
+        // 桶号范围 [from, to)，包含当前未走完的桶
+        final long from;
+        final long to;
+        final long spanMs;
+
+        private Window(boolean fine, long widthMs, int buckets, long now) {
+            this.fine = fine;
+            this.widthMs = widthMs;
+            this.buckets = buckets;
+            this.to = now / widthMs + 1;
+            this.from = to - buckets;
+            this.spanMs = now - from * widthMs + 1;
+        }
+
+        static Window of(int minutes, boolean previous, long now) {
+            int factor = previous ? 2 : 1;
+            int fineBuckets = (int) Math.ceil(minutes * MINUTE_MS / (double) FINE_WIDTH_MS);
+            if (fineBuckets * factor <= FINE_BUCKETS) {
+                return new Window(true, FINE_WIDTH_MS, Math.max(1, fineBuckets), now);
+            }
+            int hours = (int) Math.ceil(minutes * MINUTE_MS / (double) COARSE_WIDTH_MS);
+            return new Window(false, COARSE_WIDTH_MS, Math.max(1, Math.min(hours, COARSE_BUCKETS / factor)), now);
+        }
+
+        Ring ring(Series series) {
+            return fine ? series.fine : series.coarse;
+        }
+
+        JSONObject describe(String dimension) {
+            JSONObject result = new JSONObject();
+            result.put("dimension", dimension);
+            result.put("bucketMinutes", widthMs / MINUTE_MS);
+            result.put("windowMinutes", buckets * widthMs / MINUTE_MS);
+            result.put("since", from * widthMs);
+            return result;
+        }
+    }
+
+    /**
+     * 一个维度的列式存储：实体ID占用固定下标，两个时间环各自的每一列都按该下标累加，
+     * 释放的下标进入空闲栈复用。调用方持有本对象的锁
+     */
+    static class Series {
+        final int maxEntities;
+        final Map<Long, Integer> slots = new HashMap<>();
+        // 下标 -> 实体ID，空闲下标为 -1
+        long[] ids = new long[INITIAL_CAPACITY];
+        // 曾经使用过的最大下标 + 1
+        int size;
+        int[] free = new int[16];
+        int freeCount;
+        long dropped;
+        final Ring fine = new Ring(FINE_BUCKETS, FINE_WIDTH_MS, INITIAL_CAPACITY);
+        final Ring coarse = new Ring(COARSE_BUCKETS, COARSE_WIDTH_MS, INITIAL_CAPACITY);
+
+        Series(int maxEntities) {
+            this.maxEntities = maxEntities;
+        }
+
+        void add(long id, long now, long bytes) {
+            Integer slot = slots.get(id);
+            if (slot == null) {
+                if (slots.size() >= maxEntities) {
+                    dropped++;
+                    return;
+                }
+                slot = allocate(id);
+            }
+            fine.add(slot, now, bytes);
+            coarse.add(slot, now, bytes);
+        }
+
+        private int allocate(long id) {
+            int slot;
+            if (freeCount > 0) {
+                slot = free[--freeCount];
+            } else {
+                if (size == ids.length) {
+                    int capacity = ids.length * 2;
+                    ids = Arrays.copyOf(ids, capacity);
+                    fine.grow(capacity);
+                    coarse.grow(capacity);
+                }
+                slot = size++;
+            }
+            ids[slot] = id;
+            slots.put(id, slot);
+            return slot;
+        }
+
+        int compact(long now) {
+            fine.expire(now);
+            coarse.expire(now);
+            int released = 0;
+            for (int slot = 0; slot < size; slot++) {
+                if (ids[slot] < 0 || !coarse.isIdle(slot)) continue;
+                slots.remove(ids[slot]);
+                ids[slot] = -1;
+                fine.clear(slot);
+                if (freeCount == free.length) {
+                    free = Arrays.copyOf(free, free.length * 2);
+                }
+                free[freeCount++] = slot;
+                released++;
+            }
+            return released;
+        }
+    }
+
+    /**
+     * 时间环：每个位置是一列，记录它当前存放的桶号，写入新桶时整列清零复用
+     */
+    static class Ring {
+        final long widthMs;
+        final long[][] columns;
+        final long[] epochs;
+
+        Ring(int buckets, long widthMs, int capacity) {
+            this.widthMs = widthMs;
+            this.columns = new long[buckets][capacity];
+            this.epochs = new long[buckets];
+            Arrays.fill(epochs, -1);
+        }
+
+        void add(int slot, long now, long bytes) {
+            long bucket = now / widthMs;
+            int position = (int) (bucket % columns.length);
+            if (epochs[position] != bucket) {
+                Arrays.fill(columns[position], 0);
+                epochs[position] = bucket;
+            }
+            columns[position][slot] += bytes;
+        }
+
+        /**
+         * 把桶号在 [from, to) 内的列逐列累加到 sums
+         */
+        void sum(long from, long to, long[] sums) {
+            for (int position = 0; position < columns.length; position++) {
+                if (epochs[position] < from || epochs[position] >= to) continue;
+                long[] column = columns[position];
+                for (int i = 0; i < sums.length; i++) {
+                    sums[i] += column[i];
+                }
+            }
+        }
+
+        /**
+         * 按桶号顺序读出一个实体从 from 开始的各桶流量
+         */
+        void read(int slot, long from, long[] buckets) {
+            for (int i = 0; i < buckets.length; i++) {
+                long bucket = from + i;
+                int position = (int) (bucket % columns.length);
+                buckets[i] = epochs[position] == bucket ? columns[position][slot] : 0;
+            }
+        }
+
+        void grow(int capacity) {
+            for (int position = 0; position < columns.length; position++) {
+                columns[position] = Arrays.copyOf(columns[position], capacity);
+            }
+        }
+
+        /**
+         * 清空已滑出时间环的列
+         */
+        void expire(long now) {
+            long oldest = now / widthMs - columns.length;
+            for (int position = 0; position < columns.length; position++) {
+                if (epochs[position] >= 0 && epochs[position] <= oldest) {
+                    Arrays.fill(columns[position], 0);
+                    epochs[position] = -1;
+                }
+            }
+        }
+
+        boolean isIdle(int slot) {
+            for (long[] column : columns) {
+                if (column[slot] != 0) return false;
+            }
+            return true;
+        }
+
+        void clear(int slot) {
+            for (long[] column : columns) {
+                column[slot] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.admin.common.utils;
+
+import org.springframework.beans.BeanUtils;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 操作级实体缓存（Identity Map）
+ * 仅在 @UnitOfWork 标记的操作内、当前线程内生效，操作结束即清空，不会跨请求产生脏数据；
+ * 未开启时直接回源查询。
+ * 缓存中保存的是私有副本，每次读取返回新的副本，调用方修改返回的实体不影响其他读取方；
+ * 写入后的失效由 TableChangeInterceptor 在语句执行时统一处理，覆盖 Wrapper、Mapper 直接写入等所有路径
+ */
+public class EntityIdentityMap {
+
+    private static final ThreadLocal<Scope> SCOPE = new ThreadLocal<>();
+
+    private static final Object NULL = new Object();
+
+    public static void open() {
+        Scope scope = SCOPE.get();
+        if (scope == null) {
+            scope = new Scope();
+            SCOPE.set(scope);
+        }
+        scope.depth++;
+    }
+
+    public static void close() {
+        Scope scope = SCOPE.get();
+        if (scope != null && --scope.depth <= 0) {
+            SCOPE.remove();
+        }
+    }
+
+    public static boolean isActive() {
+        return SCOPE.get() != null;
+    }
+
+    /**
+     * 按ID读取实体，当前操作内相同ID只回源一次（包括不存在的结果）
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T get(Class<T> type, Serializable id, Function<Serializable, T> loader) {
+        Scope scope = SCOPE.get();
+        if (scope == null || id == null) {
+            return loader.apply(id);
+        }
+        Map<String, Object> entities = scope.entities.computeIfAbsent(type, k -> new HashMap<>());
+        // ID可能以Long/Integer/String传入，统一按字符串归一
+        String key = id.toString();
+        Object cached = entities.get(key);
+        if (cached == null) {
+            T loaded = loader.apply(id);
+            entities.put(key, loaded == null ? NULL : copy(loaded));
+            return loaded;
+        }
+        return cached == NULL ? null : copy((T) cached);
+    }
+
+    /**
+     * 实体被修改或删除后移除缓存
+     */
+    public static void evict(Class<?> type, Serializable id) {
+        Scope scope = SCOPE.get();
+        if (scope == null || id == null) {
+            return;
+        }
+        Map<String, Object> entities = scope.entities.get(type);
+        if (entities != null) {
+            entities.remove(id.toString());
+        }
+    }
+
+    /**
+     * 按条件批量更新等无法确定ID的写操作，清空该类型的全部缓存
+     */
+    public static void evictAll(Class<?> type) {
+        Scope scope = SCOPE.get();
+        if (scope != null) {
+            scope.entities.remove(type);
+        }
+    }
+
+    /**
+     * 实体只包含简单字段，浅拷贝即可
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T entity) {
+        T copy = (T) BeanUtils.instantiateClass(entity.getClass());
+        BeanUtils.copyProperties(entity, copy);
+        return copy;
+    }
+
+    private static class Scope {
+        private final Map<Class<?>, Map<String, Object>> entities = new HashMap<>();
+        private int depth;
+    }
+}
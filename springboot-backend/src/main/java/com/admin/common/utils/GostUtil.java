@@ -43,6 +43,29 @@ public class GostUtil {
     }
 
     public static GostDto AddChains(Long node_id, List<ChainTunnel> chainTunnels, Map<Long, Node> node_s) {
+        JSONObject data = buildChainData(node_id, chainTunnels, node_s, null);
+        GostDto gostDto = WebSocketServer.send_msg(node_id, data, "AddChains");
+        if (gostDto.getMsg().contains("exists")){
+            gostDto.setMsg("OK");
+        }
+        return gostDto;
+    }
+
+    /**
+     * 覆盖节点上已有的转发链，用于按实测延迟调整下一跳的顺序与权重
+     *
+     * @param chainTunnels 下一跳节点，按期望的优先顺序排列（fifo策略依次尝试）
+     * @param weights      节点ID -> 权重，写入节点metadata供rand策略使用，可为null
+     */
+    public static GostDto UpdateChains(Long node_id, List<ChainTunnel> chainTunnels, Map<Long, Node> node_s, Map<Long, Integer> weights) {
+        JSONObject chainData = buildChainData(node_id, chainTunnels, node_s, weights);
+        JSONObject data = new JSONObject();
+        data.put("chain", chainData.getString("name"));
+        data.put("data", chainData);
+        return WebSocketServer.send_msg(node_id, data, "UpdateChains");
+    }
+
+    private static JSONObject buildChainData(Long node_id, List<ChainTunnel> chainTunnels, Map<Long, Node> node_s, Map<Long, Integer> weights) {
         JSONArray nodes = new JSONArray();
         Node fromNode = node_s.get(node_id);
         for (ChainTunnel chainTunnel : chainTunnels) {
@@ -63,7 +86,11 @@ public class GostUtil {
             node.put("connector", connector);
             node.put("dialer", dialer);
 
-
+            if (weights != null && weights.get(chainTunnel.getNodeId()) != null) {
+                JSONObject metadata = new JSONObject();
+                metadata.put("weight", weights.get(chainTunnel.getNodeId()));
+                node.put("metadata", metadata);
+            }
 
             nodes.add(node);
         }
@@ -91,12 +118,7 @@ public class GostUtil {
         JSONObject data = new JSONObject();
         data.put("name", "chains_" + chainTunnels.getFirst().getTunnelId());
         data.put("hops", hops);
-
-        GostDto gostDto = WebSocketServer.send_msg(node_id, data, "AddChains");
-        if (gostDto.getMsg().contains("exists")){
-            gostDto.setMsg("OK");
-        }
-        return gostDto;
+        return data;
     }
 
     public static GostDto DeleteChains(Long node_id, String name) {
@@ -144,6 +166,18 @@ public class GostUtil {
     }
 
     public static GostDto AddAndUpdateService(String name, Integer limiter, Node node, Forward forward, ForwardPort forwardPort, Tunnel tunnel, String meth) {
+        JSONArray services = buildServices(name, limiter, node, forward, forwardPort, tunnel);
+        GostDto gostDto = WebSocketServer.send_msg(node.getId(), services, meth);
+        if (gostDto.getMsg().contains("exists")){
+            gostDto.setMsg("OK");
+        }
+        return gostDto;
+    }
+
+    /**
+     * 转发在入口节点上的 tcp/udp 服务配置
+     */
+    public static JSONArray buildServices(String name, Integer limiter, Node node, Forward forward, ForwardPort forwardPort, Tunnel tunnel) {
         JSONArray services = new JSONArray();
         String[] protocols = {"tcp", "udp"};
         for (String protocol : protocols) {
@@ -184,11 +218,14 @@ public class GostUtil {
 
             services.add(service);
         }
-        GostDto gostDto = WebSocketServer.send_msg(node.getId(), services, meth);
-        if (gostDto.getMsg().contains("exists")){
-            gostDto.setMsg("OK");
-        }
-        return gostDto;
+        return services;
+    }
+
+    /**
+     * 批量更新同一节点上的多个服务，一次下发
+     */
+    public static GostDto UpdateServices(Long node_id, JSONArray services) {
+        return WebSocketServer.send_msg(node_id, services, "UpdateService");
     }
 
     public static GostDto DeleteService(Long node_id, JSONArray services) {
@@ -210,6 +247,46 @@ public class GostUtil {
         return WebSocketServer.send_msg(node_id, data, meth);
     }
 
+    /**
+     * 批量暂停/恢复同一节点上的多个服务，一次下发
+     * 暂停时节点跳过不存在的服务（响应 data.missing 列出），不因单个过期转发使整批失败
+     */
+    public static GostDto PauseAndResumeServices(Long node_id, List<String> names, String meth) {
+        JSONObject data = new JSONObject();
+        JSONArray services = new JSONArray();
+        for (String name : names) {
+            services.add(name + "_tcp");
+            services.add(name + "_udp");
+        }
+        data.put("services", services);
+        if ("PauseService".equals(meth)) {
+            data.put("skipMissing", true);
+        }
+        return WebSocketServer.send_msg(node_id, data, meth);
+    }
+
+    public static GostDto TcpPing(Long node_id, String ip, int port, int count, int timeout) {
+        JSONObject data = new JSONObject();
+        data.put("ip", ip);
+        data.put("port", port);
+        data.put("count", count);
+        data.put("timeout", timeout);
+        return WebSocketServer.send_msg(node_id, data, "TcpPing");
+    }
+
+    /**
+     * 同一节点的多个TcpPing目标合并为一次下发，节点并发探测后按请求顺序返回 results 数组
+     *
+     * @param targets 每项包含 ip、port
+     */
+    public static GostDto TcpPingBatch(Long node_id, JSONArray targets, int count, int timeout) {
+        JSONObject data = new JSONObject();
+        data.put("targets", targets);
+        data.put("count", count);
+        data.put("timeout", timeout);
+        return WebSocketServer.send_msg(node_id, data, "TcpPingBatch");
+    }
+
 
     private static JSONObject createLimiterData(Long name, String speed) {
         JSONObject data = new JSONObject();
@@ -0,0 +1,167 @@
+package com.admin.common.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮
+ * 调度与取消均为O(1)：新任务先进入待处理队列，由时间轮线程在每个tick放入对应槽位；
+ * 同一个key重复调度时只保留最后一次的到期时间，旧任务在被扫描到时自动丢弃
+ *
+ * @param <K> 任务标识
+ */
+@Slf4j
+public class HashedTimerWheel<K> {
+
+    private final long tickMs;
+    private final int mask;
+    private final List<List<Entry<K>>> buckets;
+    private final ConcurrentLinkedQueue<Entry<K>> pending = new ConcurrentLinkedQueue<>();
+    // 每个key当前有效的到期时间，用于覆盖和取消
+    private final Map<K, Long> deadlines = new ConcurrentHashMap<>();
+    private final Consumer<List<K>> expireHandler;
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long currentTick;
+
+    /**
+     * @param name          线程名
+     * @param tickMs        每个tick的时长（毫秒）
+     * @param wheelSize     槽位数量，会向上取整为2的幂
+     * @param expireHandler 到期回调，同一tick到期的key合并成一批回调
+     */
+    public HashedTimerWheel(String name, long tickMs, int wheelSize, Consumer<List<K>> expireHandler) {
+        int size = Integer.highestOneBit(Math.max(wheelSize, 1));
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.tickMs = tickMs;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.expireHandler = expireHandler;
+        this.startTime = System.currentTimeMillis();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 调度（或重新调度）key在指定时间点到期
+     *
+     * @param key        任务标识
+     * @param deadlineMs 到期时间戳（毫秒）
+     */
+    public void schedule(K key, long deadlineMs) {
+        deadlines.put(key, deadlineMs);
+        pending.add(new Entry<>(key, deadlineMs));
+    }
+
+    /**
+     * 取消key的到期任务
+     */
+    public void cancel(K key) {
+        deadlines.remove(key);
+    }
+
+    /**
+     * 清空所有任务
+     */
+    public void clear() {
+        deadlines.clear();
+    }
+
+    /**
+     * 当前有效的任务数量
+     */
+    public int size() {
+        return deadlines.size();
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long nextTickTime = startTime + (currentTick + 1) * tickMs;
+            long sleepMs = nextTickTime - System.currentTimeMillis();
+            if (sleepMs > 0) {
+                try {
+                    Thread.sleep(sleepMs);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            currentTick++;
+            try {
+                transferPending();
+                List<K> expired = expireBucket();
+                if (!expired.isEmpty()) {
+                    expireHandler.accept(expired);
+                }
+            } catch (Exception e) {
+                log.info("时间轮处理到期任务失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void transferPending() {
+        Entry<K> entry;
+        while ((entry = pending.poll()) != null) {
+            if (!isCurrent(entry)) {
+                continue;
+            }
+            long tick = (entry.deadlineMs - startTime + tickMs - 1) / tickMs;
+            entry.tick = Math.max(tick, currentTick);
+            buckets.get((int) (entry.tick & mask)).add(entry);
+        }
+    }
+
+    private List<K> expireBucket() {
+        List<K> expired = new ArrayList<>();
+        Iterator<Entry<K>> iterator = buckets.get((int) (currentTick & mask)).iterator();
+        while (iterator.hasNext()) {
+            Entry<K> entry = iterator.next();
+            if (!isCurrent(entry)) {
+                iterator.remove();
+            } else if (entry.tick <= currentTick) {
+                iterator.remove();
+                if (deadlines.remove(entry.key, entry.deadlineMs)) {
+                    expired.add(entry.key);
+                }
+            }
+        }
+        return expired;
+    }
+
+    private boolean isCurrent(Entry<K> entry) {
+        Long deadline = deadlines.get(entry.key);
+        return deadline != null && deadline == entry.deadlineMs;
+    }
+
+    private static class Entry<K> {
+        final K key;
+        final long deadlineMs;
+        long tick;
+
+        Entry(K key, long deadlineMs) {
+            this.key = key;
+            this.deadlineMs = deadlineMs;
+        }
+    }
+}
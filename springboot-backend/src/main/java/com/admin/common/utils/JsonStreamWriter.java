@@ -0,0 +1,59 @@
+package com.admin.common.utils;
+
+import com.alibaba.fastjson.JSON;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 逐行写出 JSON 的导出流
+ * NDJSON 每行一个对象；JSON 模式写成一个数组。每写出一批就 flush，
+ * 客户端可以立即开始接收，服务端内存占用与总行数无关
+ */
+public class JsonStreamWriter implements Closeable {
+
+    public static final String NDJSON = "application/x-ndjson";
+
+    private static final int FLUSH_EVERY = 200;
+
+    private final BufferedWriter writer;
+    private final boolean ndjson;
+    private long count;
+
+    public JsonStreamWriter(OutputStream out, boolean ndjson) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        this.ndjson = ndjson;
+        if (!ndjson) {
+            writer.write('[');
+        }
+    }
+
+    public void write(Object row) throws IOException {
+        if (!ndjson && count > 0) {
+            writer.write(',');
+        }
+        writer.write(JSON.toJSONString(row));
+        if (ndjson) {
+            writer.write('\n');
+        }
+        if (++count % FLUSH_EVERY == 0) {
+            writer.flush();
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!ndjson) {
+            writer.write(']');
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,191 @@
+package com.admin.common.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.admin.common.dto.ListQueryDto;
+import com.alibaba.fastjson.JSONObject;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 游标（keyset）分页
+ * 按 (排序列, id) 定位上一页最后一行，下一页从该位置之后继续取，不使用 OFFSET，
+ * 翻到任意深度都只扫描一页数据。排序列只能取自调用方给出的白名单，且均为整数列
+ */
+public class KeysetPage {
+
+    private final String column;
+    private final String idColumn;
+    private final boolean desc;
+    private final int limit;
+    private final Long afterValue;
+    private final Long afterId;
+
+    private KeysetPage(String column, boolean desc, int limit, Long afterValue, Long afterId) {
+        this.column = column;
+        int dot = column.lastIndexOf('.');
+        this.idColumn = dot >= 0 ? column.substring(0, dot + 1) + "id" : "id";
+        this.desc = desc;
+        this.limit = limit;
+        this.afterValue = afterValue;
+        this.afterId = afterId;
+    }
+
+    /**
+     * 解析分页参数，未传 limit 时返回null（不分页）
+     *
+     * @param sortColumns 允许排序的字段名 -> 列名
+     * @param defaultSort 默认排序字段
+     */
+    public static KeysetPage of(ListQueryDto query, Map<String, String> sortColumns, String defaultSort, boolean defaultDesc) {
+        if (query == null || query.getLimit() == null) {
+            return null;
+        }
+        String sort = query.getSort() != null && sortColumns.containsKey(query.getSort()) ? query.getSort() : defaultSort;
+        boolean desc = query.getOrder() == null ? defaultDesc : "desc".equalsIgnoreCase(query.getOrder());
+        int limit = Math.max(1, Math.min(500, query.getLimit()));
+
+        Long afterValue = null;
+        Long afterId = null;
+        if (query.getCursor() != null && !query.getCursor().isEmpty()) {
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(query.getCursor()), StandardCharsets.UTF_8);
+                String[] parts = decoded.split(":");
+                afterValue = Long.parseLong(parts[0]);
+                afterId = Long.parseLong(parts[1]);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("无效的分页游标");
+            }
+        }
+        return new KeysetPage(sortColumns.get(sort), desc, limit, afterValue, afterId);
+    }
+
+    /**
+     * 单表查询：追加游标条件、排序与 LIMIT（多取一条用于判断是否还有下一页）
+     */
+    public <T> QueryWrapper<T> apply(QueryWrapper<T> wrapper) {
+        if (afterId != null) {
+            if (column.equals(idColumn)) {
+                wrapper.apply(idColumn + getOp() + "{0}", afterId);
+            } else {
+                wrapper.and(w -> w.apply(column + getOp() + "{0}", afterValue)
+                        .or(o -> o.eq(column, afterValue).apply(idColumn + getOp() + "{0}", afterId)));
+            }
+        }
+        wrapper.orderBy(true, !desc, column);
+        if (!column.equals(idColumn)) {
+            wrapper.orderBy(true, !desc, idColumn);
+        }
+        return wrapper.last("LIMIT " + getFetchSize());
+    }
+
+    /**
+     * 组装分页结果：list / nextCursor / hasMore
+     *
+     * @param rows      按 {@link #getFetchSize()} 查询到的行
+     * @param sortValue 取行的排序列值
+     * @param id        取行的ID
+     * @param fields    字段投影，为空时返回完整对象
+     */
+    public <T> JSONObject result(List<T> rows, Function<T, ? extends Number> sortValue,
+                                 Function<T, ? extends Number> id, List<String> fields) {
+        boolean hasMore = rows.size() > limit;
+        List<T> page = hasMore ? rows.subList(0, limit) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            T last = page.get(page.size() - 1);
+            Number value = sortValue.apply(last);
+            String raw = (value == null ? 0 : value.longValue()) + ":" + id.apply(last).longValue();
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+        JSONObject result = new JSONObject();
+        result.put("list", project(page, fields));
+        result.put("nextCursor", nextCursor);
+        result.put("hasMore", hasMore);
+        return result;
+    }
+
+    /**
+     * 只保留指定字段（id 总是保留），fields 为空时原样返回
+     */
+    public static List<?> project(List<?> rows, List<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return rows;
+        }
+        List<Object> projected = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            projected.add(projectRow(row, fields));
+        }
+        return projected;
+    }
+
+    /**
+     * 单行投影，fields 为空时原样返回
+     */
+    public static Object projectRow(Object row, List<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return row;
+        }
+        Map<String, Object> source = BeanUtil.beanToMap(row);
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", source.get("id"));
+        for (String field : fields) {
+            if (source.containsKey(field)) {
+                item.put(field, source.get(field));
+            }
+        }
+        return item;
+    }
+
+    /**
+     * 投影是否需要其中任一字段，用于跳过不需要的关联计算
+     */
+    public static boolean wants(List<String> fields, String... names) {
+        if (fields == null || fields.isEmpty()) {
+            return true;
+        }
+        for (String name : names) {
+            if (fields.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public String getIdColumn() {
+        return idColumn;
+    }
+
+    /**
+     * 游标比较符
+     */
+    public String getOp() {
+        return desc ? " < " : " > ";
+    }
+
+    public String getDirection() {
+        return desc ? "DESC" : "ASC";
+    }
+
+    public Long getAfterValue() {
+        return afterValue;
+    }
+
+    public Long getAfterId() {
+        return afterId;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getFetchSize() {
+        return limit + 1;
+    }
+}
@@ -0,0 +1,75 @@
+package com.admin.common.utils;
+
+/**
+ * 对数线性分桶的延迟直方图（HDR风格）
+ * 每个2的幂区间再等分为8个子桶，相对误差约6%，覆盖 0 ~ 16秒（微秒精度）
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_MSB = 23;
+    private static final long MAX_VALUE = (1L << (MAX_MSB + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_MSB - SUB_BITS + 2) * SUB_COUNT;
+
+    private final int[] counts = new int[BUCKET_COUNT];
+    private long total;
+
+    /**
+     * 记录一个延迟样本
+     *
+     * @param micros 延迟（微秒）
+     */
+    public void record(long micros) {
+        counts[indexOf(Math.min(Math.max(micros, 0), MAX_VALUE))]++;
+        total++;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * 分位数，返回所在桶的中值（微秒）；没有样本时返回-1
+     *
+     * @param quantile 0 ~ 1
+     */
+    public long percentile(double quantile) {
+        if (total == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return (lowerBound(i) + upperBound(i)) / 2;
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >> shift) & (SUB_COUNT - 1));
+    }
+
+    private static long lowerBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        return (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_COUNT) {
+            return index + 1;
+        }
+        return lowerBound(index) + (1L << (index / SUB_COUNT - 1));
+    }
+}
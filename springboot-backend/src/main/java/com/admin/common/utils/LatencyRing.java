@@ -0,0 +1,86 @@
+package com.admin.common.utils;
+
+/**
+ * 固定容量的延迟样本环形缓冲区
+ * 每个样本只占两个int（相对秒级时间戳 + 微秒延迟，-1表示丢包），
+ * 查询时按滑动窗口把样本汇总到 {@link LatencyHistogram}
+ */
+public class LatencyRing {
+
+    private static final int LOST = -1;
+
+    private final long baseSeconds = System.currentTimeMillis() / 1000;
+    private final int[] seconds;
+    private final int[] micros;
+    private int next;
+    private int size;
+
+    public LatencyRing(int capacity) {
+        seconds = new int[capacity];
+        micros = new int[capacity];
+    }
+
+    public synchronized void record(long timestampMs, long latencyMicros) {
+        put(timestampMs, (int) Math.min(latencyMicros, Integer.MAX_VALUE));
+    }
+
+    public synchronized void recordLoss(long timestampMs) {
+        put(timestampMs, LOST);
+    }
+
+    /**
+     * 汇总最近 windowMs 内的样本
+     */
+    public synchronized Window window(long nowMs, long windowMs) {
+        int from = (int) ((nowMs - windowMs) / 1000 - baseSeconds);
+        LatencyHistogram histogram = new LatencyHistogram();
+        int lost = 0;
+        for (int i = 0; i < size; i++) {
+            int idx = (next - 1 - i + seconds.length) % seconds.length;
+            if (seconds[idx] < from) {
+                break;
+            }
+            if (micros[idx] == LOST) {
+                lost++;
+            } else {
+                histogram.record(micros[idx]);
+            }
+        }
+        return new Window(histogram, lost);
+    }
+
+    private void put(long timestampMs, int value) {
+        seconds[next] = (int) (timestampMs / 1000 - baseSeconds);
+        micros[next] = value;
+        next = (next + 1) % seconds.length;
+        if (size < seconds.length) {
+            size++;
+        }
+    }
+
+    public static class Window {
+        private final LatencyHistogram histogram;
+        private final int lost;
+
+        Window(LatencyHistogram histogram, int lost) {
+            this.histogram = histogram;
+            this.lost = lost;
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        public long getSamples() {
+            return histogram.getTotal() + lost;
+        }
+
+        /**
+         * 丢包率（%）
+         */
+        public double getLossRate() {
+            long samples = getSamples();
+            return samples == 0 ? 0 : lost * 100.0 / samples;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.admin.common.utils;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * 基于开放寻址的原始long集合
+ * 用于大批量ID或(用户ID, 隧道ID)组合的集合运算，避免装箱和字符串拼接
+ */
+public class LongHashSet {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] table;
+    private int size;
+    private boolean containsEmpty;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+    }
+
+    /**
+     * 将两个32位ID合并为一个long，作为组合键
+     */
+    public static long pair(long high, long low) {
+        return (high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    public static long pairHigh(long pair) {
+        return pair >>> 32;
+    }
+
+    public static long pairLow(long pair) {
+        return pair & 0xFFFFFFFFL;
+    }
+
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsEmpty) return false;
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        int index = indexOf(value);
+        if (table[index] == value) {
+            return false;
+        }
+        table[index] = value;
+        if (++size * 2 > table.length) {
+            resize();
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        return table[indexOf(value)] == value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        if (containsEmpty) {
+            consumer.accept(EMPTY);
+        }
+        for (long value : table) {
+            if (value != EMPTY) {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    private int indexOf(long value) {
+        int mask = table.length - 1;
+        int index = mix(value) & mask;
+        while (table[index] != EMPTY && table[index] != value) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void resize() {
+        long[] old = table;
+        table = new long[old.length << 1];
+        Arrays.fill(table, EMPTY);
+        for (long value : old) {
+            if (value != EMPTY) {
+                table[indexOf(value)] = value;
+            }
+        }
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
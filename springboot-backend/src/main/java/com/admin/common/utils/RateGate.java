@@ -0,0 +1,48 @@
+package com.admin.common.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶（GCRA 算法）
+ * 只保存一个"理论到达时间"，取令牌是一次 CAS，热点路径上没有锁；
+ * 效果等同于按 ratePerSecond 补充、容量为 burst 的令牌桶
+ */
+public class RateGate {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong tat;
+
+    public RateGate(double ratePerSecond, double burst) {
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000d / ratePerSecond));
+        this.toleranceNanos = (long) (intervalNanos * Math.max(burst, 1));
+        this.tat = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 取一个令牌
+     *
+     * @return 0 表示放行，否则为需要等待的纳秒数
+     */
+    public long tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long current = tat.get();
+            long next = (current - now > 0 ? current : now) + intervalNanos;
+            long excess = next - now - toleranceNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 令牌已补满：丢弃该桶再重建与保留它效果相同
+     */
+    public boolean isIdle(long nowNanos) {
+        return tat.get() - nowNanos <= 0;
+    }
+}
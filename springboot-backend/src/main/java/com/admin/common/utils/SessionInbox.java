@@ -0,0 +1,164 @@
+package com.admin.common.utils;
+
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个 WebSocket 会话的入站消息队列
+ * 接收线程只负责入队；同一会话同一时刻只有一个工作线程处理，消息按到达顺序处理，
+ * 但命令响应（requestId）优先于遥测和其他消息；积压的 memory_usage 遥测只处理最新一条
+ */
+@Slf4j
+public class SessionInbox {
+
+    public interface Handler {
+        /**
+         * 解密原始帧
+         */
+        String decode(String raw);
+
+        void handleResponse(String payload);
+
+        /**
+         * 遥测与其他非响应消息
+         */
+        void handleMessage(String payload, boolean telemetry);
+    }
+
+    private final Executor executor;
+    private final Handler handler;
+
+    // 接收线程写入的原始帧
+    private final ConcurrentLinkedQueue<String> raw = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger rawDepth = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    // 以下只由工作线程访问
+    private final ArrayDeque<String> responses = new ArrayDeque<>();
+    private final ArrayDeque<String> others = new ArrayDeque<>();
+    private int pendingTelemetry;
+
+    private final AtomicInteger decodedDepth = new AtomicInteger();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public SessionInbox(Executor executor, Handler handler) {
+        this.executor = executor;
+        this.handler = handler;
+    }
+
+    public void offer(String payload) {
+        raw.add(payload);
+        received.incrementAndGet();
+        int depth = rawDepth.incrementAndGet() + decodedDepth.get();
+        maxDepth.accumulateAndGet(depth, Math::max);
+        schedule();
+    }
+
+    /**
+     * 当前积压（未处理的帧数）
+     */
+    public int depth() {
+        return rawDepth.get() + decodedDepth.get();
+    }
+
+    public JSONObject stats() {
+        JSONObject stats = new JSONObject();
+        stats.put("depth", depth());
+        stats.put("maxDepth", maxDepth.get());
+        stats.put("received", received.get());
+        stats.put("processed", processed.get());
+        stats.put("coalesced", coalesced.get());
+        return stats;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (Exception e) {
+                scheduled.set(false);
+                log.info("WebSocket消息处理任务提交失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                pull();
+                String response = responses.poll();
+                if (response != null) {
+                    decodedDepth.decrementAndGet();
+                    process(() -> handler.handleResponse(response));
+                    continue;
+                }
+                String message = others.poll();
+                if (message == null) {
+                    break;
+                }
+                decodedDepth.decrementAndGet();
+                boolean telemetry = isTelemetry(message);
+                if (telemetry && --pendingTelemetry > 0) {
+                    // 后面还有更新的遥测，跳过这条
+                    coalesced.incrementAndGet();
+                    continue;
+                }
+                process(() -> handler.handleMessage(message, telemetry));
+            }
+        } finally {
+            scheduled.set(false);
+            if (!raw.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * 解密已到达的原始帧并按类型分到各自队列
+     */
+    private void pull() {
+        String frame;
+        while ((frame = raw.poll()) != null) {
+            rawDepth.decrementAndGet();
+            String payload;
+            try {
+                payload = handler.decode(frame);
+            } catch (Exception e) {
+                log.info("WebSocket消息解码失败: {}", e.getMessage());
+                continue;
+            }
+            decodedDepth.incrementAndGet();
+            if (isTelemetry(payload)) {
+                pendingTelemetry++;
+                others.add(payload);
+            } else if (payload.contains("requestId")) {
+                responses.add(payload);
+            } else {
+                others.add(payload);
+            }
+        }
+    }
+
+    private void process(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.info("处理WebSocket消息时发生异常: {}", e.getMessage(), e);
+        }
+        processed.incrementAndGet();
+    }
+
+    private static boolean isTelemetry(String payload) {
+        return payload.contains("memory_usage");
+    }
+}
@@ -0,0 +1,52 @@
+package com.admin.common.utils;
+
+/**
+ * 分段锁
+ * 预先分配固定数量的锁对象，按key的哈希值映射到其中一个，
+ * 用于替代按ID无限增长的锁Map，内存占用与业务数据量无关
+ */
+public class StripedLock {
+
+    private final Object[] stripes;
+    private final int mask;
+
+    /**
+     * @param stripeCount 期望的分段数量，会向上取整为2的幂
+     */
+    public StripedLock(int stripeCount) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("分段数量必须大于0");
+        }
+        int size = Integer.highestOneBit(stripeCount);
+        if (size < stripeCount) {
+            size <<= 1;
+        }
+        this.stripes = new Object[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Object();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * 获取key对应的锁对象，相同key始终返回同一个锁
+     */
+    public Object get(Object key) {
+        if (key == null) {
+            return stripes[0];
+        }
+        return stripes[spread(key.hashCode()) & mask];
+    }
+
+    public int size() {
+        return stripes.length;
+    }
+
+    private static int spread(int h) {
+        // 打散高位，避免连续ID集中在少数分段
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h;
+    }
+}
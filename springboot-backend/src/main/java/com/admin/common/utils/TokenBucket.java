@@ -0,0 +1,63 @@
+package com.admin.common.utils;
+
+/**
+ * 令牌桶
+ * 按固定速率补充令牌，容量即允许的突发量；线程安全
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * @param ratePerSecond 每秒补充的令牌数
+     * @param capacity      桶容量（突发量）
+     */
+    public TokenBucket(double ratePerSecond, double capacity) {
+        this.capacity = capacity;
+        this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+    }
+
+    public synchronized boolean tryAcquire() {
+        return tryAcquire(1, 0);
+    }
+
+    /**
+     * 取出令牌，取出后剩余不低于 reserve 才成功；
+     * reserve 用于给高优先级请求预留额度
+     */
+    public synchronized boolean tryAcquire(double permits, double reserve) {
+        refill();
+        if (tokens - permits >= reserve) {
+            tokens -= permits;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 攒够 permits 个令牌（并保留 reserve）还需等待的毫秒数
+     */
+    public synchronized long waitMillis(double permits, double reserve) {
+        refill();
+        double deficit = permits + reserve - tokens;
+        if (deficit <= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(deficit / tokensPerNano / 1_000_000d);
+    }
+
+    public synchronized double available() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
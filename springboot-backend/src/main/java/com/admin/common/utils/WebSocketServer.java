@@ -4,8 +4,9 @@ package com.admin.common.utils;
 import com.admin.common.dto.GostConfigDto;
 import com.admin.common.dto.GostDto;
 import com.admin.common.task.CheckGostConfigAsync;
+import com.admin.common.task.NodeHeartbeatTracker;
+import com.admin.config.EncryptionConfig;
 import com.admin.entity.Node;
-import com.admin.service.NodeService;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import lombok.SneakyThrows;
@@ -14,14 +15,21 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.UUID;
 
 
@@ -29,22 +37,44 @@ import java.util.UUID;
 public class WebSocketServer extends TextWebSocketHandler {
 
     @Resource
-    NodeService nodeService;
+    NodeHeartbeatTracker nodeHeartbeatTracker;
 
-    // 存储所有活跃的 WebSocket 连接（
-    private static final CopyOnWriteArraySet<WebSocketSession> activeSessions = new CopyOnWriteArraySet<>();
+    // 存储所有活跃的管理员 WebSocket 连接，key为sessionId；
+    // 会话包装为并发发送装饰器，慢连接的消息在自己的缓冲区排队，超过发送时长或缓冲上限时丢弃/断开
+    private static final ConcurrentHashMap<String, WebSocketSession> activeSessions = new ConcurrentHashMap<>();
+    private static final int ADMIN_SEND_TIME_LIMIT_MS = 5000;
+    private static final int ADMIN_BUFFER_SIZE_LIMIT = 512 * 1024;
     
     // 存储节点ID和对应的WebSocket session映射
     private static final ConcurrentHashMap<Long, WebSocketSession> nodeSessions = new ConcurrentHashMap<>();
     
-    // 为每个session提供锁对象，防止并发发送消息
-    private static final ConcurrentHashMap<String, Object> sessionLocks = new ConcurrentHashMap<>();
+    // 发送锁存放在会话属性中，防止同一session并发发送消息；每个会话独立一把锁，
+    // 慢连接只阻塞自己，会话关闭后随会话一起释放
+    private static final String SEND_LOCK_ATTR = "sendLock";
     
     // 存储等待响应的请求，key为requestId，value为CompletableFuture
     private static final ConcurrentHashMap<String, CompletableFuture<GostDto>> pendingRequests = new ConcurrentHashMap<>();
-    
-    // 缓存加密器实例，避免重复创建
-    private static final ConcurrentHashMap<String, AESCrypto> cryptoCache = new ConcurrentHashMap<>();
+
+    // 按sessionId的入站消息队列
+    private static final ConcurrentHashMap<String, SessionInbox> inboxes = new ConcurrentHashMap<>();
+
+    // 入站消息处理线程，每个会话同一时刻最多占用一个线程
+    private static final AtomicInteger inboxThreadSeq = new AtomicInteger();
+    private static final ExecutorService inboxExecutor = Executors.newFixedThreadPool(
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2), r -> {
+                Thread thread = new Thread(r, "ws-inbox-" + inboxThreadSeq.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // 节点消息转发给管理员的线程，与入站处理隔离；积压超过上限时丢弃最旧的转发
+    private static final AtomicInteger relayThreadSeq = new AtomicInteger();
+    private static final ExecutorService relayExecutor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1024), r -> {
+                Thread thread = new Thread(r, "ws-relay-" + relayThreadSeq.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardOldestPolicy());
 
     /**
      * 加密消息包装器
@@ -63,80 +93,116 @@ public class WebSocketServer extends TextWebSocketHandler {
         public void setTimestamp(Long timestamp) { this.timestamp = timestamp; }
     }
 
-    //接受客户端消息
+    //接受客户端消息：接收线程只负责入队，解密与处理在会话自己的有序队列中完成
     @Override
     public void handleTextMessage(WebSocketSession session, TextMessage message) {
-        try {
-            if (StringUtils.isNoneBlank(message.getPayload())) {
-                
-                String id = session.getAttributes().get("id").toString();
-                String type = session.getAttributes().get("type").toString();
-                String nodeSecret = (String) session.getAttributes().get("nodeSecret");
+        if (StringUtils.isNoneBlank(message.getPayload())) {
+            inboxes.computeIfAbsent(session.getId(), k -> newInbox(session)).offer(message.getPayload());
+        }
+    }
+
+    private SessionInbox newInbox(WebSocketSession session) {
+        String id = session.getAttributes().get("id").toString();
+        String type = session.getAttributes().get("type").toString();
+        String nodeSecret = (String) session.getAttributes().get("nodeSecret");
 
-                // 尝试解密消息
-                String decryptedPayload = decryptMessageIfNeeded(message.getPayload(), nodeSecret);
+        return new SessionInbox(inboxExecutor, new SessionInbox.Handler() {
+            @Override
+            public String decode(String raw) {
+                return decryptMessageIfNeeded(raw, nodeSecret);
+            }
+
+            @Override
+            public void handleResponse(String payload) {
+                log.info("收到消息: {}", payload);
+                completeRequest(payload);
+                relayToAdmins(session, id, type, payload);
+            }
 
-                if (decryptedPayload.contains("memory_usage")){
+            @Override
+            public void handleMessage(String payload, boolean telemetry) {
+                if (telemetry) {
                     // 先发送确认消息
                     sendToUser(session, "{\"type\":\"call\"}", nodeSecret);
-                }else if (decryptedPayload.contains("requestId")) {
-                    log.info("收到消息: {}", decryptedPayload);
-                    // 处理命令响应消息
-                    try {
-                        JSONObject responseJson = JSONObject.parseObject(decryptedPayload);
-                        String requestId = responseJson.getString("requestId");
-                        String responseMessage = responseJson.getString("message");
-                        String responseType = responseJson.getString("type");
-                        JSONObject responseData = responseJson.getJSONObject("data");
-                        
-                        if (requestId != null) {
-                            CompletableFuture<GostDto> future = pendingRequests.remove(requestId);
-
-                            if (future != null) {
-                                GostDto result = new GostDto();
-                                
-                                // 根据响应类型处理不同的数据
-                                if ("PingResponse".equals(responseType) && responseData != null) {
-                                    // 特殊处理ping响应，将完整的响应数据返回
-                                    result.setMsg(responseMessage != null ? responseMessage : "OK");
-                                    result.setData(responseData); // 保存ping详细结果
-                                } else {
-                                    // 其他类型的响应
-                                    result.setMsg(responseMessage != null ? responseMessage : "无响应消息");
-                                    if (responseData != null) {
-                                        result.setData(responseData);
-                                    }
-                                }
-                                
-                                future.complete(result);
-                            }
-                        }
-                    } catch (Exception e) {
-                        log.info("处理响应消息失败: {}", e.getMessage(), e);
+                    if (Objects.equals(type, "1")) {
+                        nodeHeartbeatTracker.heartbeat(Long.valueOf(id));
                     }
                 } else {
-                    log.info("收到消息: {}", decryptedPayload);
+                    log.info("收到消息: {}", payload);
                 }
+                relayToAdmins(session, id, type, payload);
+            }
+        });
+    }
 
-                // 如果是节点类型，转发消息给其他会话
-                if (Objects.equals(type, "1")) {
-                    JSONObject jsonObject = new JSONObject();
-                    jsonObject.put("id", id);
-                    jsonObject.put("type", "info");
-                    jsonObject.put("data", decryptedPayload);
-                    String broadcastMessage = jsonObject.toJSONString();
+    // 处理命令响应消息
+    private void completeRequest(String payload) {
+        try {
+            JSONObject responseJson = JSONObject.parseObject(payload);
+            String requestId = responseJson.getString("requestId");
+            String responseMessage = responseJson.getString("message");
+            String responseType = responseJson.getString("type");
+            JSONObject responseData = responseJson.getJSONObject("data");
+            
+            if (requestId != null) {
+                CompletableFuture<GostDto> future = pendingRequests.remove(requestId);
+
+                if (future != null) {
+                    GostDto result = new GostDto();
                     
-                    // 异步处理广播消息，避免阻塞当前线程
-                    for (WebSocketSession targetSession : activeSessions) {
-                        if (targetSession != null && targetSession.isOpen() && !targetSession.equals(session)) {
-                            sendToUser(targetSession, broadcastMessage, null);
+                    // 根据响应类型处理不同的数据
+                    if ("PingResponse".equals(responseType) && responseData != null) {
+                        // 特殊处理ping响应，将完整的响应数据返回
+                        result.setMsg(responseMessage != null ? responseMessage : "OK");
+                        result.setData(responseData); // 保存ping详细结果
+                    } else {
+                        // 其他类型的响应
+                        result.setMsg(responseMessage != null ? responseMessage : "无响应消息");
+                        if (responseData != null) {
+                            result.setData(responseData);
                         }
                     }
+                    
+                    future.complete(result);
                 }
             }
         } catch (Exception e) {
-            log.info("处理WebSocket消息时发生异常: {}", e.getMessage(), e);
+            log.info("处理响应消息失败: {}", e.getMessage(), e);
+        }
+    }
+
+    // 如果是节点类型，转发消息给管理员会话；在独立线程中发送，入站处理线程不等待管理员连接
+    private void relayToAdmins(WebSocketSession session, String id, String type, String payload) {
+        if (!Objects.equals(type, "1") || activeSessions.isEmpty()) {
+            return;
         }
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("id", id);
+        jsonObject.put("type", "info");
+        jsonObject.put("data", payload);
+        String broadcastMessage = jsonObject.toJSONString();
+
+        relayExecutor.execute(() -> {
+            for (WebSocketSession targetSession : activeSessions.values()) {
+                if (targetSession.isOpen() && !targetSession.getId().equals(session.getId())) {
+                    sendToUser(targetSession, broadcastMessage, null);
+                }
+            }
+        });
+    }
+
+    /**
+     * 各节点当前会话的入站队列统计（积压、峰值、合并丢弃的遥测数）
+     */
+    public static Map<Long, JSONObject> nodeInboxStats() {
+        Map<Long, JSONObject> stats = new HashMap<>();
+        nodeSessions.forEach((nodeId, session) -> {
+            SessionInbox inbox = inboxes.get(session.getId());
+            if (inbox != null) {
+                stats.put(nodeId, inbox.stats());
+            }
+        });
+        return stats;
     }
 
     /**
@@ -203,10 +269,7 @@ public class WebSocketServer extends TextWebSocketHandler {
      * 获取或创建加密器实例
      */
     private static AESCrypto getOrCreateCrypto(String secret) {
-        if (secret == null || secret.isEmpty()) {
-            return null;
-        }
-        return cryptoCache.computeIfAbsent(secret, AESCrypto::create);
+        return EncryptionConfig.getOrCreateCrypto(secret);
     }
 
     // 建立连接
@@ -218,7 +281,9 @@ public class WebSocketServer extends TextWebSocketHandler {
             
             if (!Objects.equals(type, "1")) {
                 // 网页管理员连接
-                activeSessions.add(session);
+                activeSessions.put(session.getId(), new ConcurrentWebSocketSessionDecorator(session,
+                        ADMIN_SEND_TIME_LIMIT_MS, ADMIN_BUFFER_SIZE_LIMIT,
+                        ConcurrentWebSocketSessionDecorator.OverflowStrategy.DROP));
                 log.info("管理员连接建立，sessionId: {}", session.getId());
             } else {
                 // 客户端节点连接
@@ -235,8 +300,6 @@ public class WebSocketServer extends TextWebSocketHandler {
                 WebSocketSession existingSession = nodeSessions.get(nodeId);
                 if (existingSession != null && existingSession.isOpen()) {
                     log.info("节点 {} 已有连接存在: {}，新连接将覆盖旧连接", nodeId, existingSession.getId());
-                    // 清理旧连接的锁对象
-                    sessionLocks.remove(existingSession.getId());
                 }
                 
                 // 直接覆盖会话映射（不主动关闭旧连接，让它自然断开）
@@ -252,43 +315,20 @@ public class WebSocketServer extends TextWebSocketHandler {
                     }
                 }
                 
-                // 更新节点状态为在线
-                Node node = nodeService.getById(nodeId);
-                if (node != null) {
-                    // 更新状态和版本信息
-                    node.setStatus(1);
-                    if (version != null) {
-                        node.setVersion(version);
-                    }
-                    if (http != null) {
-                        node.setHttp(Integer.parseInt(http));
-                    }
-                    if (tls != null) {
-                        node.setTls(Integer.parseInt(tls));
-                    }
-                    if (socks != null) {
-                        node.setSocks(Integer.parseInt(socks));
-                    }
-
-                    boolean updateResult = nodeService.updateById(node);
-                    
-                    if (updateResult) {
-                        log.info("节点 {} 连接建立成功，状态更新为在线，版本: {}", nodeId, version);
-                        
-                        // 广播节点上线状态给所有管理员
-                        JSONObject res = new JSONObject();
-                        res.put("id", id);
-                        res.put("type", "status");
-                        res.put("data", 1);
-                        broadcastMessage(res.toJSONString());
-                    } else {
-                        log.info("节点 {} 状态更新失败", nodeId);
-                    }
-                } else {
-                    log.info("节点 {} 不存在，无法更新状态", nodeId);
-                    // 移除无效的会话
-                    nodeSessions.remove(nodeId);
+                // 节点已在握手时通过密钥校验；在线状态由心跳跟踪器评估后批量写库并广播
+                Node meta = new Node();
+                meta.setVersion(version);
+                if (http != null) {
+                    meta.setHttp(Integer.parseInt(http));
                 }
+                if (tls != null) {
+                    meta.setTls(Integer.parseInt(tls));
+                }
+                if (socks != null) {
+                    meta.setSocks(Integer.parseInt(socks));
+                }
+                nodeHeartbeatTracker.connected(nodeId, meta);
+                log.info("节点 {} 连接建立成功，版本: {}", nodeId, version);
             }
 
         } catch (Exception e) {
@@ -315,12 +355,13 @@ public class WebSocketServer extends TextWebSocketHandler {
             String id = session.getAttributes().get("id").toString();
             String type = session.getAttributes().get("type").toString();
             String sessionId = session.getId();
+            inboxes.remove(sessionId);
             
             log.info("连接关闭，ID: {}, 类型: {}, 状态: {}", id, type, status);
             
             if (!Objects.equals(type, "1")) {
                 // 管理员连接关闭
-                boolean removed = activeSessions.remove(session);
+                boolean removed = activeSessions.remove(sessionId) != null;
                 log.info("管理员连接关闭，sessionId: {}, 移除结果: {}", sessionId, removed);
             } else {
                 // 客户端节点连接关闭
@@ -330,7 +371,6 @@ public class WebSocketServer extends TextWebSocketHandler {
                 WebSocketSession currentSession = nodeSessions.get(nodeId);
                 if (currentSession == null || !currentSession.equals(session)) {
                     log.info("节点 {} 连接关闭，但已有新连接或会话不匹配，跳过状态更新", nodeId);
-                    sessionLocks.remove(sessionId);
                     return;
                 }
                 
@@ -338,30 +378,9 @@ public class WebSocketServer extends TextWebSocketHandler {
                 
                     nodeSessions.remove(nodeId);
                     
-                    // 更新节点状态为离线
-                    Node node = nodeService.getById(nodeId);
-                    if (node != null) {
-                        node.setStatus(0);
-                        boolean updateResult = nodeService.updateById(node);
-                        
-                        if (updateResult) {
-                            log.info("节点 {} 状态更新为离线成功", nodeId);
-                            
-                            JSONObject res = new JSONObject();
-                            res.put("id", id);
-                            res.put("type", "status");
-                            res.put("data", 0);
-                            broadcastMessage(res.toJSONString());
-                        } else {
-                            log.info("节点 {} 状态更新为离线失败", nodeId);
-                        }
-                    } else {
-                        log.info("节点 {} 不存在，无法更新离线状态", nodeId);
-                    }
+                    // 离线判定（含重连宽限与抖动抑制）交给心跳跟踪器
+                    nodeHeartbeatTracker.disconnected(nodeId);
             }
-            
-            // 清理session锁对象
-            sessionLocks.remove(sessionId);
 
         } catch (Exception e) {
             log.info("关闭连接时发生异常: {}", e.getMessage(), e);
@@ -377,9 +396,21 @@ public class WebSocketServer extends TextWebSocketHandler {
     // 点对点发送消息（支持加密）
     @SneakyThrows
     public static void sendToUser(WebSocketSession socketSession, String message, String nodeSecret) {
+        if (socketSession instanceof ConcurrentWebSocketSessionDecorator) {
+            // 管理员会话：装饰器自身保证并发安全，忙时只入缓冲区，不在发送锁上等待
+            try {
+                if (socketSession.isOpen()) {
+                    socketSession.sendMessage(new TextMessage(message));
+                }
+            } catch (Exception e) {
+                log.info("发送WebSocket消息失败 [sessionId={}]: {}", socketSession.getId(), e.getMessage());
+                cleanupSession(socketSession);
+            }
+            return;
+        }
         if (socketSession != null && socketSession.isOpen()) {
             String sessionId = socketSession.getId();
-            Object lock = sessionLocks.computeIfAbsent(sessionId, k -> new Object());
+            Object lock = socketSession.getAttributes().computeIfAbsent(SEND_LOCK_ATTR, k -> new Object());
             
             synchronized (lock) {
                 try {
@@ -410,12 +441,7 @@ public class WebSocketServer extends TextWebSocketHandler {
     private static void cleanupSession(WebSocketSession session) {
         if (session == null) return;
         
-        String sessionId = session.getId();
-        
-        // 清理session锁
-        sessionLocks.remove(sessionId);
-        
-        boolean removedFromAdmin = activeSessions.remove(session);
+        boolean removedFromAdmin = activeSessions.remove(session.getId()) != null;
         
         if (!removedFromAdmin) {
             nodeSessions.entrySet().removeIf(entry -> {
@@ -429,11 +455,22 @@ public class WebSocketServer extends TextWebSocketHandler {
 
     // 广播消息
     public static void broadcastMessage(String message) {
-        for (WebSocketSession session : activeSessions) {
+        for (WebSocketSession session : activeSessions.values()) {
             sendToUser(session, message);
         }
     }
 
+    // 发送消息给指定用户的全部会话
+    public static void sendToUserId(Object userId, String message) {
+        if (userId == null) return;
+        String target = String.valueOf(userId);
+        for (WebSocketSession session : activeSessions.values()) {
+            if (target.equals(String.valueOf(session.getAttributes().get("id")))) {
+                sendToUser(session, message);
+            }
+        }
+    }
+
 
 
     public static GostDto send_msg(Long node_id, Object msg, String type) {
@@ -449,7 +486,6 @@ public class WebSocketServer extends TextWebSocketHandler {
         if (!nodeSession.isOpen()) {
             log.info("发送消息失败：节点 {} 连接已断开，清理会话", node_id);
             nodeSessions.remove(node_id);
-            sessionLocks.remove(nodeSession.getId());
             GostDto result = new GostDto();
             result.setMsg("节点连接已断开");
             return result;
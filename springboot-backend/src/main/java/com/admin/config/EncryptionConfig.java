@@ -4,7 +4,9 @@ import com.admin.common.utils.AESCrypto;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 加密配置管理类
@@ -14,8 +16,24 @@ import java.util.concurrent.ConcurrentHashMap;
 @Slf4j
 public class EncryptionConfig {
     
-    // 缓存加密器实例，避免重复创建
-    private static final ConcurrentHashMap<String, AESCrypto> CRYPTO_CACHE = new ConcurrentHashMap<>();
+    // 加密器缓存上限，超出后按最近最少使用淘汰
+    private static final int MAX_CACHE_SIZE = 1024;
+
+    private static final AtomicLong HIT_COUNT = new AtomicLong();
+    private static final AtomicLong MISS_COUNT = new AtomicLong();
+    private static final AtomicLong EVICTION_COUNT = new AtomicLong();
+
+    // 缓存加密器实例，避免重复创建（HTTP上报与WebSocket共用，访问顺序LRU）
+    private static final LinkedHashMap<String, AESCrypto> CRYPTO_CACHE = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AESCrypto> eldest) {
+            if (size() > MAX_CACHE_SIZE) {
+                EVICTION_COUNT.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
     
     /**
      * 获取或创建AES加密器实例
@@ -27,7 +45,19 @@ public class EncryptionConfig {
         if (secret == null || secret.isEmpty()) {
             return null;
         }
-        return CRYPTO_CACHE.computeIfAbsent(secret, AESCrypto::create);
+        synchronized (CRYPTO_CACHE) {
+            AESCrypto crypto = CRYPTO_CACHE.get(secret);
+            if (crypto != null) {
+                HIT_COUNT.incrementAndGet();
+                return crypto;
+            }
+            MISS_COUNT.incrementAndGet();
+            crypto = AESCrypto.create(secret);
+            if (crypto != null) {
+                CRYPTO_CACHE.put(secret, crypto);
+            }
+            return crypto;
+        }
     }
     
     /**
@@ -56,7 +86,9 @@ public class EncryptionConfig {
      */
     public static void clearCrypto(String secret) {
         if (secret != null) {
-            CRYPTO_CACHE.remove(secret);
+            synchronized (CRYPTO_CACHE) {
+                CRYPTO_CACHE.remove(secret);
+            }
             log.info("已清理密钥对应的加密器实例");
         }
     }
@@ -65,8 +97,11 @@ public class EncryptionConfig {
      * 清理所有缓存的加密器实例
      */
     public static void clearAllCrypto() {
-        int size = CRYPTO_CACHE.size();
-        CRYPTO_CACHE.clear();
+        int size;
+        synchronized (CRYPTO_CACHE) {
+            size = CRYPTO_CACHE.size();
+            CRYPTO_CACHE.clear();
+        }
         log.info("已清理所有加密器实例缓存，共清理 {} 个实例", size);
     }
     
@@ -76,6 +111,23 @@ public class EncryptionConfig {
      * @return 缓存的加密器数量
      */
     public static int getCacheSize() {
-        return CRYPTO_CACHE.size();
+        synchronized (CRYPTO_CACHE) {
+            return CRYPTO_CACHE.size();
+        }
+    }
+
+    /**
+     * 获取加密器缓存的统计信息
+     *
+     * @return 包含容量、命中、未命中、淘汰次数的统计
+     */
+    public static Map<String, Long> getCacheStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", (long) getCacheSize());
+        stats.put("maxSize", (long) MAX_CACHE_SIZE);
+        stats.put("hitCount", HIT_COUNT.get());
+        stats.put("missCount", MISS_COUNT.get());
+        stats.put("evictionCount", EVICTION_COUNT.get());
+        return stats;
     }
 } 
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.admin.config;
 
 import com.admin.common.interceptor.JwtInterceptor;
+import com.admin.common.interceptor.RateLimitInterceptor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.cors.CorsConfiguration;
@@ -11,11 +12,16 @@ import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import javax.annotation.Resource;
+
 
 @Configuration
 @EnableWebMvc
 public class WebMvcConfig implements WebMvcConfigurer {
 
+    @Resource
+    RateLimitInterceptor rateLimitInterceptor;
+
     private CorsConfiguration buildConfig() {
         CorsConfiguration corsConfiguration = new CorsConfiguration();
         corsConfiguration.addAllowedOrigin("*");
@@ -53,6 +59,12 @@ public class WebMvcConfig implements WebMvcConfigurer {
      */
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
+        // 免登录接口先限流，被拒绝的请求不再读取请求体
+        registry.addInterceptor(rateLimitInterceptor)
+                .addPathPatterns("/flow/upload")
+                .addPathPatterns("/flow/config")
+                .addPathPatterns("/api/v1/open_api/**");
+
         // 添加JWT拦截器，不拦截登录接口
         registry.addInterceptor(jwtInterceptor())
                 .addPathPatterns("/api/**")
@@ -1,13 +1,13 @@
 package com.admin.config;
 
 
+import com.admin.common.task.NodeAdmissionController;
 import com.admin.common.utils.IpUtils;
 import com.admin.common.utils.JwtUtil;
-import com.admin.entity.Node;
-import com.admin.service.NodeService;
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.http.server.ServletServerHttpRequest;
@@ -25,7 +25,7 @@ import java.util.Objects;
 public class WebSocketInterceptor extends HttpSessionHandshakeInterceptor {
 
     @Resource
-    NodeService nodeService;
+    NodeAdmissionController nodeAdmissionController;
 
     @Override
     public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Exception ex) {
@@ -43,18 +43,24 @@ public class WebSocketInterceptor extends HttpSessionHandshakeInterceptor {
         String socks = serverHttpRequest.getServletRequest().getParameter("socks");
         if (Objects.equals(type, "1")) {
             System.out.println("type: " + type + " - version: " + version + " - secret: " + secret + " - IP: " + getClientIp(request));
-            Node node = nodeService.getOne(new QueryWrapper<Node>().eq("secret", secret));
-            if (node == null) {
+            NodeAdmissionController.Admission admission = nodeAdmissionController.admit(secret);
+            if (admission.isDeferred()) {
+                // 重连高峰限流，节点按 Retry-After 退避后重试
+                response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(admission.getRetryAfterSeconds()));
+                return false;
+            }
+            if (admission.getNodeId() == null) {
                 log.info("节点验证失败：未找到匹配的secret");
                 return false;
             }
-            attributes.put("id", node.getId());
+            attributes.put("id", admission.getNodeId());
             attributes.put("nodeSecret", secret);
             attributes.put("nodeVersion", version);
             attributes.put("http",http);
             attributes.put("tls",tls);
             attributes.put("socks",socks);
-            log.info("节点 {} 通过验证，版本: {}", node.getId(), version);
+            log.info("节点 {} 通过验证，版本: {}", admission.getNodeId(), version);
             // 不在这里更新状态，等到连接建立后再统一更新
         }else {
             boolean b = JwtUtil.validateToken(secret);
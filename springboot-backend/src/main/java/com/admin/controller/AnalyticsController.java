@@ -0,0 +1,73 @@
+package com.admin.controller;
+
+import com.admin.common.annotation.RequireRole;
+import com.admin.common.aop.LogAnnotation;
+import com.admin.common.dto.TrafficQueryDto;
+import com.admin.common.lang.R;
+import com.admin.common.task.TrafficAnalytics;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.Resource;
+
+/**
+ * 流量分析控制器
+ * 按转发、用户、隧道、节点查询最近24小时内的流量排名、速率与分布，数据来自内存，不查库
+ */
+@RestController
+@CrossOrigin
+@RequestMapping("/api/v1/analytics")
+public class AnalyticsController extends BaseController {
+
+    @Resource
+    TrafficAnalytics trafficAnalytics;
+
+    /**
+     * 窗口内流量/速率/增速前N名
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/top")
+    public R top(@Validated @RequestBody TrafficQueryDto queryDto) {
+        if (!trafficAnalytics.supports(queryDto.getDimension())) return R.err("不支持的统计维度");
+        if (!TrafficAnalytics.METRICS.contains(queryDto.getMetric())) return R.err("不支持的排名指标");
+        return R.ok(trafficAnalytics.top(queryDto.getDimension(), queryDto.getWindowMinutes(), queryDto.getLimit(), queryDto.getMetric()));
+    }
+
+    /**
+     * 单个实体的速率与逐桶流量
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/rate")
+    public R rate(@Validated @RequestBody TrafficQueryDto queryDto) {
+        if (!trafficAnalytics.supports(queryDto.getDimension())) return R.err("不支持的统计维度");
+        if (queryDto.getId() == null) return R.err("实体ID不能为空");
+        return R.ok(trafficAnalytics.rate(queryDto.getDimension(), queryDto.getId(), queryDto.getWindowMinutes()));
+    }
+
+    /**
+     * 有流量的实体之间的分位数分布
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/percentile")
+    public R percentile(@Validated @RequestBody TrafficQueryDto queryDto) {
+        if (!trafficAnalytics.supports(queryDto.getDimension())) return R.err("不支持的统计维度");
+        if (queryDto.getPercentiles() != null && queryDto.getPercentiles().stream().anyMatch(p -> p == null || p <= 0 || p > 100)) {
+            return R.err("分位数需在0到100之间");
+        }
+        return R.ok(trafficAnalytics.percentiles(queryDto.getDimension(), queryDto.getWindowMinutes(), queryDto.getPercentiles()));
+    }
+
+    /**
+     * 各维度跟踪的实体数与内存占用
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/stats")
+    public R stats() {
+        return R.ok(trafficAnalytics.stats());
+    }
+
+}
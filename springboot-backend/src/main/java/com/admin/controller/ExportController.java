@@ -0,0 +1,74 @@
+package com.admin.controller;
+
+import com.admin.common.annotation.RequireRole;
+import com.admin.common.dto.ListQueryDto;
+import com.admin.common.utils.JsonStreamWriter;
+import com.admin.service.StatisticsFlowService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 数据导出
+ * 结果直接从数据库游标写到响应流，默认 NDJSON（每行一个对象），format=json 时为 JSON 数组。
+ * 请求体与列表接口相同，支持过滤条件与 fields 投影，分页参数被忽略。
+ * 出错时不结束输出（不补数组结尾），避免客户端把中断的导出当成完整结果
+ */
+@RestController
+@CrossOrigin
+@RequestMapping("/api/v1/export")
+public class ExportController extends BaseController {
+
+    @Resource
+    StatisticsFlowService statisticsFlowService;
+
+    @PostMapping("/forward")
+    public void forwards(@RequestBody(required = false) ListQueryDto query,
+                         @RequestParam(value = "format", defaultValue = "ndjson") String format,
+                         HttpServletResponse response) throws IOException {
+        JsonStreamWriter writer = open(response, format, "forwards");
+        forwardService.exportForwards(query, writer);
+        writer.close();
+    }
+
+    @RequireRole
+    @PostMapping("/user")
+    public void users(@RequestBody(required = false) ListQueryDto query,
+                      @RequestParam(value = "format", defaultValue = "ndjson") String format,
+                      HttpServletResponse response) throws IOException {
+        JsonStreamWriter writer = open(response, format, "users");
+        userService.exportUsers(query, writer);
+        writer.close();
+    }
+
+    @RequireRole
+    @PostMapping("/user-tunnel")
+    public void userTunnels(@RequestBody(required = false) ListQueryDto query,
+                            @RequestParam(value = "format", defaultValue = "ndjson") String format,
+                            HttpServletResponse response) throws IOException {
+        JsonStreamWriter writer = open(response, format, "user_tunnels");
+        userTunnelService.exportUserTunnels(query, writer);
+        writer.close();
+    }
+
+    @RequireRole
+    @PostMapping("/flow")
+    public void flows(@RequestBody(required = false) ListQueryDto query,
+                      @RequestParam(value = "format", defaultValue = "ndjson") String format,
+                      HttpServletResponse response) throws IOException {
+        JsonStreamWriter writer = open(response, format, "statistics_flow");
+        statisticsFlowService.exportStatisticsFlows(query, writer);
+        writer.close();
+    }
+
+    private JsonStreamWriter open(HttpServletResponse response, String format, String name) throws IOException {
+        boolean ndjson = !"json".equalsIgnoreCase(format);
+        response.setContentType(ndjson ? JsonStreamWriter.NDJSON : MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=" + name + (ndjson ? ".ndjson" : ".json"));
+        return new JsonStreamWriter(response.getOutputStream(), ndjson);
+    }
+}
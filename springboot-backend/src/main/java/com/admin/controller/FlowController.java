@@ -3,9 +3,16 @@ package com.admin.controller;
 import com.admin.common.aop.LogAnnotation;
 import com.admin.common.dto.FlowDto;
 import com.admin.common.dto.GostConfigDto;
+import com.admin.common.interceptor.TableChangeInterceptor;
+import com.admin.common.task.BandwidthTierEngine;
 import com.admin.common.task.CheckGostConfigAsync;
+import com.admin.common.task.DashboardSnapshots;
+import com.admin.common.task.SubscriptionCache;
+import com.admin.common.task.TrafficAnalytics;
 import com.admin.common.utils.AESCrypto;
 import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.StripedLock;
+import com.admin.config.EncryptionConfig;
 import com.admin.entity.*;
 import com.admin.service.ChainTunnelService;
 import com.alibaba.fastjson.JSON;
@@ -22,7 +29,6 @@ import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 流量上报控制器
@@ -55,17 +61,26 @@ public class FlowController extends BaseController {
     private static final String DEFAULT_USER_TUNNEL_ID = "0";
     private static final long BYTES_TO_GB = 1024L * 1024L * 1024L;
 
-    // 用于同步相同用户和隧道的流量更新操作
-    private static final ConcurrentHashMap<String, Object> USER_LOCKS = new ConcurrentHashMap<>();
-    private static final ConcurrentHashMap<String, Object> TUNNEL_LOCKS = new ConcurrentHashMap<>();
-    private static final ConcurrentHashMap<String, Object> FORWARD_LOCKS = new ConcurrentHashMap<>();
-
-    // 缓存加密器实例，避免重复创建
-    private static final ConcurrentHashMap<String, AESCrypto> CRYPTO_CACHE = new ConcurrentHashMap<>();
+    // 用于同步相同用户和隧道的流量更新操作（固定分段，不随ID数量增长）
+    private static final StripedLock USER_LOCKS = new StripedLock(256);
+    private static final StripedLock TUNNEL_LOCKS = new StripedLock(256);
+    private static final StripedLock FORWARD_LOCKS = new StripedLock(256);
 
     @Resource
     CheckGostConfigAsync checkGostConfigAsync;
 
+    @Resource
+    SubscriptionCache subscriptionCache;
+
+    @Resource
+    BandwidthTierEngine bandwidthTierEngine;
+
+    @Resource
+    DashboardSnapshots dashboardSnapshots;
+
+    @Resource
+    TrafficAnalytics trafficAnalytics;
+
     @Resource
     @Lazy
     ChainTunnelService chainTunnelService;
@@ -144,7 +159,8 @@ public class FlowController extends BaseController {
     @LogAnnotation
     public String uploadFlowData(@RequestBody String rawData, String secret) {
         // 1. 验证节点权限
-        if (!isValidNode(secret)) {
+        Long nodeId = getNodeId(secret);
+        if (nodeId == null) {
             return SUCCESS_RESPONSE;
         }
 
@@ -158,7 +174,7 @@ public class FlowController extends BaseController {
             String jsonObject = flowDataList.getJSONObject(i).toJSONString();
             FlowDto flowDto = JSONObject.parseObject(jsonObject, FlowDto.class);
             if (!Objects.equals(flowDto.getN(), "web_api")) {
-                processFlowData(flowDto);
+                processFlowData(flowDto, nodeId);
             }
         }
         return SUCCESS_RESPONSE;
@@ -213,13 +229,13 @@ public class FlowController extends BaseController {
      * 获取或创建加密器实例
      */
     private AESCrypto getOrCreateCrypto(String secret) {
-        return CRYPTO_CACHE.computeIfAbsent(secret, AESCrypto::create);
+        return EncryptionConfig.getOrCreateCrypto(secret);
     }
 
     /**
      * 处理流量数据的核心逻辑
      */
-    private void processFlowData(FlowDto flowDataList) {
+    private void processFlowData(FlowDto flowDataList, Long nodeId) {
         String[] serviceIds = parseServiceName(flowDataList.getN());
         String forwardId = serviceIds[0];
         String userId = serviceIds[1];
@@ -240,9 +256,16 @@ public class FlowController extends BaseController {
         }
 
         // 先更新所有流量统计 - 确保流量数据的一致性
-        updateForwardFlow(forwardId, flowDataList);
-        updateUserFlow(userId, flowDataList);
-        updateUserTunnelFlow(userTunnelId, flowDataList);
+        TableChangeInterceptor.counterWrites(() -> {
+            updateForwardFlow(forwardId, flowDataList);
+            updateUserFlow(userId, flowDataList);
+            updateUserTunnelFlow(userTunnelId, flowDataList);
+        });
+        subscriptionCache.addTraffic(userId, userTunnelId, flowDataList.getD(), flowDataList.getU());
+        bandwidthTierEngine.record(userTunnelId, flowDataList.getD() + flowDataList.getU());
+        dashboardSnapshots.addTraffic(forwardId, userId, userTunnelId, flowDataList.getD(), flowDataList.getU());
+        trafficAnalytics.record(nodeId, forwardId, userId, forward == null ? null : forward.getTunnelId(),
+                flowDataList.getD() + flowDataList.getU());
 
         // 7. 检查和服务暂停操作
         String name = buildServiceName(forwardId, userId, userTunnelId);
@@ -363,20 +386,23 @@ public class FlowController extends BaseController {
     }
 
     private Object getUserLock(String userId) {
-        return USER_LOCKS.computeIfAbsent(userId, k -> new Object());
+        return USER_LOCKS.get(userId);
     }
 
     private Object getTunnelLock(String userTunnelId) {
-        return TUNNEL_LOCKS.computeIfAbsent(userTunnelId, k -> new Object());
+        return TUNNEL_LOCKS.get(userTunnelId);
     }
 
     private Object getForwardLock(String forwardId) {
-        return FORWARD_LOCKS.computeIfAbsent(forwardId, k -> new Object());
+        return FORWARD_LOCKS.get(forwardId);
     }
 
-    private boolean isValidNode(String secret) {
-        int nodeCount = nodeService.count(new QueryWrapper<Node>().eq("secret", secret));
-        return nodeCount > 0;
+    /**
+     * 按密钥查出上报节点的ID，密钥无效返回null
+     */
+    private Long getNodeId(String secret) {
+        Node node = nodeService.getOne(new QueryWrapper<Node>().select("id").eq("secret", secret).last("LIMIT 1"));
+        return node == null ? null : node.getId();
     }
 
     private String[] parseServiceName(String serviceName) {
@@ -7,7 +7,9 @@ import com.admin.common.dto.BatchRedeployDto;
 import com.admin.common.dto.BatchChangeTunnelDto;
 import com.admin.common.dto.ForwardDto;
 import com.admin.common.dto.ForwardUpdateDto;
+import com.admin.common.dto.ListQueryDto;
 import com.admin.common.lang.R;
+import com.admin.common.task.ResetFlowAsync;
 import com.admin.service.ForwardService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.annotation.Validated;
@@ -31,6 +33,9 @@ public class ForwardController extends BaseController {
     @Autowired
     private ForwardService forwardService;
 
+    @Autowired
+    private ResetFlowAsync resetFlowAsync;
+
     @LogAnnotation
     @PostMapping("/create")
     public R create(@Validated @RequestBody ForwardDto forwardDto) {
@@ -39,8 +44,8 @@ public class ForwardController extends BaseController {
 
     @LogAnnotation
     @PostMapping("/list")
-    public R readAll() {
-        return forwardService.getAllForwards();
+    public R readAll(@Validated @RequestBody(required = false) ListQueryDto query) {
+        return forwardService.getAllForwards(query);
     }
 
     @LogAnnotation
@@ -130,4 +135,14 @@ public class ForwardController extends BaseController {
         return forwardService.batchChangeTunnel(batchChangeTunnelDto);
     }
 
+    /**
+     * 到期/流量重置任务中暂停失败、等待重试的服务（节点ID -> 服务名）
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/pending-pauses")
+    public R pendingPauses() {
+        return R.ok(resetFlowAsync.getPendingPauses());
+    }
+
 }
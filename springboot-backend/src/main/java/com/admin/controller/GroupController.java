@@ -1,6 +1,7 @@
 package com.admin.controller;
 
 import com.admin.common.aop.LogAnnotation;
+import com.admin.common.annotation.ConditionalGet;
 import com.admin.common.annotation.RequireRole;
 import com.admin.common.dto.GroupCreateDto;
 import com.admin.common.dto.GroupPermissionAssignDto;
@@ -29,6 +30,7 @@ public class GroupController {
 
     @LogAnnotation
     @RequireRole
+    @ConditionalGet(tables = {"tunnel_group", "tunnel_group_tunnel", "tunnel"})
     @PostMapping("/tunnel/list")
     public R tunnelGroupList() {
         return groupService.getTunnelGroups();
@@ -65,6 +67,7 @@ public class GroupController {
 
     @LogAnnotation
     @RequireRole
+    @ConditionalGet(tables = {"user_group", "user_group_user", "user"})
     @PostMapping("/user/list")
     public R userGroupList() {
         return groupService.getUserGroups();
@@ -101,6 +104,7 @@ public class GroupController {
 
     @LogAnnotation
     @RequireRole
+    @ConditionalGet(tables = {"group_permission", "user_group", "tunnel_group"})
     @PostMapping("/permission/list")
     public R listPermissions() {
         return groupService.getGroupPermissions();
@@ -1,15 +1,22 @@
 package com.admin.controller;
 
 
+import com.admin.common.annotation.ConditionalGet;
 import com.admin.common.annotation.RequireRole;
 import com.admin.common.aop.LogAnnotation;
 import com.admin.common.dto.BatchDeleteDto;
 import com.admin.common.dto.NodeDto;
 import com.admin.common.dto.NodeUpdateDto;
+import com.admin.common.interceptor.RateLimitInterceptor;
 import com.admin.common.lang.R;
+import com.admin.common.task.LinkProbeScheduler;
+import com.admin.common.task.NodeHeartbeatTracker;
+import com.admin.common.task.NodeImpactAnalyzer;
+import com.alibaba.fastjson.JSONObject;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import javax.annotation.Resource;
 import java.util.Map;
 
 /**
@@ -25,6 +32,18 @@ import java.util.Map;
 @RequestMapping("/api/v1/node")
 public class NodeController extends BaseController {
 
+    @Resource
+    LinkProbeScheduler linkProbeScheduler;
+
+    @Resource
+    NodeImpactAnalyzer nodeImpactAnalyzer;
+
+    @Resource
+    NodeHeartbeatTracker nodeHeartbeatTracker;
+
+    @Resource
+    RateLimitInterceptor rateLimitInterceptor;
+
     @LogAnnotation
     @RequireRole
     @PostMapping("/create")
@@ -35,6 +54,7 @@ public class NodeController extends BaseController {
 
     @LogAnnotation
     @RequireRole
+    @ConditionalGet(tables = {"node"})
     @PostMapping("/list")
     public R list() {
         return nodeService.getAllNodes();
@@ -82,4 +102,46 @@ public class NodeController extends BaseController {
         return nodeService.batchDeleteNodes(batchDeleteDto);
     }
 
+    /**
+     * 链路质量：各隧道跳与转发目标在 5/15/60 分钟窗口内的 p50/p95/p99 延迟与丢包率
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/link-quality")
+    public R linkQuality() {
+        return R.ok(linkProbeScheduler.report());
+    }
+
+    /**
+     * 节点故障影响分析：受影响的隧道、转发、用户及剩余可用的入口/中转节点
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/impact")
+    public R impact(@RequestBody Map<String, Object> params) {
+        Long id = Long.valueOf(params.get("id").toString());
+        JSONObject impact = nodeImpactAnalyzer.analyze(id);
+        return impact == null ? R.err("节点不存在") : R.ok(impact);
+    }
+
+    /**
+     * 节点在线跟踪：发布状态、最后心跳时间、重连/断开次数、抖动抑制情况与入站消息积压
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/liveness")
+    public R liveness() {
+        return R.ok(nodeHeartbeatTracker.report());
+    }
+
+    /**
+     * 节点上报与订阅接口的限流统计：各策略放行/限流次数与跟踪的键数量
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/rate-limit")
+    public R rateLimit() {
+        return R.ok(rateLimitInterceptor.stats());
+    }
+
 }
@@ -5,13 +5,11 @@ import com.admin.common.aop.LogAnnotation;
 import com.admin.common.lang.R;
 import javax.servlet.http.HttpServletResponse;
 
-import com.admin.common.utils.Md5Util;
-import com.admin.entity.User;
-import com.admin.entity.UserTunnel;
+import com.admin.common.task.SubscriptionCache;
 import com.alibaba.fastjson.JSONObject;
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import org.springframework.web.bind.annotation.*;
 
+import javax.annotation.Resource;
 import java.util.Objects;
 
 @RestController
@@ -19,6 +17,9 @@ import java.util.Objects;
 @RequestMapping("/api/v1/open_api")
 public class OpenApiController extends BaseController {
 
+    @Resource
+    SubscriptionCache subscriptionCache;
+
     @LogAnnotation
     @GetMapping("/sub_store")
     public Object create(
@@ -39,37 +40,39 @@ public class OpenApiController extends BaseController {
             return R.err("密码不能为空");
         }
 
-        User userInfo = userService.getOne(new QueryWrapper<User>().eq("user", user));
-        if (userInfo == null) {
-            return R.err("鉴权失败");
+        // 凭据与用量都走内存缓存，回查数据库按用户名限流
+        Long userId;
+        try {
+            userId = subscriptionCache.verify(user, pwd);
+        } catch (SubscriptionCache.RateLimitedException e) {
+            return R.err(e.getMessage());
         }
-
-        String pwdMd5 = Md5Util.md5(pwd);
-        if (!Objects.equals(pwdMd5, userInfo.getPwd())) {
+        if (userId == null) {
             return R.err("鉴权失败");
         }
 
         final long GIGA = 1024L * 1024L * 1024L;
         String headerValue;
 
+        SubscriptionCache.Usage usage;
         if ("-1".equals(tunnel)) {
-            headerValue = buildSubscriptionHeader(
-                    userInfo.getOutFlow(),
-                    userInfo.getInFlow(),
-                    userInfo.getFlow() * GIGA,
-                    userInfo.getExpTime() / 1000
-            );
+            usage = subscriptionCache.userUsage(userId);
+            if (usage == null) return R.err("鉴权失败");
         } else {
-            UserTunnel tunnelInfo = userTunnelService.getById(tunnel);
-            if (tunnelInfo == null) return R.err("隧道不存在");
-            if (!tunnelInfo.getUserId().toString().equals(userInfo.getId().toString())) return R.err("隧道不存在");
-            headerValue = buildSubscriptionHeader(
-                    tunnelInfo.getOutFlow(),
-                    tunnelInfo.getInFlow(),
-                    tunnelInfo.getFlow() * GIGA,
-                    tunnelInfo.getExpTime() / 1000
-            );
+            try {
+                usage = subscriptionCache.userTunnelUsage(Integer.valueOf(tunnel));
+            } catch (NumberFormatException e) {
+                return R.err("隧道不存在");
+            }
+            if (usage == null) return R.err("隧道不存在");
+            if (!Objects.equals(usage.getUserId(), userId)) return R.err("隧道不存在");
         }
+        headerValue = buildSubscriptionHeader(
+                usage.getOutFlow(),
+                usage.getInFlow(),
+                usage.getFlow() * GIGA,
+                usage.getExpTime() / 1000
+        );
 
         response.setHeader("subscription-userinfo", headerValue);
         return headerValue;
@@ -1,10 +1,12 @@
 package com.admin.controller;
 
 import com.admin.common.aop.LogAnnotation;
+import com.admin.common.annotation.ConditionalGet;
 import com.admin.common.annotation.RequireRole;
 import com.admin.common.dto.SpeedLimitDto;
 import com.admin.common.dto.SpeedLimitUpdateDto;
 import com.admin.common.lang.R;
+import com.admin.common.task.BandwidthTierEngine;
 import com.admin.service.SpeedLimitService;
 import com.admin.service.TunnelService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,6 +34,9 @@ public class SpeedLimitController extends BaseController {
     @Autowired
     private TunnelService tunnelService;
 
+    @Autowired
+    private BandwidthTierEngine bandwidthTierEngine;
+
     @LogAnnotation
     @RequireRole
     @PostMapping("/create")
@@ -41,6 +46,7 @@ public class SpeedLimitController extends BaseController {
 
     @LogAnnotation
     @RequireRole
+    @ConditionalGet(tables = {"speed_limit"})
     @PostMapping("/list")
     public R list() {
         return speedLimitService.getAllSpeedLimits();
@@ -63,8 +69,19 @@ public class SpeedLimitController extends BaseController {
 
     @LogAnnotation
     @RequireRole
+    @ConditionalGet(tables = {"tunnel", "chain_tunnel"})
     @PostMapping("/tunnels")
     public R getTunnels() {
-        return tunnelService.getAllTunnels();
+        return tunnelService.getAllTunnels(null);
+    }
+
+    /**
+     * 自动分档最近一次评估的统计
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/tiers")
+    public R tiers() {
+        return R.ok(bandwidthTierEngine.report());
     }
 }
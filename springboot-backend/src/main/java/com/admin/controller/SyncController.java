@@ -0,0 +1,32 @@
+package com.admin.controller;
+
+import com.admin.common.annotation.RequireRole;
+import com.admin.common.aop.LogAnnotation;
+import com.admin.common.lang.R;
+import com.admin.service.SyncService;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+/**
+ * 管理端增量同步控制器
+ * 客户端带上次返回的 cursor 轮询，只拿到期间变化的行；返回 full 时重新拉取各列表
+ */
+@RestController
+@CrossOrigin
+@RequestMapping("/api/v1/sync")
+public class SyncController extends BaseController {
+
+    @Resource
+    SyncService syncService;
+
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/changes")
+    public R changes(@RequestBody(required = false) Map<String, Object> params) {
+        Object since = params == null ? null : params.get("since");
+        return syncService.changesSince(since == null ? null : since.toString());
+    }
+
+}
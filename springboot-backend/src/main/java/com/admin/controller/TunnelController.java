@@ -1,9 +1,11 @@
 package com.admin.controller;
 
 import com.admin.common.aop.LogAnnotation;
+import com.admin.common.annotation.ConditionalGet;
 import com.admin.common.annotation.RequireRole;
 import com.admin.common.dto.BatchDeleteDto;
 import com.admin.common.dto.BatchRedeployDto;
+import com.admin.common.dto.ListQueryDto;
 import com.admin.common.dto.TunnelDto;
 import com.admin.common.dto.TunnelUpdateDto;
 
@@ -48,9 +50,10 @@ public class TunnelController extends BaseController {
 
     @LogAnnotation
     @RequireRole
+    @ConditionalGet(tables = {"tunnel", "chain_tunnel"})
     @PostMapping("/list")
-    public R readAll() {
-        return tunnelService.getAllTunnels();
+    public R readAll(@Validated @RequestBody(required = false) ListQueryDto query) {
+        return tunnelService.getAllTunnels(query);
     }
 
     @LogAnnotation
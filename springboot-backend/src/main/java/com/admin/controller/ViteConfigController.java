@@ -1,6 +1,7 @@
 package com.admin.controller;
 
 
+import com.admin.common.annotation.ConditionalGet;
 import com.admin.common.annotation.RequireRole;
 import com.admin.common.aop.LogAnnotation;
 import com.admin.common.lang.R;
@@ -26,6 +27,7 @@ public class ViteConfigController extends BaseController {
      * 前端无需权限即可访问，用于获取网站基本信息
      */
     @LogAnnotation
+    @ConditionalGet(tables = {"vite_config"})
     @PostMapping("/list")
     public R getConfigs() {
         return viteConfigService.getConfigs();
@@ -50,4 +50,14 @@ public class SpeedLimit implements Serializable {
 
     private String tunnelName;
 
+    /**
+     * 自动分档阈值（GB）：用户隧道在 tierHours 小时内用量达到该值时自动切换到本限速，0 表示不参与自动分档
+     */
+    private Integer tierFlow;
+
+    /**
+     * 自动分档的统计窗口（小时）
+     */
+    private Integer tierHours;
+
 }
@@ -46,6 +46,11 @@ public class UserTunnel implements Serializable {
     @TableField(updateStrategy = FieldStrategy.IGNORED)
     private Integer speedId;
 
+    /**
+     * 自动分档生效的限速ID，为空时使用 speedId
+     */
+    private Integer tierSpeedId;
+
     private Integer num;
 
     private Integer status;
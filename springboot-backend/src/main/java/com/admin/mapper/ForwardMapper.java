@@ -2,9 +2,12 @@ package com.admin.mapper;
 
 import com.admin.entity.Forward;
 import com.admin.common.dto.ForwardWithTunnelDto;
+import com.admin.common.dto.ListQueryDto;
+import com.admin.common.utils.KeysetPage;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.util.List;
 
@@ -19,17 +22,18 @@ import java.util.List;
 public interface ForwardMapper extends BaseMapper<Forward> {
 
     /**
-     * 查询所有转发信息（包含隧道信息）
+     * 查询转发信息（包含隧道信息）
+     * @param q 过滤条件
+     * @param page 游标分页，为空时返回全部
      * @return 转发信息列表
      */
-    List<ForwardWithTunnelDto> selectAllForwardsWithTunnel();
+    List<ForwardWithTunnelDto> selectForwardsWithTunnel(@Param("q") ListQueryDto q, @Param("page") KeysetPage page);
 
     /**
-     * 根据用户ID查询转发信息（包含隧道信息）
-     * @param userId 用户ID
-     * @return 转发信息列表
+     * 按ID顺序流式读取转发信息，需在事务内迭代
+     * @param q 过滤条件
+     * @return 游标
      */
-    List<ForwardWithTunnelDto> selectForwardsWithTunnelByUserId(@Param("userId") Integer userId);
-
+    Cursor<ForwardWithTunnelDto> streamForwardsWithTunnel(@Param("q") ListQueryDto q);
 
 }
@@ -2,6 +2,11 @@ package com.admin.mapper;
 
 import com.admin.entity.GroupPermissionGrant;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 public interface GroupPermissionGrantMapper extends BaseMapper<GroupPermissionGrant> {
+
+    int insertBatch(@Param("list") List<GroupPermissionGrant> list);
 }
@@ -1,7 +1,10 @@
 package com.admin.mapper;
 
+import com.admin.common.dto.ListQueryDto;
 import com.admin.entity.StatisticsFlow;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
 /**
  * <p>
@@ -13,4 +16,11 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface StatisticsFlowMapper extends BaseMapper<StatisticsFlow> {
 
+    /**
+     * 按ID顺序流式读取流量历史，需在事务内迭代
+     * @param q 过滤条件，仅使用 userId
+     * @return 游标
+     */
+    Cursor<StatisticsFlow> streamStatisticsFlows(@Param("q") ListQueryDto q);
+
 }
@@ -2,6 +2,11 @@ package com.admin.mapper;
 
 import com.admin.entity.TunnelGroupTunnel;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 public interface TunnelGroupTunnelMapper extends BaseMapper<TunnelGroupTunnel> {
+
+    int insertBatch(@Param("list") List<TunnelGroupTunnel> list);
 }
@@ -2,6 +2,11 @@ package com.admin.mapper;
 
 import com.admin.entity.UserGroupUser;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 public interface UserGroupUserMapper extends BaseMapper<UserGroupUser> {
+
+    int insertBatch(@Param("list") List<UserGroupUser> list);
 }
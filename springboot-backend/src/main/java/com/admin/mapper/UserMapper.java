@@ -1,9 +1,11 @@
 package com.admin.mapper;
 
 import com.admin.entity.User;
+import com.admin.common.dto.ListQueryDto;
 import com.admin.common.dto.UserPackageDto;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.util.List;
 
@@ -31,4 +33,11 @@ public interface UserMapper extends BaseMapper<User> {
      */
     List<UserPackageDto.UserForwardDetailDto> getUserForwardDetails(@Param("userId") Integer userId);
 
+    /**
+     * 按ID顺序流式读取普通用户（不含密码），需在事务内迭代
+     * @param q 过滤条件
+     * @return 游标
+     */
+    Cursor<User> streamUsers(@Param("q") ListQueryDto q);
+
 }
@@ -1,10 +1,13 @@
 package com.admin.mapper;
 
 import com.admin.entity.UserTunnel;
+import com.admin.common.dto.ListQueryDto;
 import com.admin.common.dto.UserTunnelWithDetailDto;
+import com.admin.common.utils.KeysetPage;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.util.List;
 
@@ -19,6 +22,17 @@ import java.util.List;
 public interface UserTunnelMapper extends BaseMapper<UserTunnel> {
 
 
-    List<UserTunnelWithDetailDto> getUserTunnelWithDetails(@Param("userId") Integer userId);
+    /**
+     * 获取用户隧道权限及隧道详细信息
+     * @param q 过滤条件，userId 必填
+     * @param page 游标分页，为空时返回全部
+     */
+    List<UserTunnelWithDetailDto> getUserTunnelWithDetails(@Param("q") ListQueryDto q, @Param("page") KeysetPage page);
+
+    /**
+     * 按ID顺序流式读取用户隧道权限，需在事务内迭代
+     * @param q 过滤条件，userId 为空时读取全部用户
+     */
+    Cursor<UserTunnelWithDetailDto> streamUserTunnelWithDetails(@Param("q") ListQueryDto q);
 
 }
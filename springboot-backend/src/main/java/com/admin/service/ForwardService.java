@@ -5,9 +5,12 @@ import com.admin.common.dto.BatchRedeployDto;
 import com.admin.common.dto.BatchChangeTunnelDto;
 import com.admin.common.dto.ForwardDto;
 import com.admin.common.dto.ForwardUpdateDto;
+import com.admin.common.dto.ListQueryDto;
 import com.admin.common.lang.R;
+import com.admin.common.utils.JsonStreamWriter;
 import com.admin.entity.Forward;
 import com.baomidou.mybatisplus.extension.service.IService;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
 
@@ -30,9 +33,17 @@ public interface ForwardService extends IService<Forward> {
 
     /**
      * 获取端口转发列表
+     * @param query 过滤与分页参数，为空时返回全部
      * @return 结果
      */
-    R getAllForwards();
+    R getAllForwards(ListQueryDto query);
+
+    /**
+     * 流式导出端口转发
+     * @param query 过滤与字段投影参数
+     * @param writer 输出流
+     */
+    void exportForwards(ListQueryDto query, JsonStreamWriter writer) throws IOException;
 
     /**
      * 更新端口转发
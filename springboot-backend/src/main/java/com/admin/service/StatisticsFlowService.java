@@ -1,8 +1,12 @@
 package com.admin.service;
 
+import com.admin.common.dto.ListQueryDto;
+import com.admin.common.utils.JsonStreamWriter;
 import com.admin.entity.StatisticsFlow;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.io.IOException;
+
 /**
  * <p>
  *  服务类
@@ -13,4 +17,11 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface StatisticsFlowService extends IService<StatisticsFlow> {
 
+    /**
+     * 流式导出流量历史
+     * @param query 过滤参数，仅使用 userId 与 fields
+     * @param writer 输出流
+     */
+    void exportStatisticsFlows(ListQueryDto query, JsonStreamWriter writer) throws IOException;
+
 }
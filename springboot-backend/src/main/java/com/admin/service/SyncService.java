@@ -0,0 +1,19 @@
+package com.admin.service;
+
+import com.admin.common.lang.R;
+
+/**
+ * 管理端增量同步
+ */
+public interface SyncService {
+
+    /**
+     * 读取游标之后变化的转发、隧道、节点、用户与用户隧道权限
+     * @param since 上次返回的游标，为空时要求全量刷新
+     * @return cursor 新游标；full 为 true 时客户端需全量刷新；
+     *         reset 中的表变化过多或无法定位到行，需单独刷新；
+     *         changes 按表给出 upserts（与列表接口同结构的行）和 deletes（ID）
+     */
+    R changesSince(String since);
+
+}
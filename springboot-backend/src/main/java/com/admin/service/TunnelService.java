@@ -2,6 +2,7 @@ package com.admin.service;
 
 import com.admin.common.dto.BatchDeleteDto;
 import com.admin.common.dto.BatchRedeployDto;
+import com.admin.common.dto.ListQueryDto;
 import com.admin.common.dto.TunnelDto;
 import com.admin.common.dto.TunnelUpdateDto;
 
@@ -30,9 +31,10 @@ public interface TunnelService extends IService<Tunnel> {
 
     /**
      * 获取隧道列表
+     * @param query 过滤与分页参数，为空时返回全部
      * @return 结果
      */
-    R getAllTunnels();
+    R getAllTunnels(ListQueryDto query);
 
     /**
      * 更新隧道（只允许修改名称、流量计费、端口范围）
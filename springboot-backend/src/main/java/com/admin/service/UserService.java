@@ -2,9 +2,12 @@ package com.admin.service;
 
 import com.admin.common.dto.*;
 import com.admin.common.lang.R;
+import com.admin.common.utils.JsonStreamWriter;
 import com.admin.entity.User;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.io.IOException;
+
 /**
  * <p>
  *  服务类
@@ -19,7 +22,12 @@ public interface UserService extends IService<User> {
 
     R createUser(UserDto userDto);
 
-    R getAllUsers();
+    R getAllUsers(ListQueryDto query);
+
+    /**
+     * 流式导出普通用户（不含密码）
+     */
+    void exportUsers(ListQueryDto query, JsonStreamWriter writer) throws IOException;
 
     R updateUser(UserUpdateDto userUpdateDto);
 
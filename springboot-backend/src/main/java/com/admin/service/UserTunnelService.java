@@ -1,13 +1,17 @@
 package com.admin.service;
 
+import com.admin.common.dto.ListQueryDto;
 import com.admin.common.dto.UserTunnelBatchAssignDto;
 import com.admin.common.dto.UserTunnelDto;
 import com.admin.common.dto.UserTunnelQueryDto;
 import com.admin.common.dto.UserTunnelUpdateDto;
 import com.admin.common.lang.R;
+import com.admin.common.utils.JsonStreamWriter;
 import com.admin.entity.UserTunnel;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.io.IOException;
+
 public interface UserTunnelService extends IService<UserTunnel> {
 
     R assignUserTunnel(UserTunnelDto userTunnelDto);
@@ -15,6 +19,11 @@ public interface UserTunnelService extends IService<UserTunnel> {
     R batchAssignUserTunnel(UserTunnelBatchAssignDto batchAssignDto);
     
     R getUserTunnelList(UserTunnelQueryDto queryDto);
+
+    /**
+     * 流式导出用户隧道权限，userId 为空时导出全部用户
+     */
+    void exportUserTunnels(ListQueryDto query, JsonStreamWriter writer) throws IOException;
     
     R removeUserTunnel(Integer id);
     
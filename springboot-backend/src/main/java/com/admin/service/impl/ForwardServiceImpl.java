@@ -1,10 +1,15 @@
 package com.admin.service.impl;
 
+import com.admin.common.annotation.UnitOfWork;
 import com.admin.common.dto.*;
 import com.admin.common.lang.R;
+import com.admin.common.task.BandwidthTierEngine;
+import com.admin.common.task.DiagnosisEngine;
+import com.admin.common.task.TopologyGraph;
 import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.JsonStreamWriter;
 import com.admin.common.utils.JwtUtil;
-import com.admin.common.utils.WebSocketServer;
+import com.admin.common.utils.KeysetPage;
 import com.admin.entity.*;
 import com.admin.mapper.ForwardMapper;
 import com.admin.service.*;
@@ -14,6 +19,7 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.alibaba.fastjson.JSONObject;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
@@ -21,8 +27,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -38,6 +46,19 @@ import java.util.stream.Collectors;
 public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> implements ForwardService {
 
     private static final long BYTES_TO_GB = 1024L * 1024L * 1024L;
+    private static final int EXPORT_BATCH_SIZE = 500;
+
+    // 列表允许的排序字段，均有索引
+    private static final Map<String, String> FORWARD_SORT_COLUMNS = Map.of(
+            "createdTime", "f.created_time",
+            "inx", "f.inx",
+            "id", "f.id"
+    );
+    private static final Map<String, Function<ForwardWithTunnelDto, ? extends Number>> FORWARD_SORT_VALUES = Map.of(
+            "f.created_time", ForwardWithTunnelDto::getCreatedTime,
+            "f.inx", ForwardWithTunnelDto::getInx,
+            "f.id", ForwardWithTunnelDto::getId
+    );
 
     @Resource
     @Lazy
@@ -58,26 +79,96 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
     @Resource
     ForwardPortService forwardPortService;
 
+    @Resource
+    DiagnosisEngine diagnosisEngine;
+
+    @Resource
+    TopologyGraph topologyGraph;
+
     @Override
-    public R getAllForwards() {
+    public R getAllForwards(ListQueryDto query) {
         UserInfo currentUser = getCurrentUserInfo();
-        List<ForwardWithTunnelDto> forwardList;
+        ListQueryDto q = query != null ? query : new ListQueryDto();
         if (currentUser.getRoleId() != 0) {
-            forwardList = baseMapper.selectForwardsWithTunnelByUserId(currentUser.getUserId());
-        } else {
-            forwardList = baseMapper.selectAllForwardsWithTunnel();
+            q.setUserId(currentUser.getUserId());
+        }
+        KeysetPage page = KeysetPage.of(q, FORWARD_SORT_COLUMNS, "createdTime", true);
+        List<ForwardWithTunnelDto> forwardList = baseMapper.selectForwardsWithTunnel(q, page);
+
+        // 投影不需要入口信息时跳过端口与节点查询
+        if (KeysetPage.wants(q.getFields(), "inIp", "inPort")) {
+            fillEntryAddresses(page != null && forwardList.size() > page.getLimit()
+                    ? forwardList.subList(0, page.getLimit()) : forwardList);
+        }
+
+        if (page == null) {
+            return R.ok(KeysetPage.project(forwardList, q.getFields()));
         }
+        return R.ok(page.result(forwardList, FORWARD_SORT_VALUES.get(page.getColumn()), ForwardWithTunnelDto::getId, q.getFields()));
+    }
+
+    @Override
+    @Transactional
+    public void exportForwards(ListQueryDto query, JsonStreamWriter writer) throws IOException {
+        UserInfo currentUser = getCurrentUserInfo();
+        ListQueryDto q = query != null ? query : new ListQueryDto();
+        if (currentUser.getRoleId() != 0) {
+            q.setUserId(currentUser.getUserId());
+        }
+        boolean withEntry = KeysetPage.wants(q.getFields(), "inIp", "inPort");
+        List<ForwardWithTunnelDto> batch = new ArrayList<>(EXPORT_BATCH_SIZE);
+        try (Cursor<ForwardWithTunnelDto> cursor = baseMapper.streamForwardsWithTunnel(q)) {
+            for (ForwardWithTunnelDto forward : cursor) {
+                batch.add(forward);
+                if (batch.size() >= EXPORT_BATCH_SIZE) {
+                    writeForwardBatch(batch, withEntry, q.getFields(), writer);
+                }
+            }
+        }
+        writeForwardBatch(batch, withEntry, q.getFields(), writer);
+    }
+
+    /**
+     * 入口信息按批补全后写出，批内存用完即清空
+     */
+    private void writeForwardBatch(List<ForwardWithTunnelDto> batch, boolean withEntry, List<String> fields,
+                                   JsonStreamWriter writer) throws IOException {
+        if (withEntry) {
+            fillEntryAddresses(batch);
+        }
+        for (ForwardWithTunnelDto forward : batch) {
+            writer.write(KeysetPage.projectRow(forward, fields));
+        }
+        batch.clear();
+    }
+
+    /**
+     * 填充入口IP和端口信息，隧道、端口、节点各批量查询一次
+     */
+    private void fillEntryAddresses(List<ForwardWithTunnelDto> forwardList) {
+        if (forwardList.isEmpty()) {
+            return;
+        }
+        Set<Integer> tunnelIds = forwardList.stream().map(ForwardWithTunnelDto::getTunnelId)
+                .filter(Objects::nonNull).collect(Collectors.toSet());
+        Map<Long, Tunnel> tunnels = tunnelIds.isEmpty() ? Collections.emptyMap()
+                : tunnelService.listByIds(tunnelIds).stream().collect(Collectors.toMap(Tunnel::getId, t -> t));
+        List<Long> forwardIds = forwardList.stream().map(ForwardWithTunnelDto::getId).collect(Collectors.toList());
+        Map<Long, List<ForwardPort>> portsByForward = forwardPortService.list(
+                new QueryWrapper<ForwardPort>().in("forward_id", forwardIds).orderByAsc("id")
+        ).stream().collect(Collectors.groupingBy(ForwardPort::getForwardId, LinkedHashMap::new, Collectors.toList()));
+        Set<Long> nodeIds = portsByForward.values().stream().flatMap(List::stream)
+                .map(ForwardPort::getNodeId).collect(Collectors.toSet());
+        Map<Long, Node> nodes = nodeIds.isEmpty() ? Collections.emptyMap()
+                : nodeService.listByIds(nodeIds).stream().collect(Collectors.toMap(Node::getId, n -> n));
 
-        // 填充入口IP和端口信息
         for (ForwardWithTunnelDto forward : forwardList) {
             // 获取隧道信息
-            Tunnel tunnel = tunnelService.getById(forward.getTunnelId());
+            Tunnel tunnel = forward.getTunnelId() == null ? null : tunnels.get(forward.getTunnelId().longValue());
             if (tunnel == null) continue;
 
             // 获取该转发的所有ForwardPort记录
-            List<ForwardPort> forwardPorts = forwardPortService.list(
-                    new QueryWrapper<ForwardPort>().eq("forward_id", forward.getId())
-            );
+            List<ForwardPort> forwardPorts = portsByForward.getOrDefault(forward.getId(), Collections.emptyList());
 
             if (forwardPorts.isEmpty()) continue;
 
@@ -123,7 +214,7 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
             } else {
                 // 使用节点的serverIp（一对一，不求笛卡尔积）
                 for (ForwardPort forwardPort : forwardPorts) {
-                    Node node = nodeService.getById(forwardPort.getNodeId());
+                    Node node = nodes.get(forwardPort.getNodeId());
                     if (node != null && node.getServerIp() != null && forwardPort.getPort() != null) {
                         ipPortSet.add(node.getServerIp() + ":" + forwardPort.getPort());
                     }
@@ -140,8 +231,6 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
                 forward.setInIp(String.join(",", ipPortSet));
             }
         }
-
-        return R.ok(forwardList);
     }
 
     @Override
@@ -468,6 +557,7 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
     }
 
     @Override
+    @UnitOfWork
     public R diagnoseForward(Long id) {
         // 1. 获取当前用户信息
         UserInfo currentUser = getCurrentUserInfo();
@@ -484,36 +574,17 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
             return R.err("隧道不存在");
         }
 
-        // 4. 获取隧道的ChainTunnel信息
-        List<ChainTunnel> chainTunnels = chainTunnelService.list(
-                new QueryWrapper<ChainTunnel>().eq("tunnel_id", tunnel.getId())
-        );
-
-        if (chainTunnels.isEmpty()) {
+        // 4. 从拓扑索引获取隧道的节点分类
+        TopologyGraph.Topology topology = topologyGraph.view();
+        if (topology.chainsOfTunnel(tunnel.getId()).isEmpty()) {
             return R.err("隧道配置不完整");
         }
 
-        // 分类节点
-        List<ChainTunnel> inNodes = chainTunnels.stream()
-                .filter(ct -> ct.getChainType() == 1)
-                .toList();
-
-        Map<Integer, List<ChainTunnel>> chainNodesMap = chainTunnels.stream()
-                .filter(ct -> ct.getChainType() == 2)
-                .collect(Collectors.groupingBy(
-                        ct -> ct.getInx() != null ? ct.getInx() : 0,
-                        Collectors.toList()
-                ));
-
-        List<List<ChainTunnel>> chainNodesList = chainNodesMap.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
-                .map(Map.Entry::getValue)
-                .toList();
-
-        List<ChainTunnel> outNodes = chainTunnels.stream()
-                .filter(ct -> ct.getChainType() == 3)
-                .toList();
+        List<ChainTunnel> inNodes = topology.entriesOfTunnel(tunnel.getId());
+        List<List<ChainTunnel>> chainNodesList = topology.hopsOfTunnel(tunnel.getId());
+        List<ChainTunnel> outNodes = topology.exitsOfTunnel(tunnel.getId());
 
+        DiagnosisEngine.Session diagnosis = diagnosisEngine.open("forward", id);
         List<CompletableFuture<DiagnosisResult>> futures = new ArrayList<>();
         String[] remoteAddresses = forward.getRemoteAddr().split(",");
 
@@ -531,14 +602,12 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
                             final String finalTargetIp = targetIp;
                             final int finalTargetPort = targetPort;
                             final String finalRemoteAddress = remoteAddress;
-                            futures.add(CompletableFuture.supplyAsync(() -> {
-                                DiagnosisResult result = performTcpPingDiagnosisWithConnectionCheck(
-                                        finalNode, finalTargetIp, finalTargetPort,
-                                        "入口(" + finalNode.getName() + ")->目标(" + finalRemoteAddress + ")"
-                                );
-                                result.setFromChainType(1);
-                                return result;
-                            }));
+                            futures.add(diagnosis.probe(
+                                    finalNode, finalTargetIp, finalTargetPort,
+                                    "入口(" + finalNode.getName() + ")->目标(" + finalRemoteAddress + ")",
+                                    result -> {
+                                        result.setFromChainType(1);
+                                    }));
                         }
                     }
                 }
@@ -557,16 +626,14 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
                                 final Node finalFromNode = fromNode;
                                 final Node finalToNode = toNode;
                                 final ChainTunnel finalFirstChainNode = firstChainNode;
-                                futures.add(CompletableFuture.supplyAsync(() -> {
-                                    DiagnosisResult result = performTcpPingDiagnosisWithConnectionCheck(
+                                futures.add(diagnosis.probe(
                                         finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalFirstChainNode.getPort(),
-                                            "入口(" + finalFromNode.getName() + ")->第1跳(" + finalToNode.getName() + ")"
-                                    );
-                                    result.setFromChainType(1);
-                                    result.setToChainType(2);
-                                    result.setToInx(finalFirstChainNode.getInx());
-                                    return result;
-                                }));
+                                        "入口(" + finalFromNode.getName() + ")->第1跳(" + finalToNode.getName() + ")",
+                                        result -> {
+                                            result.setFromChainType(1);
+                                            result.setToChainType(2);
+                                            result.setToInx(finalFirstChainNode.getInx());
+                                        }));
                             }
                         }
                     } else if (!outNodes.isEmpty()) {
@@ -576,15 +643,13 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
                                 final Node finalFromNode = fromNode;
                                 final Node finalToNode = toNode;
                                 final ChainTunnel finalOutNode = outNode;
-                                futures.add(CompletableFuture.supplyAsync(() -> {
-                                    DiagnosisResult result = performTcpPingDiagnosisWithConnectionCheck(
-                                            finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalOutNode.getPort(),
-                                            "入口(" + finalFromNode.getName() + ")->出口(" + finalToNode.getName() + ")"
-                                    );
-                                    result.setFromChainType(1);
-                                    result.setToChainType(3);
-                                    return result;
-                                }));
+                                futures.add(diagnosis.probe(
+                                        finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalOutNode.getPort(),
+                                        "入口(" + finalFromNode.getName() + ")->出口(" + finalToNode.getName() + ")",
+                                        result -> {
+                                            result.setFromChainType(1);
+                                            result.setToChainType(3);
+                                        }));
                             }
                         }
                     }
@@ -608,17 +673,15 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
                                     final Node finalToNode = toNode;
                                     final ChainTunnel finalCurrentNode = currentNode;
                                     final ChainTunnel finalNextNode = nextNode;
-                                    futures.add(CompletableFuture.supplyAsync(() -> {
-                                        DiagnosisResult result = performTcpPingDiagnosisWithConnectionCheck(
-                                                finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalNextNode.getPort(),
-                                                "第" + (hopIndex + 1) + "跳(" + finalFromNode.getName() + ")->第" + (hopIndex + 2) + "跳(" + finalToNode.getName() + ")"
-                                        );
-                                        result.setFromChainType(2);
-                                        result.setFromInx(finalCurrentNode.getInx());
-                                        result.setToChainType(2);
-                                        result.setToInx(finalNextNode.getInx());
-                                        return result;
-                                    }));
+                                    futures.add(diagnosis.probe(
+                                            finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalNextNode.getPort(),
+                                            "第" + (hopIndex + 1) + "跳(" + finalFromNode.getName() + ")->第" + (hopIndex + 2) + "跳(" + finalToNode.getName() + ")",
+                                            result -> {
+                                                result.setFromChainType(2);
+                                                result.setFromInx(finalCurrentNode.getInx());
+                                                result.setToChainType(2);
+                                                result.setToInx(finalNextNode.getInx());
+                                            }));
                                 }
                             }
                         } else if (!outNodes.isEmpty()) {
@@ -629,16 +692,14 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
                                     final Node finalToNode = toNode;
                                     final ChainTunnel finalCurrentNode = currentNode;
                                     final ChainTunnel finalOutNode = outNode;
-                                    futures.add(CompletableFuture.supplyAsync(() -> {
-                                        DiagnosisResult result = performTcpPingDiagnosisWithConnectionCheck(
-                                                finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalOutNode.getPort(),
-                                                "第" + (hopIndex + 1) + "跳(" + finalFromNode.getName() + ")->出口(" + finalToNode.getName() + ")"
-                                        );
-                                        result.setFromChainType(2);
-                                        result.setFromInx(finalCurrentNode.getInx());
-                                        result.setToChainType(3);
-                                        return result;
-                                    }));
+                                    futures.add(diagnosis.probe(
+                                            finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalOutNode.getPort(),
+                                            "第" + (hopIndex + 1) + "跳(" + finalFromNode.getName() + ")->出口(" + finalToNode.getName() + ")",
+                                            result -> {
+                                                result.setFromChainType(2);
+                                                result.setFromInx(finalCurrentNode.getInx());
+                                                result.setToChainType(3);
+                                            }));
                                 }
                             }
                         }
@@ -658,24 +719,26 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
                             final String finalTargetIp = targetIp;
                             final int finalTargetPort = targetPort;
                             final String finalRemoteAddress = remoteAddress;
-                            futures.add(CompletableFuture.supplyAsync(() -> {
-                                DiagnosisResult result = performTcpPingDiagnosisWithConnectionCheck(
-                                        finalNode, finalTargetIp, finalTargetPort,
-                                        "出口(" + finalNode.getName() + ")->目标(" + finalRemoteAddress + ")"
-                                );
-                                result.setFromChainType(3);
-                                return result;
-                            }));
+                            futures.add(diagnosis.probe(
+                                    finalNode, finalTargetIp, finalTargetPort,
+                                    "出口(" + finalNode.getName() + ")->目标(" + finalRemoteAddress + ")",
+                                    result -> {
+                                        result.setFromChainType(3);
+                                    }));
                         }
                     }
                 }
             }
         }
 
+        // 按源节点合并下发探测
+        diagnosis.dispatch();
+
         // 等待所有诊断任务完成并收集结果
         List<DiagnosisResult> results = futures.stream()
                 .map(CompletableFuture::join)
                 .collect(Collectors.toList());
+        diagnosis.finish(results);
 
         // 构建诊断报告
         Map<String, Object> diagnosisReport = new HashMap<>();
@@ -867,101 +930,6 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
         return -1;
     }
 
-    private DiagnosisResult performTcpPingDiagnosis(Node node, String targetIp, int port, String description) {
-        try {
-            // 构建TCP ping请求数据
-            JSONObject tcpPingData = new JSONObject();
-            tcpPingData.put("ip", targetIp);
-            tcpPingData.put("port", port);
-            tcpPingData.put("count", 4);
-            tcpPingData.put("timeout", 5000); // 5秒超时
-
-            // 发送TCP ping命令到节点
-            GostDto gostResult = WebSocketServer.send_msg(node.getId(), tcpPingData, "TcpPing");
-
-            DiagnosisResult result = new DiagnosisResult();
-            result.setNodeId(node.getId());
-            result.setNodeName(node.getName());
-            result.setTargetIp(targetIp);
-            result.setTargetPort(port);
-            result.setDescription(description);
-            result.setTimestamp(System.currentTimeMillis());
-
-            if (gostResult != null && "OK".equals(gostResult.getMsg())) {
-                // 尝试解析TCP ping响应数据
-                try {
-                    if (gostResult.getData() != null) {
-                        JSONObject tcpPingResponse = (JSONObject) gostResult.getData();
-                        boolean success = tcpPingResponse.getBooleanValue("success");
-
-                        result.setSuccess(success);
-                        if (success) {
-                            result.setMessage("TCP连接成功");
-                            result.setAverageTime(tcpPingResponse.getDoubleValue("averageTime"));
-                            result.setPacketLoss(tcpPingResponse.getDoubleValue("packetLoss"));
-                        } else {
-                            result.setMessage(tcpPingResponse.getString("errorMessage"));
-                            result.setAverageTime(-1.0);
-                            result.setPacketLoss(100.0);
-                        }
-                    } else {
-                        // 没有详细数据，使用默认值
-                        result.setSuccess(true);
-                        result.setMessage("TCP连接成功");
-                        result.setAverageTime(0.0);
-                        result.setPacketLoss(0.0);
-                    }
-                } catch (Exception e) {
-                    // 解析响应数据失败，但TCP ping命令本身成功了
-                    result.setSuccess(true);
-                    result.setMessage("TCP连接成功，但无法解析详细数据");
-                    result.setAverageTime(0.0);
-                    result.setPacketLoss(0.0);
-                }
-            } else {
-                result.setSuccess(false);
-                result.setMessage(gostResult != null ? gostResult.getMsg() : "节点无响应");
-                result.setAverageTime(-1.0);
-                result.setPacketLoss(100.0);
-            }
-
-            return result;
-        } catch (Exception e) {
-            DiagnosisResult result = new DiagnosisResult();
-            result.setNodeId(node.getId());
-            result.setNodeName(node.getName());
-            result.setTargetIp(targetIp);
-            result.setTargetPort(port);
-            result.setDescription(description);
-            result.setSuccess(false);
-            result.setMessage("诊断执行异常: " + e.getMessage());
-            result.setTimestamp(System.currentTimeMillis());
-            result.setAverageTime(-1.0);
-            result.setPacketLoss(100.0);
-            return result;
-        }
-    }
-
-    private DiagnosisResult performTcpPingDiagnosisWithConnectionCheck(Node node, String targetIp, int port, String description) {
-        DiagnosisResult result = new DiagnosisResult();
-        result.setNodeId(node.getId());
-        result.setNodeName(node.getName());
-        result.setTargetIp(targetIp);
-        result.setTargetPort(port);
-        result.setDescription(description);
-        result.setTimestamp(System.currentTimeMillis());
-
-        try {
-            return performTcpPingDiagnosis(node, targetIp, port, description);
-        } catch (Exception e) {
-            result.setSuccess(false);
-            result.setMessage("连接检查异常: " + e.getMessage());
-            result.setAverageTime(-1.0);
-            result.setPacketLoss(100.0);
-            return result;
-        }
-    }
-
     private UserInfo getCurrentUserInfo() {
         Integer userId = JwtUtil.getUserIdFromToken();
         Integer roleId = JwtUtil.getRoleIdFromToken();
@@ -1028,7 +996,7 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
             return UserPermissionResult.error(quotaCheckResult.getMsg());
         }
 
-        return UserPermissionResult.success(userTunnel.getSpeedId(), userTunnel);
+        return UserPermissionResult.success(BandwidthTierEngine.effectiveSpeedId(userTunnel), userTunnel);
     }
 
     private R checkForwardQuota(Integer userId, Integer tunnelId, UserTunnel userTunnel, User userInfo, Long excludeForwardId) {
@@ -1224,26 +1192,6 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
         }
     }
 
-    @Data
-    public static class DiagnosisResult {
-        private Long nodeId;
-        private String nodeName;
-        private String targetIp;
-        private Integer targetPort;
-        private String description;
-        private boolean success;
-        private String message;
-        private double averageTime;
-        private double packetLoss;
-        private long timestamp;
-
-        // 链路类型相关字段
-        private Integer fromChainType; // 1: 入口, 2: 链, 3: 出口
-        private Integer fromInx;
-        private Integer toChainType;
-        private Integer toInx;
-    }
-
     @Override
     @Transactional
     public R batchDeleteForwards(BatchDeleteDto batchDeleteDto) {
@@ -1390,6 +1338,7 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
 
     @Override
     @Transactional
+    @UnitOfWork
     public R batchChangeTunnel(BatchChangeTunnelDto batchChangeTunnelDto) {
         UserInfo currentUser = getCurrentUserInfo();
         BatchOperationResultDto result = new BatchOperationResultDto();
@@ -1,5 +1,6 @@
 package com.admin.service.impl;
 
+import cn.hutool.core.collection.CollUtil;
 import com.admin.common.dto.GroupCreateDto;
 import com.admin.common.dto.GroupPermissionAssignDto;
 import com.admin.common.dto.GroupPermissionDetailDto;
@@ -9,6 +10,8 @@ import com.admin.common.dto.TunnelGroupDetailDto;
 import com.admin.common.dto.UserGroupAssignUsersDto;
 import com.admin.common.dto.UserGroupDetailDto;
 import com.admin.common.lang.R;
+import com.admin.common.task.ExpiryScheduler;
+import com.admin.common.utils.LongHashSet;
 import com.admin.entity.GroupPermission;
 import com.admin.entity.GroupPermissionGrant;
 import com.admin.entity.Tunnel;
@@ -29,11 +32,13 @@ import com.admin.service.TunnelService;
 import com.admin.service.UserService;
 import com.admin.service.UserTunnelService;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -41,12 +46,18 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
 public class GroupServiceImpl implements GroupService {
 
+    // IN 条件单批数量（两个IN同时使用时合计不超过SQLite变量上限）
+    private static final int QUERY_BATCH_SIZE = 400;
+
+    // 多行INSERT单批行数
+    private static final int INSERT_BATCH_SIZE = 150;
+
     @Resource
     private TunnelGroupMapper tunnelGroupMapper;
 
@@ -74,6 +85,10 @@ public class GroupServiceImpl implements GroupService {
     @Resource
     private UserTunnelService userTunnelService;
 
+    @Resource
+    @Lazy
+    private ExpiryScheduler expiryScheduler;
+
     @Override
     public R getTunnelGroups() {
         List<TunnelGroup> groups = tunnelGroupMapper.selectList(new QueryWrapper<TunnelGroup>().orderByAsc("id"));
@@ -174,20 +189,34 @@ public class GroupServiceImpl implements GroupService {
             }
         }
 
-        tunnelGroupTunnelMapper.delete(new QueryWrapper<TunnelGroupTunnel>().eq("tunnel_group_id", dto.getGroupId()));
+        Set<Long> oldTunnelIds = loadTunnelIds(dto.getGroupId());
+        Set<Long> addedTunnelIds = new LinkedHashSet<>(tunnelIds);
+        addedTunnelIds.removeAll(oldTunnelIds);
+        Set<Long> removedTunnelIds = new LinkedHashSet<>(oldTunnelIds);
+        removedTunnelIds.removeAll(tunnelIds);
 
-        if (!tunnelIds.isEmpty()) {
+        for (List<Long> chunk : CollUtil.split(removedTunnelIds, QUERY_BATCH_SIZE)) {
+            tunnelGroupTunnelMapper.delete(new QueryWrapper<TunnelGroupTunnel>()
+                    .eq("tunnel_group_id", dto.getGroupId())
+                    .in("tunnel_id", chunk));
+        }
+
+        if (!addedTunnelIds.isEmpty()) {
             long now = System.currentTimeMillis();
-            for (Long tunnelId : tunnelIds) {
+            List<TunnelGroupTunnel> relations = new ArrayList<>();
+            for (Long tunnelId : addedTunnelIds) {
                 TunnelGroupTunnel relation = new TunnelGroupTunnel();
                 relation.setTunnelGroupId(dto.getGroupId());
                 relation.setTunnelId(tunnelId);
                 relation.setCreatedTime(now);
-                tunnelGroupTunnelMapper.insert(relation);
+                relations.add(relation);
+            }
+            for (List<TunnelGroupTunnel> chunk : CollUtil.split(relations, INSERT_BATCH_SIZE)) {
+                tunnelGroupTunnelMapper.insertBatch(chunk);
             }
         }
 
-        syncByTunnelGroup(dto.getGroupId());
+        syncTunnelGroupDelta(dto.getGroupId(), addedTunnelIds, removedTunnelIds);
         return R.ok();
     }
 
@@ -291,20 +320,34 @@ public class GroupServiceImpl implements GroupService {
             }
         }
 
-        userGroupUserMapper.delete(new QueryWrapper<UserGroupUser>().eq("user_group_id", dto.getGroupId()));
+        Set<Long> oldUserIds = loadUserIds(dto.getGroupId());
+        Set<Long> addedUserIds = new LinkedHashSet<>(userIds);
+        addedUserIds.removeAll(oldUserIds);
+        Set<Long> removedUserIds = new LinkedHashSet<>(oldUserIds);
+        removedUserIds.removeAll(userIds);
 
-        if (!userIds.isEmpty()) {
+        for (List<Long> chunk : CollUtil.split(removedUserIds, QUERY_BATCH_SIZE)) {
+            userGroupUserMapper.delete(new QueryWrapper<UserGroupUser>()
+                    .eq("user_group_id", dto.getGroupId())
+                    .in("user_id", chunk));
+        }
+
+        if (!addedUserIds.isEmpty()) {
             long now = System.currentTimeMillis();
-            for (Long userId : userIds) {
+            List<UserGroupUser> relations = new ArrayList<>();
+            for (Long userId : addedUserIds) {
                 UserGroupUser relation = new UserGroupUser();
                 relation.setUserGroupId(dto.getGroupId());
                 relation.setUserId(userId);
                 relation.setCreatedTime(now);
-                userGroupUserMapper.insert(relation);
+                relations.add(relation);
+            }
+            for (List<UserGroupUser> chunk : CollUtil.split(relations, INSERT_BATCH_SIZE)) {
+                userGroupUserMapper.insertBatch(chunk);
             }
         }
 
-        syncByUserGroup(dto.getGroupId());
+        syncUserGroupDelta(dto.getGroupId(), addedUserIds, removedUserIds);
         return R.ok();
     }
 
@@ -377,121 +420,215 @@ public class GroupServiceImpl implements GroupService {
         return R.ok();
     }
 
-    private void syncByUserGroup(Long userGroupId) {
+    /**
+     * 用户分组成员变化后增量同步：只为新增成员补齐授权，只撤销被移除成员的授权
+     */
+    private void syncUserGroupDelta(Long userGroupId, Set<Long> addedUserIds, Set<Long> removedUserIds) {
+        if (addedUserIds.isEmpty() && removedUserIds.isEmpty()) {
+            return;
+        }
+        LongHashSet removed = toLongSet(removedUserIds);
         List<GroupPermission> permissions = groupPermissionMapper.selectList(new QueryWrapper<GroupPermission>().eq("user_group_id", userGroupId));
         for (GroupPermission permission : permissions) {
-            reconcilePermission(permission.getUserGroupId(), permission.getTunnelGroupId());
+            if (!removed.isEmpty()) {
+                revokeMatching(userGroupId, permission.getTunnelGroupId(), ut -> removed.contains(ut.getUserId()));
+            }
+            if (!addedUserIds.isEmpty()) {
+                grantPairs(userGroupId, permission.getTunnelGroupId(), addedUserIds, loadTunnelIds(permission.getTunnelGroupId()));
+            }
         }
     }
 
-    private void syncByTunnelGroup(Long tunnelGroupId) {
+    /**
+     * 隧道分组成员变化后增量同步：只为新增隧道补齐授权，只撤销被移除隧道的授权
+     */
+    private void syncTunnelGroupDelta(Long tunnelGroupId, Set<Long> addedTunnelIds, Set<Long> removedTunnelIds) {
+        if (addedTunnelIds.isEmpty() && removedTunnelIds.isEmpty()) {
+            return;
+        }
+        LongHashSet removed = toLongSet(removedTunnelIds);
         List<GroupPermission> permissions = groupPermissionMapper.selectList(new QueryWrapper<GroupPermission>().eq("tunnel_group_id", tunnelGroupId));
         for (GroupPermission permission : permissions) {
-            reconcilePermission(permission.getUserGroupId(), permission.getTunnelGroupId());
+            if (!removed.isEmpty()) {
+                revokeMatching(permission.getUserGroupId(), tunnelGroupId, ut -> removed.contains(ut.getTunnelId()));
+            }
+            if (!addedTunnelIds.isEmpty()) {
+                grantPairs(permission.getUserGroupId(), tunnelGroupId, loadUserIds(permission.getUserGroupId()), addedTunnelIds);
+            }
         }
     }
 
+    /**
+     * 全量对齐一条分组权限（新建权限或重复分配时使用）
+     */
     private void reconcilePermission(Long userGroupId, Long tunnelGroupId) {
-        Set<Long> userIds = userGroupUserMapper.selectList(new QueryWrapper<UserGroupUser>().eq("user_group_id", userGroupId)).stream()
-                .map(UserGroupUser::getUserId)
-                .collect(Collectors.toCollection(LinkedHashSet::new));
+        Set<Long> userIds = loadUserIds(userGroupId);
+        Set<Long> tunnelIds = loadTunnelIds(tunnelGroupId);
+        grantPairs(userGroupId, tunnelGroupId, userIds, tunnelIds);
 
-        Set<Long> tunnelIds = tunnelGroupTunnelMapper.selectList(new QueryWrapper<TunnelGroupTunnel>().eq("tunnel_group_id", tunnelGroupId)).stream()
-                .map(TunnelGroupTunnel::getTunnelId)
-                .collect(Collectors.toCollection(LinkedHashSet::new));
+        LongHashSet users = toLongSet(userIds);
+        LongHashSet tunnels = toLongSet(tunnelIds);
+        revokeMatching(userGroupId, tunnelGroupId, ut -> !users.contains(ut.getUserId()) || !tunnels.contains(ut.getTunnelId()));
+    }
+
+    /**
+     * 为 userIds × tunnelIds 补齐用户隧道和授权记录，已存在的跳过，新增部分批量写入
+     */
+    private void grantPairs(Long userGroupId, Long tunnelGroupId, Collection<Long> userIds, Collection<Long> tunnelIds) {
+        if (userIds.isEmpty() || tunnelIds.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
 
-        Set<String> desiredKeys = new HashSet<>();
+        // (用户ID, 隧道ID) -> 用户隧道ID
+        Map<Long, Long> pairUserTunnelIds = loadPairUserTunnelIds(userIds, tunnelIds);
+
+        // 1. 批量创建缺失的用户隧道
+        Map<Long, User> userMap = new HashMap<>();
+        for (List<Long> chunk : CollUtil.split(userIds, QUERY_BATCH_SIZE)) {
+            userService.list(new QueryWrapper<User>().in("id", chunk)).forEach(user -> userMap.put(user.getId(), user));
+        }
+        List<UserTunnel> toCreate = new ArrayList<>();
+        LongHashSet createdPairs = new LongHashSet();
+        Set<Long> createdUserIds = new HashSet<>();
         for (Long userId : userIds) {
+            User user = userMap.get(userId);
+            if (user == null) {
+                continue;
+            }
             for (Long tunnelId : tunnelIds) {
-                desiredKeys.add(permissionKey(userId, tunnelId));
+                long pair = LongHashSet.pair(userId, tunnelId);
+                if (!pairUserTunnelIds.containsKey(pair)) {
+                    toCreate.add(buildGroupManagedUserTunnel(userId, tunnelId, user));
+                    createdPairs.add(pair);
+                    createdUserIds.add(userId);
+                }
             }
         }
+        if (!toCreate.isEmpty()) {
+            userTunnelService.saveBatch(toCreate, INSERT_BATCH_SIZE);
+            // 批量插入后回查ID，不依赖驱动回填自增主键
+            pairUserTunnelIds.putAll(loadPairUserTunnelIds(createdUserIds, tunnelIds));
+            createdPairs.forEach(pair -> {
+                Long userTunnelId = pairUserTunnelIds.get(pair);
+                if (userTunnelId == null) {
+                    throw new IllegalStateException("获取用户隧道权限ID失败: userId=" + LongHashSet.pairHigh(pair) + ", tunnelId=" + LongHashSet.pairLow(pair));
+                }
+                expiryScheduler.scheduleUserTunnel(userTunnelId.intValue(), userMap.get(LongHashSet.pairHigh(pair)).getExpTime());
+            });
+        }
 
-        List<GroupPermissionGrant> currentGrants = groupPermissionGrantMapper.selectList(
-                new QueryWrapper<GroupPermissionGrant>()
+        // 2. 当前权限已有的授权
+        LongHashSet grantedUserTunnelIds = new LongHashSet();
+        groupPermissionGrantMapper.selectList(new QueryWrapper<GroupPermissionGrant>()
+                        .select("user_tunnel_id")
                         .eq("user_group_id", userGroupId)
-                        .eq("tunnel_group_id", tunnelGroupId)
-        );
-
-        Set<Long> grantUserTunnelIds = currentGrants.stream().map(GroupPermissionGrant::getUserTunnelId).collect(Collectors.toSet());
-        Map<Long, UserTunnel> grantUserTunnelMap = new HashMap<>();
-        if (!grantUserTunnelIds.isEmpty()) {
-            List<UserTunnel> userTunnels = userTunnelService.list(new QueryWrapper<UserTunnel>().in("id", grantUserTunnelIds));
-            grantUserTunnelMap = userTunnels.stream().collect(Collectors.toMap(ut -> ut.getId().longValue(), Function.identity()));
-        }
-
-        Map<String, UserTunnel> pairUserTunnelMap = new HashMap<>();
-        if (!userIds.isEmpty() && !tunnelIds.isEmpty()) {
-            List<UserTunnel> pairUserTunnels = userTunnelService.list(new QueryWrapper<UserTunnel>()
-                    .in("user_id", userIds)
-                    .in("tunnel_id", tunnelIds));
-            for (UserTunnel userTunnel : pairUserTunnels) {
-                pairUserTunnelMap.putIfAbsent(permissionKey(userTunnel.getUserId().longValue(), userTunnel.getTunnelId().longValue()), userTunnel);
+                        .eq("tunnel_group_id", tunnelGroupId))
+                .forEach(grant -> grantedUserTunnelIds.add(grant.getUserTunnelId()));
+
+        // 3. 已存在且未授权的用户隧道，沿用其"分组托管"标记
+        List<Long> existingCandidates = new ArrayList<>();
+        for (Map.Entry<Long, Long> entry : pairUserTunnelIds.entrySet()) {
+            if (!createdPairs.contains(entry.getKey()) && !grantedUserTunnelIds.contains(entry.getValue())) {
+                existingCandidates.add(entry.getValue());
             }
         }
+        LongHashSet groupManagedUserTunnelIds = new LongHashSet();
+        for (List<Long> chunk : CollUtil.split(existingCandidates, QUERY_BATCH_SIZE)) {
+            groupPermissionGrantMapper.selectList(new QueryWrapper<GroupPermissionGrant>()
+                            .select("user_tunnel_id")
+                            .in("user_tunnel_id", chunk)
+                            .eq("created_by_group", 1))
+                    .forEach(grant -> groupManagedUserTunnelIds.add(grant.getUserTunnelId()));
+        }
+
+        // 4. 批量写入新增授权
+        List<GroupPermissionGrant> toGrant = new ArrayList<>();
+        for (Map.Entry<Long, Long> entry : pairUserTunnelIds.entrySet()) {
+            Long userTunnelId = entry.getValue();
+            if (!grantedUserTunnelIds.add(userTunnelId)) {
+                continue;
+            }
+            boolean createdByGroup = createdPairs.contains(entry.getKey()) || groupManagedUserTunnelIds.contains(userTunnelId);
+            GroupPermissionGrant grant = new GroupPermissionGrant();
+            grant.setUserGroupId(userGroupId);
+            grant.setTunnelGroupId(tunnelGroupId);
+            grant.setUserTunnelId(userTunnelId);
+            grant.setCreatedByGroup(createdByGroup ? 1 : 0);
+            grant.setCreatedTime(now);
+            toGrant.add(grant);
+        }
+        for (List<GroupPermissionGrant> chunk : CollUtil.split(toGrant, INSERT_BATCH_SIZE)) {
+            groupPermissionGrantMapper.insertBatch(chunk);
+        }
+    }
 
-        Set<Long> pairUserTunnelIds = pairUserTunnelMap.values().stream()
-                .map(ut -> ut.getId().longValue())
-                .collect(Collectors.toSet());
-        Map<Long, Long> totalGrantCountMap = buildGrantCountMap(pairUserTunnelIds);
-        Set<Long> groupManagedUserTunnelIds = buildGroupManagedUserTunnelIds(pairUserTunnelIds);
-
-        Set<Long> currentGrantUserTunnelIds = currentGrants.stream().map(GroupPermissionGrant::getUserTunnelId).collect(Collectors.toSet());
-        if (!desiredKeys.isEmpty()) {
-            Map<Long, User> userMap = userService.list(new QueryWrapper<User>().in("id", userIds)).stream()
-                    .collect(Collectors.toMap(User::getId, Function.identity()));
+    /**
+     * 撤销一条分组权限下满足条件的授权；对应用户隧道已不存在的授权一并清理
+     */
+    private void revokeMatching(Long userGroupId, Long tunnelGroupId, Predicate<UserTunnel> stale) {
+        List<GroupPermissionGrant> grants = groupPermissionGrantMapper.selectList(new QueryWrapper<GroupPermissionGrant>()
+                .eq("user_group_id", userGroupId)
+                .eq("tunnel_group_id", tunnelGroupId));
+        if (grants.isEmpty()) {
+            return;
+        }
 
-            long now = System.currentTimeMillis();
-            for (Long userId : userIds) {
-                User user = userMap.get(userId);
-                if (user == null) {
-                    continue;
-                }
-                for (Long tunnelId : tunnelIds) {
-                    String pairKey = permissionKey(userId, tunnelId);
-                    UserTunnel userTunnel = pairUserTunnelMap.get(pairKey);
-                    if (userTunnel == null) {
-                        userTunnel = createGroupManagedUserTunnel(userId, tunnelId, user);
-                        Long userTunnelId = resolveUserTunnelId(userTunnel, userId, tunnelId);
-                        pairUserTunnelMap.put(pairKey, userTunnel);
-                        createGrant(userGroupId, tunnelGroupId, userTunnelId, true, now);
-                        currentGrantUserTunnelIds.add(userTunnelId);
-                        totalGrantCountMap.put(userTunnelId, 1L);
-                        groupManagedUserTunnelIds.add(userTunnelId);
-                        continue;
-                    }
-
-                    Long userTunnelId = userTunnel.getId().longValue();
-                    if (currentGrantUserTunnelIds.contains(userTunnelId)) {
-                        continue;
-                    }
-
-                    long existingGrantCount = totalGrantCountMap.getOrDefault(userTunnelId, 0L);
-                    boolean createdByGroup = groupManagedUserTunnelIds.contains(userTunnelId);
-                    createGrant(userGroupId, tunnelGroupId, userTunnelId, createdByGroup, now);
-                    currentGrantUserTunnelIds.add(userTunnelId);
-                    totalGrantCountMap.put(userTunnelId, existingGrantCount + 1L);
-                }
-            }
+        Map<Long, UserTunnel> userTunnelMap = new HashMap<>();
+        List<Long> userTunnelIds = grants.stream().map(GroupPermissionGrant::getUserTunnelId).distinct().toList();
+        for (List<Long> chunk : CollUtil.split(userTunnelIds, QUERY_BATCH_SIZE)) {
+            userTunnelService.list(new QueryWrapper<UserTunnel>().select("id", "user_id", "tunnel_id").in("id", chunk))
+                    .forEach(ut -> userTunnelMap.put(ut.getId().longValue(), ut));
         }
 
         List<GroupPermissionGrant> staleGrants = new ArrayList<>();
-        for (GroupPermissionGrant grant : currentGrants) {
-            UserTunnel userTunnel = grantUserTunnelMap.get(grant.getUserTunnelId());
-            boolean keep = false;
-            if (userTunnel != null) {
-                String key = permissionKey(userTunnel.getUserId().longValue(), userTunnel.getTunnelId().longValue());
-                keep = desiredKeys.contains(key);
-            }
-
-            if (!keep) {
+        for (GroupPermissionGrant grant : grants) {
+            UserTunnel userTunnel = userTunnelMap.get(grant.getUserTunnelId());
+            if (userTunnel == null || stale.test(userTunnel)) {
                 staleGrants.add(grant);
             }
         }
         revokeGrantRecords(staleGrants);
     }
 
-    private UserTunnel createGroupManagedUserTunnel(Long userId, Long tunnelId, User user) {
+    private Map<Long, Long> loadPairUserTunnelIds(Collection<Long> userIds, Collection<Long> tunnelIds) {
+        Map<Long, Long> pairUserTunnelIds = new HashMap<>();
+        for (List<Long> userChunk : CollUtil.split(userIds, QUERY_BATCH_SIZE)) {
+            for (List<Long> tunnelChunk : CollUtil.split(tunnelIds, QUERY_BATCH_SIZE)) {
+                List<UserTunnel> userTunnels = userTunnelService.list(new QueryWrapper<UserTunnel>()
+                        .select("id", "user_id", "tunnel_id")
+                        .in("user_id", userChunk)
+                        .in("tunnel_id", tunnelChunk)
+                        .orderByAsc("id"));
+                for (UserTunnel userTunnel : userTunnels) {
+                    pairUserTunnelIds.putIfAbsent(LongHashSet.pair(userTunnel.getUserId(), userTunnel.getTunnelId()), userTunnel.getId().longValue());
+                }
+            }
+        }
+        return pairUserTunnelIds;
+    }
+
+    private Set<Long> loadUserIds(Long userGroupId) {
+        return userGroupUserMapper.selectList(new QueryWrapper<UserGroupUser>().eq("user_group_id", userGroupId)).stream()
+                .map(UserGroupUser::getUserId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private Set<Long> loadTunnelIds(Long tunnelGroupId) {
+        return tunnelGroupTunnelMapper.selectList(new QueryWrapper<TunnelGroupTunnel>().eq("tunnel_group_id", tunnelGroupId)).stream()
+                .map(TunnelGroupTunnel::getTunnelId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private static LongHashSet toLongSet(Collection<Long> values) {
+        LongHashSet set = new LongHashSet(values.size());
+        for (Long value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+    private UserTunnel buildGroupManagedUserTunnel(Long userId, Long tunnelId, User user) {
         UserTunnel userTunnel = new UserTunnel();
         userTunnel.setUserId(userId.intValue());
         userTunnel.setTunnelId(tunnelId.intValue());
@@ -502,50 +639,9 @@ public class GroupServiceImpl implements GroupService {
         userTunnel.setNum(user.getNum());
         userTunnel.setFlowResetTime(user.getFlowResetTime());
         userTunnel.setExpTime(user.getExpTime());
-        boolean saved = userTunnelService.save(userTunnel);
-        if (!saved) {
-            throw new IllegalStateException("创建用户隧道权限失败: userId=" + userId + ", tunnelId=" + tunnelId);
-        }
         return userTunnel;
     }
 
-    private Long resolveUserTunnelId(UserTunnel userTunnel, Long userId, Long tunnelId) {
-        if (userTunnel.getId() != null) {
-            return userTunnel.getId().longValue();
-        }
-
-        UserTunnel persisted = userTunnelService.getOne(
-                new QueryWrapper<UserTunnel>()
-                        .eq("user_id", userId.intValue())
-                        .eq("tunnel_id", tunnelId.intValue())
-                        .orderByDesc("id")
-                        .last("LIMIT 1")
-        );
-        if (persisted == null || persisted.getId() == null) {
-            throw new IllegalStateException("获取用户隧道权限ID失败: userId=" + userId + ", tunnelId=" + tunnelId);
-        }
-        userTunnel.setId(persisted.getId());
-        return persisted.getId().longValue();
-    }
-
-    private void createGrant(Long userGroupId, Long tunnelGroupId, Long userTunnelId, boolean createdByGroup, long createdTime) {
-        int exists = groupPermissionGrantMapper.selectCount(new QueryWrapper<GroupPermissionGrant>()
-                .eq("user_group_id", userGroupId)
-                .eq("tunnel_group_id", tunnelGroupId)
-                .eq("user_tunnel_id", userTunnelId));
-        if (exists > 0) {
-            return;
-        }
-
-        GroupPermissionGrant grant = new GroupPermissionGrant();
-        grant.setUserGroupId(userGroupId);
-        grant.setTunnelGroupId(tunnelGroupId);
-        grant.setUserTunnelId(userTunnelId);
-        grant.setCreatedByGroup(createdByGroup ? 1 : 0);
-        grant.setCreatedTime(createdTime);
-        groupPermissionGrantMapper.insert(grant);
-    }
-
     private void revokeByPermissionPair(Long userGroupId, Long tunnelGroupId) {
         List<GroupPermissionGrant> grants = groupPermissionGrantMapper.selectList(new QueryWrapper<GroupPermissionGrant>()
                 .eq("user_group_id", userGroupId)
@@ -560,19 +656,25 @@ public class GroupServiceImpl implements GroupService {
 
         Set<Long> candidateUserTunnelIds = new HashSet<>();
         Set<Long> groupManagedCandidates = new HashSet<>();
+        List<Long> grantIds = new ArrayList<>();
         for (GroupPermissionGrant grant : grants) {
             candidateUserTunnelIds.add(grant.getUserTunnelId());
             if (grant.getCreatedByGroup() != null && grant.getCreatedByGroup() == 1) {
                 groupManagedCandidates.add(grant.getUserTunnelId());
             }
-            groupPermissionGrantMapper.deleteById(grant.getId());
+            grantIds.add(grant.getId());
+        }
+        for (List<Long> chunk : CollUtil.split(grantIds, QUERY_BATCH_SIZE)) {
+            groupPermissionGrantMapper.deleteBatchIds(chunk);
         }
 
-        Set<Long> stillGrantedUserTunnelIds = groupPermissionGrantMapper.selectList(
-                        new QueryWrapper<GroupPermissionGrant>().in("user_tunnel_id", candidateUserTunnelIds)
-                ).stream()
-                .map(GroupPermissionGrant::getUserTunnelId)
-                .collect(Collectors.toSet());
+        LongHashSet stillGrantedUserTunnelIds = new LongHashSet();
+        for (List<Long> chunk : CollUtil.split(candidateUserTunnelIds, QUERY_BATCH_SIZE)) {
+            groupPermissionGrantMapper.selectList(new QueryWrapper<GroupPermissionGrant>()
+                            .select("user_tunnel_id")
+                            .in("user_tunnel_id", chunk))
+                    .forEach(grant -> stillGrantedUserTunnelIds.add(grant.getUserTunnelId()));
+        }
 
         for (Long userTunnelId : candidateUserTunnelIds) {
             if (!stillGrantedUserTunnelIds.contains(userTunnelId) && groupManagedCandidates.contains(userTunnelId)) {
@@ -581,32 +683,6 @@ public class GroupServiceImpl implements GroupService {
         }
     }
 
-    private Set<Long> buildGroupManagedUserTunnelIds(Set<Long> userTunnelIds) {
-        if (userTunnelIds.isEmpty()) {
-            return new HashSet<>();
-        }
-
-        return groupPermissionGrantMapper.selectList(new QueryWrapper<GroupPermissionGrant>()
-                        .in("user_tunnel_id", userTunnelIds)
-                        .eq("created_by_group", 1))
-                .stream()
-                .map(GroupPermissionGrant::getUserTunnelId)
-                .collect(Collectors.toSet());
-    }
-
-    private Map<Long, Long> buildGrantCountMap(Set<Long> userTunnelIds) {
-        if (userTunnelIds.isEmpty()) {
-            return new HashMap<>();
-        }
-
-        List<GroupPermissionGrant> grants = groupPermissionGrantMapper.selectList(new QueryWrapper<GroupPermissionGrant>().in("user_tunnel_id", userTunnelIds));
-        Map<Long, Long> countMap = new HashMap<>();
-        for (GroupPermissionGrant grant : grants) {
-            countMap.merge(grant.getUserTunnelId(), 1L, Long::sum);
-        }
-        return countMap;
-    }
-
     private Map<Long, String> buildTunnelNameMap(Set<Long> tunnelIds) {
         if (tunnelIds.isEmpty()) {
             return Collections.emptyMap();
@@ -623,10 +699,6 @@ public class GroupServiceImpl implements GroupService {
                 .collect(Collectors.toMap(User::getId, User::getUser));
     }
 
-    private String permissionKey(Long userId, Long tunnelId) {
-        return userId + "_" + tunnelId;
-    }
-
     private int normalizeStatus(Integer status) {
         return status == null ? 1 : status;
     }
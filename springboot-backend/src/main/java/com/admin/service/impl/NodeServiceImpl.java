@@ -8,8 +8,13 @@ import com.admin.common.dto.GostDto;
 import com.admin.common.dto.NodeDto;
 import com.admin.common.dto.NodeUpdateDto;
 import com.admin.common.lang.R;
+import com.admin.common.annotation.UnitOfWork;
+import com.admin.common.task.NodeAdmissionController;
+import com.admin.common.task.TopologyGraph;
+import com.admin.common.utils.EntityIdentityMap;
 import com.admin.common.utils.GostUtil;
 import com.admin.common.utils.WebSocketServer;
+import com.admin.config.EncryptionConfig;
 import com.admin.entity.*;
 import com.admin.mapper.NodeMapper;
 import com.admin.mapper.TunnelMapper;
@@ -26,11 +31,20 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
  
 import javax.annotation.Resource;
+import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import java.util.regex.Pattern;
 
@@ -40,6 +54,9 @@ import org.springframework.transaction.annotation.Transactional;
 @Service
 @Slf4j
 public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements NodeService {
+
+    // 删除节点后重建隧道配置的并行度
+    private static final int TOPOLOGY_PUSH_PARALLELISM = 8;
 
 
     @Resource
@@ -54,8 +71,19 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
 
     @Resource
     ForwardPortService forwardPortService;
+
+    @Resource
+    TopologyGraph topologyGraph;
+
+    @Resource
+    NodeAdmissionController nodeAdmissionController;
 
 
+    @Override
+    public Node getById(Serializable id) {
+        return EntityIdentityMap.get(Node.class, id, super::getById);
+    }
+
     @Override
     public R createNode(NodeDto nodeDto) {
         validatePortRange(nodeDto.getPort());
@@ -167,68 +195,189 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
     }
 
     @Override
+    @UnitOfWork
     public R deleteNode(Long id) {
-        Node node = this.getById(id);
-        if (node == null) {
-            return R.err("节点不存在");
+        Map<Long, String> failed = removeNodes(Collections.singletonList(id));
+        if (failed.containsKey(id)) {
+            return R.err(failed.get(id));
         }
+        return R.ok();
+    }
 
-        List<ChainTunnel> affected = chainTunnelService.list(new QueryWrapper<ChainTunnel>().eq("node_id", id));
-        Map<Long, List<ChainTunnel>> byTunnelId = affected.stream()
-                .filter(ct -> ct.getTunnelId() != null)
-                .collect(Collectors.groupingBy(ChainTunnel::getTunnelId));
-
-        for (Map.Entry<Long, List<ChainTunnel>> entry : byTunnelId.entrySet()) {
-            Long tunnelId = entry.getKey();
-            Tunnel tunnel = tunnelService.getById(tunnelId);
+    /**
+     * 删除一批节点
+     * 基于同一个拓扑视图和待删除的节点集合在内存中计算每个受影响隧道的最终节点集合，
+     * 每个隧道只重建一次，各隧道的重建并行下发；数据库读写都在当前线程完成。
+     * 每个节点的写入单独进行，某个节点失败只记入结果，隧道按实际移除成功的节点计算
+     *
+     * @return 删除失败的节点ID -> 原因
+     */
+    private Map<Long, String> removeNodes(List<Long> ids) {
+        Map<Long, String> failed = new LinkedHashMap<>();
+        List<Node> removedNodes = ids.isEmpty() ? Collections.emptyList() : this.listByIds(ids);
+        Set<Long> removedIds = removedNodes.stream().map(Node::getId).collect(Collectors.toSet());
+        for (Long id : ids) {
+            if (!removedIds.contains(id)) {
+                failed.put(id, "节点不存在");
+            }
+        }
+        if (removedIds.isEmpty()) {
+            return failed;
+        }
 
-            List<ChainTunnel> before = chainTunnelService.list(new QueryWrapper<ChainTunnel>().eq("tunnel_id", tunnelId));
+        // 1. 从拓扑索引取受影响的隧道及其节点，再一次性加载隧道与涉及的全部节点
+        TopologyGraph.Topology topology = topologyGraph.view();
+        Set<Long> tunnelIds = new HashSet<>();
+        for (Long nodeId : removedIds) {
+            tunnelIds.addAll(topology.tunnelsThroughNode(nodeId));
+        }
+        Map<Long, List<ChainTunnel>> beforeByTunnel = new HashMap<>();
+        for (Long tunnelId : tunnelIds) {
+            beforeByTunnel.put(tunnelId, topology.chainsOfTunnel(tunnelId));
+        }
+        Map<Long, Tunnel> tunnels = tunnelIds.isEmpty() ? Collections.emptyMap()
+                : tunnelService.listByIds(tunnelIds).stream().collect(Collectors.toMap(Tunnel::getId, t -> t));
+        Set<Long> involvedNodeIds = beforeByTunnel.values().stream()
+                .flatMap(List::stream).map(ChainTunnel::getNodeId).collect(Collectors.toSet());
+        Map<Long, Node> nodes = new HashMap<>();
+        if (!involvedNodeIds.isEmpty()) {
+            this.listByIds(involvedNodeIds).forEach(n -> nodes.put(n.getId(), n));
+        }
 
-            // Remove the node from the tunnel definition (do NOT delete the tunnel).
-            chainTunnelService.remove(new QueryWrapper<ChainTunnel>().eq("tunnel_id", tunnelId).eq("node_id", id));
+        // 2. 逐个从隧道定义中移除节点（不删除隧道），失败的节点保持原状
+        Set<Long> detached = new HashSet<>();
+        for (Long nodeId : removedIds) {
+            try {
+                chainTunnelService.remove(new QueryWrapper<ChainTunnel>().eq("node_id", nodeId));
+                detached.add(nodeId);
+            } catch (Exception e) {
+                log.warn("从隧道移除节点失败: nodeId={}, err={}", nodeId, e.getMessage(), e);
+                failed.put(nodeId, "从隧道移除节点失败: " + e.getMessage());
+            }
+        }
 
+        // 3. 在内存中计算每个隧道的最终节点集合，决定停用还是重建
+        Map<Long, List<ChainTunnel>> cleanups = new LinkedHashMap<>();
+        Map<Long, List<ChainTunnel>> rebuilds = new LinkedHashMap<>();
+        for (Map.Entry<Long, List<ChainTunnel>> entry : beforeByTunnel.entrySet()) {
+            Long tunnelId = entry.getKey();
+            Tunnel tunnel = tunnels.get(tunnelId);
             if (tunnel == null) {
                 continue;
             }
-
-            List<ChainTunnel> after = chainTunnelService.list(new QueryWrapper<ChainTunnel>().eq("tunnel_id", tunnelId));
-            Integer removedChainType = entry.getValue().isEmpty() ? null : entry.getValue().get(0).getChainType();
+            List<ChainTunnel> before = entry.getValue();
+            List<ChainTunnel> after = before.stream()
+                    .filter(ct -> !detached.contains(ct.getNodeId()))
+                    .collect(Collectors.toList());
+            if (after.size() == before.size()) {
+                continue;
+            }
 
             // Keep tunnel.inIp consistent when it was auto-derived from entry nodes.
-            String oldDerivedInIp = buildDerivedInIp(before);
-            String newDerivedInIp = buildDerivedInIp(after);
-            if (shouldUpdateTunnelInIp(tunnel.getInIp(), oldDerivedInIp)) {
-                updateTunnelInIp(tunnelId, newDerivedInIp);
+            String oldDerivedInIp = buildDerivedInIp(before, nodes);
+            String newDerivedInIp = buildDerivedInIp(after, nodes);
+            try {
+                if (shouldUpdateTunnelInIp(tunnel.getInIp(), oldDerivedInIp)) {
+                    updateTunnelInIp(tunnelId, newDerivedInIp);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to update tunnel inIp when deleting nodes. tunnelId={}, err={}", tunnelId, e.getMessage(), e);
             }
 
-            boolean valid = isTunnelConfigValid(tunnel, after);
-            if (!valid) {
-                disableTunnelAndCleanupGostIfNeeded(tunnel, after, "node-delete");
+            if (!isTunnelConfigValid(tunnel, after)) {
+                disableTunnel(tunnel, "node-delete");
+                if (tunnel.getType() != null && tunnel.getType() == 2) {
+                    cleanups.put(tunnelId, after);
+                }
                 continue;
             }
 
             // For tunnel-forwarding (type=2), removing a chain/out node requires rebuilding config.
             // Removing an entry node (chainType=1) does not affect remaining nodes' chain targets.
-            if (tunnel.getType() != null && tunnel.getType() == 2 && removedChainType != null && removedChainType != 1) {
-                try {
-                    cleanupGostConfig(after, tunnelId);
-                    rebuildGostConfig(after, tunnel);
-                } catch (Exception e) {
-                    log.warn("Failed to rebuild gost config after node delete. tunnelId={}, nodeId={}, err={}", tunnelId, id, e.getMessage(), e);
-                    disableTunnelAndCleanupGostIfNeeded(tunnel, after, "node-delete:rebuild-failed");
-                }
+            boolean removedNonEntry = before.stream().anyMatch(ct -> detached.contains(ct.getNodeId())
+                    && ct.getChainType() != null && ct.getChainType() != 1);
+            if (tunnel.getType() != null && tunnel.getType() == 2 && removedNonEntry) {
+                rebuilds.put(tunnelId, after);
             }
         }
 
-        // Remove per-forward port allocations on this node (avoid orphan ForwardPort rows).
-        try {
-            forwardPortService.remove(new QueryWrapper<ForwardPort>().eq("node_id", id));
-        } catch (Exception e) {
-            log.warn("Failed to cleanup forward ports when deleting node. nodeId={}, err={}", id, e.getMessage(), e);
+        // 4. 并行下发：每个隧道一次清理 + 重建
+        Set<Long> rebuildFailed = pushTopologyChanges(cleanups, rebuilds, tunnels, nodes);
+        for (Long tunnelId : rebuildFailed) {
+            Tunnel tunnel = tunnels.get(tunnelId);
+            disableTunnel(tunnel, "node-delete:rebuild-failed");
+            try {
+                cleanupGostConfig(rebuilds.get(tunnelId), tunnelId);
+            } catch (Exception e) {
+                log.warn("Failed to cleanup gost config when disabling tunnel. tunnelId={}, err={}", tunnelId, e.getMessage(), e);
+            }
         }
 
-        this.removeById(id);
-        return R.ok();
+        // 5. 逐个删除已从隧道移除的节点
+        for (Node node : removedNodes) {
+            if (!detached.contains(node.getId())) {
+                continue;
+            }
+            // Remove per-forward port allocations on this node (avoid orphan ForwardPort rows).
+            try {
+                forwardPortService.remove(new QueryWrapper<ForwardPort>().eq("node_id", node.getId()));
+            } catch (Exception e) {
+                log.warn("Failed to cleanup forward ports when deleting node. nodeId={}, err={}", node.getId(), e.getMessage(), e);
+            }
+            try {
+                this.removeById(node.getId());
+                EncryptionConfig.clearCrypto(node.getSecret());
+                nodeAdmissionController.forget(node.getSecret());
+            } catch (Exception e) {
+                log.warn("删除节点失败: nodeId={}, err={}", node.getId(), e.getMessage(), e);
+                failed.put(node.getId(), "删除节点失败: " + e.getMessage());
+            }
+        }
+        log.info("删除节点{}个, 受影响隧道{}个, 重建{}个, 停用{}个",
+                removedIds.size() - failed.size(), beforeByTunnel.size(), rebuilds.size(), cleanups.size() + rebuildFailed.size());
+        return failed;
+    }
+
+    /**
+     * 按隧道并行执行节点配置的清理与重建，只调用节点接口，不访问数据库
+     *
+     * @return 重建失败的隧道ID
+     */
+    private Set<Long> pushTopologyChanges(Map<Long, List<ChainTunnel>> cleanups, Map<Long, List<ChainTunnel>> rebuilds,
+                                          Map<Long, Tunnel> tunnels, Map<Long, Node> nodes) {
+        int total = cleanups.size() + rebuilds.size();
+        if (total == 0) {
+            return Collections.emptySet();
+        }
+        Set<Long> failed = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(total, TOPOLOGY_PUSH_PARALLELISM));
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Map.Entry<Long, List<ChainTunnel>> entry : cleanups.entrySet()) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        cleanupGostConfig(entry.getValue(), entry.getKey());
+                    } catch (Exception e) {
+                        log.warn("Failed to cleanup gost config when disabling tunnel. tunnelId={}, err={}", entry.getKey(), e.getMessage(), e);
+                    }
+                }, executor));
+            }
+            for (Map.Entry<Long, List<ChainTunnel>> entry : rebuilds.entrySet()) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        cleanupGostConfig(entry.getValue(), entry.getKey());
+                        rebuildGostConfig(entry.getValue(), tunnels.get(entry.getKey()), nodes);
+                    } catch (Exception e) {
+                        log.warn("Failed to rebuild gost config after node delete. tunnelId={}, err={}", entry.getKey(), e.getMessage(), e);
+                        failed.add(entry.getKey());
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+        return failed;
     }
 
     private boolean isTunnelConfigValid(Tunnel tunnel, List<ChainTunnel> chainTunnels) {
@@ -271,7 +420,7 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
         tunnelService.updateById(update);
     }
 
-    private String buildDerivedInIp(List<ChainTunnel> chainTunnels) {
+    private String buildDerivedInIp(List<ChainTunnel> chainTunnels, Map<Long, Node> nodes) {
         if (chainTunnels == null) {
             return "";
         }
@@ -284,7 +433,7 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
 
         StringBuilder inIp = new StringBuilder();
         for (ChainTunnel inNode : inNodes) {
-            Node n = this.getById(inNode.getNodeId());
+            Node n = nodes.get(inNode.getNodeId());
             if (n == null || StrUtil.isBlank(n.getServerIp())) {
                 return null;
             }
@@ -294,7 +443,7 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
         return inIp.toString();
     }
 
-    private void disableTunnelAndCleanupGostIfNeeded(Tunnel tunnel, List<ChainTunnel> remaining, String reason) {
+    private void disableTunnel(Tunnel tunnel, String reason) {
         try {
             Tunnel update = new Tunnel();
             update.setId(tunnel.getId());
@@ -304,14 +453,6 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
         } catch (Exception e) {
             log.warn("Failed to disable tunnel. tunnelId={}, reason={}, err={}", tunnel.getId(), reason, e.getMessage(), e);
         }
-
-        if (tunnel.getType() != null && tunnel.getType() == 2) {
-            try {
-                cleanupGostConfig(remaining, tunnel.getId());
-            } catch (Exception e) {
-                log.warn("Failed to cleanup gost config when disabling tunnel. tunnelId={}, reason={}, err={}", tunnel.getId(), reason, e.getMessage(), e);
-            }
-        }
     }
 
     private void cleanupGostConfig(List<ChainTunnel> chainTunnels, Long tunnelId) {
@@ -337,19 +478,11 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
         }
     }
 
-    private void rebuildGostConfig(List<ChainTunnel> chainTunnels, Tunnel tunnel) {
+    private void rebuildGostConfig(List<ChainTunnel> chainTunnels, Tunnel tunnel, Map<Long, Node> nodes) {
         if (tunnel == null || chainTunnels == null) {
             return;
         }
 
-        Map<Long, Node> nodes = new HashMap<>();
-        for (ChainTunnel ct : chainTunnels) {
-            Node n = this.getById(ct.getNodeId());
-            if (n != null) {
-                nodes.put(n.getId(), n);
-            }
-        }
-
         List<ChainTunnel> inNodes = chainTunnels.stream()
                 .filter(ct -> ct.getChainType() != null && ct.getChainType() == 1)
                 .collect(Collectors.toList());
@@ -508,24 +641,35 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
         }
     }
 
+    /**
+     * 整批规划一次，每个受影响隧道只重建一次；单个节点的失败在规划中单独记录，不影响其他节点。
+     * 不开启整体事务，已成功的节点不会因其他节点失败而回滚
+     */
     @Override
-    @Transactional
+    @UnitOfWork
     public R batchDeleteNodes(BatchDeleteDto batchDeleteDto) {
         BatchOperationResultDto result = new BatchOperationResultDto();
-        
-        for (Long id : batchDeleteDto.getIds()) {
-            try {
-                R deleteResult = deleteNode(id);
-                if (deleteResult.getCode() == 0) {
-                    result.incrementSuccess();
-                } else {
-                    result.addFailedItem(id, deleteResult.getMsg());
-                }
-            } catch (Exception e) {
-                result.addFailedItem(id, e.getMessage());
+        List<Long> ids = batchDeleteDto.getIds().stream().distinct().collect(Collectors.toList());
+
+        Map<Long, String> failed;
+        try {
+            failed = removeNodes(ids);
+        } catch (Exception e) {
+            // 规划阶段（读取拓扑、隧道、节点）失败，尚未写入
+            log.warn("批量删除节点失败: nodeIds={}, err={}", ids, e.getMessage(), e);
+            failed = new LinkedHashMap<>();
+            for (Long id : ids) {
+                failed.put(id, e.getMessage());
             }
         }
-        
+        for (Long id : ids) {
+            if (failed.containsKey(id)) {
+                result.addFailedItem(id, failed.get(id));
+            } else {
+                result.incrementSuccess();
+            }
+        }
+
         return R.ok(result);
     }
 
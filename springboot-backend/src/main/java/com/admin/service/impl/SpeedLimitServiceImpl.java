@@ -8,10 +8,12 @@ import com.admin.common.utils.GostUtil;
 import com.admin.entity.*;
 import com.admin.mapper.SpeedLimitMapper;
 import com.admin.service.*;
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
@@ -20,24 +22,42 @@ import org.springframework.stereotype.Service;
 import javax.annotation.Resource;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 
 /**
  * <p>
  * 限速规则服务实现类
  * 提供限速规则的增删改查功能，包括与Gost服务的集成
  * 支持限速器的创建、更新、删除和查询操作
+ * 限速器变更按节点去重后并发下发到隧道的所有节点，任一节点失败则把已成功的节点恢复原状，
+ * 返回每个节点的执行结果
  * </p>
  *
  * @author QAQ
  * @since 2025-06-04
  */
+@Slf4j
 @Service
 public class SpeedLimitServiceImpl extends ServiceImpl<SpeedLimitMapper, SpeedLimit> implements SpeedLimitService {
 
+    // 并发下发限速器的节点数
+    private static final int PUSH_PARALLELISM = 16;
+
+    // 命令没有送达节点，节点上的限速器一定没有变化，不需要回滚
+    // 命令已发出但没有拿到节点应答，节点上是否已生效未知
+    private static final String TIMED_OUT = "等待响应超时";
+    private static final String SEND_FAILED_PREFIX = "发送消息失败";
+
+    private static final ExecutorService PUSH_EXECUTOR = Executors.newFixedThreadPool(PUSH_PARALLELISM, r -> {
+        Thread thread = new Thread(r, "limiter-push");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @Resource
     @Lazy
     TunnelService tunnelService;
@@ -66,27 +86,14 @@ public class SpeedLimitServiceImpl extends ServiceImpl<SpeedLimitMapper, SpeedLi
         this.save(speedLimit);
 
         String speedInMBps = convertBitsToMBps(speedLimit.getSpeed());
-
-        List<Long> limit_success = new ArrayList<>();
-
-        List<ChainTunnel> tunnelList = chainTunnelService.list(new QueryWrapper<ChainTunnel>().eq("tunnel_id", speedLimit.getTunnelId()));
-        for (ChainTunnel chainTunnel : tunnelList) {
-            Node node = nodeService.getById(chainTunnel.getNodeId());
-            if (node != null) {
-                GostDto gostDto = GostUtil.AddLimiters(node.getId(), speedLimit.getId(), speedInMBps);
-                if (Objects.equals(gostDto.getMsg(), "OK")){
-                    limit_success.add(node.getId());
-                }else {
-                    this.removeById(speedLimit.getId());
-                    for (Long node_id : limit_success) {
-                        GostDto deleteLimiters = GostUtil.DeleteLimiters(node_id, speedLimit.getId());
-                        System.out.println(deleteLimiters);
-                    }
-                    return R.err(gostDto.getMsg());
-                }
-            }
+        PushResult result = push(tunnelNodes(speedLimit.getTunnelId()),
+                node -> GostUtil.AddLimiters(node.getId(), speedLimit.getId(), speedInMBps),
+                node -> GostUtil.DeleteLimiters(node.getId(), speedLimit.getId()));
+        if (!result.isSuccess()) {
+            this.removeById(speedLimit.getId());
+            return result.toError();
         }
-        return R.ok();
+        return R.ok(result.report);
     }
 
     @Override
@@ -100,20 +107,17 @@ public class SpeedLimitServiceImpl extends ServiceImpl<SpeedLimitMapper, SpeedLi
         SpeedLimit speedLimit = this.getById(speedLimitUpdateDto.getId());
         if (speedLimit == null) return R.err("限速不存在");
 
+        String previousSpeed = convertBitsToMBps(speedLimit.getSpeed());
         BeanUtils.copyProperties(speedLimitUpdateDto, speedLimit);
         speedLimit.setUpdatedTime(System.currentTimeMillis());
 
         String speedInMBps = convertBitsToMBps(speedLimit.getSpeed());
-        List<ChainTunnel> tunnelList = chainTunnelService.list(new QueryWrapper<ChainTunnel>().eq("tunnel_id", speedLimit.getTunnelId()));
-        for (ChainTunnel chainTunnel : tunnelList) {
-            Node node = nodeService.getById(chainTunnel.getNodeId());
-            if (node != null) {
-                GostDto gostDto = GostUtil.UpdateLimiters(node.getId(), speedLimit.getId(), speedInMBps);
-                if (!Objects.equals(gostDto.getMsg(), "OK")) return R.err(gostDto.getMsg());
-            }
-        }
+        PushResult result = push(tunnelNodes(speedLimit.getTunnelId()),
+                node -> GostUtil.UpdateLimiters(node.getId(), speedLimit.getId(), speedInMBps),
+                node -> GostUtil.UpdateLimiters(node.getId(), speedLimit.getId(), previousSpeed));
+        if (!result.isSuccess()) return result.toError();
         this.updateById(speedLimit);
-        return R.ok();
+        return R.ok(result.report);
     }
 
     @Override
@@ -123,20 +127,101 @@ public class SpeedLimitServiceImpl extends ServiceImpl<SpeedLimitMapper, SpeedLi
         if (speedLimit == null) return R.err("限速规则不存在");
 
 
-        int userCount = userTunnelService.count(new QueryWrapper<UserTunnel>().eq("speed_id", speedLimit.getId()));
+        int userCount = userTunnelService.count(new QueryWrapper<UserTunnel>().eq("speed_id", speedLimit.getId()).or().eq("tier_speed_id", speedLimit.getId()));
         if (userCount != 0) return R.err("该限速规则还有用户在使用 请先取消分配");
 
 
-        List<ChainTunnel> tunnelList = chainTunnelService.list(new QueryWrapper<ChainTunnel>().eq("tunnel_id", speedLimit.getTunnelId()));
-        for (ChainTunnel chainTunnel : tunnelList) {
-            Node node = nodeService.getById(chainTunnel.getNodeId());
-            if (node != null) {
-                GostDto gostDto = GostUtil.DeleteLimiters(node.getId(), speedLimit.getId());
-                if (!Objects.equals(gostDto.getMsg(), "OK"))return R.err(gostDto.getMsg());
+        String speedInMBps = convertBitsToMBps(speedLimit.getSpeed());
+        PushResult result = push(tunnelNodes(speedLimit.getTunnelId()),
+                node -> GostUtil.DeleteLimiters(node.getId(), speedLimit.getId()),
+                node -> GostUtil.AddLimiters(node.getId(), speedLimit.getId(), speedInMBps));
+        if (!result.isSuccess()) return result.toError();
+        this.removeById(id);
+        return R.ok(result.report);
+    }
+
+    /**
+     * 隧道涉及的节点，同一节点在多个链路位置上只下发一次
+     */
+    private List<Node> tunnelNodes(Long tunnelId) {
+        Set<Long> nodeIds = new LinkedHashSet<>();
+        for (ChainTunnel chainTunnel : chainTunnelService.list(new QueryWrapper<ChainTunnel>().select("node_id").eq("tunnel_id", tunnelId))) {
+            nodeIds.add(chainTunnel.getNodeId());
+        }
+        if (nodeIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return nodeService.listByIds(nodeIds);
+    }
+
+    /**
+     * 并发执行 apply；有节点失败时再并发执行 rollback：
+     * 只回滚已成功的节点，以及结果未知的节点（等待响应超时，命令可能已在节点上生效）；
+     * 未送达或节点明确返回错误的没有生效，不回滚，避免回滚反向操作凭空创建/删除限速器。
+     * 回滚失败的节点在报告中标记为状态不一致
+     */
+    private PushResult push(List<Node> nodes, Function<Node, GostDto> apply, Function<Node, GostDto> rollback) {
+        Map<Node, GostDto> applied = fanOut(nodes, apply);
+        List<Node> toUndo = new ArrayList<>();
+        String error = null;
+        for (Map.Entry<Node, GostDto> entry : applied.entrySet()) {
+            String msg = entry.getValue().getMsg();
+            if (Objects.equals(msg, "OK")) {
+                toUndo.add(entry.getKey());
+                continue;
+            }
+            if (isUnknownOutcome(msg)) {
+                toUndo.add(entry.getKey());
+            }
+            if (error == null) {
+                error = entry.getKey().getName() + ": " + msg;
             }
         }
-        this.removeById(id);
-        return R.ok();
+        Map<Node, GostDto> rolledBack = error == null ? Collections.emptyMap() : fanOut(toUndo, rollback);
+
+        JSONArray report = new JSONArray();
+        applied.forEach((node, gostDto) -> {
+            JSONObject item = new JSONObject();
+            item.put("nodeId", node.getId());
+            item.put("nodeName", node.getName());
+            item.put("success", Objects.equals(gostDto.getMsg(), "OK"));
+            item.put("msg", gostDto.getMsg());
+            GostDto undo = rolledBack.get(node);
+            if (undo != null) {
+                boolean undone = Objects.equals(undo.getMsg(), "OK");
+                item.put("rolledBack", undone);
+                if (!undone) {
+                    log.warn("节点{}限速器回滚失败: {}", node.getId(), undo.getMsg());
+                    item.put("rollbackMsg", undo.getMsg());
+                    // 应用成功或结果未知且回滚失败，节点上的限速器与面板可能不一致
+                    item.put("inconsistent", true);
+                }
+            }
+            report.add(item);
+        });
+        if (report.stream().anyMatch(item -> ((JSONObject) item).getBooleanValue("inconsistent"))) {
+            error += "（部分节点回滚失败，限速配置可能不一致）";
+        }
+        return new PushResult(error, report);
+    }
+
+    private static boolean isUnknownOutcome(String msg) {
+        return msg == null || TIMED_OUT.equals(msg) || msg.startsWith(SEND_FAILED_PREFIX);
+    }
+
+    private static Map<Node, GostDto> fanOut(List<Node> nodes, Function<Node, GostDto> action) {
+        Map<Node, CompletableFuture<GostDto>> futures = new LinkedHashMap<>();
+        for (Node node : nodes) {
+            futures.put(node, CompletableFuture.supplyAsync(() -> action.apply(node), PUSH_EXECUTOR)
+                    .exceptionally(e -> {
+                        GostDto gostDto = new GostDto();
+                        gostDto.setMsg(e.getMessage());
+                        return gostDto;
+                    }));
+        }
+        Map<Node, GostDto> results = new LinkedHashMap<>();
+        futures.forEach((node, future) -> results.put(node, future.join()));
+        return results;
     }
 
     private String convertBitsToMBps(Integer speedInBits) {
@@ -144,4 +229,24 @@ public class SpeedLimitServiceImpl extends ServiceImpl<SpeedLimitMapper, SpeedLi
         BigDecimal bd = new BigDecimal(mbs).setScale(1, RoundingMode.HALF_UP);
         return bd.doubleValue() + "";
     }
+
+    private static class PushResult {
+        final String error;
+        final JSONArray report;
+
+        PushResult(String error, JSONArray report) {
+            this.error = error;
+            this.report = report;
+        }
+
+        boolean isSuccess() {
+            return error == null;
+        }
+
+        R toError() {
+            R r = R.err(error);
+            r.setData(report);
+            return r;
+        }
+    }
 }
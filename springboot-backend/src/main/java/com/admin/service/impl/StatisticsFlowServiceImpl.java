@@ -1,10 +1,17 @@
 package com.admin.service.impl;
 
+import com.admin.common.dto.ListQueryDto;
+import com.admin.common.utils.JsonStreamWriter;
+import com.admin.common.utils.KeysetPage;
 import com.admin.entity.StatisticsFlow;
 import com.admin.mapper.StatisticsFlowMapper;
 import com.admin.service.StatisticsFlowService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
 
 /**
  * <p>
@@ -17,4 +24,15 @@ import org.springframework.stereotype.Service;
 @Service
 public class StatisticsFlowServiceImpl extends ServiceImpl<StatisticsFlowMapper, StatisticsFlow> implements StatisticsFlowService {
 
+    @Override
+    @Transactional
+    public void exportStatisticsFlows(ListQueryDto query, JsonStreamWriter writer) throws IOException {
+        ListQueryDto q = query != null ? query : new ListQueryDto();
+        try (Cursor<StatisticsFlow> cursor = baseMapper.streamStatisticsFlows(q)) {
+            for (StatisticsFlow flow : cursor) {
+                writer.write(KeysetPage.projectRow(flow, q.getFields()));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,148 @@
+package com.admin.service.impl;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.admin.common.dto.ListQueryDto;
+import com.admin.common.dto.UserTunnelQueryDto;
+import com.admin.common.lang.R;
+import com.admin.common.task.ChangeLog;
+import com.admin.entity.Node;
+import com.admin.service.*;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.*;
+
+/**
+ * 管理端增量同步
+ * 变化来自 ChangeLog，按表去重后用列表接口回查最新行，回查不到的视为已删除
+ */
+@Service
+public class SyncServiceImpl implements SyncService {
+
+    @Resource
+    ChangeLog changeLog;
+
+    @Resource
+    @Lazy
+    ForwardService forwardService;
+
+    @Resource
+    @Lazy
+    TunnelService tunnelService;
+
+    @Resource
+    @Lazy
+    NodeService nodeService;
+
+    @Resource
+    @Lazy
+    UserService userService;
+
+    @Resource
+    @Lazy
+    UserTunnelService userTunnelService;
+
+    // 单表变化的行数超过该值时不再逐行回查，改为要求刷新整张表
+    @Value("${change-log.max-rows-per-table:5000}")
+    int maxRowsPerTable;
+
+    @Override
+    public R changesSince(String since) {
+        JSONObject result = new JSONObject();
+        ChangeLog.Delta delta = changeLog.since(since);
+        if (delta == null) {
+            result.put("cursor", changeLog.cursor());
+            result.put("full", true);
+            return R.ok(result);
+        }
+
+        // 表 -> 行ID -> 是否删除，同一行只保留最后一次变化
+        Map<String, Map<Long, Boolean>> rows = new LinkedHashMap<>();
+        Set<String> reset = new LinkedHashSet<>();
+        for (ChangeLog.Entry entry : delta.entries) {
+            if (reset.contains(entry.table)) {
+                continue;
+            }
+            if (entry.id == null) {
+                reset.add(entry.table);
+                rows.remove(entry.table);
+                continue;
+            }
+            Map<Long, Boolean> ids = rows.computeIfAbsent(entry.table, k -> new LinkedHashMap<>());
+            ids.remove(entry.id);
+            ids.put(entry.id, entry.deleted);
+            if (ids.size() > maxRowsPerTable) {
+                reset.add(entry.table);
+                rows.remove(entry.table);
+            }
+        }
+
+        JSONObject changes = new JSONObject();
+        for (Map.Entry<String, Map<Long, Boolean>> table : rows.entrySet()) {
+            List<Long> upsertIds = new ArrayList<>();
+            JSONArray deletes = new JSONArray();
+            table.getValue().forEach((id, deleted) -> {
+                if (deleted) {
+                    deletes.add(id);
+                } else {
+                    upsertIds.add(id);
+                }
+            });
+            JSONArray upserts = new JSONArray();
+            if (!upsertIds.isEmpty()) {
+                Set<Long> found = new HashSet<>();
+                for (Object row : load(table.getKey(), upsertIds)) {
+                    upserts.add(row);
+                    Object id = BeanUtil.getFieldValue(row, "id");
+                    if (id != null) {
+                        found.add(Long.valueOf(id.toString()));
+                    }
+                }
+                // 变更后又被列表条件排除（如被删除或不再可见）的行按删除处理
+                upsertIds.stream().filter(id -> !found.contains(id)).forEach(deletes::add);
+            }
+            JSONObject change = new JSONObject();
+            change.put("upserts", upserts);
+            change.put("deletes", deletes);
+            changes.put(table.getKey(), change);
+        }
+
+        result.put("cursor", delta.cursor);
+        result.put("full", false);
+        result.put("reset", reset);
+        result.put("changes", changes);
+        return R.ok(result);
+    }
+
+    private List<?> load(String table, List<Long> ids) {
+        switch (table) {
+            case "forward":
+                return listOf(forwardService.getAllForwards(byIds(new ListQueryDto(), ids)));
+            case "tunnel":
+                return listOf(tunnelService.getAllTunnels(byIds(new ListQueryDto(), ids)));
+            case "user":
+                return listOf(userService.getAllUsers(byIds(new ListQueryDto(), ids)));
+            case "user_tunnel":
+                return listOf(userTunnelService.getUserTunnelList(byIds(new UserTunnelQueryDto(), ids)));
+            case "node":
+                List<Node> nodes = nodeService.listByIds(ids);
+                nodes.forEach(node -> node.setSecret(null));
+                return nodes;
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    private static <T extends ListQueryDto> T byIds(T query, List<Long> ids) {
+        query.setIds(ids);
+        return query;
+    }
+
+    private static List<?> listOf(R r) {
+        return r.getCode() == 0 && r.getData() instanceof List ? (List<?>) r.getData() : Collections.emptyList();
+    }
+}
@@ -3,9 +3,14 @@ package com.admin.service.impl;
 import com.admin.common.dto.*;
 
 import com.admin.common.lang.R;
+import com.admin.common.task.BandwidthTierEngine;
+import com.admin.common.task.DiagnosisEngine;
+import com.admin.common.task.TopologyGraph;
+import com.admin.common.annotation.UnitOfWork;
+import com.admin.common.utils.EntityIdentityMap;
 import com.admin.common.utils.GostUtil;
 import com.admin.common.utils.JwtUtil;
-import com.admin.common.utils.WebSocketServer;
+import com.admin.common.utils.KeysetPage;
 import com.admin.entity.*;
 import com.admin.mapper.TunnelMapper;
 import com.admin.mapper.GroupPermissionGrantMapper;
@@ -23,8 +28,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -35,6 +42,17 @@ import java.util.stream.Collectors;
 @Service
 public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> implements TunnelService {
 
+    // 列表允许的排序字段，均有索引
+    private static final Map<String, String> TUNNEL_SORT_COLUMNS = Map.of(
+            "inx", "inx",
+            "createdTime", "created_time",
+            "id", "id"
+    );
+    private static final Map<String, Function<TunnelDetailDto, ? extends Number>> TUNNEL_SORT_VALUES = Map.of(
+            "inx", TunnelDetailDto::getInx,
+            "created_time", TunnelDetailDto::getCreatedTime,
+            "id", TunnelDetailDto::getId
+    );
 
     @Resource
     UserTunnelMapper userTunnelMapper;
@@ -54,6 +72,12 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
     @Resource
     ForwardPortService forwardPortService;
 
+    @Resource
+    DiagnosisEngine diagnosisEngine;
+
+    @Resource
+    TopologyGraph topologyGraph;
+
     @Resource
     TunnelGroupTunnelMapper tunnelGroupTunnelMapper;
 
@@ -62,6 +86,12 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
 
 
     @Override
+    public Tunnel getById(Serializable id) {
+        return EntityIdentityMap.get(Tunnel.class, id, super::getById);
+    }
+
+    @Override
+    @UnitOfWork
     public R createTunnel(TunnelDto tunnelDto) {
 
         int count = this.count(new QueryWrapper<Tunnel>().eq("name", tunnelDto.getName()));
@@ -330,70 +360,53 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
 
 
     @Override
-    public R getAllTunnels() {
-        List<Tunnel> tunnelList = this.list(new QueryWrapper<Tunnel>().orderByAsc("inx").orderByAsc("id"));
-        
-        // 查询所有隧道的ChainTunnel信息
-        List<Long> tunnelIds = tunnelList.stream()
-                .map(Tunnel::getId)
-                .collect(Collectors.toList());
-        
-        if (tunnelIds.isEmpty()) {
-            return R.ok(new ArrayList<TunnelDetailDto>());
+    public R getAllTunnels(ListQueryDto query) {
+        ListQueryDto q = query != null ? query : new ListQueryDto();
+        KeysetPage page = KeysetPage.of(q, TUNNEL_SORT_COLUMNS, "inx", false);
+        QueryWrapper<Tunnel> wrapper = new QueryWrapper<Tunnel>()
+                .eq(q.getTunnelId() != null, "id", q.getTunnelId())
+                .in(q.getIds() != null && !q.getIds().isEmpty(), "id", q.getIds())
+                .eq(q.getStatus() != null, "status", q.getStatus())
+                .apply(StringUtils.isNotBlank(q.getName()), "name LIKE {0} ESCAPE '\\'", q.getNamePattern());
+        if (page != null) {
+            page.apply(wrapper);
+        } else {
+            wrapper.orderByAsc("inx").orderByAsc("id");
         }
-        
-        // 批量查询所有ChainTunnel记录
-        List<ChainTunnel> allChainTunnels = chainTunnelService.list(
-                new QueryWrapper<ChainTunnel>().in("tunnel_id", tunnelIds)
-        );
-        
-        // 按tunnelId分组
-        Map<Long, List<ChainTunnel>> chainTunnelMap = allChainTunnels.stream()
-                .collect(Collectors.groupingBy(ChainTunnel::getTunnelId));
-        
-        // 转换为TunnelDetailDto列表
+        List<Tunnel> tunnelList = this.list(wrapper);
+        // 投影不需要节点信息时不展开链路
+        boolean withChains = KeysetPage.wants(q.getFields(), "inNodeId", "chainNodes", "outNodeId");
+        TopologyGraph.Topology topology = withChains ? topologyGraph.view() : null;
+
+        // 转换为TunnelDetailDto列表，节点按类型分类由拓扑索引直接给出
         List<TunnelDetailDto> detailDtoList = tunnelList.stream()
                 .map(tunnel -> {
                     TunnelDetailDto detailDto = new TunnelDetailDto();
                     BeanUtils.copyProperties(tunnel, detailDto);
-                    
-                    List<ChainTunnel> chainTunnels = chainTunnelMap.getOrDefault(tunnel.getId(), new ArrayList<>());
-                    
-                    // 按chainType分类节点
+                    detailDto.setInIp(tunnel.getInIp());
+                    if (topology == null) {
+                        return detailDto;
+                    }
+
                     // 入口节点 (chainType = 1)
-                    List<ChainTunnel> inNodes = chainTunnels.stream()
-                            .filter(ct -> ct.getChainType() != null && ct.getChainType() == 1)
-                            .collect(Collectors.toList());
-                    detailDto.setInNodeId(inNodes);
+                    detailDto.setInNodeId(new ArrayList<>(topology.entriesOfTunnel(tunnel.getId())));
 
-                    detailDto.setInIp(tunnel.getInIp());
-                    
                     // 转发链节点 (chainType = 2) - 按inx分组
-                    Map<Integer, List<ChainTunnel>> chainNodesMap = chainTunnels.stream()
-                            .filter(ct -> ct.getChainType() != null && ct.getChainType() == 2)
-                            .collect(Collectors.groupingBy(
-                                    ct -> ct.getInx() != null ? ct.getInx() : 0,
-                                    Collectors.toList()
-                            ));
-                    
-                    // 将Map转换为按inx排序的二维列表
-                    List<List<ChainTunnel>> chainNodesList = chainNodesMap.entrySet().stream()
-                            .sorted(Map.Entry.comparingByKey())
-                            .map(Map.Entry::getValue)
-                            .collect(Collectors.toList());
-                    detailDto.setChainNodes(chainNodesList);
-                    
+                    detailDto.setChainNodes(topology.hopsOfTunnel(tunnel.getId()).stream()
+                            .<List<ChainTunnel>>map(ArrayList::new)
+                            .collect(Collectors.toList()));
+
                     // 出口节点 (chainType = 3)
-                    List<ChainTunnel> outNodes = chainTunnels.stream()
-                            .filter(ct -> ct.getChainType() != null && ct.getChainType() == 3)
-                            .collect(Collectors.toList());
-                    detailDto.setOutNodeId(outNodes);
-                    
+                    detailDto.setOutNodeId(new ArrayList<>(topology.exitsOfTunnel(tunnel.getId())));
+
                     return detailDto;
                 })
                 .collect(Collectors.toList());
-        
-        return R.ok(detailDtoList);
+
+        if (page == null) {
+            return R.ok(KeysetPage.project(detailDtoList, q.getFields()));
+        }
+        return R.ok(page.result(detailDtoList, TUNNEL_SORT_VALUES.get(page.getColumn()), TunnelDetailDto::getId, q.getFields()));
     }
 
     @Override
@@ -652,6 +665,7 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
 
 
     @Override
+    @UnitOfWork
     public R diagnoseTunnel(Long tunnelId) {
         Tunnel tunnel = this.getById(tunnelId);
         if (tunnel == null) {
@@ -686,6 +700,7 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
                 .filter(ct -> ct.getChainType() == 3)
                 .toList();
 
+        DiagnosisEngine.Session diagnosis = diagnosisEngine.open("tunnel", tunnelId);
         List<CompletableFuture<DiagnosisResult>> futures = new ArrayList<>();
 
         if (tunnel.getType() == 1) {
@@ -693,13 +708,11 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
                 Node node = nodeService.getById(inNode.getNodeId());
                 if (node != null) {
                     final Node finalNode = node;
-                    futures.add(CompletableFuture.supplyAsync(() -> {
-                        DiagnosisResult result = performTcpPingDiagnosisWithConnectionCheck(
-                                finalNode, "www.google.com", 443, "入口(" + finalNode.getName() + ")->外网"
-                        );
-                        result.setFromChainType(1);
-                        return result;
-                    }));
+                    futures.add(diagnosis.probe(
+                            finalNode, "www.google.com", 443, "入口(" + finalNode.getName() + ")->外网",
+                            result -> {
+                                result.setFromChainType(1);
+                            }));
                 }
             }
         } else if (tunnel.getType() == 2) {
@@ -714,16 +727,14 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
                                 final Node finalFromNode = fromNode;
                                 final Node finalToNode = toNode;
                                 final ChainTunnel finalFirstChainNode = firstChainNode;
-                                futures.add(CompletableFuture.supplyAsync(() -> {
-                                    DiagnosisResult result = performTcpPingDiagnosisWithConnectionCheck(
-                                            finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalFirstChainNode.getPort(),
-                                            "入口(" + finalFromNode.getName() + ")->第1跳(" + finalToNode.getName() + ")"
-                                    );
-                                    result.setFromChainType(1);
-                                    result.setToChainType(2);
-                                    result.setToInx(finalFirstChainNode.getInx());
-                                    return result;
-                                }));
+                                futures.add(diagnosis.probe(
+                                        finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalFirstChainNode.getPort(),
+                                        "入口(" + finalFromNode.getName() + ")->第1跳(" + finalToNode.getName() + ")",
+                                        result -> {
+                                            result.setFromChainType(1);
+                                            result.setToChainType(2);
+                                            result.setToInx(finalFirstChainNode.getInx());
+                                        }));
                             }
                         }
                     } else if (!outNodes.isEmpty()) {
@@ -733,15 +744,13 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
                                 final Node finalFromNode = fromNode;
                                 final Node finalToNode = toNode;
                                 final ChainTunnel finalOutNode = outNode;
-                                futures.add(CompletableFuture.supplyAsync(() -> {
-                                    DiagnosisResult result = performTcpPingDiagnosisWithConnectionCheck(
-                                            finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalOutNode.getPort(),
-                                            "入口(" + finalFromNode.getName() + ")->出口(" + finalToNode.getName() + ")"
-                                    );
-                                    result.setFromChainType(1);
-                                    result.setToChainType(3);
-                                    return result;
-                                }));
+                                futures.add(diagnosis.probe(
+                                        finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalOutNode.getPort(),
+                                        "入口(" + finalFromNode.getName() + ")->出口(" + finalToNode.getName() + ")",
+                                        result -> {
+                                            result.setFromChainType(1);
+                                            result.setToChainType(3);
+                                        }));
                             }
                         }
                     }
@@ -764,17 +773,15 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
                                     final Node finalToNode = toNode;
                                     final ChainTunnel finalCurrentNode = currentNode;
                                     final ChainTunnel finalNextNode = nextNode;
-                                    futures.add(CompletableFuture.supplyAsync(() -> {
-                                        DiagnosisResult result = performTcpPingDiagnosisWithConnectionCheck(
-                                                    finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalNextNode.getPort(),
-                                                "第" + (hopIndex + 1) + "跳(" + finalFromNode.getName() + ")->第" + (hopIndex + 2) + "跳(" + finalToNode.getName() + ")"
-                                        );
-                                        result.setFromChainType(2);
-                                        result.setFromInx(finalCurrentNode.getInx());
-                                        result.setToChainType(2);
-                                        result.setToInx(finalNextNode.getInx());
-                                        return result;
-                                    }));
+                                    futures.add(diagnosis.probe(
+                                            finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalNextNode.getPort(),
+                                            "第" + (hopIndex + 1) + "跳(" + finalFromNode.getName() + ")->第" + (hopIndex + 2) + "跳(" + finalToNode.getName() + ")",
+                                            result -> {
+                                                result.setFromChainType(2);
+                                                result.setFromInx(finalCurrentNode.getInx());
+                                                result.setToChainType(2);
+                                                result.setToInx(finalNextNode.getInx());
+                                            }));
                                 }
                             }
                         } else if (!outNodes.isEmpty()) {
@@ -785,16 +792,14 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
                                     final Node finalToNode = toNode;
                                     final ChainTunnel finalCurrentNode = currentNode;
                                     final ChainTunnel finalOutNode = outNode;
-                                    futures.add(CompletableFuture.supplyAsync(() -> {
-                                        DiagnosisResult result = performTcpPingDiagnosisWithConnectionCheck(
-                                                    finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalOutNode.getPort(),
-                                                "第" + (hopIndex + 1) + "跳(" + finalFromNode.getName() + ")->出口(" + finalToNode.getName() + ")"
-                                        );
-                                        result.setFromChainType(2);
-                                        result.setFromInx(finalCurrentNode.getInx());
-                                        result.setToChainType(3);
-                                        return result;
-                                    }));
+                                    futures.add(diagnosis.probe(
+                                            finalFromNode, GostUtil.selectDialHost(finalFromNode, finalToNode), finalOutNode.getPort(),
+                                            "第" + (hopIndex + 1) + "跳(" + finalFromNode.getName() + ")->出口(" + finalToNode.getName() + ")",
+                                            result -> {
+                                                result.setFromChainType(2);
+                                                result.setFromInx(finalCurrentNode.getInx());
+                                                result.setToChainType(3);
+                                            }));
                                 }
                             }
                         }
@@ -805,20 +810,22 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
                 Node node = nodeService.getById(outNode.getNodeId());
                 if (node != null) {
                     final Node finalNode = node;
-                    futures.add(CompletableFuture.supplyAsync(() -> {
-                        DiagnosisResult result = performTcpPingDiagnosisWithConnectionCheck(
-                                finalNode, "www.google.com", 443, "出口(" + finalNode.getName() + ")->外网"
-                        );
-                        result.setFromChainType(3);
-                        return result;
-                    }));
+                    futures.add(diagnosis.probe(
+                            finalNode, "www.google.com", 443, "出口(" + finalNode.getName() + ")->外网",
+                            result -> {
+                                result.setFromChainType(3);
+                            }));
                 }
             }
         }
 
+        // 按源节点合并下发探测
+        diagnosis.dispatch();
+
         List<DiagnosisResult> results = futures.stream()
                 .map(CompletableFuture::join)
                 .collect(Collectors.toList());
+        diagnosis.finish(results);
 
         Map<String, Object> diagnosisReport = new HashMap<>();
         diagnosisReport.put("tunnelId", tunnelId);
@@ -894,101 +901,6 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
         }
     }
 
-    private DiagnosisResult performTcpPingDiagnosis(Node node, String targetIp, int port, String description) {
-        try {
-            // 构建TCP ping请求数据
-            JSONObject tcpPingData = new JSONObject();
-            tcpPingData.put("ip", targetIp);
-            tcpPingData.put("port", port);
-            tcpPingData.put("count", 4);
-            tcpPingData.put("timeout", 5000); // 5秒超时
-
-            // 发送TCP ping命令到节点
-            GostDto gostResult = WebSocketServer.send_msg(node.getId(), tcpPingData, "TcpPing");
-
-            DiagnosisResult result = new DiagnosisResult();
-            result.setNodeId(node.getId());
-            result.setNodeName(node.getName());
-            result.setTargetIp(targetIp);
-            result.setTargetPort(port);
-            result.setDescription(description);
-            result.setTimestamp(System.currentTimeMillis());
-
-            if (gostResult != null && "OK".equals(gostResult.getMsg())) {
-                // 尝试解析TCP ping响应数据
-                try {
-                    if (gostResult.getData() != null) {
-                        JSONObject tcpPingResponse = (JSONObject) gostResult.getData();
-                        boolean success = tcpPingResponse.getBooleanValue("success");
-
-                        result.setSuccess(success);
-                        if (success) {
-                            result.setMessage("TCP连接成功");
-                            result.setAverageTime(tcpPingResponse.getDoubleValue("averageTime"));
-                            result.setPacketLoss(tcpPingResponse.getDoubleValue("packetLoss"));
-                        } else {
-                            result.setMessage(tcpPingResponse.getString("errorMessage"));
-                            result.setAverageTime(-1.0);
-                            result.setPacketLoss(100.0);
-                        }
-                    } else {
-                        // 没有详细数据，使用默认值
-                        result.setSuccess(true);
-                        result.setMessage("TCP连接成功");
-                        result.setAverageTime(0.0);
-                        result.setPacketLoss(0.0);
-                    }
-                } catch (Exception e) {
-                    // 解析响应数据失败，但TCP ping命令本身成功了
-                    result.setSuccess(true);
-                    result.setMessage("TCP连接成功，但无法解析详细数据");
-                    result.setAverageTime(0.0);
-                    result.setPacketLoss(0.0);
-                }
-            } else {
-                result.setSuccess(false);
-                result.setMessage(gostResult != null ? gostResult.getMsg() : "节点无响应");
-                result.setAverageTime(-1.0);
-                result.setPacketLoss(100.0);
-            }
-
-            return result;
-        } catch (Exception e) {
-            DiagnosisResult result = new DiagnosisResult();
-            result.setNodeId(node.getId());
-            result.setNodeName(node.getName());
-            result.setTargetIp(targetIp);
-            result.setTargetPort(port);
-            result.setDescription(description);
-            result.setSuccess(false);
-            result.setMessage("诊断执行异常: " + e.getMessage());
-            result.setTimestamp(System.currentTimeMillis());
-            result.setAverageTime(-1.0);
-            result.setPacketLoss(100.0);
-            return result;
-        }
-    }
-
-    private DiagnosisResult performTcpPingDiagnosisWithConnectionCheck(Node node, String targetIp, int port, String description) {
-        DiagnosisResult result = new DiagnosisResult();
-        result.setNodeId(node.getId());
-        result.setNodeName(node.getName());
-        result.setTargetIp(targetIp);
-        result.setTargetPort(port);
-        result.setDescription(description);
-        result.setTimestamp(System.currentTimeMillis());
-
-        try {
-            return performTcpPingDiagnosis(node, targetIp, port, description);
-        } catch (Exception e) {
-            result.setSuccess(false);
-            result.setMessage("连接检查异常: " + e.getMessage());
-            result.setAverageTime(-1.0);
-            result.setPacketLoss(100.0);
-            return result;
-        }
-    }
-
     private boolean detectNodeChanges(List<ChainTunnel> oldChains, TunnelUpdateDto dto) {
         if (dto.getInNodeId() == null) {
             return false;
@@ -1226,19 +1138,21 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
             return;
         }
 
-        List<Forward> forwards = forwardService.list(
-                new QueryWrapper<Forward>().eq("tunnel_id", tunnelId.intValue())
-        );
-
-        if (forwards.isEmpty()) {
+        TopologyGraph.Topology topology = topologyGraph.view();
+        List<Long> forwardIds = topology.forwardsOfTunnel(tunnelId);
+        if (forwardIds.isEmpty()) {
             return;
         }
+        List<Forward> forwards = forwardService.listByIds(forwardIds);
 
         Tunnel tunnel = this.getById(tunnelId);
         if (tunnel == null) {
             return;
         }
 
+        // 本次新分配的端口，拓扑视图中还没有
+        Map<Long, Set<Integer>> claimedPorts = new HashMap<>();
+
         for (Forward forward : forwards) {
             if (forward.getStatus() != 1) {
                 continue;
@@ -1251,11 +1165,7 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
             );
 
             for (Long removedNodeId : removedNodeIds) {
-                ForwardPort forwardPort = forwardPortService.getOne(
-                        new QueryWrapper<ForwardPort>()
-                                .eq("forward_id", forward.getId())
-                                .eq("node_id", removedNodeId)
-                );
+                ForwardPort forwardPort = topology.portOfForward(forward.getId(), removedNodeId);
 
                 if (forwardPort != null) {
                     String serviceName = buildForwardServiceName(forward.getId(), forward.getUserId(), userTunnel);
@@ -1268,31 +1178,24 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
                 }
             }
 
-            for (Long addedNodeId : addedNodeIds) {
-                ForwardPort existingPort = forwardPortService.getOne(
-                        new QueryWrapper<ForwardPort>()
-                                .eq("forward_id", forward.getId())
-                                .eq("node_id", addedNodeId)
-                );
+            Integer targetPort = topology.portsOfForward(forward.getId()).stream()
+                    .filter(fp -> !removedNodeIds.contains(fp.getNodeId()))
+                    .map(ForwardPort::getPort)
+                    .findFirst()
+                    .orElse(null);
 
-                if (existingPort != null) {
+            for (Long addedNodeId : addedNodeIds) {
+                if (topology.portOfForward(forward.getId(), addedNodeId) != null) {
                     continue;
                 }
 
-                List<ForwardPort> existingPorts = forwardPortService.list(
-                        new QueryWrapper<ForwardPort>().eq("forward_id", forward.getId())
-                );
-
-                Integer targetPort = null;
-                if (!existingPorts.isEmpty()) {
-                    targetPort = existingPorts.get(0).getPort();
-                }
-
-                Integer allocatedPort = allocatePortForNode(addedNodeId, targetPort, forward.getId());
+                Set<Integer> claimed = claimedPorts.computeIfAbsent(addedNodeId, k -> new HashSet<>());
+                Integer allocatedPort = allocatePortForNode(topology, addedNodeId, targetPort, forward.getId(), claimed);
                 if (allocatedPort == null) {
                     System.err.println("Failed to allocate port on node " + addedNodeId + " for forward " + forward.getId());
                     continue;
                 }
+                claimed.add(allocatedPort);
 
                 ForwardPort newForwardPort = new ForwardPort();
                 newForwardPort.setForwardId(forward.getId());
@@ -1303,37 +1206,28 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
                 Node node = nodeService.getById(addedNodeId);
                 if (node != null) {
                     String serviceName = buildForwardServiceName(forward.getId(), forward.getUserId(), userTunnel);
-                    Integer limiter = (userTunnel != null && userTunnel.getSpeedId() != null) ? userTunnel.getSpeedId() : null;
+                    Integer limiter = BandwidthTierEngine.effectiveSpeedId(userTunnel);
                     GostUtil.AddAndUpdateService(serviceName, limiter, node, forward, newForwardPort, tunnel, "AddService");
                 }
             }
         }
     }
 
-    private Integer allocatePortForNode(Long nodeId, Integer preferredPort, Long forwardId) {
+    private Integer allocatePortForNode(TopologyGraph.Topology topology, Long nodeId, Integer preferredPort,
+                                        Long forwardId, Set<Integer> claimed) {
         Node node = nodeService.getById(nodeId);
         if (node == null || node.getPort() == null) {
             return null;
         }
 
-        Set<Integer> usedPorts = new HashSet<>();
-
-        List<ChainTunnel> chainTunnels = chainTunnelService.list(
-                new QueryWrapper<ChainTunnel>().eq("node_id", nodeId)
-        );
-        for (ChainTunnel ct : chainTunnels) {
+        Set<Integer> usedPorts = new HashSet<>(claimed);
+        for (ChainTunnel ct : topology.chainsOnNode(nodeId)) {
             if (ct.getPort() != null) {
                 usedPorts.add(ct.getPort());
             }
         }
-
-        List<ForwardPort> forwardPorts = forwardPortService.list(
-                new QueryWrapper<ForwardPort>()
-                        .eq("node_id", nodeId)
-                        .ne("forward_id", forwardId)
-        );
-        for (ForwardPort fp : forwardPorts) {
-            if (fp.getPort() != null) {
+        for (ForwardPort fp : topology.portsOnNode(nodeId)) {
+            if (fp.getPort() != null && !Objects.equals(fp.getForwardId(), forwardId)) {
                 usedPorts.add(fp.getPort());
             }
         }
@@ -6,8 +6,13 @@ import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.util.StrUtil;
 import com.admin.common.dto.*;
 import com.admin.common.lang.R;
+import com.admin.common.task.DashboardSnapshots;
+import com.admin.common.task.ExpiryScheduler;
+import com.admin.common.task.SubscriptionCache;
 import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.JsonStreamWriter;
 import com.admin.common.utils.JwtUtil;
+import com.admin.common.utils.KeysetPage;
 import com.admin.common.utils.Md5Util;
 import com.admin.entity.*;
 import com.admin.mapper.UserMapper;
@@ -15,25 +20,46 @@ import com.admin.mapper.GroupPermissionGrantMapper;
 import com.admin.mapper.UserGroupUserMapper;
 import com.admin.service.*;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 
 
 @Slf4j
 @Service
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements UserService {
 
+    // 列表允许的排序字段
+    private static final Map<String, String> USER_SORT_COLUMNS = Map.of(
+            "id", "id",
+            "createdTime", "created_time",
+            "expTime", "exp_time"
+    );
+    private static final Map<String, Function<User, ? extends Number>> USER_SORT_VALUES = Map.of(
+            "id", User::getId,
+            "created_time", User::getCreatedTime,
+            "exp_time", User::getExpTime
+    );
+
     @Resource
     @Lazy
     ForwardService forwardService;
@@ -71,6 +97,18 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     @Resource
     ImageCaptchaApplication application;
 
+    @Resource
+    @Lazy
+    ExpiryScheduler expiryScheduler;
+
+    @Resource
+    @Lazy
+    SubscriptionCache subscriptionCache;
+
+    @Resource
+    @Lazy
+    DashboardSnapshots dashboardSnapshots;
+
 
     @Override
     public R login(LoginDto loginDto) {
@@ -108,13 +146,48 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         user.setCreatedTime(currentTime);
         user.setUpdatedTime(currentTime);
         this.save(user);
+        expiryScheduler.scheduleUser(user.getId(), user.getExpTime());
         return R.ok();
     }
 
     @Override
-    public R getAllUsers() {
-        List<User> list = this.list(new QueryWrapper<User>().ne("role_id", 0));
-        return R.ok(list);
+    public R getAllUsers(ListQueryDto query) {
+        ListQueryDto q = query != null ? query : new ListQueryDto();
+        KeysetPage page = KeysetPage.of(q, USER_SORT_COLUMNS, "id", false);
+        QueryWrapper<User> wrapper = new QueryWrapper<User>()
+                .ne("role_id", 0)
+                .eq(q.getUserId() != null, "id", q.getUserId())
+                .in(q.getIds() != null && !q.getIds().isEmpty(), "id", q.getIds())
+                .eq(q.getStatus() != null, "status", q.getStatus())
+                .apply(StrUtil.isNotBlank(q.getName()), "user LIKE {0} ESCAPE '\\'", q.getNamePattern());
+        if (q.getFields() != null && !q.getFields().isEmpty()) {
+            // 只查询投影需要的列
+            Set<String> columns = new LinkedHashSet<>();
+            columns.add("id");
+            if (page != null) {
+                columns.add(page.getColumn());
+            }
+            TableInfoHelper.getTableInfo(User.class).getFieldList().stream()
+                    .filter(field -> q.getFields().contains(field.getProperty()))
+                    .forEach(field -> columns.add(field.getColumn()));
+            wrapper.select(columns.toArray(new String[0]));
+        }
+        if (page == null) {
+            return R.ok(KeysetPage.project(this.list(wrapper), q.getFields()));
+        }
+        List<User> list = this.list(page.apply(wrapper));
+        return R.ok(page.result(list, USER_SORT_VALUES.get(page.getColumn()), User::getId, q.getFields()));
+    }
+
+    @Override
+    @Transactional
+    public void exportUsers(ListQueryDto query, JsonStreamWriter writer) throws IOException {
+        ListQueryDto q = query != null ? query : new ListQueryDto();
+        try (Cursor<User> cursor = baseMapper.streamUsers(q)) {
+            for (User user : cursor) {
+                writer.write(KeysetPage.projectRow(user, q.getFields()));
+            }
+        }
     }
 
     @Override
@@ -136,6 +209,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         }
         updateUser.setUpdatedTime(System.currentTimeMillis());
         this.updateById(updateUser);
+        subscriptionCache.evictUser(user.getId());
+        expiryScheduler.scheduleUser(user.getId(), updateUser.getExpTime() != null ? updateUser.getExpTime() : user.getExpTime());
         return R.ok();
     }
 
@@ -153,6 +228,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         if (!userTunnels.isEmpty()) {
             List<Integer> userTunnelIds = userTunnels.stream().map(UserTunnel::getId).toList();
             groupPermissionGrantMapper.delete(new QueryWrapper<com.admin.entity.GroupPermissionGrant>().in("user_tunnel_id", userTunnelIds));
+            userTunnelIds.forEach(expiryScheduler::cancelUserTunnel);
         }
 
         forwardService.remove(new QueryWrapper<Forward>().eq("user_id", id));
@@ -160,17 +236,28 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         userGroupUserMapper.delete(new QueryWrapper<UserGroupUser>().eq("user_id", id));
         statisticsFlowService.remove(new QueryWrapper<StatisticsFlow>().eq("user_id", id));
         this.removeById(id);
+        subscriptionCache.evictUser(id);
+        expiryScheduler.cancelUser(id);
         return R.ok();
     }
 
     @Override
     public R getUserPackageInfo() {
         Integer userId = JwtUtil.getUserIdFromToken();
+        UserPackageDto packageDto = dashboardSnapshots.get(userId.longValue(), this::buildUserPackage);
+        if (packageDto == null) return R.err("用户不存在");
+        return R.ok(packageDto);
+    }
+
+    /**
+     * 从数据库构建用户的套餐信息，结果由 DashboardSnapshots 缓存
+     */
+    private UserPackageDto buildUserPackage(Long userId) {
         User user = this.getById(userId);
-        if (user == null) return R.err("用户不存在");
+        if (user == null) return null;
         UserPackageDto.UserInfoDto userInfo = buildUserInfoDto(user);
-        List<UserPackageDto.UserTunnelDetailDto> tunnelPermissions = userMapper.getUserTunnelDetails(userId);
-        List<UserPackageDto.UserForwardDetailDto> forwards = userMapper.getUserForwardDetails(user.getId().intValue());
+        List<UserPackageDto.UserTunnelDetailDto> tunnelPermissions = userMapper.getUserTunnelDetails(userId.intValue());
+        List<UserPackageDto.UserForwardDetailDto> forwards = userMapper.getUserForwardDetails(userId.intValue());
         fillForwardInIpAndPort(forwards);
         List<StatisticsFlow> statisticsFlows = getLast24HoursFlowStatistics(user.getId());
         UserPackageDto packageDto = new UserPackageDto();
@@ -178,7 +265,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         packageDto.setTunnelPermissions(tunnelPermissions);
         packageDto.setForwards(forwards);
         packageDto.setStatisticsFlows(statisticsFlows);
-        return R.ok(packageDto);
+        return packageDto;
     }
 
     @Override
@@ -204,6 +291,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         updateUser.setPwd(Md5Util.md5(changePasswordDto.getNewPassword()));
         updateUser.setUpdatedTime(System.currentTimeMillis());
         this.updateById(updateUser);
+        subscriptionCache.evictUser(user.getId());
         return R.ok();
     }
 
@@ -215,12 +303,14 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             user.setInFlow(0L);
             user.setOutFlow(0L);
             this.updateById(user);
+            subscriptionCache.evictUser(user.getId());
         }else { // 清零隧道流量
             UserTunnel tunnel = userTunnelService.getById(resetFlowDto.getId());
             if (tunnel == null) return R.err("隧道不存在");
             tunnel.setInFlow(0L);
             tunnel.setOutFlow(0L);
             userTunnelService.updateById(tunnel);
+            subscriptionCache.evictUserTunnel(tunnel.getId());
         }
         return R.ok();
     }
@@ -277,13 +367,34 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     }
 
     private void fillForwardInIpAndPort(List<UserPackageDto.UserForwardDetailDto> forwards) {
+        if (forwards.isEmpty()) return;
+        // 隧道、端口、节点各查一次，不按转发逐条查询
+        Set<Integer> tunnelIds = new LinkedHashSet<>();
+        List<Long> forwardIds = new ArrayList<>();
+        for (UserPackageDto.UserForwardDetailDto forward : forwards) {
+            if (forward.getTunnelId() != null) tunnelIds.add(forward.getTunnelId());
+            forwardIds.add(forward.getId());
+        }
+        Map<Long, Tunnel> tunnels = new HashMap<>();
+        if (tunnelIds.isEmpty()) return;
+        tunnelService.listByIds(tunnelIds).forEach(tunnel -> tunnels.put(tunnel.getId(), tunnel));
+        Map<Long, List<ForwardPort>> portsByForward = new HashMap<>();
+        Set<Long> nodeIds = new LinkedHashSet<>();
+        for (ForwardPort forwardPort : forwardPortService.list(new QueryWrapper<ForwardPort>().in("forward_id", forwardIds))) {
+            portsByForward.computeIfAbsent(forwardPort.getForwardId(), k -> new ArrayList<>()).add(forwardPort);
+            nodeIds.add(forwardPort.getNodeId());
+        }
+        Map<Long, Node> nodes = new HashMap<>();
+        if (!nodeIds.isEmpty()) {
+            nodeService.listByIds(nodeIds).forEach(node -> nodes.put(node.getId(), node));
+        }
+
         for (UserPackageDto.UserForwardDetailDto forward : forwards) {
-            Tunnel tunnel = tunnelService.getById(forward.getTunnelId());
+            if (forward.getTunnelId() == null) continue;
+            Tunnel tunnel = tunnels.get(forward.getTunnelId().longValue());
             if (tunnel == null) continue;
             
-            List<ForwardPort> forwardPorts = forwardPortService.list(
-                    new QueryWrapper<ForwardPort>().eq("forward_id", forward.getId())
-            );
+            List<ForwardPort> forwardPorts = portsByForward.getOrDefault(forward.getId(), List.of());
             if (forwardPorts.isEmpty()) continue;
             
             boolean useTunnelInIp = tunnel.getInIp() != null && !tunnel.getInIp().trim().isEmpty();
@@ -322,7 +433,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             } else {
                 // 使用节点的serverIp（一对一，不求笛卡尔积）
                 for (ForwardPort forwardPort : forwardPorts) {
-                    Node node = nodeService.getById(forwardPort.getNodeId());
+                    Node node = nodes.get(forwardPort.getNodeId());
                     if (node != null && node.getServerIp() != null && forwardPort.getPort() != null) {
                         ipPortSet.add(node.getServerIp() + ":" + forwardPort.getPort());
                     }
@@ -2,6 +2,10 @@ package com.admin.service.impl;
 
 import com.admin.common.dto.*;
 import com.admin.common.lang.R;
+import com.admin.common.task.ExpiryScheduler;
+import com.admin.common.task.SubscriptionCache;
+import com.admin.common.utils.JsonStreamWriter;
+import com.admin.common.utils.KeysetPage;
 import com.admin.entity.GroupPermissionGrant;
 import com.admin.entity.User;
 import com.admin.entity.UserTunnel;
@@ -13,11 +17,14 @@ import com.admin.service.ForwardService;
 import com.admin.entity.Forward;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.BeanUtils;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -28,6 +35,9 @@ import java.util.stream.Collectors;
 @Service
 public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTunnel> implements UserTunnelService {
 
+    // 权限列表只按ID分页
+    private static final Map<String, String> USER_TUNNEL_SORT_COLUMNS = Map.of("id", "ut.id");
+
     @Resource
     @Lazy
     private ForwardService forwardService;
@@ -39,6 +49,14 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
     @Resource
     private GroupPermissionGrantMapper groupPermissionGrantMapper;
 
+    @Resource
+    @Lazy
+    private ExpiryScheduler expiryScheduler;
+
+    @Resource
+    @Lazy
+    private SubscriptionCache subscriptionCache;
+
     @Override
     public R assignUserTunnel(UserTunnelDto userTunnelDto) {
         int count = this.count(new QueryWrapper<UserTunnel>()
@@ -63,6 +81,7 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
         userTunnel.setExpTime(userTunnelDto.getExpTime() != null ? userTunnelDto.getExpTime() : user.getExpTime());
 
         this.save(userTunnel);
+        expiryScheduler.scheduleUserTunnel(userTunnel.getId(), userTunnel.getExpTime());
         return R.ok();
     }
 
@@ -110,6 +129,7 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
         }
 
         this.saveBatch(toSave);
+        toSave.forEach(ut -> expiryScheduler.scheduleUserTunnel(ut.getId(), ut.getExpTime()));
 
         if (!skippedIds.isEmpty()) {
             return R.ok("成功分配 " + toSave.size() + " 个隧道，跳过 " + skippedIds.size() + " 个已有权限的隧道");
@@ -119,8 +139,23 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
 
     @Override
     public R getUserTunnelList(UserTunnelQueryDto queryDto) {
-        List<UserTunnelWithDetailDto> userTunnelWithDetails = this.baseMapper.getUserTunnelWithDetails(queryDto.getUserId());
-        return R.ok(userTunnelWithDetails);
+        KeysetPage page = KeysetPage.of(queryDto, USER_TUNNEL_SORT_COLUMNS, "id", false);
+        List<UserTunnelWithDetailDto> userTunnelWithDetails = this.baseMapper.getUserTunnelWithDetails(queryDto, page);
+        if (page == null) {
+            return R.ok(KeysetPage.project(userTunnelWithDetails, queryDto.getFields()));
+        }
+        return R.ok(page.result(userTunnelWithDetails, UserTunnelWithDetailDto::getId, UserTunnelWithDetailDto::getId, queryDto.getFields()));
+    }
+
+    @Override
+    @Transactional
+    public void exportUserTunnels(ListQueryDto query, JsonStreamWriter writer) throws IOException {
+        ListQueryDto q = query != null ? query : new ListQueryDto();
+        try (Cursor<UserTunnelWithDetailDto> cursor = this.baseMapper.streamUserTunnelWithDetails(q)) {
+            for (UserTunnelWithDetailDto userTunnel : cursor) {
+                writer.write(KeysetPage.projectRow(userTunnel, q.getFields()));
+            }
+        }
     }
 
     @Override
@@ -142,6 +177,8 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
             forwardService.deleteForward(forward.getId());
         }
         this.removeById(id);
+        expiryScheduler.cancelUserTunnel(id);
+        subscriptionCache.evictUserTunnel(id);
         return R.ok();
     }
 
@@ -157,6 +194,8 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
         updateOptionalProperty(userTunnel::setStatus, updateDto.getStatus());
         userTunnel.setSpeedId(updateDto.getSpeedId());
         this.updateById(userTunnel);
+        expiryScheduler.scheduleUserTunnel(userTunnel.getId(), userTunnel.getExpTime());
+        subscriptionCache.evictUserTunnel(userTunnel.getId());
         if (speedChanged) {
             List<Forward> forwardList = forwardService.list(new QueryWrapper<Forward>()
                     .eq("user_id", userTunnel.getUserId())
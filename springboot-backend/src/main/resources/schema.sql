@@ -51,6 +51,8 @@ CREATE TABLE IF NOT EXISTS speed_limit (
   speed INTEGER NOT NULL,
   tunnel_id INTEGER NOT NULL,
   tunnel_name VARCHAR(100) NOT NULL,
+  tier_flow INTEGER NOT NULL DEFAULT 0,
+  tier_hours INTEGER NOT NULL DEFAULT 24,
   created_time INTEGER NOT NULL,
   updated_time INTEGER,
   status INTEGER NOT NULL
@@ -112,6 +114,7 @@ CREATE TABLE IF NOT EXISTS user_tunnel (
   user_id INTEGER NOT NULL,
   tunnel_id INTEGER NOT NULL,
   speed_id INTEGER,
+  tier_speed_id INTEGER,
   num INTEGER NOT NULL,
   flow INTEGER NOT NULL,
   in_flow INTEGER NOT NULL DEFAULT 0,
@@ -173,6 +176,16 @@ CREATE UNIQUE INDEX IF NOT EXISTS idx_tunnel_group_tunnel_unique ON tunnel_group
 CREATE UNIQUE INDEX IF NOT EXISTS idx_user_group_user_unique ON user_group_user(user_group_id, user_id);
 CREATE UNIQUE INDEX IF NOT EXISTS idx_group_permission_unique ON group_permission(user_group_id, tunnel_group_id);
 CREATE UNIQUE INDEX IF NOT EXISTS idx_group_permission_grant_unique ON group_permission_grant(user_group_id, tunnel_group_id, user_tunnel_id);
+CREATE INDEX IF NOT EXISTS idx_forward_created_time ON forward(created_time);
+CREATE INDEX IF NOT EXISTS idx_forward_user_created_time ON forward(user_id, created_time);
+CREATE INDEX IF NOT EXISTS idx_forward_tunnel ON forward(tunnel_id);
+CREATE INDEX IF NOT EXISTS idx_forward_inx ON forward(inx);
+CREATE INDEX IF NOT EXISTS idx_forward_port_forward ON forward_port(forward_id);
+CREATE INDEX IF NOT EXISTS idx_forward_port_node ON forward_port(node_id);
+CREATE INDEX IF NOT EXISTS idx_tunnel_inx ON tunnel(inx);
+CREATE INDEX IF NOT EXISTS idx_chain_tunnel_tunnel ON chain_tunnel(tunnel_id);
+CREATE INDEX IF NOT EXISTS idx_user_tunnel_user ON user_tunnel(user_id);
+CREATE INDEX IF NOT EXISTS idx_user_user ON user(user);
 
 CREATE TABLE IF NOT EXISTS vite_config (
   id INTEGER PRIMARY KEY AUTOINCREMENT,
@@ -0,0 +1,199 @@
+package com.admin;
+
+import com.admin.common.dto.GroupCreateDto;
+import com.admin.common.dto.GroupPermissionAssignDto;
+import com.admin.common.dto.TunnelGroupAssignTunnelsDto;
+import com.admin.common.dto.UserGroupAssignUsersDto;
+import com.admin.common.lang.R;
+import com.admin.service.GroupService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        // use a local sqlite file for tests (resolved via ${DB_PATH} placeholder)
+        "DB_PATH=./target/test-gost-group-reconcile.db",
+})
+class GroupReconcileTests {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupReconcileTests.class);
+
+    private static final int USER_COUNT = 1000;
+    private static final int TUNNEL_COUNT = 20;
+    private static final int REMOVED_USER_COUNT = 100;
+    // generous upper bound for each reconcile step; catches a regression to per-row inserts/deletes
+    private static final long STEP_BUDGET_MS = 20_000;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @Resource
+    private GroupService groupService;
+
+    @BeforeEach
+    void cleanup() {
+        jdbcTemplate.execute("DELETE FROM group_permission_grant");
+        jdbcTemplate.execute("DELETE FROM group_permission");
+        jdbcTemplate.execute("DELETE FROM user_group_user");
+        jdbcTemplate.execute("DELETE FROM tunnel_group_tunnel");
+        jdbcTemplate.execute("DELETE FROM user_group");
+        jdbcTemplate.execute("DELETE FROM tunnel_group");
+        jdbcTemplate.execute("DELETE FROM user_tunnel");
+        jdbcTemplate.execute("DELETE FROM tunnel");
+        jdbcTemplate.execute("DELETE FROM user WHERE role_id <> 0");
+    }
+
+    @Test
+    void assignLargeGroups_reconcilesIncrementally() {
+        long now = System.currentTimeMillis();
+        long expTime = now + 30L * 24 * 3600 * 1000;
+
+        List<Object[]> userRows = new ArrayList<>();
+        for (int i = 0; i < USER_COUNT; i++) {
+            userRows.add(new Object[]{"bench_user_" + i, "x", expTime, now});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO user (user, pwd, role_id, exp_time, flow, flow_reset_time, num, created_time, status) " +
+                "VALUES (?, ?, 1, ?, 100, 0, 10, ?, 1)", userRows);
+
+        List<Object[]> tunnelRows = new ArrayList<>();
+        for (int i = 0; i < TUNNEL_COUNT; i++) {
+            tunnelRows.add(new Object[]{"bench_tunnel_" + i, now, now});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO tunnel (name, type, flow, created_time, updated_time, status) " +
+                "VALUES (?, 1, 1, ?, ?, 1)", tunnelRows);
+
+        List<Long> userIds = jdbcTemplate.queryForList("SELECT id FROM user WHERE user LIKE 'bench_user_%' ORDER BY id", Long.class);
+        List<Long> tunnelIds = jdbcTemplate.queryForList("SELECT id FROM tunnel WHERE name LIKE 'bench_tunnel_%' ORDER BY id", Long.class);
+
+        // 第一个用户事先手动分配了第一条隧道，分组授权不应接管这条权限
+        Long manualUserId = userIds.get(0);
+        Long manualTunnelId = tunnelIds.get(0);
+        jdbcTemplate.update("INSERT INTO user_tunnel (user_id, tunnel_id, num, flow, flow_reset_time, exp_time, status) " +
+                "VALUES (?, ?, 10, 100, 0, ?, 1)", manualUserId, manualTunnelId, expTime);
+        Long manualUserTunnelId = jdbcTemplate.queryForObject("SELECT id FROM user_tunnel WHERE user_id = ? AND tunnel_id = ?",
+                Long.class, manualUserId, manualTunnelId);
+
+        assertEquals(0, groupService.createUserGroup(groupDto("bench_users")).getCode());
+        assertEquals(0, groupService.createTunnelGroup(groupDto("bench_tunnels")).getCode());
+        Long userGroupId = jdbcTemplate.queryForObject("SELECT id FROM user_group WHERE name = 'bench_users'", Long.class);
+        Long tunnelGroupId = jdbcTemplate.queryForObject("SELECT id FROM tunnel_group WHERE name = 'bench_tunnels'", Long.class);
+
+        TunnelGroupAssignTunnelsDto tunnelsDto = new TunnelGroupAssignTunnelsDto();
+        tunnelsDto.setGroupId(tunnelGroupId);
+        tunnelsDto.setTunnelIds(tunnelIds);
+        assertEquals(0, groupService.assignTunnelsToGroup(tunnelsDto).getCode());
+
+        GroupPermissionAssignDto permissionDto = new GroupPermissionAssignDto();
+        permissionDto.setUserGroupId(userGroupId);
+        permissionDto.setTunnelGroupId(tunnelGroupId);
+        assertEquals(0, groupService.assignGroupPermission(permissionDto).getCode());
+
+        // 1. 一次性加入全部用户
+        UserGroupAssignUsersDto usersDto = new UserGroupAssignUsersDto();
+        usersDto.setGroupId(userGroupId);
+        usersDto.setUserIds(userIds);
+        long start = System.nanoTime();
+        R res = groupService.assignUsersToGroup(usersDto);
+        long assignMs = elapsedMs(start);
+        assertEquals(0, res.getCode());
+
+        int expectedPairs = USER_COUNT * TUNNEL_COUNT;
+        assertEquals(expectedPairs, countRows("group_permission_grant"));
+        assertEquals(expectedPairs, countRows("user_tunnel"));
+        // 手动分配的权限沿用原记录，授权标记为非分组创建；其余全部由分组创建
+        assertEquals(0, grantFlag(manualUserTunnelId));
+        assertEquals(expectedPairs - 1, countWhere("group_permission_grant", "created_by_group = 1"));
+
+        // 2. 重复提交相同成员，不应产生任何写入
+        Long maxGrantId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM group_permission_grant", Long.class);
+        Long maxUserTunnelId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM user_tunnel", Long.class);
+        start = System.nanoTime();
+        assertEquals(0, groupService.assignUsersToGroup(usersDto).getCode());
+        long noopMs = elapsedMs(start);
+        assertEquals(expectedPairs, countRows("group_permission_grant"));
+        assertEquals(maxGrantId, jdbcTemplate.queryForObject("SELECT MAX(id) FROM group_permission_grant", Long.class));
+        assertEquals(maxUserTunnelId, jdbcTemplate.queryForObject("SELECT MAX(id) FROM user_tunnel", Long.class));
+
+        // 3. 移除部分用户（含手动分配的用户），只撤销这些用户的授权
+        List<Long> remainingUserIds = userIds.subList(REMOVED_USER_COUNT, USER_COUNT);
+        List<Object[]> remainingRowsBefore = userTunnelRows(remainingUserIds);
+        usersDto.setUserIds(remainingUserIds);
+        start = System.nanoTime();
+        assertEquals(0, groupService.assignUsersToGroup(usersDto).getCode());
+        long removeMs = elapsedMs(start);
+
+        int remainingPairs = (USER_COUNT - REMOVED_USER_COUNT) * TUNNEL_COUNT;
+        assertEquals(remainingPairs, countRows("group_permission_grant"));
+        // 分组创建的权限随授权删除，手动分配的那条保留
+        assertEquals(remainingPairs + 1, countRows("user_tunnel"));
+        assertEquals(1, countWhere("user_tunnel", "id = " + manualUserTunnelId));
+        assertEquals(0, countWhere("group_permission_grant", "user_tunnel_id = " + manualUserTunnelId));
+        assertEquals(1, countWhere("user_tunnel", "user_id IN (" + joinIds(userIds.subList(0, REMOVED_USER_COUNT)) + ")"));
+
+        // 保留的用户仍是原来的权限行，没有被删除重建
+        List<Object[]> remainingRowsAfter = userTunnelRows(remainingUserIds);
+        assertEquals(remainingRowsBefore.size(), remainingRowsAfter.size());
+        for (int i = 0; i < remainingRowsBefore.size(); i++) {
+            assertArrayEquals(remainingRowsBefore.get(i), remainingRowsAfter.get(i));
+        }
+        assertEquals(remainingPairs, countWhere("group_permission_grant", "created_by_group = 1"));
+
+        log.info("group reconcile {} users x {} tunnels: assign {}ms, no-op reassign {}ms, remove {} users {}ms",
+                USER_COUNT, TUNNEL_COUNT, assignMs, noopMs, REMOVED_USER_COUNT, removeMs);
+        assertTrue(assignMs < STEP_BUDGET_MS, "assign took " + assignMs + "ms");
+        assertTrue(removeMs < STEP_BUDGET_MS, "remove took " + removeMs + "ms");
+        // a no-op reassign only diffs membership and writes nothing
+        assertTrue(noopMs < assignMs, "no-op reassign took " + noopMs + "ms, assign " + assignMs + "ms");
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private int grantFlag(Long userTunnelId) {
+        Integer flag = jdbcTemplate.queryForObject("SELECT created_by_group FROM group_permission_grant WHERE user_tunnel_id = ?",
+                Integer.class, userTunnelId);
+        return flag == null ? -1 : flag;
+    }
+
+    private List<Object[]> userTunnelRows(List<Long> userIds) {
+        return jdbcTemplate.query("SELECT id, user_id, tunnel_id FROM user_tunnel WHERE user_id IN (" + joinIds(userIds) + ") ORDER BY id",
+                (rs, i) -> new Object[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)});
+    }
+
+    private int countWhere(String table, String condition) {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE " + condition, Integer.class);
+        return count == null ? 0 : count;
+    }
+
+    private static String joinIds(List<Long> ids) {
+        StringBuilder sb = new StringBuilder();
+        for (Long id : ids) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(id);
+        }
+        return sb.toString();
+    }
+
+    private int countRows(String table) {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+        return count == null ? 0 : count;
+    }
+
+    private static GroupCreateDto groupDto(String name) {
+        GroupCreateDto dto = new GroupCreateDto();
+        dto.setName(name);
+        dto.setStatus(1);
+        return dto;
+    }
+}
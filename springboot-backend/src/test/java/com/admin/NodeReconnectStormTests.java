@@ -0,0 +1,155 @@
+package com.admin;
+
+import com.admin.common.task.NodeAdmissionController;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        // use a local sqlite file for tests (resolved via ${DB_PATH} placeholder)
+        "DB_PATH=./target/test-gost-reconnect-storm.db",
+        "link-probe.enabled=false",
+        "node-admission.rate=200",
+        "node-admission.burst=50",
+})
+class NodeReconnectStormTests {
+
+    private static final int NODE_COUNT = 1000;
+    // 模拟节点的退避时间（真实节点为5秒），缩短以加快测试
+    private static final long RETRY_BASE_MS = 200;
+    // 与真实节点一样每2秒上报一次 memory_usage，避免被心跳超时判为离线
+    private static final long HEARTBEAT_INTERVAL_MS = 2000;
+    private static final String HEARTBEAT = "{\"memory_usage\":1.0}";
+
+    @LocalServerPort
+    private int port;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @Resource
+    private NodeAdmissionController nodeAdmissionController;
+
+    private final Queue<WebSocketSession> sessions = new ConcurrentLinkedQueue<>();
+
+    private ScheduledExecutorService heartbeats;
+
+    @BeforeEach
+    void setup() {
+        heartbeats = Executors.newScheduledThreadPool(4);
+        jdbcTemplate.execute("DELETE FROM node WHERE name LIKE 'storm_node_%'");
+        long now = System.currentTimeMillis();
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < NODE_COUNT; i++) {
+            rows.add(new Object[]{"storm_node_" + i, UUID.randomUUID().toString(), now});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO node (name, secret, server_ip, port, created_time, status) " +
+                "VALUES (?, ?, '127.0.0.1', '1000-2000', ?, 0)", rows);
+    }
+
+    @AfterEach
+    void cleanup() {
+        heartbeats.shutdownNow();
+        for (WebSocketSession session : sessions) {
+            try {
+                session.close();
+            } catch (Exception ignored) {
+            }
+        }
+        jdbcTemplate.execute("DELETE FROM node WHERE name LIKE 'storm_node_%'");
+    }
+
+    @Test
+    void reconnectStorm_isPacedAndAllNodesComeOnline() throws Exception {
+        List<String> secrets = jdbcTemplate.queryForList(
+                "SELECT secret FROM node WHERE name LIKE 'storm_node_%'", String.class);
+        assertEquals(NODE_COUNT, secrets.size());
+
+        StandardWebSocketClient client = new StandardWebSocketClient();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(32);
+        CountDownLatch connected = new CountDownLatch(NODE_COUNT);
+        Queue<Long> connectTimes = new ConcurrentLinkedQueue<>();
+
+        for (String secret : secrets) {
+            String url = "ws://127.0.0.1:" + port + "/system-info?type=1&secret=" + secret + "&version=test";
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        WebSocketSession session = client.doHandshake(new TextWebSocketHandler(), url).get(10, TimeUnit.SECONDS);
+                        sessions.add(session);
+                        connectTimes.add(System.currentTimeMillis());
+                        heartbeats.scheduleAtFixedRate(() -> sendHeartbeat(session),
+                                HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                        connected.countDown();
+                    } catch (Exception e) {
+                        // 被限流：与真实节点一样带抖动退避后重连
+                        long delay = RETRY_BASE_MS + ThreadLocalRandom.current().nextLong(RETRY_BASE_MS / 2 + 1);
+                        scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+                    }
+                }
+            });
+        }
+
+        assertTrue(connected.await(60, TimeUnit.SECONDS), "not all simulated nodes connected");
+        scheduler.shutdownNow();
+
+        // 任意1秒内放行的握手不超过 突发量 + 每秒速率（留一定余量）
+        List<Long> times = new ArrayList<>(connectTimes);
+        times.sort(null);
+        int peak = 0;
+        for (int i = 0, j = 0; i < times.size(); i++) {
+            while (times.get(i) - times.get(j) >= 1000) {
+                j++;
+            }
+            peak = Math.max(peak, i - j + 1);
+        }
+        assertTrue(peak <= (50 + 200) * 1.2, "admission peak too high: " + peak);
+        assertTrue(nodeAdmissionController.stats().getLongValue("deferred") > 0);
+
+        // 在线状态由跟踪器批量写库
+        long deadline = System.currentTimeMillis() + 10_000;
+        int online = 0;
+        while (System.currentTimeMillis() < deadline) {
+            Integer count = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM node WHERE name LIKE 'storm_node_%' AND status = 1", Integer.class);
+            online = count == null ? 0 : count;
+            if (online == NODE_COUNT) {
+                break;
+            }
+            Thread.sleep(200);
+        }
+        assertEquals(NODE_COUNT, online);
+    }
+
+    private static void sendHeartbeat(WebSocketSession session) {
+        try {
+            if (session.isOpen()) {
+                session.sendMessage(new TextMessage(HEARTBEAT));
+            }
+        } catch (Exception ignored) {
+            // 连接已关闭，测试结束时清理
+        }
+    }
+}
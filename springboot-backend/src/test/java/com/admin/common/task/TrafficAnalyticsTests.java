@@ -0,0 +1,125 @@
+package com.admin.common.task;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrafficAnalyticsTests {
+
+    private static final long FIVE_MINUTES = 5 * 60_000L;
+    private static final long HOUR = 60 * 60_000L;
+    // hour-aligned (and therefore 5-minute-aligned) start time
+    private static final long T0 = 500_000 * HOUR;
+
+    @Test
+    void select_returnsTopScoresDescendingAndSkipsNonPositive() {
+        long[] scores = {5, 0, 9, -3, 7, 1, 9};
+
+        int[] top = TrafficAnalytics.select(scores, 3);
+
+        assertEquals(3, top.length);
+        assertEquals(9, scores[top[0]]);
+        assertEquals(9, scores[top[1]]);
+        assertEquals(7, scores[top[2]]);
+        assertEquals(4, top[2]);
+    }
+
+    @Test
+    void select_limitLargerThanPositiveScores() {
+        int[] top = TrafficAnalytics.select(new long[]{0, 2, -1, 4}, 10);
+
+        assertArrayEquals(new int[]{3, 1}, top);
+        assertEquals(0, TrafficAnalytics.select(new long[]{1, 2}, 0).length);
+        assertEquals(0, TrafficAnalytics.select(new long[0], 5).length);
+    }
+
+    @Test
+    void ring_sumSplitsAtBucketBoundary() {
+        TrafficAnalytics.Ring ring = new TrafficAnalytics.Ring(12, FIVE_MINUTES, 2);
+        long bucket = T0 / FIVE_MINUTES;
+        ring.add(0, T0 - 1, 100);   // last millisecond of the previous bucket
+        ring.add(0, T0, 50);        // first millisecond of the current bucket
+        ring.add(1, T0 + FIVE_MINUTES - 1, 7);
+
+        long[] current = new long[2];
+        ring.sum(bucket, bucket + 1, current);
+        assertArrayEquals(new long[]{50, 7}, current);
+
+        long[] both = new long[2];
+        ring.sum(bucket - 1, bucket + 1, both);
+        assertArrayEquals(new long[]{150, 7}, both);
+    }
+
+    @Test
+    void ring_reusesPositionAfterFullRotation() {
+        TrafficAnalytics.Ring ring = new TrafficAnalytics.Ring(12, FIVE_MINUTES, 1);
+        long bucket = T0 / FIVE_MINUTES;
+        ring.add(0, T0, 100);
+        // same ring position, twelve buckets later: the old column must be cleared, not added to
+        ring.add(0, T0 + 12 * FIVE_MINUTES, 30);
+
+        long[] old = new long[1];
+        ring.sum(bucket, bucket + 1, old);
+        assertEquals(0, old[0]);
+
+        long[] fresh = new long[1];
+        ring.sum(bucket + 12, bucket + 13, fresh);
+        assertEquals(30, fresh[0]);
+    }
+
+    @Test
+    void ring_expireClearsOnlyBucketsThatLeftTheRing() {
+        TrafficAnalytics.Ring ring = new TrafficAnalytics.Ring(12, FIVE_MINUTES, 1);
+        long bucket = T0 / FIVE_MINUTES;
+        ring.add(0, T0 - FIVE_MINUTES, 100);
+        ring.add(0, T0, 50);
+
+        // now in bucket+11: the ring covers [bucket, bucket+11], so only bucket-1 is gone
+        ring.expire(T0 + 11 * FIVE_MINUTES);
+        long[] sums = new long[1];
+        ring.sum(bucket - 1, bucket + 12, sums);
+        assertEquals(50, sums[0]);
+        assertFalse(ring.isIdle(0));
+
+        // one bucket later the current bucket leaves the ring as well
+        ring.expire(T0 + 12 * FIVE_MINUTES);
+        assertTrue(ring.isIdle(0));
+    }
+
+    @Test
+    void compact_releasesIdleSlotsAndReusesThemCleared() {
+        TrafficAnalytics.Series series = new TrafficAnalytics.Series(10);
+        series.add(1, T0, 100);
+        series.add(2, T0 + 23 * HOUR, 200);
+        int slotOfFirst = series.slots.get(1L);
+
+        // 24 hours later the first entity's hour bucket has left the coarse ring
+        int released = series.compact(T0 + 24 * HOUR);
+        assertEquals(1, released);
+        assertFalse(series.slots.containsKey(1L));
+        assertTrue(series.slots.containsKey(2L));
+        assertEquals(-1, series.ids[slotOfFirst]);
+
+        long now = T0 + 24 * HOUR;
+        series.add(3, now, 5);
+        assertEquals(slotOfFirst, series.slots.get(3L).intValue());
+        assertEquals(2, series.size);
+
+        long[] coarse = new long[series.size];
+        series.coarse.sum(now / HOUR - 23, now / HOUR + 1, coarse);
+        assertEquals(5, coarse[slotOfFirst]);
+        long[] fine = new long[series.size];
+        series.fine.sum(now / FIVE_MINUTES - 11, now / FIVE_MINUTES + 1, fine);
+        assertEquals(5, fine[slotOfFirst]);
+    }
+
+    @Test
+    void series_dropsNewEntitiesBeyondLimit() {
+        TrafficAnalytics.Series series = new TrafficAnalytics.Series(1);
+        series.add(1, T0, 10);
+        series.add(2, T0, 10);
+
+        assertEquals(1, series.slots.size());
+        assertEquals(1, series.dropped);
+    }
+}